@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.resources;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.gradle.api.Transformer;
+import org.gradle.concurrent.ParallelismConfiguration;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration;
+import org.gradle.internal.concurrent.ParallelismConfigurationListener;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
+import org.gradle.internal.work.DefaultWorkerLeaseService;
+import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
+import org.gradle.util.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.lock;
+import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
+
+/**
+ * Runs a number of short work items, each of which needs a worker lease and the lock of a random project, on twice as many threads as there are worker leases.
+ * Compares the {@link DefaultResourceLockCoordinationService} with a service which waits on a single monitor and wakes every waiting thread on each change,
+ * as the coordination service did before it woke only the threads which may proceed.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ResourceLockCoordinationBenchmark {
+    private static final Path BUILD_PATH = Path.path(":");
+    private static final int WORK_ITEMS = 20000;
+
+    @Param({"monitor", "default"})
+    String coordination;
+
+    @Param({"8", "64"})
+    int maxWorkers;
+
+    @Param({"100"})
+    int projects;
+
+    // The amount of work done while holding the locks, in JMH tokens
+    @Param({"100"})
+    int work;
+
+    ResourceLockCoordinationService coordinationService;
+    DefaultWorkerLeaseService workerLeaseService;
+    List<ResourceLock> projectLocks;
+    ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        coordinationService = coordination.equals("monitor") ? new MonitorResourceLockCoordinationService() : new DefaultResourceLockCoordinationService();
+        workerLeaseService = new DefaultWorkerLeaseService(coordinationService, new FixedParallelismConfigurationManager(new DefaultParallelismConfiguration(true, maxWorkers)));
+        projectLocks = new ArrayList<ResourceLock>(projects);
+        for (int i = 0; i < projects; i++) {
+            projectLocks.add(workerLeaseService.getProjectLock(BUILD_PATH, Path.path(":project" + i)));
+        }
+        executor = Executors.newFixedThreadPool(maxWorkers * 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+        workerLeaseService.stop();
+    }
+
+    @Benchmark
+    public int runWorkItems() throws Exception {
+        final AtomicInteger remaining = new AtomicInteger(WORK_ITEMS);
+        List<Future<Integer>> threads = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < maxWorkers * 2; i++) {
+            final Random random = new Random(i);
+            threads.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int completed = 0;
+                    while (remaining.getAndDecrement() > 0) {
+                        WorkerLease workerLease = workerLeaseService.getWorkerLease();
+                        ResourceLock projectLock = projectLocks.get(random.nextInt(projectLocks.size()));
+                        coordinationService.withStateLock(lock(workerLease, projectLock));
+                        try {
+                            Blackhole.consumeCPU(work);
+                            completed++;
+                        } finally {
+                            coordinationService.withStateLock(unlock(workerLease, projectLock));
+                        }
+                    }
+                    return completed;
+                }
+            }));
+        }
+        int completed = 0;
+        for (Future<Integer> thread : threads) {
+            completed += thread.get();
+        }
+        return completed;
+    }
+
+    private static class FixedParallelismConfigurationManager implements ParallelismConfigurationManager {
+        private final ParallelismConfiguration parallelismConfiguration;
+
+        FixedParallelismConfigurationManager(ParallelismConfiguration parallelismConfiguration) {
+            this.parallelismConfiguration = parallelismConfiguration;
+        }
+
+        @Override
+        public ParallelismConfiguration getParallelismConfiguration() {
+            return parallelismConfiguration;
+        }
+
+        @Override
+        public void setParallelismConfiguration(ParallelismConfiguration parallelismConfiguration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addListener(ParallelismConfigurationListener listener) {
+        }
+
+        @Override
+        public void removeListener(ParallelismConfigurationListener listener) {
+        }
+    }
+
+    /**
+     * Waits on a single monitor, and wakes all waiting threads whenever a lock is released.
+     */
+    private static class MonitorResourceLockCoordinationService implements ResourceLockCoordinationService {
+        private final Object lock = new Object();
+        private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
+            @Override
+            protected List<ResourceLockState> initialValue() {
+                return Lists.newArrayList();
+            }
+        };
+
+        @Override
+        public boolean withStateLock(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
+            while (true) {
+                MonitorResourceLockState resourceLockState = new MonitorResourceLockState();
+                ResourceLockState.Disposition disposition;
+                synchronized (lock) {
+                    try {
+                        currentState.get().add(resourceLockState);
+                        disposition = stateLockAction.transform(resourceLockState);
+
+                        switch (disposition) {
+                            case RETRY:
+                                resourceLockState.releaseLocks();
+                                try {
+                                    lock.wait();
+                                } catch (InterruptedException e) {
+                                    throw UncheckedException.throwAsUncheckedException(e);
+                                }
+                                break;
+                            case FINISHED:
+                                if (resourceLockState.hasUnlockedResources()) {
+                                    notifyStateChange();
+                                }
+                                return true;
+                            case FAILED:
+                                resourceLockState.releaseLocks();
+                                return false;
+                            default:
+                                throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
+                        }
+                    } catch (Throwable t) {
+                        resourceLockState.releaseLocks();
+                        throw UncheckedException.throwAsUncheckedException(t);
+                    } finally {
+                        currentState.get().remove(resourceLockState);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public ResourceLockState getCurrent() {
+            List<ResourceLockState> states = currentState.get();
+            return states.isEmpty() ? null : states.get(states.size() - 1);
+        }
+
+        @Override
+        public void notifyStateChange() {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public ResourceLockCoordinationStatistics getStatistics() {
+            // Not tracked
+            return new ResourceLockCoordinationStatistics(0, 0, 0, 0, 0);
+        }
+    }
+
+    private static class MonitorResourceLockState implements ResourceLockState {
+        private Set<ResourceLock> lockedResources;
+        private Set<ResourceLock> unlockedResources;
+        boolean rollback;
+
+        @Override
+        public void registerLocked(ResourceLock resourceLock) {
+            if (!rollback && (unlockedResources == null || !unlockedResources.remove(resourceLock))) {
+                if (lockedResources == null) {
+                    lockedResources = Sets.newHashSet();
+                }
+                lockedResources.add(resourceLock);
+            }
+        }
+
+        @Override
+        public void registerUnlocked(ResourceLock resourceLock) {
+            if (!rollback && (lockedResources == null || !lockedResources.remove(resourceLock))) {
+                if (unlockedResources == null) {
+                    unlockedResources = Sets.newHashSet();
+                }
+                unlockedResources.add(resourceLock);
+            }
+        }
+
+        boolean hasUnlockedResources() {
+            return unlockedResources != null && !unlockedResources.isEmpty();
+        }
+
+        @Override
+        public void releaseLocks() {
+            if (lockedResources != null) {
+                rollback = true;
+                try {
+                    for (ResourceLock resourceLock : lockedResources) {
+                        resourceLock.unlock();
+                    }
+                    lockedResources.clear();
+                } finally {
+                    rollback = false;
+                }
+            }
+        }
+    }
+}
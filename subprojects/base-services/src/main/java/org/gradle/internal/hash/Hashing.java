@@ -120,6 +120,16 @@ public class Hashing {
         return SHA1;
     }
 
+    /**
+     * 128-bit MurmurHash3 hashing function.
+     *
+     * This function is considerably faster than {@link #md5()}, but it is not a cryptographic hash function,
+     * so it does not protect against deliberately constructed collisions.
+     */
+    public static HashFunction murmur3() {
+        return Murmur3HashFunction.INSTANCE;
+    }
+
     private static abstract class MessageDigestHashFunction implements HashFunction {
         public static MessageDigestHashFunction of(String algorithm) {
             MessageDigest prototype;
@@ -231,6 +241,12 @@ public class Hashing {
             digest.update(bytes, off, len);
         }
 
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            checkNotDone();
+            digest.update(bytes);
+        }
+
         @Override
         public HashCode hash() {
             done = true;
@@ -279,7 +295,7 @@ public class Hashing {
         }
     }
 
-    private static class DefaultHasher implements Hasher {
+    static class DefaultHasher implements Hasher {
         private final PrimitiveHasher hasher;
         private String invalidReason;
 
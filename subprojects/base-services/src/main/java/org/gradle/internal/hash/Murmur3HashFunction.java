@@ -0,0 +1,265 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+import com.google.common.base.Charsets;
+import org.gradle.internal.io.BufferCaster;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 128-bit x64 variant of MurmurHash3 with a seed of 0, producing the same hashes as Guava's {@code Hashing.murmur3_128()}.
+ *
+ * This is not a cryptographic hash function, so it does not protect against deliberately constructed collisions.
+ */
+class Murmur3HashFunction implements HashFunction {
+    static final HashFunction INSTANCE = new Murmur3HashFunction();
+
+    private Murmur3HashFunction() {
+    }
+
+    @Override
+    public PrimitiveHasher newPrimitiveHasher() {
+        return new Murmur3Hasher();
+    }
+
+    @Override
+    public Hasher newHasher() {
+        return new Hashing.DefaultHasher(newPrimitiveHasher());
+    }
+
+    @Override
+    public HashCode hashBytes(byte[] bytes) {
+        PrimitiveHasher hasher = newPrimitiveHasher();
+        hasher.putBytes(bytes);
+        return hasher.hash();
+    }
+
+    @Override
+    public HashCode hashString(CharSequence string) {
+        PrimitiveHasher hasher = newPrimitiveHasher();
+        hasher.putString(string);
+        return hasher.hash();
+    }
+
+    @Override
+    public String toString() {
+        return "murmur3_128";
+    }
+
+    private static class Murmur3Hasher implements PrimitiveHasher {
+        private static final int CHUNK_SIZE = 16;
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        // Holds the bytes of an incomplete chunk and is used to encode primitive values
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE + 8).order(ByteOrder.LITTLE_ENDIAN);
+        private long h1;
+        private long h2;
+        private long length;
+        private boolean done;
+
+        private void checkNotDone() {
+            if (done) {
+                throw new IllegalStateException("Cannot reuse hasher");
+            }
+        }
+
+        @Override
+        public void putByte(byte b) {
+            checkNotDone();
+            buffer.put(b);
+            munchIfFull();
+        }
+
+        @Override
+        public void putBytes(byte[] bytes) {
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void putBytes(byte[] bytes, int off, int len) {
+            checkNotDone();
+            int end = off + len;
+            int pos = off;
+            if (buffer.position() > 0) {
+                int fill = Math.min(CHUNK_SIZE - buffer.position(), len);
+                buffer.put(bytes, pos, fill);
+                pos += fill;
+                munchIfFull();
+            }
+            while (end - pos >= CHUNK_SIZE) {
+                bmix(getLongLittleEndian(bytes, pos), getLongLittleEndian(bytes, pos + 8));
+                length += CHUNK_SIZE;
+                pos += CHUNK_SIZE;
+            }
+            buffer.put(bytes, pos, end - pos);
+        }
+
+        @Override
+        public void putBytes(ByteBuffer bytes) {
+            checkNotDone();
+            if (bytes.hasArray()) {
+                putBytes(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                BufferCaster.cast(bytes).position(bytes.limit());
+                return;
+            }
+            ByteBuffer input = bytes.slice().order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.position() > 0) {
+                while (buffer.position() < CHUNK_SIZE && input.hasRemaining()) {
+                    buffer.put(input.get());
+                }
+                munchIfFull();
+            }
+            while (input.remaining() >= CHUNK_SIZE) {
+                bmix(input.getLong(), input.getLong());
+                length += CHUNK_SIZE;
+            }
+            buffer.put(input);
+            BufferCaster.cast(bytes).position(bytes.limit());
+        }
+
+        @Override
+        public void putInt(int value) {
+            checkNotDone();
+            buffer.putInt(value);
+            munchIfFull();
+        }
+
+        @Override
+        public void putLong(long value) {
+            checkNotDone();
+            buffer.putLong(value);
+            munchIfFull();
+        }
+
+        @Override
+        public void putDouble(double value) {
+            putLong(Double.doubleToRawLongBits(value));
+        }
+
+        @Override
+        public void putBoolean(boolean value) {
+            putByte((byte) (value ? 1 : 0));
+        }
+
+        @Override
+        public void putString(CharSequence value) {
+            putBytes(value.toString().getBytes(Charsets.UTF_8));
+        }
+
+        @Override
+        public void putHash(HashCode hashCode) {
+            putBytes(hashCode.getBytes());
+        }
+
+        private void munchIfFull() {
+            if (buffer.position() >= CHUNK_SIZE) {
+                bmix(buffer.getLong(0), buffer.getLong(8));
+                length += CHUNK_SIZE;
+                int remaining = buffer.position() - CHUNK_SIZE;
+                for (int i = 0; i < remaining; i++) {
+                    buffer.put(i, buffer.get(CHUNK_SIZE + i));
+                }
+                BufferCaster.cast(buffer).position(remaining);
+            }
+        }
+
+        private void bmix(long k1, long k2) {
+            h1 ^= mixK1(k1);
+
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        @Override
+        public HashCode hash() {
+            checkNotDone();
+            done = true;
+            int remaining = buffer.position();
+            long k1 = 0;
+            long k2 = 0;
+            for (int i = remaining - 1; i >= 8; i--) {
+                k2 = (k2 << 8) | (buffer.get(i) & 0xffL);
+            }
+            for (int i = Math.min(remaining, 8) - 1; i >= 0; i--) {
+                k1 = (k1 << 8) | (buffer.get(i) & 0xffL);
+            }
+            length += remaining;
+            h1 ^= mixK1(k1);
+            h2 ^= mixK2(k2);
+
+            h1 ^= length;
+            h2 ^= length;
+
+            h1 += h2;
+            h2 += h1;
+
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+
+            h1 += h2;
+            h2 += h1;
+
+            byte[] bytes = new byte[CHUNK_SIZE];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2);
+            return HashCode.fromBytesNoCopy(bytes);
+        }
+
+        private static long getLongLittleEndian(byte[] bytes, int offset) {
+            return (bytes[offset] & 0xffL)
+                | (bytes[offset + 1] & 0xffL) << 8
+                | (bytes[offset + 2] & 0xffL) << 16
+                | (bytes[offset + 3] & 0xffL) << 24
+                | (bytes[offset + 4] & 0xffL) << 32
+                | (bytes[offset + 5] & 0xffL) << 40
+                | (bytes[offset + 6] & 0xffL) << 48
+                | (bytes[offset + 7] & 0xffL) << 56;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+    }
+}
@@ -21,53 +21,79 @@ import com.google.common.collect.Sets;
 import org.gradle.api.Transformer;
 import org.gradle.internal.UncheckedException;
 
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Coordinates changes to resource locks using a single state lock, so that a transform can atomically inspect and change the state of several locks.
+ *
+ * <p>Threads which have to retry a transform wait until the state changes in a way which may allow them to proceed. A thread blocked acquiring specific exclusive locks,
+ * such as a project lock, is only woken when one of those locks is released. Other threads are woken on every change. Each woken thread wakes the next one once it
+ * holds the state lock again, rather than all of them competing for the state lock at once.</p>
+ */
 public class DefaultResourceLockCoordinationService implements ResourceLockCoordinationService {
-    private final Object lock = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
     private final ThreadLocal<List<ResourceLockState>> currentState = new ThreadLocal<List<ResourceLockState>>() {
         @Override
         protected List<ResourceLockState> initialValue() {
             return Lists.newArrayList();
         }
     };
+    // Guarded by lock
+    private final Deque<Waiter> waiters = new ArrayDeque<Waiter>();
+    private final Deque<Waiter> pendingWakeups = new ArrayDeque<Waiter>();
+    private boolean wakeupInProgress;
+
+    private final AtomicLong stateLockAcquisitions = new AtomicLong();
+    private final AtomicLong contendedStateLockAcquisitions = new AtomicLong();
+    private final AtomicLong stateLockWaitTimeNanos = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong wakeups = new AtomicLong();
 
     @Override
     public boolean withStateLock(Transformer<ResourceLockState.Disposition, ResourceLockState> stateLockAction) {
         while (true) {
             DefaultResourceLockState resourceLockState = new DefaultResourceLockState();
             ResourceLockState.Disposition disposition;
-            synchronized (lock) {
-                try {
-                    currentState.get().add(resourceLockState);
-                    disposition = stateLockAction.transform(resourceLockState);
-
-                    switch (disposition) {
-                        case RETRY:
-                            resourceLockState.releaseLocks();
-                            try {
-                                lock.wait();
-                            } catch (InterruptedException e) {
-                                throw UncheckedException.throwAsUncheckedException(e);
-                            }
-                            break;
-                        case FINISHED:
-                            maybeNotifyStateChange(resourceLockState);
-                            return true;
-                        case FAILED:
-                            resourceLockState.releaseLocks();
-                            return false;
-                        default:
-                            throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
-                    }
-                } catch (Throwable t) {
-                    resourceLockState.releaseLocks();
-                    throw UncheckedException.throwAsUncheckedException(t);
-                } finally {
-                    currentState.get().remove(resourceLockState);
+            acquireStateLock();
+            try {
+                currentState.get().add(resourceLockState);
+                disposition = stateLockAction.transform(resourceLockState);
+
+                switch (disposition) {
+                    case RETRY:
+                        resourceLockState.releaseLocks();
+                        retries.incrementAndGet();
+                        Waiter waiter = new Waiter(lock.newCondition(), resourceLockState.waitingFor);
+                        waiters.add(waiter);
+                        waiter.await();
+                        break;
+                    case FINISHED:
+                        maybeNotifyStateChange(resourceLockState);
+                        return true;
+                    case FAILED:
+                        resourceLockState.releaseLocks();
+                        return false;
+                    default:
+                        throw new IllegalArgumentException("Unhandled disposition type: " + disposition.name());
                 }
+            } catch (Throwable t) {
+                resourceLockState.releaseLocks();
+                throw UncheckedException.throwAsUncheckedException(t);
+            } finally {
+                currentState.get().remove(resourceLockState);
+                lock.unlock();
             }
         }
     }
@@ -82,21 +108,114 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
         }
     }
 
+    private void acquireStateLock() {
+        stateLockAcquisitions.incrementAndGet();
+        if (!lock.tryLock()) {
+            contendedStateLockAcquisitions.incrementAndGet();
+            long start = System.nanoTime();
+            lock.lock();
+            stateLockWaitTimeNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
     private void maybeNotifyStateChange(DefaultResourceLockState resourceLockState) {
         if (resourceLockState.hasUnlockedResources()) {
-            notifyStateChange();
+            scheduleWakeups(resourceLockState.unlockedResources);
         }
     }
 
     public void notifyStateChange() {
-        synchronized (lock) {
-            lock.notifyAll();
+        lock.lock();
+        try {
+            scheduleWakeups(null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ResourceLockCoordinationStatistics getStatistics() {
+        return new ResourceLockCoordinationStatistics(stateLockAcquisitions.get(), contendedStateLockAcquisitions.get(), TimeUnit.NANOSECONDS.toMillis(stateLockWaitTimeNanos.get()), retries.get(), wakeups.get());
+    }
+
+    /**
+     * Schedules the waiters which may be able to proceed after the given locks have been released, or all waiters when the change is not known.
+     */
+    private void scheduleWakeups(@Nullable Set<ResourceLock> unlockedResources) {
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (unlockedResources == null || waiter.canProceedAfterReleasing(unlockedResources)) {
+                iterator.remove();
+                pendingWakeups.add(waiter);
+            }
+        }
+        if (!wakeupInProgress) {
+            wakeNext();
+        }
+    }
+
+    private void wakeNext() {
+        Waiter waiter = pendingWakeups.poll();
+        wakeupInProgress = waiter != null;
+        if (waiter != null) {
+            wakeups.incrementAndGet();
+            waiter.wake();
+        }
+    }
+
+    private class Waiter {
+        private final Condition condition;
+        // The locks this waiter is blocked on, or null when it waits for any change
+        private final Collection<ResourceLock> waitingFor;
+        private boolean woken;
+
+        Waiter(Condition condition, @Nullable Collection<ResourceLock> waitingFor) {
+            this.condition = condition;
+            this.waitingFor = waitingFor;
+        }
+
+        boolean canProceedAfterReleasing(Set<ResourceLock> unlockedResources) {
+            if (waitingFor == null) {
+                return true;
+            }
+            for (ResourceLock resourceLock : waitingFor) {
+                if (unlockedResources.contains(resourceLock)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void wake() {
+            woken = true;
+            condition.signal();
+        }
+
+        /**
+         * Waits until woken, and then wakes the next waiter.
+         */
+        void await() {
+            try {
+                while (!woken) {
+                    condition.await();
+                }
+            } catch (InterruptedException e) {
+                waiters.remove(this);
+                pendingWakeups.remove(this);
+                throw UncheckedException.throwAsUncheckedException(e);
+            } finally {
+                if (woken) {
+                    wakeNext();
+                }
+            }
         }
     }
 
     private static class DefaultResourceLockState implements ResourceLockState {
         private Set<ResourceLock> lockedResources;
         private Set<ResourceLock> unlockedResources;
+        private Collection<ResourceLock> waitingFor;
         boolean rollback;
 
         @Override
@@ -194,7 +313,14 @@ public class DefaultResourceLockCoordinationService implements ResourceLockCoord
         public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
             for (ResourceLock resourceLock : resourceLocks) {
                 if (!resourceLock.tryLock()) {
-                    return blocking ? ResourceLockState.Disposition.RETRY : ResourceLockState.Disposition.FAILED;
+                    if (!blocking) {
+                        return ResourceLockState.Disposition.FAILED;
+                    }
+                    // Only an exclusive lock is known to become available when it is released, other locks may depend on shared state, such as the number of worker leases in use
+                    if (resourceLock instanceof ExclusiveAccessResourceLock && resourceLockState instanceof DefaultResourceLockState) {
+                        ((DefaultResourceLockState) resourceLockState).waitingFor = Collections.singleton(resourceLock);
+                    }
+                    return ResourceLockState.Disposition.RETRY;
                 }
             }
             return ResourceLockState.Disposition.FINISHED;
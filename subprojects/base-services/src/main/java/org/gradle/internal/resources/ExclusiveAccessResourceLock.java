@@ -18,10 +18,13 @@ package org.gradle.internal.resources;
 
 import org.gradle.api.Action;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * A resource lock which can be held by a single thread at a time. The owner is updated with a compare-and-set, so the state of the lock can be queried without blocking.
+ */
 public class ExclusiveAccessResourceLock extends AbstractTrackedResourceLock {
-    private ReentrantLock lock = new ReentrantLock();
+    private final AtomicReference<Thread> owner = new AtomicReference<Thread>();
 
     public ExclusiveAccessResourceLock(String displayName, ResourceLockCoordinationService coordinationService, Action<ResourceLock> lockAction, Action<ResourceLock> unlockAction) {
         super(displayName, coordinationService, lockAction, unlockAction);
@@ -29,21 +32,23 @@ public class ExclusiveAccessResourceLock extends AbstractTrackedResourceLock {
 
     @Override
     protected boolean acquireLock() {
-        return lock.tryLock();
+        return owner.compareAndSet(null, Thread.currentThread());
     }
 
     @Override
     protected void releaseLock() {
-        lock.unlock();
+        if (!owner.compareAndSet(Thread.currentThread(), null)) {
+            throw new IllegalMonitorStateException();
+        }
     }
 
     @Override
     protected boolean doIsLockedByCurrentThread() {
-        return lock.isHeldByCurrentThread();
+        return owner.get() == Thread.currentThread();
     }
 
     @Override
     protected boolean doIsLocked() {
-        return lock.isLocked();
+        return owner.get() != null;
     }
 }
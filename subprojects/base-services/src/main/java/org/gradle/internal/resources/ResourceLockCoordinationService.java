@@ -48,4 +48,9 @@ public interface ResourceLockCoordinationService {
      * Notify other threads about changes to resource locks.
      */
     void notifyStateChange();
+
+    /**
+     * Returns the contention on the state lock so far.
+     */
+    ResourceLockCoordinationStatistics getStatistics();
 }
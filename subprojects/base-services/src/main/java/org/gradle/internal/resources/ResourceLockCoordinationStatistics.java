@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.resources;
+
+/**
+ * A snapshot of the contention on the state lock of a {@link ResourceLockCoordinationService}.
+ */
+public class ResourceLockCoordinationStatistics {
+    private final long stateLockAcquisitions;
+    private final long contendedStateLockAcquisitions;
+    private final long stateLockWaitTimeMillis;
+    private final long retries;
+    private final long wakeups;
+
+    public ResourceLockCoordinationStatistics(long stateLockAcquisitions, long contendedStateLockAcquisitions, long stateLockWaitTimeMillis, long retries, long wakeups) {
+        this.stateLockAcquisitions = stateLockAcquisitions;
+        this.contendedStateLockAcquisitions = contendedStateLockAcquisitions;
+        this.stateLockWaitTimeMillis = stateLockWaitTimeMillis;
+        this.retries = retries;
+        this.wakeups = wakeups;
+    }
+
+    public long getStateLockAcquisitions() {
+        return stateLockAcquisitions;
+    }
+
+    /**
+     * Returns the number of times a thread had to wait for another thread to release the state lock.
+     */
+    public long getContendedStateLockAcquisitions() {
+        return contendedStateLockAcquisitions;
+    }
+
+    public long getStateLockWaitTimeMillis() {
+        return stateLockWaitTimeMillis;
+    }
+
+    /**
+     * Returns the number of times a thread had to wait for the state of the locks to change.
+     */
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * Returns the number of times a waiting thread was woken to retry.
+     */
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    /**
+     * Returns the contention which happened since the given snapshot was taken.
+     */
+    public ResourceLockCoordinationStatistics since(ResourceLockCoordinationStatistics start) {
+        return new ResourceLockCoordinationStatistics(
+            stateLockAcquisitions - start.stateLockAcquisitions,
+            contendedStateLockAcquisitions - start.contendedStateLockAcquisitions,
+            stateLockWaitTimeMillis - start.stateLockWaitTimeMillis,
+            retries - start.retries,
+            wakeups - start.wakeups
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d state lock acquisitions, %d contended (%dms waiting), %d retries, %d wakeups",
+            stateLockAcquisitions, contendedStateLockAcquisitions, stateLockWaitTimeMillis, retries, wakeups);
+    }
+}
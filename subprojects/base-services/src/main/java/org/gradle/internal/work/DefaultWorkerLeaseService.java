@@ -36,6 +36,7 @@ import org.gradle.internal.resources.ProjectLock;
 import org.gradle.internal.resources.ProjectLockStatistics;
 import org.gradle.internal.resources.ResourceLock;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
+import org.gradle.internal.resources.ResourceLockCoordinationStatistics;
 import org.gradle.internal.resources.ResourceLockState;
 import org.gradle.internal.time.Time;
 import org.gradle.internal.time.Timer;
@@ -68,6 +69,8 @@ public class DefaultWorkerLeaseService implements WorkerLeaseService, Parallelis
     private final WorkerLeaseLockRegistry workerLeaseLockRegistry;
     private final ParallelismConfigurationManager parallelismConfigurationManager;
     private final ProjectLockStatisticsImpl projectLockStatistics = new ProjectLockStatisticsImpl();
+    @Nullable
+    private final ResourceLockCoordinationStatistics initialCoordinationStatistics;
 
     public DefaultWorkerLeaseService(ResourceLockCoordinationService coordinationService, ParallelismConfigurationManager parallelismConfigurationManager) {
         this.maxWorkerCount = parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount();
@@ -75,6 +78,8 @@ public class DefaultWorkerLeaseService implements WorkerLeaseService, Parallelis
         this.projectLockRegistry = new ProjectLockRegistry(coordinationService, parallelismConfigurationManager.getParallelismConfiguration().isParallelProjectExecutionEnabled());
         this.workerLeaseLockRegistry = new WorkerLeaseLockRegistry(coordinationService);
         this.parallelismConfigurationManager = parallelismConfigurationManager;
+        // The coordination service is shared by the whole session, so only report the contention which happened while this service was in use
+        this.initialCoordinationStatistics = projectLockStatistics.isEnabled() ? coordinationService.getStatistics() : null;
         parallelismConfigurationManager.addListener(this);
         LOGGER.info("Using {} worker leases.", maxWorkerCount);
     }
@@ -141,6 +146,7 @@ public class DefaultWorkerLeaseService implements WorkerLeaseService, Parallelis
 
         if (projectLockStatistics.isEnabled()) {
             LOGGER.warn("Time spent waiting on project locks: " + projectLockStatistics.getTotalWaitTimeMillis() + "ms");
+            LOGGER.warn("Resource lock coordination: " + coordinationService.getStatistics().since(initialCoordinationStatistics));
         }
     }
 
@@ -16,7 +16,11 @@
 
 package org.gradle.internal.hash
 
+import com.google.common.base.Charsets
 import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
 
 class HashingTest extends Specification {
 
@@ -40,6 +44,68 @@ class HashingTest extends Specification {
         hashStrings(["abc", "de"]) != hashStrings(["ab", "cde"])
     }
 
+    @Unroll
+    def "murmur3 produces the same hashes as Guava for #length bytes"() {
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        def expected = com.google.common.hash.Hashing.murmur3_128().hashBytes(bytes).asBytes()
+
+        expect:
+        Hashing.murmur3().hashBytes(bytes).toByteArray() == expected
+        hashInChunks(Hashing.murmur3(), bytes, 7).toByteArray() == expected
+
+        where:
+        length << [0, 1, 8, 15, 16, 17, 31, 32, 33, 1000]
+    }
+
+    def "murmur3 hashes primitives like Guava"() {
+        def hasher = Hashing.murmur3().newPrimitiveHasher()
+        hasher.putInt(123)
+        hasher.putByte(4 as byte)
+        hasher.putLong(456L)
+        hasher.putBoolean(true)
+        hasher.putString("abc")
+
+        def guavaHasher = com.google.common.hash.Hashing.murmur3_128().newHasher()
+        guavaHasher.putInt(123)
+        guavaHasher.putByte(4 as byte)
+        guavaHasher.putLong(456L)
+        guavaHasher.putBoolean(true)
+        guavaHasher.putString("abc", Charsets.UTF_8)
+
+        expect:
+        hasher.hash().toByteArray() == guavaHasher.hash().asBytes()
+    }
+
+    @Unroll
+    def "#hashFunction hashes the content of a #bufferType buffer like the content of an array"() {
+        def bytes = new byte[1000]
+        new Random(1000).nextBytes(bytes)
+        def buffer = bufferType == "direct" ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length)
+        buffer.put(bytes)
+        buffer.flip()
+
+        def hasher = hashFunction.newPrimitiveHasher()
+        hasher.putBytes(bytes, 0, 3)
+        buffer.position(3)
+        hasher.putBytes(buffer)
+
+        expect:
+        !buffer.hasRemaining()
+        hasher.hash() == hashFunction.hashBytes(bytes)
+
+        where:
+        [hashFunction, bufferType] << [[Hashing.md5(), Hashing.murmur3()], ["heap", "direct"]].combinations()
+    }
+
+    def hashInChunks(HashFunction hashFunction, byte[] bytes, int chunkSize) {
+        def hasher = hashFunction.newPrimitiveHasher()
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            hasher.putBytes(bytes, offset, Math.min(chunkSize, bytes.length - offset))
+        }
+        hasher.hash()
+    }
+
     def hashKey(String value) {
         def hasher = Hashing.newHasher()
         hasher.putString(value)
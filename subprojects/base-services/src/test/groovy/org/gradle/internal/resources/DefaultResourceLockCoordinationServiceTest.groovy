@@ -21,6 +21,9 @@ import org.gradle.api.Transformer
 import org.gradle.test.fixtures.ConcurrentTestUtil
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
 import static org.gradle.internal.resources.ResourceLockState.Disposition.*
 import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.*
 
@@ -317,6 +320,100 @@ class DefaultResourceLockCoordinationServiceTest extends ConcurrentSpec {
         false       | false       | FINISHED
     }
 
+    def "only wakes a thread blocked on an exclusive lock when that lock is released"() {
+        def lock1 = exclusiveLock("lock1")
+        def lock2 = exclusiveLock("lock2")
+
+        when:
+        async {
+            start {
+                coordinationService.withStateLock(lock(lock1, lock2))
+                instant.locked
+                thread.blockUntil.released1
+                coordinationService.withStateLock(unlock(lock1))
+                thread.blockUntil.acquired1
+                coordinationService.withStateLock(unlock(lock2))
+            }
+            start {
+                thread.blockUntil.locked
+                coordinationService.withStateLock(lock(lock1))
+                instant.acquired1
+                coordinationService.withStateLock(unlock(lock1))
+            }
+            start {
+                thread.blockUntil.locked
+                coordinationService.withStateLock(lock(lock2))
+                coordinationService.withStateLock(unlock(lock2))
+            }
+
+            thread.blockUntil.locked
+            ConcurrentTestUtil.poll {
+                assert coordinationService.statistics.retries == 2
+            }
+            instant.released1
+        }
+
+        then:
+        coordinationService.statistics.retries == 2
+        coordinationService.statistics.wakeups == 2
+    }
+
+    def "many threads can acquire and release exclusive locks and shared capacity concurrently"() {
+        def threadCount = 64
+        def iterations = 200
+        def capacity = 8
+        def locks = (1..16).collect { exclusiveLock("lock$it") }
+        def owners = locks.collect { new AtomicReference<Thread>() }
+        def inUse = new AtomicInteger()
+        def acquisitions = new AtomicInteger()
+        def overlaps = new AtomicInteger()
+        def acquireCapacity = new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                if (inUse.get() >= capacity) {
+                    return RETRY
+                }
+                inUse.incrementAndGet()
+                return FINISHED
+            }
+        }
+        def releaseCapacity = new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                inUse.decrementAndGet()
+                return FINISHED
+            }
+        }
+
+        when:
+        async {
+            threadCount.times { threadIndex ->
+                start {
+                    def random = new Random(threadIndex)
+                    iterations.times {
+                        def index = random.nextInt(locks.size())
+                        coordinationService.withStateLock(acquireCapacity)
+                        coordinationService.withStateLock(lock(locks[index]))
+                        if (!owners[index].compareAndSet(null, Thread.currentThread())) {
+                            overlaps.incrementAndGet()
+                        }
+                        acquisitions.incrementAndGet()
+                        owners[index].set(null)
+                        coordinationService.withStateLock(unlock(locks[index]))
+                        // Capacity changes are not tied to a lock, so every waiter has to be woken
+                        coordinationService.withStateLock(releaseCapacity)
+                        coordinationService.notifyStateChange()
+                    }
+                }
+            }
+        }
+
+        then:
+        acquisitions.get() == threadCount * iterations
+        overlaps.get() == 0
+        inUse.get() == 0
+    }
+
     TestTrackedResourceLock resourceLock(String displayName, boolean locked, boolean hasLock=false) {
         return new TestTrackedResourceLock(displayName, coordinationService, Mock(Action), Mock(Action), locked, hasLock)
     }
@@ -324,4 +421,8 @@ class DefaultResourceLockCoordinationServiceTest extends ConcurrentSpec {
     TestTrackedResourceLock resourceLock(String displayName) {
         return resourceLock(displayName, false)
     }
+
+    ExclusiveAccessResourceLock exclusiveLock(String displayName) {
+        return new ExclusiveAccessResourceLock(displayName, coordinationService, Mock(Action), Mock(Action))
+    }
 }
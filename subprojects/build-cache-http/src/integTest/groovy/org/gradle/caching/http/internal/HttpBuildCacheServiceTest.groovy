@@ -25,6 +25,8 @@ import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.http.HttpBuildCache
+import org.gradle.internal.concurrent.DefaultParallelismConfiguration
+import org.gradle.internal.concurrent.ParallelismConfigurationManager
 import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.test.fixtures.server.http.AuthScheme
@@ -79,7 +81,7 @@ class HttpBuildCacheServiceTest extends Specification {
         def config = new HttpBuildCache()
         config.url = server.uri.resolve("/cache/")
         buildCacheDescriber = new NoopBuildCacheDescriber()
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(config, buildCacheDescriber)
+        cache = factory().createBuildCacheService(config, buildCacheDescriber)
     }
 
     def "can cache artifact"() {
@@ -267,7 +269,7 @@ class HttpBuildCacheServiceTest extends Specification {
         configuration.url = server.uri.resolve("/cache/")
         configuration.credentials.username = 'user'
         configuration.credentials.password = 'password'
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
+        cache = factory().createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
 
         server.authenticationScheme = AuthScheme.BASIC
 
@@ -293,6 +295,13 @@ class HttpBuildCacheServiceTest extends Specification {
         server.authenticationAttempts == ['Basic'] as Set
     }
 
+    private DefaultHttpBuildCacheServiceFactory factory() {
+        def parallelismConfigurationManager = Stub(ParallelismConfigurationManager) {
+            getParallelismConfiguration() >> new DefaultParallelismConfiguration(false, 4)
+        }
+        new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), parallelismConfigurationManager)
+    }
+
     private HttpResourceInteraction expectError(int httpCode, String method) {
         server.expect("/cache/${key.hashCode}", false, [method], new HttpServer.ActionSupport("return ${httpCode} broken") {
             @Override
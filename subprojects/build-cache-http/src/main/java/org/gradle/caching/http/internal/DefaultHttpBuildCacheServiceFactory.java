@@ -23,7 +23,10 @@ import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.http.HttpBuildCache;
 import org.gradle.caching.http.HttpBuildCacheCredentials;
+import org.gradle.caching.internal.controller.BuildCacheControllerFactory;
+import org.gradle.caching.internal.controller.DefaultBuildCacheController;
 import org.gradle.internal.authentication.DefaultBasicAuthentication;
+import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.resource.transport.http.DefaultHttpSettings;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
 import org.gradle.internal.resource.transport.http.SslContextFactory;
@@ -36,14 +39,19 @@ import java.util.Collections;
 
 /**
  * Build cache factory for HTTP backend.
+ *
+ * The connection pool is sized to the maximum number of workers, so that every worker can load or store an entry over a kept-alive connection
+ * without waiting for another one. When entries are stored in the background, the pool also has a connection for each thread storing entries.
  */
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
 
     private final SslContextFactory sslContextFactory;
+    private final ParallelismConfigurationManager parallelismConfigurationManager;
 
     @Inject
-    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory) {
+    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory, ParallelismConfigurationManager parallelismConfigurationManager) {
         this.sslContextFactory = sslContextFactory;
+        this.parallelismConfigurationManager = parallelismConfigurationManager;
     }
 
     @Override
@@ -68,9 +76,14 @@ public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFac
 
         boolean authenticated = !authentications.isEmpty();
         boolean allowUntrustedServer = configuration.isAllowUntrustedServer();
+        int maxConnections = parallelismConfigurationManager.getParallelismConfiguration().getMaxWorkerCount();
+        if (Boolean.getBoolean(DefaultBuildCacheController.ASYNC_STORE_PROPERTY)) {
+            maxConnections += BuildCacheControllerFactory.MAX_STORE_THREADS;
+        }
         DefaultHttpSettings.Builder builder = DefaultHttpSettings.builder()
             .withAuthenticationSettings(authentications)
-            .followRedirects(false);
+            .followRedirects(false)
+            .maxConnections(maxConnections);
         if (allowUntrustedServer) {
             builder.allowUntrustedConnections();
         } else {
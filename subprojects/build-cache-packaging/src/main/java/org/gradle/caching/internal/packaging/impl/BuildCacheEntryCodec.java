@@ -0,0 +1,122 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * How build cache entries are compressed.
+ */
+public enum BuildCacheEntryCodec {
+    /**
+     * Entries are not compressed.
+     */
+    NONE("none", (byte) 0) {
+        @Override
+        public OutputStream compress(OutputStream output) {
+            return output;
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) {
+            return input;
+        }
+    },
+    /**
+     * Entries are compressed with GZIP, the format used by previous versions of Gradle.
+     */
+    GZIP("gzip", (byte) 1) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new GZIPOutputStream(output);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new GZIPInputStream(input);
+        }
+    },
+    /**
+     * Entries are compressed with the LZ4 frame format, which is faster than GZIP but compresses less.
+     */
+    LZ4("lz4", (byte) 2) {
+        @Override
+        public OutputStream compress(OutputStream output) throws IOException {
+            return new Lz4FrameOutputStream(output);
+        }
+
+        @Override
+        public InputStream decompress(InputStream input) throws IOException {
+            return new Lz4FrameInputStream(input);
+        }
+    };
+
+    public static final String CODEC_PROPERTY = "org.gradle.caching.entry-codec";
+
+    private final String id;
+    private final byte formatId;
+
+    BuildCacheEntryCodec(String id, byte formatId) {
+        this.id = id;
+        this.formatId = formatId;
+    }
+
+    public static BuildCacheEntryCodec fromSystemProperties() {
+        String value = System.getProperty(CODEC_PROPERTY);
+        if (value == null) {
+            return GZIP;
+        }
+        for (BuildCacheEntryCodec codec : values()) {
+            if (codec.id.equalsIgnoreCase(value.trim())) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported build cache entry codec '%s' specified by system property '%s'.", value, CODEC_PROPERTY));
+    }
+
+    /**
+     * The identifier of the codec in the {@link CacheFormat} marker.
+     */
+    byte getFormatId() {
+        return formatId;
+    }
+
+    @Nullable
+    static BuildCacheEntryCodec forFormatId(byte formatId) {
+        for (BuildCacheEntryCodec codec : values()) {
+            if (codec.formatId == formatId) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a stream which compresses the data written to it into the given output. Closing the returned stream closes the given output.
+     */
+    public abstract OutputStream compress(OutputStream output) throws IOException;
+
+    /**
+     * Returns a stream which decompresses the data read from the given input. Closing the returned stream closes the given input.
+     */
+    public abstract InputStream decompress(InputStream input) throws IOException;
+}
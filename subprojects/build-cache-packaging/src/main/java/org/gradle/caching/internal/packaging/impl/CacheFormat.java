@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * The marker at the start of a build cache entry which identifies the codec of the entry.
+ *
+ * Entries compressed with {@link BuildCacheEntryCodec#GZIP} are written without a marker, so that they can still be read by previous versions of Gradle.
+ * All other entries start with {@link #MAGIC}, followed by the version of the format and the identifier of the codec.
+ */
+final class CacheFormat {
+    private static final byte[] MAGIC = {'G', 'R', 'B', 'C'};
+    private static final byte VERSION = 1;
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    private CacheFormat() {
+    }
+
+    /**
+     * Writes the marker for the given codec, if the codec needs one.
+     */
+    static void writeMarker(BuildCacheEntryCodec codec, OutputStream output) throws IOException {
+        if (codec == BuildCacheEntryCodec.GZIP) {
+            return;
+        }
+        output.write(MAGIC);
+        output.write(VERSION);
+        output.write(codec.getFormatId());
+    }
+
+    /**
+     * Reads the marker from the given input and returns the codec of the entry. The remaining input is the compressed entry.
+     */
+    static BuildCacheEntryCodec readMarker(PushbackInputStream input) throws IOException {
+        byte[] header = new byte[MAGIC.length + 2];
+        int read = readFully(input, header);
+        if (read >= 2 && (header[0] & 0xff) == GZIP_MAGIC_0 && (header[1] & 0xff) == GZIP_MAGIC_1) {
+            input.unread(header, 0, read);
+            return BuildCacheEntryCodec.GZIP;
+        }
+        if (read < header.length || !hasMagic(header)) {
+            throw new IllegalStateException("Cached entry format error, unrecognized format.");
+        }
+        byte version = header[MAGIC.length];
+        if (version != VERSION) {
+            throw new IllegalStateException(String.format("Cached entry format error, unsupported format version %d.", version));
+        }
+        BuildCacheEntryCodec codec = BuildCacheEntryCodec.forFormatId(header[MAGIC.length + 1]);
+        if (codec == null) {
+            throw new IllegalStateException(String.format("Cached entry format error, unsupported codec %d.", header[MAGIC.length + 1]));
+        }
+        return codec;
+    }
+
+    /**
+     * The number of bytes which {@link #readMarker(PushbackInputStream)} may need to push back.
+     */
+    static int getMarkerLength() {
+        return MAGIC.length + 2;
+    }
+
+    private static boolean hasMagic(byte[] header) {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readFully(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = input.read(buffer, total, buffer.length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
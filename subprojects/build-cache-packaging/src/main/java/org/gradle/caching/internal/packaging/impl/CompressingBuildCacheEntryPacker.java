@@ -25,28 +25,37 @@ import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
-public class GZipBuildCacheEntryPacker implements BuildCacheEntryPacker {
+/**
+ * Compresses the entries packed by the delegate with the given codec.
+ *
+ * Entries are always unpacked with the codec recorded in their {@link CacheFormat} marker, so entries written with any codec can be read.
+ */
+public class CompressingBuildCacheEntryPacker implements BuildCacheEntryPacker {
     private final BuildCacheEntryPacker delegate;
+    private final BuildCacheEntryCodec codec;
 
-    public GZipBuildCacheEntryPacker(BuildCacheEntryPacker delegate) {
+    public CompressingBuildCacheEntryPacker(BuildCacheEntryPacker delegate, BuildCacheEntryCodec codec) {
         this.delegate = delegate;
+        this.codec = codec;
     }
 
     @Override
     public PackResult pack(CacheableEntity entity, Map<String, CurrentFileCollectionFingerprint> fingerprints, OutputStream output, OriginWriter writeOrigin) throws IOException {
-        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output)) {
-            return delegate.pack(entity, fingerprints, gzipOutput, writeOrigin);
+        CacheFormat.writeMarker(codec, output);
+        try (OutputStream compressedOutput = codec.compress(output)) {
+            return delegate.pack(entity, fingerprints, compressedOutput, writeOrigin);
         }
     }
 
     @Override
     public UnpackResult unpack(CacheableEntity entity, InputStream input, OriginReader readOrigin) throws IOException {
-        try (GZIPInputStream gzipInput = new GZIPInputStream(input)) {
-            return delegate.unpack(entity, gzipInput, readOrigin);
+        PushbackInputStream markedInput = new PushbackInputStream(input, CacheFormat.getMarkerLength());
+        BuildCacheEntryCodec entryCodec = CacheFormat.readMarker(markedInput);
+        try (InputStream decompressedInput = entryCodec.decompress(markedInput)) {
+            return delegate.unpack(entity, decompressedInput, readOrigin);
         }
     }
 }
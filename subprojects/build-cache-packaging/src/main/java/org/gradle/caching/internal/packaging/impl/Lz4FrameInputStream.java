@@ -0,0 +1,230 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads data in the LZ4 frame format with independent blocks, as written by {@link Lz4FrameOutputStream}.
+ *
+ * Blocks are decoded into a single buffer with bulk copies, which is considerably faster than the stream based decoder of commons-compress.
+ */
+class Lz4FrameInputStream extends InputStream {
+    private static final int MAGIC = 0x184D2204;
+    private static final int VERSION_MASK = 0xc0;
+    private static final int SUPPORTED_VERSION = 0x40;
+    private static final int INDEPENDENT_BLOCKS_FLAG = 0x20;
+    private static final int BLOCK_CHECKSUM_FLAG = 0x10;
+    private static final int CONTENT_SIZE_FLAG = 0x08;
+    private static final int CONTENT_CHECKSUM_FLAG = 0x04;
+    private static final int UNCOMPRESSED_BLOCK_FLAG = 0x80000000;
+    private static final int MIN_MATCH = 4;
+
+    private final InputStream input;
+    private final boolean blockChecksum;
+    private final boolean contentChecksum;
+    private final XXHash32 checksum = new XXHash32();
+    private final byte[] compressed;
+    private final byte[] block;
+    private int blockLength;
+    private int blockPosition;
+    private boolean finished;
+
+    Lz4FrameInputStream(InputStream input) throws IOException {
+        this.input = input;
+        if (readIntLE() != MAGIC) {
+            throw new IOException("Not in LZ4 frame format.");
+        }
+        int flags = readByte();
+        int blockDescriptor = readByte();
+        if ((flags & VERSION_MASK) != SUPPORTED_VERSION) {
+            throw new IOException("Unsupported LZ4 frame version.");
+        }
+        if ((flags & INDEPENDENT_BLOCKS_FLAG) == 0) {
+            throw new IOException("LZ4 frames with dependent blocks are not supported.");
+        }
+        XXHash32 headerChecksum = new XXHash32();
+        headerChecksum.update(flags);
+        headerChecksum.update(blockDescriptor);
+        if ((flags & CONTENT_SIZE_FLAG) != 0) {
+            for (int i = 0; i < 8; i++) {
+                headerChecksum.update(readByte());
+            }
+        }
+        if (readByte() != ((headerChecksum.getValue() >> 8) & 0xff)) {
+            throw new IOException("LZ4 frame header checksum mismatch.");
+        }
+        int maxBlockSize = 1 << (8 + 2 * ((blockDescriptor >> 4) & 0x7));
+        this.blockChecksum = (flags & BLOCK_CHECKSUM_FLAG) != 0;
+        this.contentChecksum = (flags & CONTENT_CHECKSUM_FLAG) != 0;
+        this.compressed = new byte[maxBlockSize];
+        this.block = new byte[maxBlockSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[blockPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(len, blockLength - blockPosition);
+        System.arraycopy(block, blockPosition, b, off, count);
+        blockPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return blockLength - blockPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (blockPosition == blockLength) {
+            if (finished) {
+                return false;
+            }
+            readBlock();
+        }
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        int header = readIntLE();
+        if (header == 0) {
+            finished = true;
+            if (contentChecksum && readIntLE() != (int) checksum.getValue()) {
+                throw new IOException("LZ4 content checksum mismatch.");
+            }
+            return;
+        }
+        int length = header & ~UNCOMPRESSED_BLOCK_FLAG;
+        if (length > compressed.length) {
+            throw new IOException("LZ4 block exceeds the maximum block size.");
+        }
+        if ((header & UNCOMPRESSED_BLOCK_FLAG) != 0) {
+            readFully(block, length);
+            blockLength = length;
+        } else {
+            readFully(compressed, length);
+            blockLength = decompressBlock(compressed, length, block);
+        }
+        if (blockChecksum) {
+            // Block checksums are optional to verify
+            readIntLE();
+        }
+        blockPosition = 0;
+        checksum.update(block, 0, blockLength);
+    }
+
+    private static int decompressBlock(byte[] src, int length, byte[] dest) throws IOException {
+        int srcPos = 0;
+        int destPos = 0;
+        while (srcPos < length) {
+            int token = src[srcPos++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    checkBounds(srcPos < length);
+                    b = src[srcPos++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            checkBounds(srcPos + literalLength <= length && destPos + literalLength <= dest.length);
+            System.arraycopy(src, srcPos, dest, destPos, literalLength);
+            srcPos += literalLength;
+            destPos += literalLength;
+            if (srcPos == length) {
+                // The last sequence consists of literals only
+                break;
+            }
+
+            checkBounds(srcPos + 2 <= length);
+            int offset = (src[srcPos++] & 0xff) | (src[srcPos++] & 0xff) << 8;
+            int matchLength = token & 0xf;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    checkBounds(srcPos < length);
+                    b = src[srcPos++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            int ref = destPos - offset;
+            checkBounds(offset > 0 && ref >= 0 && destPos + matchLength <= dest.length);
+            if (offset >= matchLength) {
+                System.arraycopy(dest, ref, dest, destPos, matchLength);
+            } else {
+                // Overlapping match, which repeats the last bytes
+                for (int i = 0; i < matchLength; i++) {
+                    dest[destPos + i] = dest[ref + i];
+                }
+            }
+            destPos += matchLength;
+        }
+        return destPos;
+    }
+
+    private static void checkBounds(boolean condition) throws IOException {
+        if (!condition) {
+            throw new IOException("Malformed LZ4 block.");
+        }
+    }
+
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, total, length - total);
+            if (read == -1) {
+                throw new EOFException("Unexpected end of LZ4 frame.");
+            }
+            total += read;
+        }
+    }
+
+    private int readByte() throws IOException {
+        int b = input.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of LZ4 frame.");
+        }
+        return b;
+    }
+
+    private int readIntLE() throws IOException {
+        return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes data in the LZ4 frame format, using independent blocks of 64 KB and a content checksum.
+ *
+ * The compressor of commons-compress searches for the longest match, which makes it slower than GZIP.
+ * This one follows the greedy single-probe strategy of the reference LZ4 implementation instead,
+ * trading compression ratio for speed. The output can be read by any LZ4 frame decoder.
+ */
+class Lz4FrameOutputStream extends OutputStream {
+    private static final int MAGIC = 0x184D2204;
+    // Version 01, independent blocks, content checksum
+    private static final int FRAME_FLAGS = 0x64;
+    // Maximum block size of 64 KB
+    private static final int BLOCK_DESCRIPTOR = 0x40;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int UNCOMPRESSED_BLOCK_FLAG = 0x80000000;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_TRIGGER = 6;
+
+    private final OutputStream output;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 255 + 16];
+    private final int[] hashTable = new int[1 << HASH_LOG];
+    private final XXHash32 contentChecksum = new XXHash32();
+    private int blockLength;
+    private boolean closed;
+
+    Lz4FrameOutputStream(OutputStream output) throws IOException {
+        this.output = output;
+        writeFrameHeader();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == BLOCK_SIZE) {
+            flushBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_SIZE - blockLength);
+            System.arraycopy(b, off, block, blockLength, count);
+            blockLength += count;
+            off += count;
+            len -= count;
+            if (blockLength == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushBlock();
+            writeIntLE(0);
+            writeIntLE((int) contentChecksum.getValue());
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeFrameHeader() throws IOException {
+        writeIntLE(MAGIC);
+        byte[] descriptor = {(byte) FRAME_FLAGS, (byte) BLOCK_DESCRIPTOR};
+        XXHash32 headerChecksum = new XXHash32();
+        headerChecksum.update(descriptor, 0, descriptor.length);
+        output.write(descriptor);
+        output.write((int) (headerChecksum.getValue() >> 8) & 0xff);
+    }
+
+    private void flushBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        contentChecksum.update(block, 0, blockLength);
+        int compressedLength = compressBlock(block, blockLength, compressed);
+        if (compressedLength < blockLength) {
+            writeIntLE(compressedLength);
+            output.write(compressed, 0, compressedLength);
+        } else {
+            writeIntLE(blockLength | UNCOMPRESSED_BLOCK_FLAG);
+            output.write(block, 0, blockLength);
+        }
+        blockLength = 0;
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        output.write(value & 0xff);
+        output.write((value >>> 8) & 0xff);
+        output.write((value >>> 16) & 0xff);
+        output.write((value >>> 24) & 0xff);
+    }
+
+    /**
+     * Compresses the given data into an LZ4 block and returns the length of the block.
+     */
+    private int compressBlock(byte[] src, int length, byte[] dest) {
+        int destPos = 0;
+        int anchor = 0;
+        int matchLimit = length - LAST_LITERALS;
+        int findLimit = length - MATCH_FIND_LIMIT;
+        Arrays.fill(hashTable, -1);
+
+        int pos = 0;
+        while (pos < findLimit) {
+            int sequence = readInt(src, pos);
+            int hash = hash(sequence);
+            int ref = hashTable[hash];
+            hashTable[hash] = pos;
+            if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                // Skip faster over data which does not compress
+                pos += 1 + ((pos - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+            // Extend the match backwards over literals which also match
+            while (pos > anchor && ref > 0 && src[pos - 1] == src[ref - 1]) {
+                pos--;
+                ref--;
+            }
+            int matchLength = MIN_MATCH;
+            while (pos + matchLength < matchLimit && src[pos + matchLength] == src[ref + matchLength]) {
+                matchLength++;
+            }
+            destPos = writeSequence(src, anchor, pos - anchor, pos - ref, matchLength, dest, destPos);
+            pos += matchLength;
+            anchor = pos;
+        }
+        return writeLastLiterals(src, anchor, length - anchor, dest, destPos);
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength, byte[] dest, int destPos) {
+        int tokenPos = destPos++;
+        int extraMatchLength = matchLength - MIN_MATCH;
+        int token = (Math.min(literalLength, 15) << 4) | Math.min(extraMatchLength, 15);
+        dest[tokenPos] = (byte) token;
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        destPos += literalLength;
+        dest[destPos++] = (byte) offset;
+        dest[destPos++] = (byte) (offset >>> 8);
+        return writeLength(extraMatchLength, dest, destPos);
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalStart, int literalLength, byte[] dest, int destPos) {
+        dest[destPos++] = (byte) (Math.min(literalLength, 15) << 4);
+        destPos = writeLength(literalLength, dest, destPos);
+        System.arraycopy(src, literalStart, dest, destPos, literalLength);
+        return destPos + literalLength;
+    }
+
+    /**
+     * Writes the part of a length which does not fit into the 4 bits of the token.
+     */
+    private static int writeLength(int length, byte[] dest, int destPos) {
+        if (length < 15) {
+            return destPos;
+        }
+        int remaining = length - 15;
+        while (remaining >= 255) {
+            dest[destPos++] = (byte) 255;
+            remaining -= 255;
+        }
+        dest[destPos++] = (byte) remaining;
+        return destPos;
+    }
+
+    private static int readInt(byte[] src, int pos) {
+        return (src[pos] & 0xff) | (src[pos + 1] & 0xff) << 8 | (src[pos + 2] & 0xff) << 16 | (src[pos + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.packaging.impl;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.gradle.caching.local.internal.ContentAddressedBlobStore;
+import org.gradle.caching.local.internal.DeduplicatingEntryFormat;
+import org.gradle.internal.hash.HashCode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Splits build cache entries packed by {@link TarBuildCacheEntryPacker} into a manifest and the contents of the files in the entry.
+ *
+ * <p>The manifest lists the entries of the TAR file in order. Small files are kept in the manifest, larger files reference a blob.
+ * Entries are assembled as uncompressed TAR streams, so loading an entry only reads the blobs and does not need to compress them again.</p>
+ */
+public class TarDeduplicatingEntryFormat implements DeduplicatingEntryFormat {
+    private static final byte[] MAGIC = {'G', 'R', 'B', 'M'};
+    private static final byte VERSION = 1;
+    // Storing smaller files as separate blobs would not save space on most file systems
+    private static final int INLINE_LIMIT = 4 * 1024;
+
+    private static final byte END = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte INLINE_FILE = 2;
+    private static final byte BLOB_FILE = 3;
+
+    @Override
+    public boolean isManifest(File file) throws IOException {
+        byte[] header = new byte[MAGIC.length + 1];
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            input.readFully(header);
+        } catch (EOFException e) {
+            return false;
+        }
+        return Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) && header[MAGIC.length] == VERSION;
+    }
+
+    @Override
+    public void split(File entry, ContentAddressedBlobStore blobStore, File manifest) throws IOException {
+        PushbackInputStream markedInput = new PushbackInputStream(new BufferedInputStream(new FileInputStream(entry)), CacheFormat.getMarkerLength());
+        try (
+            TarArchiveInputStream tarInput = new TarArchiveInputStream(CacheFormat.readMarker(markedInput).decompress(markedInput));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(manifest)))
+        ) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            TarArchiveEntry tarEntry;
+            while ((tarEntry = tarInput.getNextTarEntry()) != null) {
+                if (tarEntry.isDirectory()) {
+                    writeHeader(output, DIRECTORY, tarEntry);
+                } else if (tarEntry.isFile()) {
+                    long size = tarEntry.getSize();
+                    if (size <= INLINE_LIMIT) {
+                        writeHeader(output, INLINE_FILE, tarEntry);
+                        byte[] content = new byte[(int) size];
+                        IOUtils.readFully(tarInput, content);
+                        output.writeInt(content.length);
+                        output.write(content);
+                    } else {
+                        writeHeader(output, BLOB_FILE, tarEntry);
+                        HashCode hash = blobStore.add(tarInput, size);
+                        output.writeLong(size);
+                        writeHash(output, hash);
+                    }
+                } else {
+                    throw new IllegalStateException("Cached entry format error, unsupported entry: " + tarEntry.getName());
+                }
+            }
+            output.writeByte(END);
+        } finally {
+            markedInput.close();
+        }
+    }
+
+    @Override
+    public InputStream open(File manifest, ContentAddressedBlobStore blobStore) throws IOException {
+        return new AssemblingInputStream(manifest, openManifest(manifest), blobStore);
+    }
+
+    @Override
+    public void collectBlobs(File manifest, Set<HashCode> blobs) throws IOException {
+        try (DataInputStream input = openManifest(manifest)) {
+            byte type;
+            while ((type = input.readByte()) != END) {
+                readName(input);
+                input.readInt();
+                switch (type) {
+                    case DIRECTORY:
+                        break;
+                    case INLINE_FILE:
+                        input.skipBytes(input.readInt());
+                        break;
+                    case BLOB_FILE:
+                        input.readLong();
+                        blobs.add(readHash(input));
+                        break;
+                    default:
+                        throw new IllegalStateException("Cached entry format error, corrupt manifest " + manifest);
+                }
+            }
+        }
+    }
+
+    private static DataInputStream openManifest(File manifest) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)));
+        byte[] header = new byte[MAGIC.length + 1];
+        input.readFully(header);
+        if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || header[MAGIC.length] != VERSION) {
+            input.close();
+            throw new IllegalStateException("Cached entry format error, not a manifest: " + manifest);
+        }
+        return input;
+    }
+
+    private static File getBlob(ContentAddressedBlobStore blobStore, HashCode hash, long size) throws IOException {
+        File blob = blobStore.get(hash);
+        if (blob == null) {
+            throw new FileNotFoundException(String.format("Blob %s of cached entry not found.", hash));
+        }
+        if (blob.length() != size) {
+            throw new IOException(String.format("Blob %s of cached entry has an unexpected size.", hash));
+        }
+        return blob;
+    }
+
+    /**
+     * Assembles the TAR file while it is read, so that the blobs are copied straight to the reader instead of to an intermediate file.
+     */
+    private static class AssemblingInputStream extends InputStream {
+        private static final int CHUNK_SIZE = 64 * 1024;
+
+        private final File manifest;
+        private final DataInputStream input;
+        private final ContentAddressedBlobStore blobStore;
+        private final PendingOutput pending = new PendingOutput();
+        private final TarArchiveOutputStream tarOutput;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private InputStream blobInput;
+        private boolean finished;
+
+        AssemblingInputStream(File manifest, DataInputStream input, ContentAddressedBlobStore blobStore) throws IOException {
+            this.manifest = manifest;
+            this.input = input;
+            this.blobStore = blobStore;
+            CacheFormat.writeMarker(BuildCacheEntryCodec.NONE, pending);
+            this.tarOutput = new TarArchiveOutputStream(pending, "utf-8");
+            tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarOutput.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (pending.isEmpty()) {
+                if (finished) {
+                    return -1;
+                }
+                assembleNext();
+            }
+            return pending.read(bytes, offset, length);
+        }
+
+        private void assembleNext() throws IOException {
+            if (blobInput != null) {
+                int read = blobInput.read(chunk);
+                if (read == -1) {
+                    blobInput.close();
+                    blobInput = null;
+                    tarOutput.closeArchiveEntry();
+                } else {
+                    tarOutput.write(chunk, 0, read);
+                }
+                return;
+            }
+            byte type = input.readByte();
+            if (type == END) {
+                tarOutput.finish();
+                finished = true;
+                return;
+            }
+            TarArchiveEntry tarEntry = new TarArchiveEntry(readName(input), true);
+            tarEntry.setMode(input.readInt());
+            switch (type) {
+                case DIRECTORY:
+                    tarOutput.putArchiveEntry(tarEntry);
+                    tarOutput.closeArchiveEntry();
+                    break;
+                case INLINE_FILE:
+                    byte[] content = new byte[input.readInt()];
+                    input.readFully(content);
+                    tarEntry.setSize(content.length);
+                    tarOutput.putArchiveEntry(tarEntry);
+                    tarOutput.write(content);
+                    tarOutput.closeArchiveEntry();
+                    break;
+                case BLOB_FILE:
+                    long size = input.readLong();
+                    File blob = getBlob(blobStore, readHash(input), size);
+                    tarEntry.setSize(size);
+                    tarOutput.putArchiveEntry(tarEntry);
+                    blobInput = new FileInputStream(blob);
+                    break;
+                default:
+                    throw new IllegalStateException("Cached entry format error, corrupt manifest " + manifest);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (blobInput != null) {
+                    blobInput.close();
+                }
+            } finally {
+                input.close();
+            }
+        }
+    }
+
+    /**
+     * Holds the bytes written by the TAR output until they are read.
+     */
+    private static class PendingOutput extends ByteArrayOutputStream {
+        private int position;
+
+        boolean isEmpty() {
+            return position == count;
+        }
+
+        int read(byte[] bytes, int offset, int length) {
+            int read = Math.min(length, count - position);
+            System.arraycopy(buf, position, bytes, offset, read);
+            position += read;
+            if (position == count) {
+                reset();
+                position = 0;
+            }
+            return read;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output, byte type, TarArchiveEntry tarEntry) throws IOException {
+        output.writeByte(type);
+        byte[] name = tarEntry.getName().getBytes(StandardCharsets.UTF_8);
+        output.writeInt(name.length);
+        output.write(name);
+        output.writeInt(tarEntry.getMode());
+    }
+
+    private static String readName(DataInputStream input) throws IOException {
+        byte[] name = new byte[input.readInt()];
+        input.readFully(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static void writeHash(DataOutputStream output, HashCode hash) throws IOException {
+        byte[] bytes = hash.toByteArray();
+        output.writeByte(bytes.length);
+        output.write(bytes);
+    }
+
+    private static HashCode readHash(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readUnsignedByte()];
+        input.readFully(bytes);
+        return HashCode.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.packaging.impl
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream
+import org.gradle.caching.internal.CacheableEntity
+import org.gradle.caching.internal.origin.OriginReader
+import org.gradle.caching.internal.origin.OriginWriter
+import org.gradle.caching.internal.packaging.BuildCacheEntryPacker
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.zip.GZIPInputStream
+
+class CompressingBuildCacheEntryPackerTest extends Specification {
+    def entity = Stub(CacheableEntity)
+
+    @Unroll
+    def "can unpack entries packed with #codec using any codec"() {
+        def content = sampleContent()
+
+        when:
+        def packed = pack(codec, content)
+
+        then:
+        unpack(BuildCacheEntryCodec.NONE, packed) == content
+        unpack(BuildCacheEntryCodec.GZIP, packed) == content
+        unpack(BuildCacheEntryCodec.LZ4, packed) == content
+
+        where:
+        codec << BuildCacheEntryCodec.values()
+    }
+
+    def "writes gzip entries without a marker"() {
+        def content = sampleContent()
+
+        when:
+        def packed = pack(BuildCacheEntryCodec.GZIP, content)
+
+        then:
+        new GZIPInputStream(new ByteArrayInputStream(packed)).bytes == content
+    }
+
+    def "writes lz4 entries in the LZ4 frame format"() {
+        def content = sampleContent()
+
+        when:
+        def packed = pack(BuildCacheEntryCodec.LZ4, content)
+        def frame = new ByteArrayInputStream(packed, CacheFormat.markerLength, packed.length - CacheFormat.markerLength)
+
+        then:
+        packed.length < content.length / 2
+        new FramedLZ4CompressorInputStream(frame).bytes == content
+    }
+
+    @Unroll
+    def "lz4 round trips #description"() {
+        when:
+        def packed = pack(BuildCacheEntryCodec.LZ4, content)
+
+        then:
+        unpack(BuildCacheEntryCodec.LZ4, packed) == content
+
+        where:
+        description               | content
+        "empty content"           | new byte[0]
+        "short content"           | "abc".bytes
+        "runs of a single byte"   | ("a" * 100000).bytes
+        "incompressible content"  | randomBytes(200000)
+        "content spanning blocks" | concat(sampleContent(), randomBytes(70000), sampleContent())
+    }
+
+    def "fails on entries with unknown format"() {
+        when:
+        unpack(BuildCacheEntryCodec.GZIP, "METADATA".bytes)
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "Cached entry format error, unrecognized format."
+    }
+
+    def "fails on entries with a newer format version"() {
+        def packed = pack(BuildCacheEntryCodec.LZ4, sampleContent())
+        packed[4] = 2
+
+        when:
+        unpack(BuildCacheEntryCodec.LZ4, packed)
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "Cached entry format error, unsupported format version 2."
+    }
+
+    def "uses gzip unless another codec is configured"() {
+        expect:
+        BuildCacheEntryCodec.fromSystemProperties() == BuildCacheEntryCodec.GZIP
+    }
+
+    private byte[] pack(BuildCacheEntryCodec codec, byte[] content) {
+        def delegate = Stub(BuildCacheEntryPacker) {
+            pack(_, _, _, _) >> { CacheableEntity entity, Map fingerprints, OutputStream output, OriginWriter writer ->
+                output.write(content)
+                output.close()
+                new BuildCacheEntryPacker.PackResult(1)
+            }
+        }
+        def output = new ByteArrayOutputStream()
+        new CompressingBuildCacheEntryPacker(delegate, codec).pack(entity, [:], output, Stub(OriginWriter))
+        return output.toByteArray()
+    }
+
+    private byte[] unpack(BuildCacheEntryCodec codec, byte[] packed) {
+        byte[] unpacked = null
+        def delegate = Stub(BuildCacheEntryPacker) {
+            unpack(_, _, _) >> { CacheableEntity entity, InputStream input, OriginReader reader ->
+                unpacked = input.bytes
+                null
+            }
+        }
+        new CompressingBuildCacheEntryPacker(delegate, codec).unpack(entity, new ByteArrayInputStream(packed), Stub(OriginReader))
+        return unpacked
+    }
+
+    private static byte[] sampleContent() {
+        def builder = new StringBuilder()
+        (1..2000).each { i ->
+            builder.append("tree-outputDir/org/gradle/sample/SomeClass${i % 37}.class ${i}\n")
+        }
+        return builder.toString().bytes
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        def output = new ByteArrayOutputStream()
+        parts.each { output.write(it) }
+        return output.toByteArray()
+    }
+
+    private static byte[] randomBytes(int length) {
+        def bytes = new byte[length]
+        new Random(1234).nextBytes(bytes)
+        return bytes
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.packaging.impl
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.io.IOUtils
+import org.gradle.caching.local.internal.ContentAddressedBlobStore
+import org.gradle.caching.local.internal.ContentAddressedEntryStore
+import org.gradle.internal.hash.HashCode
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class TarDeduplicatingEntryFormatTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+
+    def cacheDir = temporaryFolder.createDir("cache")
+    def blobStore = new ContentAddressedBlobStore(cacheDir)
+    def format = new TarDeduplicatingEntryFormat()
+    def largeContent = "large content " * 1000
+
+    @Unroll
+    def "assembles entry with the same contents as an entry compressed with #codec"() {
+        def contents = [
+            "METADATA": "origin",
+            "tree-output/": null,
+            "tree-output/large.txt": largeContent,
+            "tree-output/empty.txt": "",
+            "missing-tree-other": ""
+        ]
+        def entry = writeEntry(codec, contents)
+        def manifest = cacheDir.file("manifest")
+
+        when:
+        format.split(entry, blobStore, manifest)
+
+        then:
+        format.isManifest(manifest)
+        !format.isManifest(entry)
+        readEntry(format.open(manifest, blobStore)) == contents
+        // Small files are kept in the manifest
+        blobFiles().size() == 1
+
+        where:
+        codec << BuildCacheEntryCodec.values()
+    }
+
+    def "streams entries with files larger than the chunks read from blobs"() {
+        def contents = [
+            "METADATA": "origin",
+            "tree-output/": null,
+            "tree-output/huge.txt": "huge content " * 20000,
+            "tree-output/other.txt": largeContent
+        ]
+        def manifest = cacheDir.file("manifest")
+        format.split(writeEntry(BuildCacheEntryCodec.GZIP, contents), blobStore, manifest)
+
+        when:
+        def bytes = new ByteArrayOutputStream()
+        format.open(manifest, blobStore).withStream { input ->
+            int read
+            while ((read = input.read()) != -1) {
+                bytes.write(read)
+            }
+        }
+
+        then:
+        readEntry(new ByteArrayInputStream(bytes.toByteArray())) == contents
+        readEntry(format.open(manifest, blobStore)) == contents
+    }
+
+    def "stores files shared by several entries once"() {
+        def first = writeEntry(BuildCacheEntryCodec.GZIP, ["METADATA": "first", "tree-output": largeContent])
+        def second = writeEntry(BuildCacheEntryCodec.LZ4, ["METADATA": "second", "tree-output": largeContent])
+        def blobs = [] as Set<HashCode>
+
+        when:
+        format.split(first, blobStore, cacheDir.file("first"))
+        format.split(second, blobStore, cacheDir.file("second"))
+        format.collectBlobs(cacheDir.file("first"), blobs)
+        format.collectBlobs(cacheDir.file("second"), blobs)
+
+        then:
+        blobFiles().size() == 1
+        blobs.size() == 1
+    }
+
+    def "fails to assemble entry with missing blob"() {
+        def entry = writeEntry(BuildCacheEntryCodec.GZIP, ["tree-output": largeContent])
+        def manifest = cacheDir.file("manifest")
+        format.split(entry, blobStore, manifest)
+        blobFiles()*.delete()
+
+        when:
+        readEntry(format.open(manifest, blobStore))
+
+        then:
+        thrown(FileNotFoundException)
+    }
+
+    def "deletes blobs which are no longer referenced by an entry"() {
+        def entryStore = new ContentAddressedEntryStore(cacheDir, format, true)
+        def otherContent = "other content " * 1000
+        entryStore.writeManifest(writeEntry(BuildCacheEntryCodec.GZIP, ["tree-output": largeContent]), cacheDir.file("0123"))
+        entryStore.writeManifest(writeEntry(BuildCacheEntryCodec.GZIP, ["tree-output": otherContent]), cacheDir.file("4567"))
+
+        when:
+        cacheDir.file("4567").delete()
+        entryStore.deleteUnreferencedBlobs()
+
+        then:
+        blobFiles().size() == 1
+        readEntry(entryStore.openEntry(cacheDir.file("0123"))) == ["tree-output": largeContent]
+    }
+
+    private File writeEntry(BuildCacheEntryCodec codec, Map<String, String> contents) {
+        def entry = temporaryFolder.createFile("entry-${codec}-${contents.hashCode()}")
+        entry.withOutputStream { output ->
+            CacheFormat.writeMarker(codec, output)
+            def tarOutput = new TarArchiveOutputStream(codec.compress(output), "utf-8")
+            tarOutput.longFileMode = TarArchiveOutputStream.LONGFILE_POSIX
+            contents.each { name, content ->
+                def tarEntry = new TarArchiveEntry(name, true)
+                def bytes = content?.getBytes("utf-8")
+                if (bytes != null) {
+                    tarEntry.size = bytes.length
+                }
+                tarOutput.putArchiveEntry(tarEntry)
+                if (bytes != null) {
+                    tarOutput.write(bytes)
+                }
+                tarOutput.closeArchiveEntry()
+            }
+            tarOutput.close()
+        }
+        return entry
+    }
+
+    private static Map<String, String> readEntry(InputStream entry) {
+        def contents = [:]
+        entry.withStream { input ->
+            def markedInput = new PushbackInputStream(input, CacheFormat.markerLength)
+            def tarInput = new TarArchiveInputStream(CacheFormat.readMarker(markedInput).decompress(markedInput))
+            TarArchiveEntry tarEntry
+            while ((tarEntry = tarInput.nextTarEntry) != null) {
+                contents[tarEntry.name] = tarEntry.directory ? null : IOUtils.toString(tarInput, "utf-8")
+            }
+        }
+        return contents
+    }
+
+    private List<File> blobFiles() {
+        def blobs = []
+        blobStore.baseDir.eachFileRecurse { if (it.file) blobs << it }
+        return blobs
+    }
+}
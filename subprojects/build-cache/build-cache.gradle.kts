@@ -34,6 +34,8 @@ dependencies {
 
     implementation(library("commons_io"))
 
+    jmh(project(":snapshots"))
+
     jmh(library("ant")) {
         version {
             prefer(libraryVersion("ant"))
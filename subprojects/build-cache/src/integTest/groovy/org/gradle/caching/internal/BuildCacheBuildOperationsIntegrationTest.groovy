@@ -22,6 +22,7 @@ import org.gradle.caching.internal.operations.BuildCacheArchiveUnpackBuildOperat
 import org.gradle.caching.internal.operations.BuildCacheRemoteLoadBuildOperationType
 import org.gradle.caching.internal.operations.BuildCacheRemoteStoreBuildOperationType
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore
+import org.gradle.caching.local.internal.LocalBuildCacheEntryReader
 import org.gradle.caching.local.internal.LocalBuildCacheService
 import org.gradle.integtests.fixtures.AbstractIntegrationSpec
 import org.gradle.integtests.fixtures.BuildOperationsFixture
@@ -79,6 +80,11 @@ class BuildCacheBuildOperationsIntegrationTest extends AbstractIntegrationSpec {
                 void loadLocally(BuildCacheKey key, Action<? super File> reader) {
                     ${isLocal ? loadBody ?: "" : ""}
                 }
+
+                // @Override
+                void loadLocally(BuildCacheKey key, ${LocalBuildCacheEntryReader.name} reader) {
+                    ${isLocal ? loadBody ?: "" : ""}
+                }
     
                 // @Override
                 void storeLocally(BuildCacheKey key, File file) {
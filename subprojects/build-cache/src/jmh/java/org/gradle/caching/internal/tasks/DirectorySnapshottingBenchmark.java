@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.file.FileTreeElement;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.internal.MutableBoolean;
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.hash.FileHasher;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.nativeintegration.services.FileSystems;
+import org.gradle.internal.nativeintegration.services.NativeServices;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares walking a directory tree on a single thread with walking sibling directories concurrently.
+ * The files are not hashed, so that only the cost of walking the tree is measured.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class DirectorySnapshottingBenchmark {
+    private static final FileHasher METADATA_HASHER = new FileHasher() {
+        @Override
+        public HashCode hash(File file) {
+            return Hashing.hashString(file.getAbsolutePath());
+        }
+
+        @Override
+        public HashCode hash(FileTreeElement fileDetails) {
+            return hash(fileDetails.getFile());
+        }
+
+        @Override
+        public HashCode hash(File file, FileMetadataSnapshot fileDetails) {
+            return hash(file);
+        }
+    };
+
+    Path tempDirPath;
+    String rootPath;
+    ForkJoinPool pool;
+    DirectorySnapshotter directorySnapshotter;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param({"10", "20"})
+    int directoriesPerLevel;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.tempDirPath = Files.createTempDirectory("directory-snapshotting");
+        NativeServices.initialize(tempDirPath.toFile());
+        Path root = tempDirPath.resolve("root");
+        // Three levels of directories with 20 class files in each of them
+        for (int first = 0; first < directoriesPerLevel; first++) {
+            for (int second = 0; second < directoriesPerLevel; second++) {
+                for (int third = 0; third < directoriesPerLevel; third++) {
+                    Path dir = Files.createDirectories(root.resolve("dir" + first).resolve("dir" + second).resolve("dir" + third));
+                    for (int file = 0; file < 20; file++) {
+                        Files.createFile(dir.resolve("Generated" + file + ".class"));
+                    }
+                }
+            }
+        }
+        this.rootPath = root.toString();
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.directorySnapshotter = new DirectorySnapshotter(METADATA_HASHER, FileSystems.getDefault(), new StringInterner(), null, pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        FileUtils.forceDelete(tempDirPath.toFile());
+    }
+
+    @Benchmark
+    public void snapshotDirectory(Blackhole blackhole) {
+        blackhole.consume(directorySnapshotter.snapshot(rootPath, null, new MutableBoolean()));
+    }
+}
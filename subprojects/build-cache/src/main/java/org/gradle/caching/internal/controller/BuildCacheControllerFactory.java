@@ -29,6 +29,8 @@ import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperation
 import org.gradle.caching.internal.controller.service.BuildCacheServiceRole;
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -46,6 +48,11 @@ import java.util.Map;
 
 public final class BuildCacheControllerFactory {
 
+    /**
+     * The number of threads storing entries in the background, when enabled by {@link DefaultBuildCacheController#ASYNC_STORE_PROPERTY}.
+     */
+    public static final int MAX_STORE_THREADS = 4;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheControllerFactory.class);
 
     public enum BuildCacheMode {
@@ -65,7 +72,8 @@ public final class BuildCacheControllerFactory {
         final RemoteAccessMode remoteAccessMode,
         final boolean logStackTraces,
         final boolean emitDebugLogging,
-        final Instantiator instantiator
+        final Instantiator instantiator,
+        final ExecutorFactory executorFactory
     ) {
         return buildOperationExecutor.call(new CallableBuildOperation<BuildCacheController>() {
             @Override
@@ -111,12 +119,18 @@ public final class BuildCacheControllerFactory {
                         remote, remoteDescribedService == null ? null : remoteDescribedService.service
                     );
 
+                    ManagedExecutor storeExecutor = Boolean.getBoolean(DefaultBuildCacheController.ASYNC_STORE_PROPERTY)
+                        ? executorFactory.create("Build cache store", MAX_STORE_THREADS)
+                        : null;
+
                     return new DefaultBuildCacheController(
                         config,
                         buildOperationExecutor,
                         gradleUserHomeDir,
                         logStackTraces,
-                        emitDebugLogging
+                        emitDebugLogging,
+                        Boolean.getBoolean(DefaultBuildCacheController.STREAMING_UNPACK_PROPERTY),
+                        storeExecutor
                     );
                 }
             }
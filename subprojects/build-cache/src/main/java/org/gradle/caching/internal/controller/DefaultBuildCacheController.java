@@ -17,6 +17,7 @@
 package org.gradle.caching.internal.controller;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.api.UncheckedIOException;
@@ -39,23 +40,46 @@ import org.gradle.caching.internal.controller.service.OpFiringBuildCacheServiceH
 import org.gradle.caching.internal.controller.service.StoreTarget;
 import org.gradle.caching.local.internal.BuildCacheTempFileStore;
 import org.gradle.caching.local.internal.DefaultBuildCacheTempFileStore;
+import org.gradle.caching.local.internal.LocalBuildCacheEntryReader;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
+import org.gradle.internal.IoActions;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
 
 public class DefaultBuildCacheController implements BuildCacheController {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultBuildCacheController.class);
+
+    /**
+     * When set, entries loaded from the remote or a legacy local build cache are unpacked while they are downloaded, instead of being downloaded to a temporary file first.
+     */
+    public static final String STREAMING_UNPACK_PROPERTY = "org.gradle.caching.streaming-unpack";
+
+    /**
+     * When set, packed entries are stored in the build caches in the background, see {@link #store(BuildCacheStoreCommand)}.
+     */
+    public static final String ASYNC_STORE_PROPERTY = "org.gradle.caching.async-store";
+
+    private static final int MAX_PENDING_STORES = 32;
+
     @VisibleForTesting
     final BuildCacheServiceHandle legacyLocal;
 
@@ -68,6 +92,9 @@ public class DefaultBuildCacheController implements BuildCacheController {
     private final BuildCacheTempFileStore tmp;
     private final BuildOperationExecutor buildOperationExecutor;
     private final boolean emitDebugLogging;
+    private final boolean streamingUnpack;
+    private final ManagedExecutor storeExecutor;
+    private final Semaphore pendingStores = new Semaphore(MAX_PENDING_STORES);
 
     private boolean closed;
 
@@ -77,9 +104,37 @@ public class DefaultBuildCacheController implements BuildCacheController {
         File gradleUserHomeDir,
         boolean logStackTraces,
         boolean emitDebugLogging
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, false);
+    }
+
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean streamingUnpack
+    ) {
+        this(config, buildOperationExecutor, gradleUserHomeDir, logStackTraces, emitDebugLogging, streamingUnpack, null);
+    }
+
+    /**
+     * @param storeExecutor the executor to store packed entries with, or null when entries should be stored by the caller.
+     */
+    public DefaultBuildCacheController(
+        BuildCacheServicesConfiguration config,
+        BuildOperationExecutor buildOperationExecutor,
+        File gradleUserHomeDir,
+        boolean logStackTraces,
+        boolean emitDebugLogging,
+        boolean streamingUnpack,
+        @Nullable ManagedExecutor storeExecutor
     ) {
         this.buildOperationExecutor = buildOperationExecutor;
         this.emitDebugLogging = emitDebugLogging;
+        this.streamingUnpack = streamingUnpack;
+        this.storeExecutor = storeExecutor;
 
         if (config.local instanceof LocalBuildCacheService) {
             LocalBuildCacheService castLocal = (LocalBuildCacheService) config.local;
@@ -122,7 +177,11 @@ public class DefaultBuildCacheController implements BuildCacheController {
             }
         }
 
-        if (legacyLocal.canLoad() || remote.canLoad()) {
+        if (streamingUnpack) {
+            if (legacyLocal.canLoad() || remote.canLoad()) {
+                loadStreaming(command, unpack);
+            }
+        } else if (legacyLocal.canLoad() || remote.canLoad()) {
             tmp.withTempFile(command.getKey(), new Action<File>() {
                 @Override
                 public void execute(File file) {
@@ -161,7 +220,49 @@ public class DefaultBuildCacheController implements BuildCacheController {
         }
     }
 
-    private class Unpack<T> implements Action<File> {
+    private <T> void loadStreaming(final BuildCacheLoadCommand<T> command, final Unpack<T> unpack) {
+        if (local.canStore()) {
+            // The entry is copied to a temporary file while it is unpacked, so it can be moved to the local cache afterwards
+            tmp.withTempFile(command.getKey(), new Action<File>() {
+                @Override
+                public void execute(File file) {
+                    UnpackingLoadTarget loadTarget = loadStreaming(command, unpack, file);
+                    if (loadTarget != null && loadTarget.isCopied()) {
+                        local.store(command.getKey(), file);
+                    }
+                }
+            });
+        } else {
+            loadStreaming(command, unpack, null);
+        }
+    }
+
+    /**
+     * Returns the target the entry was loaded into, or null if no service had the entry.
+     */
+    @Nullable
+    private <T> UnpackingLoadTarget loadStreaming(BuildCacheLoadCommand<T> command, Unpack<T> unpack, @Nullable File copy) {
+        if (legacyLocal.canLoad()) {
+            UnpackingLoadTarget loadTarget = new UnpackingLoadTarget(unpack, copy);
+            legacyLocal.load(command.getKey(), loadTarget);
+            loadTarget.rethrowFailure(command.getKey(), BuildCacheServiceRole.LOCAL);
+            if (loadTarget.isLoaded()) {
+                return loadTarget;
+            }
+        }
+
+        if (remote.canLoad()) {
+            UnpackingLoadTarget loadTarget = new UnpackingLoadTarget(unpack, copy);
+            remote.load(command.getKey(), loadTarget);
+            loadTarget.rethrowFailure(command.getKey(), BuildCacheServiceRole.REMOTE);
+            if (loadTarget.isLoaded()) {
+                return loadTarget;
+            }
+        }
+        return null;
+    }
+
+    private class Unpack<T> implements LocalBuildCacheEntryReader {
         private final BuildCacheLoadCommand<T> command;
 
         private BuildCacheLoadCommand.Result<T> result;
@@ -172,10 +273,28 @@ public class DefaultBuildCacheController implements BuildCacheController {
 
         @Override
         public void execute(final File file) {
+            try (InputStream input = new FileInputStream(file)) {
+                unpack(input, file.length());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void readFrom(InputStream input) {
+            unpack(input, -1);
+        }
+
+        /**
+         * Unpacks the entry from the given stream.
+         *
+         * @param archiveSize the size of the entry, or -1 when the entry is unpacked while it is loaded and the size is not known yet.
+         */
+        void unpack(final InputStream input, final long archiveSize) {
             buildOperationExecutor.run(new RunnableBuildOperation() {
                 @Override
                 public void run(BuildOperationContext context) {
-                    try (InputStream input = new FileInputStream(file)) {
+                    try {
                         result = command.load(input);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
@@ -188,13 +307,183 @@ public class DefaultBuildCacheController implements BuildCacheController {
                 @Override
                 public BuildOperationDescriptor.Builder description() {
                     return BuildOperationDescriptor.displayName("Unpack build cache entry " + command.getKey().getHashCode())
-                        .details(new UnpackOperationDetails(command.getKey(), file.length()))
+                        .details(new UnpackOperationDetails(command.getKey(), archiveSize))
                         .progressDisplayName("Unpacking build cache entry");
                 }
             });
         }
     }
 
+    /**
+     * Unpacks the entry while it is read from the build cache service, optionally copying it to a file at the same time.
+     *
+     * Failures to unpack are not propagated to the build cache service, as that would disable the service.
+     * Instead they are rethrown as an invalid entry by {@link #rethrowFailure(BuildCacheKey, BuildCacheServiceRole)} once the service has finished loading.
+     * Failures to read from the service are propagated, as they would be when loading into a file.
+     * The unpacking they interrupted says nothing about the entry, so it is rethrown as a failure to load instead of as an invalid entry.
+     * In both cases, the outputs which were already unpacked have been removed by the load command.
+     */
+    private static class UnpackingLoadTarget extends LoadTarget {
+        private final Unpack<?> unpack;
+        private final File copy;
+        private boolean loaded;
+        private long loadedSize = -1;
+        private Exception unpackFailure;
+        private Exception readFailure;
+
+        UnpackingLoadTarget(Unpack<?> unpack, @Nullable File copy) {
+            super(copy);
+            this.unpack = unpack;
+            this.copy = copy;
+        }
+
+        @Override
+        public void readFrom(InputStream input) throws IOException {
+            if (loaded) {
+                throw new IllegalStateException("Build cache entry has already been read");
+            }
+            loaded = true;
+            OutputStream copyOutput = null;
+            try {
+                copyOutput = copy == null ? null : new FileOutputStream(copy);
+                SourceInputStream source = new SourceInputStream(input, copyOutput);
+                try {
+                    unpack.unpack(source, -1);
+                } catch (Exception e) {
+                    if (source.failure != null) {
+                        readFailure = e;
+                        throw source.failure;
+                    }
+                    unpackFailure = e;
+                    return;
+                }
+                if (copyOutput != null) {
+                    // Whatever the unpacker did not consume still belongs to the entry
+                    ByteStreams.exhaust(source);
+                }
+                loadedSize = source.count;
+            } finally {
+                IoActions.closeQuietly(input);
+                if (copyOutput != null) {
+                    copyOutput.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isLoaded() {
+            return loaded && unpackFailure == null && readFailure == null;
+        }
+
+        /**
+         * Whether the whole entry was read, and so has been completely copied to the file, if any.
+         */
+        boolean isCopied() {
+            return isLoaded() && loadedSize >= 0;
+        }
+
+        @Override
+        public long getLoadedSize() {
+            return isLoaded() ? loadedSize : -1;
+        }
+
+        void rethrowFailure(BuildCacheKey key, BuildCacheServiceRole role) {
+            if (readFailure != null) {
+                throw new GradleException("Could not load build cache entry " + key.getHashCode() + " from " + role.getDisplayName() + " build cache", readFailure);
+            }
+            if (unpackFailure != null) {
+                throw new GradleException("Build cache entry " + key.getHashCode() + " from " + role.getDisplayName() + " build cache is invalid", unpackFailure);
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read from the build cache service, copies them to the given output and remembers failures to read.
+     */
+    private static class SourceInputStream extends FilterInputStream {
+        private final OutputStream copy;
+        private long count;
+        private IOException failure;
+
+        SourceInputStream(InputStream in, @Nullable OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read;
+            try {
+                read = in.read();
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (read != -1) {
+                count++;
+                if (copy != null) {
+                    copy.write(read);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read;
+            try {
+                read = in.read(b, off, len);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            if (read > 0) {
+                count += read;
+                if (copy != null) {
+                    copy.write(b, off, read);
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read the skipped bytes so they are counted and copied
+            if (n <= 0) {
+                return 0;
+            }
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // Closed by the load target once the whole entry has been read
+        }
+    }
+
+    /**
+     * Packs the entry and stores it in the build caches.
+     *
+     * When an executor for stores is available, the packed entry is staged and stored in the background, so that the caller can continue while the entry is uploaded.
+     * The outputs are always packed by the caller, as they may be changed by other work once the caller has continued.
+     * When too many stores are pending, the caller stores the entry itself.
+     * A failure to store the entry in the background is reported by the build operation storing it when it happens, just as for the caller storing it.
+     * Staged entries left behind by a process which stopped before storing them are deleted by the next {@link DefaultBuildCacheTempFileStore}.
+     */
     @Override
     public void store(final BuildCacheStoreCommand command) {
         boolean anyStore = local.canStore() || legacyLocal.canStore() || remote.canStore();
@@ -210,21 +499,56 @@ public class DefaultBuildCacheController implements BuildCacheController {
             public void execute(File file) {
                 pack.execute(file);
 
-                if (legacyLocal.canStore()) {
-                    legacyLocal.store(key, new StoreTarget(file));
-                }
-
-                if (remote.canStore()) {
-                    remote.store(key, new StoreTarget(file));
+                if (storeExecutor != null && pendingStores.tryAcquire()) {
+                    File staged = new File(file.getPath() + BuildCacheTempFileStore.STAGED_FILE_SUFFIX);
+                    if (file.renameTo(staged)) {
+                        storeInBackground(key, staged);
+                        return;
+                    }
+                    pendingStores.release();
                 }
 
-                if (local.canStore()) {
-                    local.store(key, file);
-                }
+                storePacked(key, file);
             }
         });
     }
 
+    private void storeInBackground(final BuildCacheKey key, final File staged) {
+        try {
+            storeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        storePacked(key, staged);
+                    } catch (Exception e) {
+                        LOGGER.warn("Could not store entry {} in the build cache: {}", key.getDisplayName(), e.getMessage());
+                    } finally {
+                        GFileUtils.deleteQuietly(staged);
+                        pendingStores.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            GFileUtils.deleteQuietly(staged);
+            pendingStores.release();
+            throw e;
+        }
+    }
+
+    private void storePacked(BuildCacheKey key, File file) {
+        if (legacyLocal.canStore()) {
+            legacyLocal.store(key, new StoreTarget(file));
+        }
+
+        if (remote.canStore()) {
+            remote.store(key, new StoreTarget(file));
+        }
+
+        if (local.canStore()) {
+            local.store(key, file);
+        }
+    }
+
     private class Pack implements Action<File> {
 
         private final BuildCacheStoreCommand command;
@@ -263,6 +587,10 @@ public class DefaultBuildCacheController implements BuildCacheController {
     public void close() {
         if (!closed) {
             closed = true;
+            if (storeExecutor != null) {
+                // Wait for the pending stores before the services are closed
+                storeExecutor.stop();
+            }
             CompositeStoppable.stoppable(legacyLocal, local, remote).stop();
         }
     }
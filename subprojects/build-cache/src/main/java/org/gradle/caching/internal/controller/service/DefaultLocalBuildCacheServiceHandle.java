@@ -16,8 +16,8 @@
 
 package org.gradle.caching.internal.controller.service;
 
-import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.LocalBuildCacheEntryReader;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 
 import javax.annotation.Nullable;
@@ -45,7 +45,7 @@ public class DefaultLocalBuildCacheServiceHandle implements LocalBuildCacheServi
     }
 
     @Override
-    public void load(BuildCacheKey key, Action<? super File> reader) {
+    public void load(BuildCacheKey key, LocalBuildCacheEntryReader reader) {
         service.loadLocally(key, reader);
     }
 
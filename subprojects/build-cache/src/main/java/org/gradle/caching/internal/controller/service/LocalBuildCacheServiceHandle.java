@@ -17,8 +17,8 @@
 package org.gradle.caching.internal.controller.service;
 
 import com.google.common.annotations.VisibleForTesting;
-import org.gradle.api.Action;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.local.internal.LocalBuildCacheEntryReader;
 import org.gradle.caching.local.internal.LocalBuildCacheService;
 
 import javax.annotation.Nullable;
@@ -34,7 +34,7 @@ public interface LocalBuildCacheServiceHandle extends Closeable {
     boolean canLoad();
 
     // TODO: what if this errors?
-    void load(BuildCacheKey key, Action<? super File> reader);
+    void load(BuildCacheKey key, LocalBuildCacheEntryReader reader);
 
     boolean canStore();
 
@@ -16,6 +16,7 @@
 
 package org.gradle.caching.local;
 
+import org.gradle.api.Incubating;
 import org.gradle.caching.configuration.AbstractBuildCache;
 
 import javax.annotation.Nullable;
@@ -29,6 +30,7 @@ import javax.annotation.Nullable;
 public class DirectoryBuildCache extends AbstractBuildCache {
     private Object directory;
     private int removeUnusedEntriesAfterDays = 7;
+    private int maximumSizeInMB;
 
     /**
      * Returns the directory to use to store the build cache.
@@ -69,4 +71,29 @@ public class DirectoryBuildCache extends AbstractBuildCache {
         }
         this.removeUnusedEntriesAfterDays = removeUnusedEntriesAfterDays;
     }
+
+    /**
+     * Returns the maximum size of the cache in megabytes, or 0 when the size of the cache is not limited. Defaults to 0.
+     *
+     * <p>When the cache grows beyond its maximum size, the least recently used entries are removed in the background.</p>
+     *
+     * @since 5.1
+     */
+    @Incubating
+    public int getMaximumSizeInMB() {
+        return maximumSizeInMB;
+    }
+
+    /**
+     * Sets the maximum size of the cache in megabytes. Use 0 to not limit the size of the cache.
+     *
+     * @since 5.1
+     */
+    @Incubating
+    public void setMaximumSizeInMB(int maximumSizeInMB) {
+        if (maximumSizeInMB < 0) {
+            throw new IllegalArgumentException("Directory build cache maximum size cannot be negative.");
+        }
+        this.maximumSizeInMB = maximumSizeInMB;
+    }
 }
@@ -25,6 +25,11 @@ public interface BuildCacheTempFileStore {
 
     String PARTIAL_FILE_SUFFIX = ".part";
 
+    /**
+     * The suffix of temp files holding packed entries which are still to be stored in the background.
+     */
+    String STAGED_FILE_SUFFIX = ".staged";
+
     /**
      * Run the given action with a temp file allocated based on the given cache key.
      * The temp file will be deleted once the action is completed.
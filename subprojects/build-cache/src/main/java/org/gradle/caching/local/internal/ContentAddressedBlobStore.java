@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.hash.Hashing;
+import org.gradle.internal.hash.HashingOutputStream;
+import org.gradle.util.GFileUtils;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Stores file contents in a directory, keyed by the hash of the content, so that each distinct content is only stored once.
+ *
+ * <p>Blobs are written to a temporary file and then renamed into place, so a blob is either complete or missing, and several processes can add the same blob concurrently.</p>
+ */
+public class ContentAddressedBlobStore {
+    public static final String BLOBS_DIR_NAME = "blobs";
+    private static final String PARTIAL_BLOB_SUFFIX = ".part";
+    // Smaller contents are hashed in memory, so that known contents are not written to disk at all
+    private static final int IN_MEMORY_LIMIT = 1024 * 1024;
+
+    private final File blobsDir;
+
+    public ContentAddressedBlobStore(File cacheDir) {
+        this.blobsDir = new File(cacheDir, BLOBS_DIR_NAME);
+    }
+
+    public File getBaseDir() {
+        return blobsDir;
+    }
+
+    /**
+     * Adds the next {@code size} bytes of the given input to the store, unless the store already contains the same content, and returns the hash of the content.
+     */
+    public HashCode add(InputStream content, long size) throws IOException {
+        if (size <= IN_MEMORY_LIMIT) {
+            byte[] bytes = new byte[(int) size];
+            ByteStreams.readFully(content, bytes);
+            HashCode hash = Hashing.hashBytes(bytes);
+            File blob = getBlobFile(hash);
+            if (!blob.isFile()) {
+                File tempFile = createTempFile();
+                try {
+                    Files.write(bytes, tempFile);
+                    moveIntoPlace(tempFile, blob);
+                } finally {
+                    GFileUtils.deleteQuietly(tempFile);
+                }
+            }
+            return hash;
+        }
+
+        File tempFile = createTempFile();
+        try {
+            HashingOutputStream output = Hashing.primitiveStreamHasher(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                long copied = ByteStreams.copy(ByteStreams.limit(content, size), output);
+                if (copied != size) {
+                    throw new IOException(String.format("Expected %d bytes of content, but got %d.", size, copied));
+                }
+            } finally {
+                output.close();
+            }
+            HashCode hash = output.hash();
+            File blob = getBlobFile(hash);
+            if (!blob.isFile()) {
+                moveIntoPlace(tempFile, blob);
+            }
+            return hash;
+        } finally {
+            GFileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Returns the file containing the content with the given hash, or {@code null} when the store does not contain it.
+     */
+    @Nullable
+    public File get(HashCode hash) {
+        File blob = getBlobFile(hash);
+        return blob.isFile() ? blob : null;
+    }
+
+    /**
+     * Deletes the blobs whose hash is not in the given set, and returns the number of deleted blobs.
+     */
+    public int retainAll(Set<HashCode> hashes) {
+        int deleted = 0;
+        File[] shards = blobsDir.listFiles();
+        if (shards == null) {
+            return deleted;
+        }
+        for (File shard : shards) {
+            // Partial blobs are written directly to the blobs directory
+            File[] blobs = shard.isDirectory() ? shard.listFiles() : null;
+            if (blobs == null) {
+                continue;
+            }
+            for (File blob : blobs) {
+                if (!hashes.contains(parseHash(blob)) && blob.delete()) {
+                    deleted++;
+                }
+            }
+            // Only succeeds when the shard is empty
+            //noinspection ResultOfMethodCallIgnored
+            shard.delete();
+        }
+        return deleted;
+    }
+
+    @Nullable
+    private static HashCode parseHash(File blob) {
+        try {
+            return HashCode.fromString(blob.getName());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private File getBlobFile(HashCode hash) {
+        String name = hash.toString();
+        return new File(new File(blobsDir, name.substring(0, 2)), name);
+    }
+
+    private File createTempFile() throws IOException {
+        GFileUtils.mkdirs(blobsDir);
+        return File.createTempFile("blob-", PARTIAL_BLOB_SUFFIX, blobsDir);
+    }
+
+    private static void moveIntoPlace(File tempFile, File blob) throws IOException {
+        GFileUtils.mkdirs(blob.getParentFile());
+        // Another process may have added the same content in the meantime
+        if (!tempFile.renameTo(blob) && !blob.isFile()) {
+            throw new IOException(String.format("Could not move %s to %s.", tempFile, blob));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.hash.HashCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The content-addressed layout of a directory build cache, where entries are stored as manifests which reference the files of the entry in a {@link ContentAddressedBlobStore}.
+ *
+ * <p>Entries stored as manifests and entries stored as a whole can both be loaded, so that the layout can be switched on and off for an existing cache.</p>
+ */
+public class ContentAddressedEntryStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentAddressedEntryStore.class);
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]+");
+    private static final FileFilter ENTRY_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return ENTRY_NAME.matcher(file.getName()).matches() && file.isFile();
+        }
+    };
+
+    private final File cacheDir;
+    private final DeduplicatingEntryFormat format;
+    private final ContentAddressedBlobStore blobStore;
+    private final boolean storeManifests;
+
+    /**
+     * Creates a store for the given cache directory. New entries are only split into manifests and blobs when {@code storeManifests} is {@code true}.
+     */
+    public ContentAddressedEntryStore(File cacheDir, DeduplicatingEntryFormat format, boolean storeManifests) {
+        this.cacheDir = cacheDir;
+        this.format = format;
+        this.blobStore = new ContentAddressedBlobStore(cacheDir);
+        this.storeManifests = storeManifests;
+    }
+
+    public boolean isStoringManifests() {
+        return storeManifests;
+    }
+
+    public boolean isManifest(File file) {
+        try {
+            return format.isManifest(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds the files of the given entry to the blob store and writes the manifest of the entry.
+     */
+    public void writeManifest(File entry, File manifest) {
+        try {
+            format.split(entry, blobStore, manifest);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens a stream of the entry described by the given manifest. The blobs of the entry must not be deleted while the stream is read.
+     */
+    public InputStream openEntry(File manifest) {
+        try {
+            return format.open(manifest, blobStore);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the blobs which are not referenced by any manifest in the cache directory. Must not run concurrently with stores to the cache, nor while entries are read.
+     */
+    public void deleteUnreferencedBlobs() {
+        if (!blobStore.getBaseDir().isDirectory()) {
+            return;
+        }
+        File[] files = cacheDir.listFiles(ENTRY_FILTER);
+        if (files == null) {
+            return;
+        }
+        Set<HashCode> referenced = new HashSet<HashCode>();
+        for (File file : files) {
+            try {
+                if (format.isManifest(file)) {
+                    format.collectBlobs(file, referenced);
+                }
+            } catch (IOException e) {
+                // Deleting blobs which may still be referenced would break the entry
+                LOGGER.debug("Could not read build cache entry {}. Not deleting unreferenced blobs.", file, e);
+                return;
+            }
+        }
+        int deleted = blobStore.retainAll(referenced);
+        LOGGER.debug("Deleted {} unreferenced blobs from build cache in {}.", deleted, cacheDir);
+    }
+}
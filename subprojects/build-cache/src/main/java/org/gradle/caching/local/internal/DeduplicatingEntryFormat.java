@@ -0,0 +1,48 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import org.gradle.internal.hash.HashCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+/**
+ * Splits build cache entries into a manifest and the files contained in the entry, which are kept in a {@link ContentAddressedBlobStore}, so that files shared by several entries are only stored once.
+ */
+public interface DeduplicatingEntryFormat {
+    /**
+     * Returns whether the given file is a manifest written by this format.
+     */
+    boolean isManifest(File file) throws IOException;
+
+    /**
+     * Adds the files contained in the given entry to the blob store, and writes the manifest of the entry to the given file.
+     */
+    void split(File entry, ContentAddressedBlobStore blobStore, File manifest) throws IOException;
+
+    /**
+     * Opens a stream of the entry described by the given manifest, which reads the blobs from the blob store while the entry is read.
+     */
+    InputStream open(File manifest, ContentAddressedBlobStore blobStore) throws IOException;
+
+    /**
+     * Adds the hashes of the blobs referenced by the given manifest to the given set.
+     */
+    void collectBlobs(File manifest, Set<HashCode> blobs) throws IOException;
+}
@@ -22,15 +22,38 @@ import org.gradle.caching.BuildCacheKey;
 import org.gradle.util.GFileUtils;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultBuildCacheTempFileStore implements BuildCacheTempFileStore {
 
+    /**
+     * Staged entries younger than this may still be stored by another process sharing the directory.
+     */
+    private static final long STALE_STAGED_FILE_AGE = TimeUnit.DAYS.toMillis(1);
+
     private final File dir;
 
     public DefaultBuildCacheTempFileStore(File dir) {
         this.dir = dir;
         GFileUtils.mkdirs(this.dir);
+        deleteStaleStagedFiles();
+    }
+
+    private void deleteStaleStagedFiles() {
+        final long staleBefore = System.currentTimeMillis() - STALE_STAGED_FILE_AGE;
+        File[] staleFiles = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(STAGED_FILE_SUFFIX) && file.lastModified() < staleBefore;
+            }
+        });
+        if (staleFiles != null) {
+            for (File staleFile : staleFiles) {
+                GFileUtils.deleteQuietly(staleFile);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Maps;
+import org.gradle.internal.resource.local.FileAccessTimeJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the size and the last access time of each entry of a directory build cache in memory, ordered from the least to the most recently used entry.
+ *
+ * <p>Recording an access only updates the index, so a cache hit does not need to touch the file system. The index is persisted to a file in the cache directory,
+ * and is reconciled with the entries in the directory when loaded, so that entries added or removed by other processes, or after the index was last persisted, are accounted for.
+ * Before it is persisted, it is merged with the index persisted by other processes, keeping the later access time of each entry.</p>
+ */
+public class DirectoryBuildCacheAccessIndex implements FileAccessTimeJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheAccessIndex.class);
+    public static final String INDEX_FILE_NAME = "access-index.bin";
+    private static final int INDEX_FORMAT_VERSION = 1;
+    // Evict down to this proportion of the maximum size, so that eviction does not run after every store
+    private static final double EVICTION_TARGET_RATIO = 0.9;
+    private static final Pattern ENTRY_NAME = Pattern.compile("[0-9a-f]+");
+    private static final FileFilter ENTRY_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return ENTRY_NAME.matcher(file.getName()).matches() && file.isFile();
+        }
+    };
+
+    private final File cacheDir;
+    private final File indexFile;
+    private final long maximumSize;
+    // From the least to the most recently used entry
+    private final LinkedHashMap<String, EntryInfo> entries = new LinkedHashMap<String, EntryInfo>();
+    private long totalSize;
+
+    public DirectoryBuildCacheAccessIndex(File cacheDir, long maximumSize) {
+        this.cacheDir = cacheDir;
+        this.indexFile = new File(cacheDir, INDEX_FILE_NAME);
+        this.maximumSize = maximumSize;
+        load();
+    }
+
+    @Override
+    public synchronized void setLastAccessTime(File file, long millis) {
+        String name = file.getName();
+        EntryInfo entry = entries.remove(name);
+        if (entry == null) {
+            entry = new EntryInfo(file.length(), millis);
+            totalSize += entry.size;
+        } else {
+            entry.lastAccessTime = millis;
+        }
+        entries.put(name, entry);
+    }
+
+    @Override
+    public synchronized long getLastAccessTime(File file) {
+        EntryInfo entry = entries.get(file.getName());
+        return entry == null ? file.lastModified() : entry.lastAccessTime;
+    }
+
+    @Override
+    public synchronized void deleteLastAccessTime(File file) {
+        EntryInfo entry = entries.remove(file.getName());
+        if (entry != null) {
+            totalSize -= entry.size;
+        }
+    }
+
+    public synchronized long getTotalSize() {
+        return totalSize;
+    }
+
+    public synchronized boolean isOverMaximumSize() {
+        return totalSize > maximumSize;
+    }
+
+    /**
+     * Returns the least recently used entries which need to be removed to bring the cache well below its maximum size.
+     */
+    public synchronized List<File> selectEntriesToEvict() {
+        List<File> evicted = new ArrayList<File>();
+        if (totalSize <= maximumSize) {
+            return evicted;
+        }
+        long targetSize = (long) (maximumSize * EVICTION_TARGET_RATIO);
+        long remainingSize = totalSize;
+        Iterator<Map.Entry<String, EntryInfo>> iterator = entries.entrySet().iterator();
+        while (remainingSize > targetSize && iterator.hasNext()) {
+            Map.Entry<String, EntryInfo> entry = iterator.next();
+            evicted.add(new File(cacheDir, entry.getKey()));
+            remainingSize -= entry.getValue().size;
+        }
+        return evicted;
+    }
+
+    /**
+     * Merges the index with the previously persisted index and writes the result to the cache directory. Needs to be called while holding the lock of the cache directory.
+     */
+    public synchronized void persist() {
+        mergePersistedIndex();
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(INDEX_FILE_NAME, ".tmp", cacheDir);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                output.writeInt(INDEX_FORMAT_VERSION);
+                output.writeInt(entries.size());
+                for (Map.Entry<String, EntryInfo> entry : entries.entrySet()) {
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(entry.getValue().size);
+                    output.writeLong(entry.getValue().lastAccessTime);
+                }
+            } finally {
+                output.close();
+            }
+            if (!tempFile.renameTo(indexFile) && !(indexFile.delete() && tempFile.renameTo(indexFile))) {
+                throw new IOException(String.format("Could not replace %s.", indexFile));
+            }
+        } catch (IOException e) {
+            // The index is rebuilt from the cache directory when it cannot be read
+            LOGGER.warn("Could not persist the access index of the build cache in {}.", cacheDir, e);
+            if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                LOGGER.debug("Could not delete {}.", tempFile);
+            }
+        }
+    }
+
+    /**
+     * Takes the accesses recorded by other processes since this index was loaded into account, so that persisting this index does not discard them.
+     * Entries which are only in the persisted index are added when they are still in the cache directory.
+     */
+    private void mergePersistedIndex() {
+        Map<String, EntryInfo> persisted = readIndexFile();
+        boolean changed = false;
+        for (Map.Entry<String, EntryInfo> persistedEntry : persisted.entrySet()) {
+            String name = persistedEntry.getKey();
+            EntryInfo persistedInfo = persistedEntry.getValue();
+            EntryInfo entry = entries.get(name);
+            if (entry == null) {
+                File file = new File(cacheDir, name);
+                if (file.isFile() && file.length() == persistedInfo.size) {
+                    entries.put(name, persistedInfo);
+                    totalSize += persistedInfo.size;
+                    changed = true;
+                }
+            } else if (persistedInfo.lastAccessTime > entry.lastAccessTime) {
+                entry.lastAccessTime = persistedInfo.lastAccessTime;
+                changed = true;
+            }
+        }
+        if (changed) {
+            List<Map.Entry<String, EntryInfo>> merged = new ArrayList<Map.Entry<String, EntryInfo>>(entries.entrySet().size());
+            for (Map.Entry<String, EntryInfo> entry : entries.entrySet()) {
+                merged.add(Maps.immutableEntry(entry.getKey(), entry.getValue()));
+            }
+            entries.clear();
+            totalSize = 0;
+            addInAccessOrder(merged);
+        }
+    }
+
+    private void load() {
+        Map<String, EntryInfo> persisted = readIndexFile();
+        List<Map.Entry<String, EntryInfo>> found = new ArrayList<Map.Entry<String, EntryInfo>>();
+        File[] files = cacheDir.listFiles(ENTRY_FILTER);
+        if (files != null) {
+            for (File file : files) {
+                EntryInfo entry = persisted.get(file.getName());
+                if (entry == null || entry.size != file.length()) {
+                    entry = new EntryInfo(file.length(), file.lastModified());
+                }
+                found.add(Maps.immutableEntry(file.getName(), entry));
+            }
+        }
+        addInAccessOrder(found);
+    }
+
+    private void addInAccessOrder(List<Map.Entry<String, EntryInfo>> accessedEntries) {
+        Collections.sort(accessedEntries, new Comparator<Map.Entry<String, EntryInfo>>() {
+            @Override
+            public int compare(Map.Entry<String, EntryInfo> left, Map.Entry<String, EntryInfo> right) {
+                long leftTime = left.getValue().lastAccessTime;
+                long rightTime = right.getValue().lastAccessTime;
+                return leftTime < rightTime ? -1 : leftTime == rightTime ? 0 : 1;
+            }
+        });
+        for (Map.Entry<String, EntryInfo> entry : accessedEntries) {
+            entries.put(entry.getKey(), entry.getValue());
+            totalSize += entry.getValue().size;
+        }
+    }
+
+    private Map<String, EntryInfo> readIndexFile() {
+        Map<String, EntryInfo> persisted = new HashMap<String, EntryInfo>();
+        if (!indexFile.isFile()) {
+            return persisted;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (input.readInt() != INDEX_FORMAT_VERSION) {
+                    return persisted;
+                }
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = input.readUTF();
+                    long size = input.readLong();
+                    long lastAccessTime = input.readLong();
+                    persisted.put(name, new EntryInfo(size, lastAccessTime));
+                }
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read the access index of the build cache in {}. Rebuilding it from the cache entries.", cacheDir, e);
+            persisted.clear();
+        }
+        return persisted;
+    }
+
+    private static class EntryInfo {
+        final long size;
+        long lastAccessTime;
+
+        EntryInfo(long size, long lastAccessTime) {
+            this.size = size;
+            this.lastAccessTime = lastAccessTime;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package org.gradle.caching.local.internal;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Closer;
 import org.gradle.api.Action;
 import org.gradle.api.UncheckedIOException;
@@ -26,20 +27,28 @@ import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.resource.local.FileAccessTracker;
 import org.gradle.internal.resource.local.LocallyAvailableResource;
 import org.gradle.internal.resource.local.PathKeyFileStore;
 import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DirectoryBuildCacheService implements LocalBuildCacheService, BuildCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryBuildCacheService.class);
+    private static final String MANIFEST_SUFFIX = ".manifest";
 
     private final PathKeyFileStore fileStore;
     private final PersistentCache persistentCache;
@@ -47,16 +56,40 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
     private final FileAccessTracker fileAccessTracker;
     private final String failedFileSuffix;
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final DirectoryBuildCacheAccessIndex accessIndex;
+    private final ManagedExecutor evictionExecutor;
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private final ContentAddressedEntryStore entryStore;
 
     public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, null, null);
+    }
+
+    /**
+     * Creates a service whose size is bounded by the given access index, which needs to be used by the file access tracker. The least recently used entries are evicted on the given executor.
+     */
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix,
+                                      @Nullable DirectoryBuildCacheAccessIndex accessIndex, @Nullable ManagedExecutor evictionExecutor) {
+        this(fileStore, persistentCache, tempFileStore, fileAccessTracker, failedFileSuffix, accessIndex, evictionExecutor, null);
+    }
+
+    /**
+     * Creates a service which can load entries stored as manifests by the given entry store, and which stores new entries as manifests when the entry store is configured to do so.
+     */
+    public DirectoryBuildCacheService(PathKeyFileStore fileStore, PersistentCache persistentCache, BuildCacheTempFileStore tempFileStore, FileAccessTracker fileAccessTracker, String failedFileSuffix,
+                                      @Nullable DirectoryBuildCacheAccessIndex accessIndex, @Nullable ManagedExecutor evictionExecutor, @Nullable ContentAddressedEntryStore entryStore) {
         this.fileStore = fileStore;
         this.persistentCache = persistentCache;
         this.tempFileStore = tempFileStore;
         this.fileAccessTracker = fileAccessTracker;
         this.failedFileSuffix = failedFileSuffix;
+        this.accessIndex = accessIndex;
+        this.evictionExecutor = evictionExecutor;
+        this.entryStore = entryStore;
+        maybeScheduleEviction();
     }
 
-    private static class LoadAction implements Action<File> {
+    private static class LoadAction implements LocalBuildCacheEntryReader {
         private final BuildCacheEntryReader reader;
         boolean loaded;
 
@@ -70,8 +103,7 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
                 Closer closer = Closer.create();
                 FileInputStream stream = closer.register(new FileInputStream(file));
                 try {
-                    reader.readFrom(stream);
-                    loaded = true;
+                    readFrom(stream);
                 } finally {
                     closer.close();
                 }
@@ -79,6 +111,12 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
                 throw new UncheckedIOException(ex);
             }
         }
+
+        @Override
+        public void readFrom(InputStream input) throws IOException {
+            reader.readFrom(input);
+            loaded = true;
+        }
     }
 
     @Override
@@ -90,6 +128,39 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
 
     @Override
     public void loadLocally(final BuildCacheKey key, final Action<? super File> reader) {
+        loadLocally(key, new LocalBuildCacheEntryReader() {
+            @Override
+            public void execute(@Nonnull File file) {
+                reader.execute(file);
+            }
+
+            @Override
+            public void readFrom(final InputStream input) {
+                // The reader needs a file, so the entry is written to a temporary file first
+                tempFileStore.withTempFile(key, new Action<File>() {
+                    @Override
+                    public void execute(@Nonnull File file) {
+                        try {
+                            Closer closer = Closer.create();
+                            try {
+                                ByteStreams.copy(input, closer.register(new FileOutputStream(file)));
+                            } catch (Exception e) {
+                                throw closer.rethrow(e);
+                            } finally {
+                                closer.close();
+                            }
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                        reader.execute(file);
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void loadLocally(final BuildCacheKey key, final LocalBuildCacheEntryReader reader) {
         // We need to lock other processes out here because garbage collection can be under way in another process
         persistentCache.withFileLock(new Runnable() {
             @Override
@@ -104,17 +175,29 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
         });
     }
 
-    private void loadInsideLock(BuildCacheKey key, Action<? super File> reader) {
+    private void loadInsideLock(BuildCacheKey key, LocalBuildCacheEntryReader reader) {
         LocallyAvailableResource resource = fileStore.get(key.getHashCode());
         if (resource == null) {
             return;
         }
 
-        File file = resource.getFile();
+        final File file = resource.getFile();
         fileAccessTracker.markAccessed(file);
 
         try {
-            reader.execute(file);
+            if (entryStore != null && entryStore.isManifest(file)) {
+                // The blobs are streamed to the reader, and cannot be deleted while the lock is held
+                Closer closer = Closer.create();
+                try {
+                    reader.readFrom(closer.register(entryStore.openEntry(file)));
+                } catch (Exception e) {
+                    throw closer.rethrow(e);
+                } finally {
+                    closer.close();
+                }
+            } else {
+                reader.execute(file);
+            }
         } catch (Exception e) {
             // Try to move the file out of the way in case its permanently corrupt
             // Don't delete, so that it can be potentially used for debugging
@@ -156,18 +239,84 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
             @Override
             public void run() {
                 lock.writeLock().lock();
+                File manifest = null;
                 try {
-                    storeInsideLock(key, file);
+                    manifest = entryStore != null && entryStore.isStoringManifests() ? writeManifest(file) : null;
+                    storeInsideLock(key, manifest != null ? manifest : file);
                 } finally {
                     lock.writeLock().unlock();
+                    if (manifest != null) {
+                        GFileUtils.deleteQuietly(manifest);
+                    }
                 }
             }
         });
     }
 
+    /**
+     * Splits the given entry into blobs and a manifest. Must be called while holding the write lock, as evicting entries deletes the blobs which are not referenced by a manifest yet.
+     */
+    @Nullable
+    private File writeManifest(File file) {
+        File manifest = new File(file.getPath() + MANIFEST_SUFFIX);
+        try {
+            entryStore.writeManifest(file, manifest);
+            return manifest;
+        } catch (RuntimeException e) {
+            // Entries which cannot be split are stored as a whole
+            LOGGER.debug("Could not split build cache entry {} into blobs.", file, e);
+            GFileUtils.deleteQuietly(manifest);
+            return null;
+        }
+    }
+
     private void storeInsideLock(BuildCacheKey key, File file) {
         LocallyAvailableResource resource = fileStore.move(key.getHashCode(), file);
         fileAccessTracker.markAccessed(resource.getFile());
+        maybeScheduleEviction();
+    }
+
+    private void maybeScheduleEviction() {
+        if (accessIndex != null && accessIndex.isOverMaximumSize() && evictionScheduled.compareAndSet(false, true)) {
+            try {
+                evictionExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            evict();
+                        } finally {
+                            evictionScheduled.set(false);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                evictionScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void evict() {
+        // Other processes may be loading the entries
+        persistentCache.withFileLock(new Runnable() {
+            @Override
+            public void run() {
+                lock.writeLock().lock();
+                try {
+                    for (File file : accessIndex.selectEntriesToEvict()) {
+                        if (!file.exists() || file.delete()) {
+                            accessIndex.deleteLastAccessTime(file);
+                        }
+                    }
+                    if (entryStore != null) {
+                        entryStore.deleteUnreferencedBlobs();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                accessIndex.persist();
+            }
+        });
     }
 
     @Override
@@ -182,6 +331,17 @@ public class DirectoryBuildCacheService implements LocalBuildCacheService, Build
 
     @Override
     public void close() {
+        if (evictionExecutor != null) {
+            evictionExecutor.stop();
+        }
+        if (accessIndex != null) {
+            persistentCache.withFileLock(new Runnable() {
+                @Override
+                public void run() {
+                    accessIndex.persist();
+                }
+            });
+        }
         persistentCache.close();
     }
 }
@@ -19,15 +19,22 @@ package org.gradle.caching.local.internal;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
+import org.gradle.cache.CleanableStore;
+import org.gradle.cache.CleanupAction;
+import org.gradle.cache.CleanupProgressMonitor;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CleanupActionFactory;
+import org.gradle.cache.internal.CompositeCleanupAction;
+import org.gradle.cache.internal.FilesFinder;
 import org.gradle.cache.internal.LeastRecentlyUsedCacheCleanup;
 import org.gradle.cache.internal.SingleDepthFilesFinder;
 import org.gradle.cache.internal.VersionStrategy;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.local.DirectoryBuildCache;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
 import org.gradle.internal.file.PathToFileResolver;
 import org.gradle.internal.resource.local.FileAccessTimeJournal;
 import org.gradle.internal.resource.local.FileAccessTracker;
@@ -36,12 +43,17 @@ import org.gradle.internal.resource.local.SingleDepthFileAccessTracker;
 
 import javax.inject.Inject;
 import java.io.File;
+import java.io.FileFilter;
 
 import static org.gradle.cache.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     public static final String FAILED_READ_SUFFIX = ".failed";
+    /**
+     * Stores new entries as manifests referencing a content-addressed blob store, so that files shared by several entries are only stored once.
+     */
+    public static final String DEDUPLICATE_PROPERTY = "org.gradle.caching.local.deduplicate";
 
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
@@ -54,16 +66,21 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
     private final DirectoryBuildCacheFileStoreFactory fileStoreFactory;
     private final CleanupActionFactory cleanupActionFactory;
     private final FileAccessTimeJournal fileAccessTimeJournal;
+    private final ExecutorFactory executorFactory;
+    private final DeduplicatingEntryFormat deduplicatingEntryFormat;
 
     @Inject
     public DirectoryBuildCacheServiceFactory(CacheRepository cacheRepository, CacheScopeMapping cacheScopeMapping, PathToFileResolver resolver, DirectoryBuildCacheFileStoreFactory fileStoreFactory,
-                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal) {
+                                             CleanupActionFactory cleanupActionFactory, FileAccessTimeJournal fileAccessTimeJournal, ExecutorFactory executorFactory,
+                                             DeduplicatingEntryFormat deduplicatingEntryFormat) {
         this.cacheRepository = cacheRepository;
         this.cacheScopeMapping = cacheScopeMapping;
         this.resolver = resolver;
         this.fileStoreFactory = fileStoreFactory;
         this.cleanupActionFactory = cleanupActionFactory;
         this.fileAccessTimeJournal = fileAccessTimeJournal;
+        this.executorFactory = executorFactory;
+        this.deduplicatingEntryFormat = deduplicatingEntryFormat;
     }
 
     @Override
@@ -78,22 +95,66 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
         checkDirectory(target);
 
         int removeUnusedEntriesAfterDays = configuration.getRemoveUnusedEntriesAfterDays();
+        int maximumSizeInMB = configuration.getMaximumSizeInMB();
         describer.type(DIRECTORY_BUILD_CACHE_TYPE).
             config("location", target.getAbsolutePath()).
             config("removeUnusedEntriesAfter", String.valueOf(removeUnusedEntriesAfterDays) + " days");
 
+        // When the size of the cache is bounded, the access times are tracked by the access index of the cache instead of the journal
+        FileAccessTimeJournal accessTimeJournal = fileAccessTimeJournal;
+        DirectoryBuildCacheAccessIndex accessIndex = null;
+        if (maximumSizeInMB > 0) {
+            describer.config("maximumSize", maximumSizeInMB + " MB");
+            accessIndex = new DirectoryBuildCacheAccessIndex(target, maximumSizeInMB * 1024L * 1024L);
+            accessTimeJournal = accessIndex;
+        }
+
+        // The size of an entry stored as a manifest does not include the blobs it references, so entries are only stored as manifests when the size of the cache is not bounded
+        boolean deduplicate = accessIndex == null && Boolean.getBoolean(DEDUPLICATE_PROPERTY);
+        if (deduplicate) {
+            describer.config("layout", "content-addressed");
+        }
+        final ContentAddressedEntryStore entryStore = new ContentAddressedEntryStore(target, deduplicatingEntryFormat, deduplicate);
+        CleanupAction cleanupAction = CompositeCleanupAction.builder()
+            .add(new LeastRecentlyUsedCacheCleanup(excludingBlobs(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP)), accessTimeJournal, removeUnusedEntriesAfterDays))
+            .add(new CleanupAction() {
+                @Override
+                public void clean(CleanableStore cleanableStore, CleanupProgressMonitor progressMonitor) {
+                    entryStore.deleteUnreferencedBlobs();
+                }
+            })
+            .build();
+
         PathKeyFileStore fileStore = fileStoreFactory.createFileStore(target);
         PersistentCache persistentCache = cacheRepository
             .cache(target)
-            .withCleanup(cleanupActionFactory.create(new LeastRecentlyUsedCacheCleanup(new SingleDepthFilesFinder(FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP), fileAccessTimeJournal, removeUnusedEntriesAfterDays)))
+            .withCleanup(cleanupActionFactory.create(cleanupAction))
             .withDisplayName("Build cache")
             .withLockOptions(mode(None))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
             .open();
         BuildCacheTempFileStore tempFileStore = new DefaultBuildCacheTempFileStore(target);
-        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(fileAccessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        FileAccessTracker fileAccessTracker = new SingleDepthFileAccessTracker(accessTimeJournal, target, FILE_TREE_DEPTH_TO_TRACK_AND_CLEANUP);
+        ManagedExecutor evictionExecutor = accessIndex == null ? null : executorFactory.create("Build cache eviction");
 
-        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX);
+        return new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, FAILED_READ_SUFFIX, accessIndex, evictionExecutor, entryStore);
+    }
+
+    /**
+     * The blobs are not entries of the cache, and are deleted once no entry references them.
+     */
+    private static FilesFinder excludingBlobs(final FilesFinder delegate) {
+        return new FilesFinder() {
+            @Override
+            public Iterable<File> find(File baseDir, final FileFilter filter) {
+                return delegate.find(baseDir, new FileFilter() {
+                    @Override
+                    public boolean accept(File file) {
+                        return !file.getName().equals(ContentAddressedBlobStore.BLOBS_DIR_NAME) && filter.accept(file);
+                    }
+                });
+            }
+        };
     }
 
     private static void checkDirectory(File directory) {
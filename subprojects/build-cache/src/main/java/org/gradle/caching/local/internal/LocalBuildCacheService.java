@@ -34,6 +34,11 @@ public interface LocalBuildCacheService extends BuildCacheTempFileStore, Closeab
      */
     void loadLocally(BuildCacheKey key, Action<? super File> reader);
 
+    /**
+     * Loads a cache artifact from a local file store. If a result is found the {@code reader} is executed, with a stream of the artifact when it is not stored as a single file.
+     */
+    void loadLocally(BuildCacheKey key, LocalBuildCacheEntryReader reader);
+
     /**
      * Store the given file in the local file store as a cache artifact.
      */
@@ -28,7 +28,9 @@ import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration
 import org.gradle.caching.internal.FinalizeBuildCacheConfigurationBuildOperationType
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.caching.local.internal.LocalBuildCacheEntryReader
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.internal.reflect.DirectInstantiator
 import org.gradle.testing.internal.util.Specification
@@ -65,7 +67,8 @@ class BuildCacheControllerFactoryTest extends Specification {
             ONLINE,
             logStacktraces,
             emitDebugLogging,
-            DirectInstantiator.INSTANCE
+            DirectInstantiator.INSTANCE,
+            new DefaultExecutorFactory()
         )
         assert controllerType.isInstance(controller)
         controllerType.cast(controller)
@@ -252,6 +255,11 @@ class BuildCacheControllerFactoryTest extends Specification {
 
         }
 
+        @Override
+        void loadLocally(BuildCacheKey key, LocalBuildCacheEntryReader reader) {
+
+        }
+
         @Override
         boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
             return false
@@ -17,12 +17,14 @@
 package org.gradle.caching.internal.controller
 
 import org.gradle.api.Action
+import org.gradle.api.GradleException
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.controller.service.BuildCacheServicesConfiguration
 import org.gradle.caching.local.internal.LocalBuildCacheService
+import org.gradle.internal.concurrent.ManagedExecutor
 import org.gradle.internal.operations.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.testing.internal.util.Specification
@@ -45,6 +47,8 @@ class DefaultBuildCacheControllerTest extends Specification {
     def remotePush = true
 
     BuildCacheService legacyLocal = null
+    def streamingUnpack = false
+    ManagedExecutor storeExecutor = null
 
     def storeCommand = Stub(BuildCacheStoreCommand) {
         getKey() >> key
@@ -92,7 +96,7 @@ class DefaultBuildCacheControllerTest extends Specification {
             ),
             operations,
             tmpDir.file("dir"),
-            false, false
+            false, false, streamingUnpack, storeExecutor
         )
     }
 
@@ -337,4 +341,189 @@ class DefaultBuildCacheControllerTest extends Specification {
         }
     }
 
+    def "streaming remote load unpacks while reading and stores a copy to local"() {
+        given:
+        streamingUnpack = true
+        String unpacked = null
+        def readingLoadCommand = loadCommand({ InputStream input -> unpacked = new String(input.bytes) })
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        controller.load(readingLoadCommand)
+
+        then:
+        unpacked == "foo"
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file ->
+            assert file.text == "foo"
+        }
+    }
+
+    def "streaming remote load does not use a temporary file if local push is disabled"() {
+        given:
+        streamingUnpack = true
+        localPush = false
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+
+        when:
+        controller.load(loadCommand({ InputStream input -> input.bytes }))
+
+        then:
+        0 * local.withTempFile(_, _)
+        0 * local.storeLocally(key, _)
+    }
+
+    def "streaming remote load does not store a partial copy to local when reading the rest of the entry fails"() {
+        given:
+        streamingUnpack = true
+        def partiallyFailingInput = new InputStream() {
+            boolean first = true
+
+            @Override
+            int read() throws IOException {
+                if (first) {
+                    first = false
+                    return 'f' as char
+                }
+                throw new IOException("connection reset")
+            }
+        }
+        1 * local.loadLocally(key, _) // miss
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(partiallyFailingInput)
+            true
+        }
+
+        when:
+        controller.load(loadCommand({ InputStream input -> input.read() }))
+
+        then:
+        0 * local.storeLocally(key, _)
+    }
+
+    def "streaming load of invalid entry fails without disabling remote"() {
+        given:
+        streamingUnpack = true
+        local = null
+        def failingLoadCommand = loadCommand({ InputStream input -> throw new IOException("invalid") })
+        def controller = getController()
+
+        when:
+        controller.load(failingLoadCommand)
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("foo".bytes))
+            true
+        }
+        def e = thrown(GradleException)
+        e.message == "Build cache entry key from remote build cache is invalid"
+
+        when:
+        controller.load(failingLoadCommand)
+
+        then:
+        1 * remote.load(key, _)
+        noExceptionThrown()
+    }
+
+    def "streaming load disables remote when reading from remote fails"() {
+        given:
+        streamingUnpack = true
+        local = null
+        def controller = getController()
+        def failingInput = new InputStream() {
+            @Override
+            int read() throws IOException {
+                throw new IOException("connection reset")
+            }
+        }
+
+        when:
+        controller.load(loadCommand({ InputStream input -> input.bytes }))
+
+        then:
+        1 * remote.load(key, _) >> { BuildCacheKey key, BuildCacheEntryReader reader ->
+            reader.readFrom(failingInput)
+            true
+        }
+        def e = thrown(GradleException)
+        e.message == "Could not load build cache entry key from remote build cache"
+
+        when:
+        controller.load(loadCommand)
+
+        then:
+        0 * remote.load(key, _)
+    }
+
+    def "stores packed entry in the background"() {
+        given:
+        def pending = []
+        storeExecutor = Stub(ManagedExecutor) {
+            execute(_) >> { Runnable action -> pending << action }
+        }
+        File stored = null
+
+        when:
+        controller.store(storeCommand)
+
+        then:
+        pending.size() == 1
+        0 * remote.store(key, _)
+        0 * local.storeLocally(key, _)
+
+        when:
+        pending.first().run()
+
+        then:
+        1 * remote.store(key, _)
+        1 * local.storeLocally(key, _) >> { BuildCacheKey key, File file ->
+            stored = file
+            assert file.exists()
+        }
+        !stored.exists()
+    }
+
+    def "waits for pending stores before closing services"() {
+        given:
+        storeExecutor = Mock(ManagedExecutor)
+
+        when:
+        controller.close()
+
+        then:
+        1 * storeExecutor.stop()
+
+        then:
+        1 * local.close()
+        1 * remote.close()
+    }
+
+    private BuildCacheLoadCommand loadCommand(Closure unpack) {
+        Stub(BuildCacheLoadCommand) {
+            getKey() >> key
+            load(_) >> { InputStream input ->
+                unpack(input)
+                new BuildCacheLoadCommand.Result() {
+                    @Override
+                    long getArtifactEntryCount() {
+                        return 0
+                    }
+
+                    @Override
+                    Object getMetadata() {
+                        return null
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class DefaultBuildCacheTempFileStoreTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def dir = temporaryFolder.createDir("tmp")
+
+    def "deletes stale staged entries when created"() {
+        given:
+        def stale = dir.file("aa-1.part.staged").createFile()
+        stale.lastModified = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)
+        def recent = dir.file("bb-2.part.staged").createFile()
+        def staleEntry = dir.file("cc").createFile()
+        staleEntry.lastModified = stale.lastModified()
+
+        when:
+        new DefaultBuildCacheTempFileStore(dir)
+
+        then:
+        !stale.exists()
+        recent.exists()
+        staleEntry.exists()
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DirectoryBuildCacheAccessIndexTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+
+    def "selects least recently used entries until the cache is below its maximum size"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 300)
+        ["aa", "bb", "cc", "dd"].each { access(index, entry(it, 100)) }
+        access(index, cacheDir.file("aa"))
+
+        expect:
+        index.totalSize == 400
+        index.overMaximumSize
+        index.selectEntriesToEvict() == [cacheDir.file("bb"), cacheDir.file("cc")]
+    }
+
+    def "does not select entries when the cache is below its maximum size"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 300)
+        access(index, entry("aa", 100))
+
+        expect:
+        !index.overMaximumSize
+        index.selectEntriesToEvict().empty
+    }
+
+    def "keeps access times and order when persisted"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        index.setLastAccessTime(entry("aa", 10), 3000)
+        index.setLastAccessTime(entry("bb", 20), 1000)
+        index.setLastAccessTime(entry("cc", 30), 2000)
+        index.persist()
+
+        when:
+        index = new DirectoryBuildCacheAccessIndex(cacheDir, 5)
+
+        then:
+        index.totalSize == 60
+        index.getLastAccessTime(cacheDir.file("aa")) == 3000
+        index.selectEntriesToEvict() == [cacheDir.file("bb"), cacheDir.file("cc"), cacheDir.file("aa")]
+    }
+
+    def "keeps the later access times persisted by other processes when persisted"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        def other = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        index.setLastAccessTime(entry("aa", 10), 1000)
+        index.setLastAccessTime(entry("bb", 20), 2000)
+        other.setLastAccessTime(cacheDir.file("aa"), 3000)
+        other.setLastAccessTime(cacheDir.file("bb"), 1500)
+        other.setLastAccessTime(entry("cc", 30), 2500)
+        other.setLastAccessTime(entry("dd", 40), 500)
+        other.persist()
+        cacheDir.file("dd").delete()
+
+        when:
+        index.persist()
+        index = new DirectoryBuildCacheAccessIndex(cacheDir, 5)
+
+        then:
+        index.totalSize == 60
+        index.getLastAccessTime(cacheDir.file("aa")) == 3000
+        index.getLastAccessTime(cacheDir.file("bb")) == 2000
+        index.getLastAccessTime(cacheDir.file("cc")) == 2500
+        index.selectEntriesToEvict() == [cacheDir.file("bb"), cacheDir.file("cc"), cacheDir.file("aa")]
+    }
+
+    def "replaces the persisted index without leaving temporary files behind"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        access(index, entry("aa", 10))
+
+        when:
+        index.persist()
+        index.persist()
+
+        then:
+        cacheDir.list() as Set == ["aa", DirectoryBuildCacheAccessIndex.INDEX_FILE_NAME] as Set
+    }
+
+    def "reconciles persisted index with entries in the cache directory"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        access(index, entry("aa", 10))
+        access(index, entry("bb", 20))
+        index.persist()
+        cacheDir.file("bb").delete()
+        def added = entry("cc", 30)
+        added.lastModified = 5000
+        cacheDir.file("1234-abcd.part").text = "ignored"
+
+        when:
+        index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+
+        then:
+        index.totalSize == 40
+        index.getLastAccessTime(added) == added.lastModified()
+    }
+
+    def "removes entries"() {
+        given:
+        def index = new DirectoryBuildCacheAccessIndex(cacheDir, 1000)
+        def file = entry("aa", 10)
+        access(index, file)
+
+        when:
+        index.deleteLastAccessTime(file)
+
+        then:
+        index.totalSize == 0
+    }
+
+    private File entry(String name, int size) {
+        def file = cacheDir.file(name)
+        file.bytes = new byte[size]
+        return file
+    }
+
+    private static void access(DirectoryBuildCacheAccessIndex index, File file) {
+        index.setLastAccessTime(file, System.currentTimeMillis())
+    }
+}
@@ -25,6 +25,8 @@ import org.gradle.cache.internal.CleanupActionFactory
 import org.gradle.cache.internal.VersionStrategy
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.ManagedExecutor
 import org.gradle.internal.resource.local.FileAccessTimeJournal
 import org.gradle.internal.resource.local.PathKeyFileStore
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -42,7 +44,9 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
     def fileStoreFactory = Mock(DirectoryBuildCacheFileStoreFactory)
     def cleanupActionFactory = Mock(CleanupActionFactory)
     def fileAccessTimeJournal = Mock(FileAccessTimeJournal)
-    def factory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal)
+    def executorFactory = Mock(ExecutorFactory)
+    def deduplicatingEntryFormat = Mock(DeduplicatingEntryFormat)
+    def factory = new DirectoryBuildCacheServiceFactory(cacheRepository, cacheScopeMapping, resolver, fileStoreFactory, cleanupActionFactory, fileAccessTimeJournal, executorFactory, deduplicatingEntryFormat)
     def cacheBuilder = Stub(CacheBuilder)
     def config = Mock(DirectoryBuildCache)
     def buildCacheDescriber = new NoopBuildCacheDescriber()
@@ -58,6 +62,7 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         service instanceof DirectoryBuildCacheService
         1 * config.getDirectory() >> null
         1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * config.getMaximumSizeInMB() >> 0
         1 * cacheScopeMapping.getBaseDirectory(null, "build-cache-1", VersionStrategy.SharedCache) >> cacheDir
         1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
         1 * cacheRepository.cache(cacheDir) >> cacheBuilder
@@ -74,6 +79,7 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         service instanceof DirectoryBuildCacheService
         1 * config.getDirectory() >> cacheDir
         1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * config.getMaximumSizeInMB() >> 0
         1 * resolver.resolve(cacheDir) >> cacheDir
         1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
         1 * cacheRepository.cache(cacheDir) >> cacheBuilder
@@ -81,6 +87,24 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         0 * _
     }
 
+    def "can create service with bounded size"() {
+        def cacheDir = temporaryFolder.file("cache-dir")
+
+        when:
+        def service = factory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        service instanceof DirectoryBuildCacheService
+        1 * config.getDirectory() >> cacheDir
+        1 * config.getRemoveUnusedEntriesAfterDays() >> 10
+        1 * config.getMaximumSizeInMB() >> 100
+        1 * resolver.resolve(cacheDir) >> cacheDir
+        1 * fileStoreFactory.createFileStore(cacheDir) >> Mock(PathKeyFileStore)
+        1 * cacheRepository.cache(cacheDir) >> cacheBuilder
+        1 * cleanupActionFactory.create(_) >> Mock(CleanupAction)
+        1 * executorFactory.create("Build cache eviction") >> Mock(ManagedExecutor)
+        0 * _
+    }
+
     private class NoopBuildCacheDescriber implements BuildCacheServiceFactory.Describer {
 
         @Override
@@ -21,7 +21,10 @@ import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheEntryWriter
 import org.gradle.caching.BuildCacheKey
 import org.gradle.internal.resource.local.DefaultPathKeyFileStore
+import org.gradle.internal.concurrent.ManagedExecutor
+import org.gradle.internal.hash.HashCode
 import org.gradle.internal.resource.local.FileAccessTracker
+import org.gradle.internal.resource.local.SingleDepthFileAccessTracker
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.util.UsesNativeServices
@@ -132,4 +135,180 @@ class DirectoryBuildCacheServiceTest extends Specification {
         1 * fileAccessTracker.markAccessed(cachedFile)
         loaded
     }
+
+    def "evicts least recently used entries when the cache grows beyond its maximum size"() {
+        given:
+        def accessIndex = new DirectoryBuildCacheAccessIndex(cacheDir, 250)
+        def evictionExecutor = Mock(ManagedExecutor) {
+            execute(_) >> { Runnable r -> r.run() }
+        }
+        def tracker = new SingleDepthFileAccessTracker(accessIndex, cacheDir, 1)
+        def boundedService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, tracker, ".failed", accessIndex, evictionExecutor)
+
+        when:
+        store(boundedService, "1111", 100)
+        store(boundedService, "2222", 100)
+        boundedService.loadLocally(cacheKey("1111"), {})
+        store(boundedService, "3333", 100)
+
+        then:
+        cacheDir.file("1111").exists()
+        !cacheDir.file("2222").exists()
+        cacheDir.file("3333").exists()
+        accessIndex.totalSize == 200
+        cacheDir.file(DirectoryBuildCacheAccessIndex.INDEX_FILE_NAME).exists()
+    }
+
+    def "persists the access index while holding the file lock before closing the cache"() {
+        given:
+        def accessIndex = new DirectoryBuildCacheAccessIndex(cacheDir, 250)
+        def lockedCache = Mock(PersistentCache)
+        def boundedService = new DirectoryBuildCacheService(fileStore, lockedCache, tempFileStore, fileAccessTracker, ".failed", accessIndex, Mock(ManagedExecutor))
+
+        when:
+        boundedService.close()
+
+        then:
+        1 * lockedCache.withFileLock(_) >> { Runnable r ->
+            r.run()
+            assert cacheDir.file(DirectoryBuildCacheAccessIndex.INDEX_FILE_NAME).exists()
+        }
+
+        then:
+        1 * lockedCache.close()
+    }
+
+    def "stores entries as manifests referencing shared blobs"() {
+        given:
+        def entryStore = new ContentAddressedEntryStore(cacheDir, new SingleBlobEntryFormat(), true)
+        def deduplicatingService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", null, null, entryStore)
+        def entry = temporaryFolder.createFile("entry")
+        entry.text = "content"
+        String loaded = null
+
+        when:
+        deduplicatingService.storeLocally(cacheKey("1111"), entry)
+        deduplicatingService.storeLocally(cacheKey("2222"), entry)
+        deduplicatingService.loadLocally(cacheKey("2222"), { File file -> loaded = file.text })
+
+        then:
+        cacheDir.file("1111").text.startsWith(SingleBlobEntryFormat.PREFIX)
+        cacheDir.file("2222").text.startsWith(SingleBlobEntryFormat.PREFIX)
+        cacheDir.file(ContentAddressedBlobStore.BLOBS_DIR_NAME).allDescendants().size() == 1
+        loaded == "content"
+
+        when:
+        cacheDir.file("1111").delete()
+        entryStore.deleteUnreferencedBlobs()
+
+        then:
+        cacheDir.file(ContentAddressedBlobStore.BLOBS_DIR_NAME).allDescendants().size() == 1
+
+        when:
+        cacheDir.file("2222").delete()
+        entryStore.deleteUnreferencedBlobs()
+
+        then:
+        cacheDir.file(ContentAddressedBlobStore.BLOBS_DIR_NAME).allDescendants().empty
+    }
+
+    def "streams entries stored as manifests to readers"() {
+        given:
+        def entryStore = new ContentAddressedEntryStore(cacheDir, new SingleBlobEntryFormat(), true)
+        def deduplicatingService = new DirectoryBuildCacheService(fileStore, persistentCache, tempFileStore, fileAccessTracker, ".failed", null, null, entryStore)
+        def entry = temporaryFolder.createFile("entry")
+        entry.text = "content"
+        deduplicatingService.storeLocally(key, entry)
+        def reader = Mock(LocalBuildCacheEntryReader)
+        String loaded = null
+
+        when:
+        deduplicatingService.loadLocally(key, reader)
+
+        then:
+        1 * reader.readFrom(_) >> { InputStream input -> loaded = input.text }
+        0 * reader.execute(_)
+        loaded == "content"
+        // No temporary copy of the entry is written
+        cacheDir.listFiles().findAll { it.file }*.name == [hashCode]
+    }
+
+    def "splits entries into blobs while holding the lock which evicting entries takes"() {
+        given:
+        def format = Mock(DeduplicatingEntryFormat)
+        def entryStore = new ContentAddressedEntryStore(cacheDir, format, true)
+        def lockedCache = Mock(PersistentCache) {
+            getBaseDir() >> cacheDir
+        }
+        def deduplicatingService = new DirectoryBuildCacheService(fileStore, lockedCache, tempFileStore, fileAccessTracker, ".failed", null, null, entryStore)
+        def entry = temporaryFolder.createFile("entry")
+        def locked = false
+
+        when:
+        deduplicatingService.storeLocally(key, entry)
+
+        then:
+        1 * lockedCache.withFileLock(_) >> { Runnable r ->
+            locked = true
+            r.run()
+            locked = false
+        }
+        1 * format.split(entry, _, _) >> { File file, ContentAddressedBlobStore blobStore, File manifest ->
+            assert locked
+            assert deduplicatingService.lock.writeLock().heldByCurrentThread
+            manifest.text = "manifest"
+        }
+    }
+
+    private void store(DirectoryBuildCacheService service, String hashCode, int size) {
+        service.store(cacheKey(hashCode), new BuildCacheEntryWriter() {
+            @Override
+            void writeTo(OutputStream output) throws IOException {
+                output.write(new byte[size])
+            }
+
+            @Override
+            long getSize() {
+                return size
+            }
+        })
+    }
+
+    private BuildCacheKey cacheKey(String hashCode) {
+        return Stub(BuildCacheKey) {
+            getHashCode() >> hashCode
+        }
+    }
+
+    /**
+     * Stores the whole entry as a single blob.
+     */
+    private static class SingleBlobEntryFormat implements DeduplicatingEntryFormat {
+        static final String PREFIX = "manifest:"
+
+        @Override
+        boolean isManifest(File file) {
+            file.text.startsWith(PREFIX)
+        }
+
+        @Override
+        void split(File entry, ContentAddressedBlobStore blobStore, File manifest) {
+            def hash = entry.withInputStream { blobStore.add(it, entry.length()) }
+            manifest.text = PREFIX + hash
+        }
+
+        @Override
+        InputStream open(File manifest, ContentAddressedBlobStore blobStore) {
+            new FileInputStream(blobStore.get(readHash(manifest)))
+        }
+
+        @Override
+        void collectBlobs(File manifest, Set<HashCode> blobs) {
+            blobs.add(readHash(manifest))
+        }
+
+        private static HashCode readHash(File manifest) {
+            HashCode.fromString(manifest.text.substring(PREFIX.length()))
+        }
+    }
 }
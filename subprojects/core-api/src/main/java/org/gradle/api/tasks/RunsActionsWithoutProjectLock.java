@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.tasks;
+
+import org.gradle.api.Incubating;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Attached to a task type to indicate that the actions of tasks of this type run without holding the lock of their project.
+ * Other tasks of the same project can then run while these actions are running.</p>
+ *
+ * <p>The actions of such a task must not access the project, nor any other mutable state of the build, such as configurations or other tasks.
+ * This is a good fit for tasks which only submit work to the worker API, using the input and output files of the task.</p>
+ *
+ * <p><b>Running actions without the project lock is unsafe.</b> Gradle only checks a small part of this restriction: calling {@link org.gradle.api.Task#getProject()}
+ * or {@link org.gradle.api.Task#getAnt()} from the actions fails. Any other access is not detected. This includes a project or configuration which the task
+ * keeps in a field or in a property, and a closure action declared in a build script which uses the {@code project} of the script. Such access races with the
+ * other tasks of the project and can fail or produce wrong results intermittently.</p>
+ *
+ * @since 5.1
+ */
+@Incubating
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface RunsActionsWithoutProjectLock {
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.file.collections.ImmutableFileCollection
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.execution.UnitOfWork
+import org.gradle.internal.file.FileType
+import org.gradle.internal.file.TreeType
+import org.gradle.internal.filewatch.DefaultFileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.nativeintegration.filesystem.FileSystem
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileSystemSnapshotter
+import org.gradle.internal.snapshot.WellKnownFileLocations
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.TestPrecondition
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+@UsesNativeServices
+@Requires(TestPrecondition.NOT_MAC_OS_X)
+class WatchingOutputChangeRecorderTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def executorFactory = new DefaultExecutorFactory()
+    def fileWatcherFactory = new DefaultFileWatcherFactory(executorFactory, Stub(FileSystem))
+    def fileSystemSnapshotter = Mock(FileSystemSnapshotter)
+    def mirror = new DefaultFileSystemMirror(Stub(WellKnownFileLocations))
+    def markerDir = tmpDir.file("markers")
+    def recorder = new WatchingOutputChangeRecorder(fileWatcherFactory, fileSystemSnapshotter, mirror, markerDir)
+
+    def outputDir = tmpDir.createDir("output")
+    def previousSnapshot = Stub(FileSystemLocationSnapshot) {
+        getAbsolutePath() >> outputDir.absolutePath
+        getType() >> FileType.Directory
+    }
+    def work = Stub(UnitOfWork) {
+        visitOutputs(_) >> { UnitOfWork.OutputVisitor visitor ->
+            visitor.visitOutput("output", TreeType.DIRECTORY, ImmutableFileCollection.of(outputDir))
+        }
+    }
+
+    def cleanup() {
+        recorder.stop()
+        executorFactory.stop()
+    }
+
+    def "updates snapshot of output directory with the changes made while recording"() {
+        given:
+        def changed = outputDir.file("a/changed.txt").createFile()
+        def deleted = outputDir.file("a/deleted.txt").createFile()
+        mirror.putSnapshot(previousSnapshot)
+        startWatching()
+
+        when:
+        def recording = recorder.startRecording(work)
+        changed.text = "changed"
+        deleted.delete()
+        def added = outputDir.file("b/added.txt").createFile()
+        recording.stop()
+
+        then:
+        1 * fileSystemSnapshotter.snapshotChanges(previousSnapshot, { Collection<String> changes ->
+            changes.containsAll([changed, deleted, added.parentFile, added]*.absolutePath) && !changes.contains(outputDir.absolutePath)
+        })
+        0 * fileSystemSnapshotter._
+        !markerDir.listFiles()
+    }
+
+    def "records changes made to watched outputs before the recording started"() {
+        given:
+        mirror.putSnapshot(previousSnapshot)
+        startWatching()
+
+        when:
+        // For example made by another task with overlapping outputs
+        def before = outputDir.file("before.txt").createFile()
+        def recording = recorder.startRecording(work)
+        def during = outputDir.file("during.txt").createFile()
+        recording.stop()
+
+        then:
+        1 * fileSystemSnapshotter.snapshotChanges(previousSnapshot, { Collection<String> changes ->
+            changes.containsAll([before, during]*.absolutePath)
+        })
+        0 * fileSystemSnapshotter._
+    }
+
+    def "does not record changes again which were made before the previous execution finished"() {
+        given:
+        mirror.putSnapshot(previousSnapshot)
+        startWatching()
+        outputDir.file("previous.txt").createFile()
+        recorder.startRecording(work).stop()
+
+        when:
+        def recording = recorder.startRecording(work)
+        recording.stop()
+
+        then:
+        1 * fileSystemSnapshotter.snapshotChanges(previousSnapshot, [])
+        0 * fileSystemSnapshotter._
+    }
+
+    def "does not record changes to outputs which were snapshotted before they were watched"() {
+        given:
+        mirror.putSnapshot(previousSnapshot)
+
+        when:
+        def recording = recorder.startRecording(work)
+        outputDir.file("a.txt").createFile()
+        recording.stop()
+
+        then:
+        0 * fileSystemSnapshotter._
+    }
+
+    def "does not report changes to sibling directory with the same prefix"() {
+        given:
+        def siblingDir = tmpDir.createDir("output-sibling")
+        def siblingSnapshot = Stub(FileSystemLocationSnapshot) {
+            getAbsolutePath() >> siblingDir.absolutePath
+            getType() >> FileType.Directory
+        }
+        def work = Stub(UnitOfWork) {
+            visitOutputs(_) >> { UnitOfWork.OutputVisitor visitor ->
+                visitor.visitOutput("output", TreeType.DIRECTORY, ImmutableFileCollection.of(outputDir))
+                visitor.visitOutput("sibling", TreeType.DIRECTORY, ImmutableFileCollection.of(siblingDir))
+            }
+        }
+        mirror.putSnapshot(previousSnapshot)
+        mirror.putSnapshot(siblingSnapshot)
+        recorder.startRecording(work).stop()
+
+        when:
+        def recording = recorder.startRecording(work)
+        def added = siblingDir.file("added.txt").createFile()
+        recording.stop()
+
+        then:
+        1 * fileSystemSnapshotter.snapshotChanges(previousSnapshot, [])
+        1 * fileSystemSnapshotter.snapshotChanges(siblingSnapshot, [added.absolutePath])
+        0 * fileSystemSnapshotter._
+    }
+
+    def "does not watch outputs which have not been snapshotted"() {
+        given:
+        def fileWatcherFactory = Mock(FileWatcherFactory)
+        def recorder = new WatchingOutputChangeRecorder(fileWatcherFactory, fileSystemSnapshotter, mirror, markerDir)
+
+        when:
+        def recording = recorder.startRecording(work)
+        outputDir.file("a.txt").createFile()
+        recording.stop()
+
+        then:
+        0 * fileWatcherFactory._
+        0 * fileSystemSnapshotter._
+    }
+
+    def "does not update snapshots after the recorder has been stopped"() {
+        given:
+        mirror.putSnapshot(previousSnapshot)
+        startWatching()
+
+        when:
+        def recording = recorder.startRecording(work)
+        outputDir.file("a.txt").createFile()
+        recorder.stop()
+        recording.stop()
+
+        then:
+        0 * fileSystemSnapshotter._
+        !markerDir.exists()
+    }
+
+    private void startWatching() {
+        recorder.startRecording(work).stop()
+    }
+}
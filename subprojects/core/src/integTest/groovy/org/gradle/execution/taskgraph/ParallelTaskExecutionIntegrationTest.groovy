@@ -135,6 +135,41 @@ class ParallelTaskExecutionIntegrationTest extends AbstractIntegrationSpec {
         run ":a:aPing", ":a:bPing", ":b:aPing"
     }
 
+    def "tasks of the same project execute in parallel when their actions run without the project lock"() {
+        given:
+        withParallelThreads(2)
+
+        and:
+        buildFile << """
+            @RunsActionsWithoutProjectLock
+            class LockFreePing extends DefaultTask {
+                @TaskAction
+                void ping() {
+                    new URL("http://localhost:${blockingServer.port}/" + path).text
+                }
+            }
+
+            tasks.create("aLockFreePing", LockFreePing)
+            tasks.create("bLockFreePing", LockFreePing)
+        """
+
+        expect:
+        blockingServer.expectConcurrent(":aLockFreePing", ":bLockFreePing")
+
+        run ":aLockFreePing", ":bLockFreePing"
+    }
+
+    def "tasks of the same project do not execute in parallel when their actions hold the project lock"() {
+        given:
+        withParallelThreads(2)
+
+        expect:
+        blockingServer.expect(":aSerialPing")
+        blockingServer.expect(":bSerialPing")
+
+        run ":aSerialPing", ":bSerialPing"
+    }
+
     def "two tasks with should run after execute in parallel"() {
         given:
         withParallelThreads(2)
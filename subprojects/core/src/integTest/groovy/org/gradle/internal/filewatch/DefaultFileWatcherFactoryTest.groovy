@@ -26,6 +26,7 @@ import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.util.UsesNativeServices
 import spock.lang.Unroll
 
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.CountDownLatch
 
 @UsesNativeServices
@@ -88,6 +89,32 @@ class DefaultFileWatcherFactoryTest extends AbstractFileWatcherTest {
         0 * _._
     }
 
+    def "flush delivers received events without reporting the watched directory as deleted"() {
+        given:
+        def events = new CopyOnWriteArrayList<FileWatcherEvent>()
+        def listener = { FileWatcher watcher, FileWatcherEvent event -> events.add(event) } as FileWatcherListener
+
+        when:
+        fileWatcher = fileWatcherFactory.watch(onError, listener)
+        fileWatcher.watch(fileSystemSubset)
+        File createdFile = testDir.file("newfile.txt")
+        createdFile.text = "Hello world"
+
+        then:
+        await {
+            fileWatcher.flush()
+            assert events.any { it.file == createdFile }
+        }
+
+        when:
+        // Give the poller thread the chance to handle the key whose events have been taken by the flush
+        sleep(500)
+
+        then:
+        !events.any { it.type == FileWatcherEvent.Type.DELETE && it.file == testDir.testDirectory }
+        fileWatcher.running
+    }
+
     def handleEvent(FileWatcherEvent event, CountDownLatch listenerCalledLatch) {
         //println "event: $event"
         listenerCalledLatch.countDown()
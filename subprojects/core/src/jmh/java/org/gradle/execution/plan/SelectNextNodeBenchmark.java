@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.collect.ImmutableCollection;
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simulates the execution of a large synthetic graph with a number of workers, and compares selecting the next node by scanning the whole plan with selecting it from the {@link ReadyNodeQueue}.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SelectNextNodeBenchmark {
+    private static final int MAX_DEPENDENCIES = 4;
+    // Most dependencies point to recent nodes, as for the tasks of a single project
+    private static final int DEPENDENCY_WINDOW = 200;
+    // Every so often there is a node which depends on all the nodes before it in the window, such as a lifecycle task
+    private static final int AGGREGATE_INTERVAL = 50;
+
+    @Param({"1000", "20000"})
+    int nodeCount;
+
+    @Param({"16"})
+    int workers;
+
+    List<SyntheticNode> plan;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        plan = new ArrayList<SyntheticNode>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            SyntheticNode node = new SyntheticNode(i);
+            if (i % AGGREGATE_INTERVAL == AGGREGATE_INTERVAL - 1) {
+                for (int j = Math.max(0, i - DEPENDENCY_WINDOW); j < i; j++) {
+                    node.dependsOn(plan.get(j));
+                }
+            } else {
+                int dependencies = Math.min(i, random.nextInt(MAX_DEPENDENCIES + 1));
+                for (int j = 0; j < dependencies; j++) {
+                    node.dependsOn(plan.get(i - 1 - random.nextInt(Math.min(i, DEPENDENCY_WINDOW))));
+                }
+            }
+            plan.add(node);
+        }
+    }
+
+    @Benchmark
+    public int scanPlan() {
+        requireAll();
+        List<Node> executionQueue = new LinkedList<Node>(plan);
+        List<Node> running = new ArrayList<Node>();
+        Random random = new Random(1234);
+        int executed = 0;
+        while (!executionQueue.isEmpty() || !running.isEmpty()) {
+            while (running.size() < workers) {
+                Node next = null;
+                Iterator<Node> iterator = executionQueue.iterator();
+                while (iterator.hasNext()) {
+                    Node node = iterator.next();
+                    if (node.isReady() && node.allDependenciesComplete()) {
+                        iterator.remove();
+                        next = node;
+                        break;
+                    }
+                }
+                if (next == null) {
+                    break;
+                }
+                next.startExecution();
+                running.add(next);
+            }
+            finishAny(running, random);
+            executed++;
+        }
+        return executed;
+    }
+
+    @Benchmark
+    public int readyQueue() {
+        requireAll();
+        ReadyNodeQueue readyNodes = new ReadyNodeQueue(NodeDurationEstimator.NONE);
+        readyNodes.reset(plan);
+        List<Node> running = new ArrayList<Node>();
+        Random random = new Random(1234);
+        int executed = 0;
+        while (executed < nodeCount) {
+            while (running.size() < workers) {
+                Iterator<Node> iterator = readyNodes.iterator();
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                Node next = iterator.next();
+                readyNodes.remove(next);
+                next.startExecution();
+                running.add(next);
+            }
+            readyNodes.nodeCompleted(finishAny(running, random));
+            executed++;
+        }
+        return executed;
+    }
+
+    /**
+     * Nodes take different amounts of time, so they complete in a different order than they started.
+     */
+    private static Node finishAny(List<Node> running, Random random) {
+        int index = random.nextInt(running.size());
+        Node node = running.get(index);
+        running.set(index, running.get(running.size() - 1));
+        running.remove(running.size() - 1);
+        node.finishExecution();
+        return node;
+    }
+
+    private void requireAll() {
+        for (SyntheticNode node : plan) {
+            node.require();
+        }
+    }
+
+    private static class SyntheticNode extends Node {
+        private final int id;
+
+        SyntheticNode(int id) {
+            this.id = id;
+        }
+
+        void dependsOn(Node node) {
+            addDependencySuccessor(node);
+        }
+
+        @Override
+        public void collectTaskInto(ImmutableCollection.Builder<Task> builder) {
+        }
+
+        @Override
+        public Throwable getNodeFailure() {
+            return null;
+        }
+
+        @Override
+        public void rethrowNodeFailure() {
+        }
+
+        @Override
+        public void prepareForExecution() {
+        }
+
+        @Override
+        public void resolveDependencies(TaskDependencyResolver dependencyResolver, Action<Node> processHardSuccessor) {
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return id - ((SyntheticNode) other).id;
+        }
+
+        @Override
+        public String toString() {
+            return "node " + id;
+        }
+    }
+}
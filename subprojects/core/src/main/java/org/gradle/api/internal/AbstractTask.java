@@ -127,6 +127,8 @@ public abstract class AbstractTask implements TaskInternal, DynamicObjectAware {
     private final TaskMutator taskMutator;
     private ObservableList observableActionList;
     private boolean impliesSubProjects;
+
+    private boolean runsActionsWithoutProjectLock;
     private boolean hasCustomActions;
 
     private final TaskInputsInternal taskInputs;
@@ -198,14 +200,23 @@ public abstract class AbstractTask implements TaskInternal, DynamicObjectAware {
 
     @Override
     public AntBuilder getAnt() {
+        assertCanAccessProject("Task.getAnt()");
         return project.getAnt();
     }
 
     @Override
     public Project getProject() {
+        assertCanAccessProject("Task.getProject()");
         return project;
     }
 
+    // Only catches access through this task, any other reference to the project is not checked
+    private void assertCanAccessProject(String method) {
+        if (state.isRunningActionsWithoutProjectLock()) {
+            throw new IllegalStateException(String.format("Cannot call %s from the actions of %s, as the actions of this task run without the project lock.", method, this));
+        }
+    }
+
     @Override
     public String getName() {
         return identity.name;
@@ -361,6 +372,20 @@ public abstract class AbstractTask implements TaskInternal, DynamicObjectAware {
         this.impliesSubProjects = impliesSubProjects;
     }
 
+    @Override
+    public boolean getRunsActionsWithoutProjectLock() {
+        return runsActionsWithoutProjectLock;
+    }
+
+    @Override
+    public void setRunsActionsWithoutProjectLock(final boolean runsActionsWithoutProjectLock) {
+        taskMutator.mutate("Task.setRunsActionsWithoutProjectLock(boolean)", new Runnable() {
+            public void run() {
+                AbstractTask.this.runsActionsWithoutProjectLock = runsActionsWithoutProjectLock;
+            }
+        });
+    }
+
     @Override
     public String getPath() {
         return identity.projectPath.toString();
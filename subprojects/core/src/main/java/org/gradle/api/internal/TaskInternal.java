@@ -66,6 +66,17 @@ public interface TaskInternal extends Task, Configurable<Task> {
 
     void setImpliesSubProjects(boolean impliesSubProjects);
 
+    /**
+     * Whether the actions of this task run without holding the lock of its project, so that other tasks of the same project can run at the same time.
+     * The actions of such a task must not access the project, for example because they only submit work to the worker API. This is only checked for
+     * {@link #getProject()} and {@link #getAnt()}.
+     * Set for task types annotated with {@link org.gradle.api.tasks.RunsActionsWithoutProjectLock}.
+     */
+    @Internal
+    boolean getRunsActionsWithoutProjectLock();
+
+    void setRunsActionsWithoutProjectLock(boolean runsActionsWithoutProjectLock);
+
     /**
      * The returned factory is expected to return the same file each time.
      * <p>
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.cache.CacheRepository;
+import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCacheStorage;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.HashCodeSerializer;
+
+import java.io.Closeable;
+
+import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
+
+/**
+ * The hashes of resources, such as the entries of jars on a classpath, shared between the builds and processes using the same Gradle user home.
+ *
+ * <p>The entries are content-addressed, as the key is derived from the hash of the content of the resource, so the cache is opened with a shared lock that is held until
+ * it is closed, and each process appends to segments of its own. So processes do not hand the lock back and forth as they look up and add hashes.</p>
+ */
+public class CrossBuildResourceHashCache implements Closeable {
+    public static final String RESOURCE_HASHES_CACHE_KEY = "resourceHashes";
+
+    private final PersistentCache cache;
+    private final PersistentIndexedCache<HashCode, HashCode> resourceHashes;
+
+    public CrossBuildResourceHashCache(CacheRepository repository) {
+        cache = repository.cache(RESOURCE_HASHES_CACHE_KEY)
+            .withDisplayName("resource hash cache")
+            .withLockOptions(mode(FileLockManager.LockMode.Shared))
+            .open();
+        resourceHashes = cache.createCache(
+            PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer())
+                .withStorage(IndexedCacheStorage.SHARED_SEGMENTS)
+        );
+    }
+
+    public PersistentIndexedCache<HashCode, HashCode> getResourceHashes() {
+        return resourceHashes;
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+}
@@ -17,6 +17,7 @@ package org.gradle.api.internal.changedetection.state;
 
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCacheStorage;
 import org.gradle.cache.PersistentCache;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
@@ -49,6 +50,7 @@ public class DefaultExecutionHistoryCacheAccess implements ExecutionHistoryCache
     public <K, V> PersistentIndexedCache<K, V> createCache(PersistentIndexedCacheParameters<K, V> parameters, int maxEntriesToKeepInMemory, boolean cacheInMemoryForShortLivedProcesses) {
         return cache.createCache(parameters
             .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(maxEntriesToKeepInMemory, cacheInMemoryForShortLivedProcesses))
+            .withStorage(IndexedCacheStorage.fromSystemProperties())
         );
     }
 
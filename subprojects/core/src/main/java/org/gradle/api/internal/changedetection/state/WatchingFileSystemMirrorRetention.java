@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Action;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.gradle.internal.os.OperatingSystem;
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the state of a {@link DefaultFileSystemMirror} between builds, invalidating it based on file system events.
+ *
+ * A location is watched as soon as its state is added to the mirror. State which was added for a location before the location was watched
+ * may predate the watch, so it is discarded at the end of the build, as is the state for the locations which changed during the build.
+ * When the events cannot be trusted, for example because they overflowed or the watcher failed, all retained state is discarded.
+ */
+public class WatchingFileSystemMirrorRetention implements DefaultFileSystemMirror.RetainedLocationListener, Stoppable {
+    public static final String RETENTION_PROPERTY = "org.gradle.unsafe.vfs.retention";
+
+    private static final Logger LOGGER = Logging.getLogger(WatchingFileSystemMirrorRetention.class);
+    private static final int MAX_CHANGES_TO_RECORD = 10000;
+
+    private final DefaultFileSystemMirror fileSystemMirror;
+    private final FileWatcherFactory fileWatcherFactory;
+    private final Set<String> watchedRoots = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> newlyWatchedRoots = new HashSet<String>();
+    private final Set<String> changedPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean changesLost;
+    private FileWatcher fileWatcher;
+
+    public WatchingFileSystemMirrorRetention(DefaultFileSystemMirror fileSystemMirror, FileWatcherFactory fileWatcherFactory) {
+        this.fileSystemMirror = fileSystemMirror;
+        this.fileWatcherFactory = fileWatcherFactory;
+    }
+
+    public static boolean isRetentionEnabled() {
+        // The JDK watch service on macOS polls the file system and may report changes late, so events cannot be used to invalidate the state
+        return Boolean.getBoolean(RETENTION_PROPERTY) && !OperatingSystem.current().isMacOsX();
+    }
+
+    @Override
+    public void locationAdded(String absolutePath) {
+        if (isWatched(absolutePath) || !isRetentionEnabled()) {
+            return;
+        }
+        File location = new File(absolutePath);
+        // Watch the parent of a file, so that the siblings of the file share a watched location
+        String root = location.isDirectory() || location.getParentFile() == null ? absolutePath : location.getParent();
+        synchronized (this) {
+            if (changesLost || isWatched(root)) {
+                return;
+            }
+            try {
+                if (fileWatcher == null) {
+                    fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                        @Override
+                        public void execute(Throwable failure) {
+                            LOGGER.debug("Failure while watching for file changes, discarding retained file system state.", failure);
+                            changesLost();
+                        }
+                    }, new InvalidatingFileWatcherListener());
+                }
+                fileWatcher.watch(FileSystemSubset.builder().add(new File(root)).build());
+                watchedRoots.add(root);
+                newlyWatchedRoots.add(root);
+            } catch (Exception e) {
+                LOGGER.debug("Could not watch retained file system location, discarding retained file system state.", e);
+                changesLost();
+            }
+        }
+    }
+
+    private boolean isWatched(String absolutePath) {
+        if (watchedRoots.isEmpty()) {
+            return false;
+        }
+        String path = absolutePath;
+        while (true) {
+            if (watchedRoots.contains(path)) {
+                return true;
+            }
+            int separator = path.lastIndexOf(File.separatorChar);
+            if (separator <= 0) {
+                return false;
+            }
+            path = path.substring(0, separator);
+        }
+    }
+
+    public synchronized void beforeBuildStarted() {
+        if (fileWatcher != null) {
+            if (fileWatcher.isRunning()) {
+                // Apply the changes the watcher has received but not delivered yet, before the retained state is used
+                fileWatcher.flush();
+            } else {
+                LOGGER.debug("File watcher stopped unexpectedly, discarding retained file system state.");
+                changesLost();
+            }
+        }
+        if (changesLost) {
+            stopWatching();
+            fileSystemMirror.invalidateAll();
+            changesLost = false;
+        }
+        changedPaths.clear();
+    }
+
+    public synchronized void beforeBuildFinished() {
+        if (!isRetentionEnabled()) {
+            stopWatching();
+            fileSystemMirror.beforeBuildFinished();
+            return;
+        }
+        if (fileWatcher != null) {
+            fileWatcher.flush();
+        }
+        fileSystemMirror.beforeBuildFinishedRetainingFiles();
+        if (changesLost) {
+            stopWatching();
+            fileSystemMirror.invalidateAll();
+            changesLost = false;
+        } else {
+            // State may have been added for a changed location while the change was being delivered
+            fileSystemMirror.invalidate(newlyWatchedRoots);
+            fileSystemMirror.invalidate(changedPaths);
+        }
+        newlyWatchedRoots.clear();
+        changedPaths.clear();
+    }
+
+    private void changesLost() {
+        changesLost = true;
+        fileSystemMirror.invalidateAll();
+    }
+
+    private void stopWatching() {
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+            fileWatcher = null;
+        }
+        watchedRoots.clear();
+        newlyWatchedRoots.clear();
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopWatching();
+    }
+
+    private class InvalidatingFileWatcherListener implements FileWatcherListener {
+        @Override
+        public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+            File file = event.getFile();
+            if (event.getType() == FileWatcherEvent.Type.UNDEFINED || file == null) {
+                // Events have been lost, so we do not know what has changed
+                changesLost();
+            } else {
+                String changedPath = file.getAbsolutePath();
+                fileSystemMirror.invalidate(Collections.singleton(changedPath));
+                if (changedPaths.size() < MAX_CHANGES_TO_RECORD) {
+                    changedPaths.add(changedPath);
+                } else {
+                    changesLost();
+                }
+            }
+        }
+    }
+}
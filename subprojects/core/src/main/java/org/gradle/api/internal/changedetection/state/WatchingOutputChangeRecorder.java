@@ -0,0 +1,328 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.Action;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.internal.file.FileSystemSubset;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.execution.OutputChangeRecorder;
+import org.gradle.internal.execution.UnitOfWork;
+import org.gradle.internal.file.FileType;
+import org.gradle.internal.file.TreeType;
+import org.gradle.internal.filewatch.FileWatcher;
+import org.gradle.internal.filewatch.FileWatcherEvent;
+import org.gradle.internal.filewatch.FileWatcherFactory;
+import org.gradle.internal.filewatch.FileWatcherListener;
+import org.gradle.internal.os.OperatingSystem;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemMirror;
+import org.gradle.internal.snapshot.FileSystemSnapshotter;
+import org.gradle.util.GFileUtils;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the changes made to output directories while a unit of work executes by watching the directories for file system events.
+ * After the execution, the snapshots the output directories had before the execution are updated with the changed locations,
+ * so that the output directories do not need to be walked again.
+ *
+ * An output directory is watched from the first execution which produces it on. The snapshot it had before that execution may predate the watch,
+ * so the changes are only used from the next execution on, when the snapshot has been taken while the directory was watched.
+ * The changes to a watched directory are recorded continuously, and not only while a unit of work executes, since its snapshot can be taken
+ * any time before the execution. Once an execution has finished, the snapshot of the directory is taken again, so the changes recorded until then are discarded.
+ * Recording more changes than used is harmless, as the changed locations are snapshotted again.
+ *
+ * Whenever the recorded events may be incomplete, for example because they overflowed or could not be received in time,
+ * the snapshots are not updated and the output directories are walked again as usual.
+ * Changes made through symbolic links to locations outside of the output directories are not detected, which is why this mode is opt-in.
+ */
+public class WatchingOutputChangeRecorder implements OutputChangeRecorder, Stoppable {
+    public static final String INCREMENTAL_OUTPUT_SNAPSHOTS_PROPERTY = "org.gradle.unsafe.incremental-output-snapshots";
+
+    private static final Logger LOGGER = Logging.getLogger(WatchingOutputChangeRecorder.class);
+    private static final long PENDING_EVENTS_TIMEOUT_MILLIS = 2000;
+    // Beyond this, walking the directory again is cheaper than keeping track of the changes
+    private static final int MAX_RECORDED_CHANGES = 50000;
+
+    private final FileWatcherFactory fileWatcherFactory;
+    private final FileSystemSnapshotter fileSystemSnapshotter;
+    private final FileSystemMirror fileSystemMirror;
+    private final File markerDir;
+    private final ConcurrentMap<String, CountDownLatch> pendingMarkers = new ConcurrentHashMap<String, CountDownLatch>();
+    private final ConcurrentMap<String, ChangeJournal> watchedDirectories = new ConcurrentHashMap<String, ChangeJournal>();
+    private FileWatcher fileWatcher;
+
+    public WatchingOutputChangeRecorder(FileWatcherFactory fileWatcherFactory, FileSystemSnapshotter fileSystemSnapshotter, FileSystemMirror fileSystemMirror, File markerDir) {
+        this.fileWatcherFactory = fileWatcherFactory;
+        this.fileSystemSnapshotter = fileSystemSnapshotter;
+        this.fileSystemMirror = fileSystemMirror;
+        this.markerDir = markerDir;
+    }
+
+    public static boolean isEnabled() {
+        // The JDK watch service on macOS polls the file system and may report changes late, so events cannot be used to update the snapshots
+        return Boolean.getBoolean(INCREMENTAL_OUTPUT_SNAPSHOTS_PROPERTY) && !OperatingSystem.current().isMacOsX();
+    }
+
+    @Override
+    public Recording startRecording(UnitOfWork work) {
+        final List<FileSystemLocationSnapshot> previousSnapshots = new ArrayList<FileSystemLocationSnapshot>();
+        final List<File> unwatchedDirectories = new ArrayList<File>();
+        final List<String> outputDirectories = new ArrayList<String>();
+        work.visitOutputs(new UnitOfWork.OutputVisitor() {
+            @Override
+            public void visitOutput(String name, TreeType type, FileCollection roots) {
+                if (type != TreeType.DIRECTORY) {
+                    return;
+                }
+                for (File root : roots) {
+                    String absolutePath = root.getAbsolutePath();
+                    outputDirectories.add(absolutePath);
+                    FileSystemLocationSnapshot previousSnapshot = fileSystemMirror.getSnapshot(absolutePath);
+                    if (previousSnapshot == null || previousSnapshot.getType() != FileType.Directory) {
+                        continue;
+                    }
+                    if (watchedDirectories.containsKey(absolutePath)) {
+                        previousSnapshots.add(previousSnapshot);
+                    } else {
+                        unwatchedDirectories.add(root);
+                    }
+                }
+            }
+        });
+        if (!unwatchedDirectories.isEmpty()) {
+            watch(unwatchedDirectories);
+        }
+        return new WatchingRecording(previousSnapshots, outputDirectories);
+    }
+
+    /**
+     * Returns the changes recorded for the given watched directory and starts recording anew, or {@code null} when the changes are not known.
+     */
+    @Nullable
+    private List<String> recordedChanges(String outputDirectory) {
+        ChangeJournal journal = watchedDirectories.get(outputDirectory);
+        return journal == null ? null : journal.drain();
+    }
+
+    private synchronized void watch(List<File> outputDirectories) {
+        FileSystemSubset.Builder builder = FileSystemSubset.builder();
+        for (File outputDirectory : outputDirectories) {
+            builder.add(outputDirectory);
+        }
+        try {
+            if (fileWatcher == null) {
+                GFileUtils.mkdirs(markerDir);
+                fileWatcher = fileWatcherFactory.watch(new Action<Throwable>() {
+                    @Override
+                    public void execute(Throwable failure) {
+                        LOGGER.debug("Failure while watching for changes to outputs, snapshotting outputs fully.", failure);
+                        watcherFailed();
+                    }
+                }, new RecordingFileWatcherListener());
+                fileWatcher.watch(FileSystemSubset.builder().add(markerDir).build());
+            }
+            // Start recording before watching, so that no event is missed
+            for (File outputDirectory : outputDirectories) {
+                watchedDirectories.putIfAbsent(outputDirectory.getAbsolutePath(), new ChangeJournal());
+            }
+            fileWatcher.watch(builder.build());
+        } catch (Exception e) {
+            LOGGER.debug("Could not watch outputs, snapshotting outputs fully.", e);
+            stopWatching();
+        }
+    }
+
+    private synchronized FileWatcher getFileWatcher() {
+        return fileWatcher;
+    }
+
+    private synchronized void watcherFailed() {
+        fileWatcher = null;
+        watchedDirectories.clear();
+    }
+
+    private void discardRecordedChanges() {
+        for (ChangeJournal journal : watchedDirectories.values()) {
+            journal.overflow();
+        }
+    }
+
+    /**
+     * Delivers the events for all changes made before this method was called.
+     *
+     * Once the event for a marker file created here has been received, the watch service has received the events for the changes made before it,
+     * though possibly for other directories. Flushing the watcher then delivers those.
+     */
+    private boolean awaitPendingEvents() {
+        FileWatcher watcher = getFileWatcher();
+        if (watcher == null) {
+            return false;
+        }
+        String markerName = UUID.randomUUID().toString();
+        CountDownLatch received = new CountDownLatch(1);
+        pendingMarkers.put(markerName, received);
+        File marker = new File(markerDir, markerName);
+        try {
+            if (!marker.createNewFile()) {
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + PENDING_EVENTS_TIMEOUT_MILLIS;
+            while (true) {
+                watcher.flush();
+                if (received.getCount() == 0) {
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                received.await(1, TimeUnit.MILLISECONDS);
+            }
+            // Deliver the events which were received for other directories while the marker was being delivered
+            watcher.flush();
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Could not create marker for changes to outputs.", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            pendingMarkers.remove(markerName);
+            GFileUtils.deleteQuietly(marker);
+        }
+    }
+
+    private synchronized void stopWatching() {
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+            fileWatcher = null;
+        }
+        watchedDirectories.clear();
+    }
+
+    @Override
+    public void stop() {
+        stopWatching();
+        GFileUtils.deleteQuietly(markerDir);
+    }
+
+    private class RecordingFileWatcherListener implements FileWatcherListener {
+        @Override
+        public void onChange(FileWatcher watcher, FileWatcherEvent event) {
+            File file = event.getFile();
+            if (event.getType() == FileWatcherEvent.Type.UNDEFINED || file == null) {
+                // Events have been lost, so we do not know what has changed
+                discardRecordedChanges();
+                return;
+            }
+            if (markerDir.equals(file.getParentFile())) {
+                CountDownLatch received = pendingMarkers.get(file.getName());
+                if (received != null) {
+                    received.countDown();
+                }
+                return;
+            }
+            String absolutePath = file.getAbsolutePath();
+            for (Map.Entry<String, ChangeJournal> entry : watchedDirectories.entrySet()) {
+                String rootPath = entry.getKey();
+                if (absolutePath.equals(rootPath) || absolutePath.startsWith(rootPath + File.separatorChar)) {
+                    entry.getValue().changed(absolutePath);
+                }
+            }
+        }
+    }
+
+    /**
+     * The changes made below a watched directory since the changes have last been drained.
+     */
+    private static class ChangeJournal {
+        private Set<String> changedPaths = new HashSet<String>();
+        private boolean overflowed;
+
+        synchronized void changed(String absolutePath) {
+            if (overflowed) {
+                return;
+            }
+            changedPaths.add(absolutePath);
+            if (changedPaths.size() > MAX_RECORDED_CHANGES) {
+                overflow();
+            }
+        }
+
+        synchronized void overflow() {
+            overflowed = true;
+            changedPaths = new HashSet<String>();
+        }
+
+        @Nullable
+        synchronized List<String> drain() {
+            List<String> changes = overflowed ? null : new ArrayList<String>(changedPaths);
+            changedPaths = new HashSet<String>();
+            overflowed = false;
+            return changes;
+        }
+    }
+
+    private class WatchingRecording implements Recording {
+        private final List<FileSystemLocationSnapshot> previousSnapshots;
+        private final List<String> outputDirectories;
+
+        WatchingRecording(List<FileSystemLocationSnapshot> previousSnapshots, List<String> outputDirectories) {
+            this.previousSnapshots = previousSnapshots;
+            this.outputDirectories = outputDirectories;
+        }
+
+        @Override
+        public void stop() {
+            boolean complete = previousSnapshots.isEmpty() || awaitPendingEvents();
+            // The outputs without a previous snapshot are snapshotted fully after the execution, so their changes recorded until now are not needed
+            Map<String, List<String>> changes = new HashMap<String, List<String>>();
+            for (String outputDirectory : outputDirectories) {
+                changes.put(outputDirectory, recordedChanges(outputDirectory));
+            }
+            for (FileSystemLocationSnapshot previousSnapshot : previousSnapshots) {
+                List<String> changedPaths = changes.get(previousSnapshot.getAbsolutePath());
+                if (!complete || changedPaths == null) {
+                    LOGGER.debug("Changes to {} may not have been recorded completely, snapshotting it fully.", previousSnapshot.getAbsolutePath());
+                    continue;
+                }
+                try {
+                    fileSystemSnapshotter.snapshotChanges(previousSnapshot, changedPaths);
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Could not update snapshot of {}, snapshotting it fully.", previousSnapshot.getAbsolutePath(), e);
+                }
+            }
+        }
+    }
+}
@@ -65,6 +65,10 @@ public class AnnotationProcessingTaskFactory implements ITaskFactory {
             task.getOutputs().cacheIf("Annotated with @CacheableTask", Specs.SATISFIES_ALL);
         }
 
+        if (taskClassInfo.isRunsActionsWithoutProjectLock()) {
+            ((TaskInternal) task).setRunsActionsWithoutProjectLock(true);
+        }
+
         return task;
     }
 }
@@ -24,6 +24,7 @@ import org.gradle.api.NonNullApi;
 import org.gradle.api.Task;
 import org.gradle.api.Transformer;
 import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.RunsActionsWithoutProjectLock;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.incremental.IncrementalTaskInputs;
 import org.gradle.cache.internal.CrossBuildInMemoryCache;
@@ -55,6 +56,7 @@ public class DefaultTaskClassInfoStore implements TaskClassInfoStore {
 
     private TaskClassInfo createTaskClassInfo(Class<? extends Task> type) {
         boolean cacheable = type.isAnnotationPresent(CacheableTask.class);
+        boolean runsActionsWithoutProjectLock = type.isAnnotationPresent(RunsActionsWithoutProjectLock.class);
         boolean incremental = false;
         Map<String, Class<?>> processedMethods = Maps.newHashMap();
         ImmutableList.Builder<TaskActionFactory> taskActionFactoriesBuilder = ImmutableList.builder();
@@ -74,7 +76,7 @@ public class DefaultTaskClassInfoStore implements TaskClassInfoStore {
             }
         }
 
-        return new TaskClassInfo(incremental, taskActionFactoriesBuilder.build(), cacheable);
+        return new TaskClassInfo(incremental, taskActionFactoriesBuilder.build(), cacheable, runsActionsWithoutProjectLock);
     }
 
     @Nullable
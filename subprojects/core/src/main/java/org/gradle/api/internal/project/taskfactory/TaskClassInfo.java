@@ -22,11 +22,13 @@ public class TaskClassInfo {
     private final boolean incremental;
     private final ImmutableList<TaskActionFactory> taskActionFactories;
     private final boolean cacheable;
+    private final boolean runsActionsWithoutProjectLock;
 
-    public TaskClassInfo(boolean incremental, ImmutableList<TaskActionFactory> taskActionFactories, boolean cacheable) {
+    public TaskClassInfo(boolean incremental, ImmutableList<TaskActionFactory> taskActionFactories, boolean cacheable, boolean runsActionsWithoutProjectLock) {
         this.incremental = incremental;
         this.taskActionFactories = taskActionFactories;
         this.cacheable = cacheable;
+        this.runsActionsWithoutProjectLock = runsActionsWithoutProjectLock;
     }
 
     public ImmutableList<TaskActionFactory> getTaskActionFactories() {
@@ -40,4 +42,8 @@ public class TaskClassInfo {
     public boolean isCacheable() {
         return cacheable;
     }
+
+    public boolean isRunsActionsWithoutProjectLock() {
+        return runsActionsWithoutProjectLock;
+    }
 }
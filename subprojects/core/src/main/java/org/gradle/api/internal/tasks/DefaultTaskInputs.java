@@ -53,8 +53,8 @@ public class DefaultTaskInputs implements TaskInputsInternal {
         this.taskMutator = taskMutator;
         this.propertyWalker = propertyWalker;
         String taskDisplayName = task.toString();
-        this.allInputFiles = new TaskInputUnionFileCollection(taskDisplayName, "input", false, task, propertyWalker);
-        this.allSourceFiles = new TaskInputUnionFileCollection(taskDisplayName, "source", true, task, propertyWalker);
+        this.allInputFiles = new TaskInputUnionFileCollection(taskDisplayName, "input", false, task, propertyWalker, specFactory);
+        this.allSourceFiles = new TaskInputUnionFileCollection(taskDisplayName, "source", true, task, propertyWalker, specFactory);
         this.deprecatedThis = new TaskInputsDeprecationSupport();
         this.specFactory = specFactory;
     }
@@ -62,7 +62,7 @@ public class DefaultTaskInputs implements TaskInputsInternal {
     @Override
     public boolean getHasInputs() {
         HasInputsVisitor visitor = new HasInputsVisitor();
-        TaskPropertyUtils.visitProperties(propertyWalker, task, visitor);
+        TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, visitor);
         return visitor.hasInputs();
     }
 
@@ -130,7 +130,7 @@ public class DefaultTaskInputs implements TaskInputsInternal {
     @Override
     public boolean getHasSourceFiles() {
         GetInputFilesVisitor visitor = new GetInputFilesVisitor();
-        TaskPropertyUtils.visitProperties(propertyWalker, task, visitor);
+        TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, visitor);
         return visitor.hasSourceFiles();
     }
 
@@ -142,7 +142,7 @@ public class DefaultTaskInputs implements TaskInputsInternal {
     @Override
     public Map<String, Object> getProperties() {
         GetInputPropertiesVisitor visitor = new GetInputPropertiesVisitor(task.getName());
-        TaskPropertyUtils.visitProperties(propertyWalker, task, visitor);
+        TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, visitor);
         //noinspection ConstantConditions
         return visitor.getPropertyValuesFactory().create();
     }
@@ -181,13 +181,15 @@ public class DefaultTaskInputs implements TaskInputsInternal {
         private final String type;
         private final TaskInternal task;
         private final PropertyWalker propertyWalker;
+        private final PropertySpecFactory specFactory;
 
-        TaskInputUnionFileCollection(String taskDisplayName, String type, boolean skipWhenEmptyOnly, TaskInternal task, PropertyWalker propertyWalker) {
+        TaskInputUnionFileCollection(String taskDisplayName, String type, boolean skipWhenEmptyOnly, TaskInternal task, PropertyWalker propertyWalker, PropertySpecFactory specFactory) {
             this.taskDisplayName = taskDisplayName;
             this.type = type;
             this.skipWhenEmptyOnly = skipWhenEmptyOnly;
             this.task = task;
             this.propertyWalker = propertyWalker;
+            this.specFactory = specFactory;
         }
 
         @Override
@@ -197,7 +199,7 @@ public class DefaultTaskInputs implements TaskInputsInternal {
 
         @Override
         public void visitContents(final FileCollectionResolveContext context) {
-            TaskPropertyUtils.visitProperties(propertyWalker, task, new PropertyVisitor.Adapter() {
+            TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, new PropertyVisitor.Adapter() {
                 @Override
                 public void visitInputFileProperty(TaskInputFilePropertySpec fileProperty) {
                     if (!TaskInputUnionFileCollection.this.skipWhenEmptyOnly || fileProperty.isSkipWhenEmpty()) {
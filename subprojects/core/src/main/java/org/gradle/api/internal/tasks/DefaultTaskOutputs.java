@@ -132,7 +132,7 @@ public class DefaultTaskOutputs implements TaskOutputsInternal {
             return true;
         }
         HasDeclaredOutputsVisitor visitor = new HasDeclaredOutputsVisitor();
-        TaskPropertyUtils.visitProperties(propertyWalker, task, visitor);
+        TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, visitor);
         return visitor.hasDeclaredOutputs();
     }
 
@@ -143,7 +143,7 @@ public class DefaultTaskOutputs implements TaskOutputsInternal {
 
     public ImmutableSortedSet<TaskOutputFilePropertySpec> getFileProperties() {
         GetOutputFilesVisitor visitor = new GetOutputFilesVisitor();
-        TaskPropertyUtils.visitProperties(propertyWalker, task, visitor);
+        TaskPropertyUtils.visitProperties(propertyWalker, task, specFactory, visitor);
         return visitor.getFileProperties();
     }
 
@@ -35,7 +35,14 @@ public class TaskPropertyUtils {
      * properties declared via the runtime API ({@link org.gradle.api.tasks.TaskInputs} etc.).
      */
     public static void visitProperties(PropertyWalker propertyWalker, final TaskInternal task, PropertyVisitor visitor) {
-        final PropertySpecFactory specFactory = new DefaultPropertySpecFactory(task, ((ProjectInternal) task.getProject()).getFileResolver());
+        visitProperties(propertyWalker, task, new DefaultPropertySpecFactory(task, ((ProjectInternal) task.getProject()).getFileResolver()), visitor);
+    }
+
+    /**
+     * Visits the properties of the task like {@link #visitProperties(PropertyWalker, TaskInternal, PropertyVisitor)}, using the given factory for the properties declared via annotations.
+     * This does not access the project of the task, so it can be used while the actions of the task run.
+     */
+    public static void visitProperties(PropertyWalker propertyWalker, final TaskInternal task, PropertySpecFactory specFactory, PropertyVisitor visitor) {
         propertyWalker.visitProperties(specFactory, visitor, task);
         if (!visitor.visitOutputFilePropertiesOnly()) {
             task.getInputs().visitRegisteredProperties(visitor);
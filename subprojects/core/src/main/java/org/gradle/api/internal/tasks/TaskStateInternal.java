@@ -32,6 +32,7 @@ public class TaskStateInternal implements TaskState {
     private RuntimeException failure;
     private TaskOutputCachingState taskOutputCaching = DefaultTaskOutputCachingState.disabled(TaskOutputCachingDisabledReasonCategory.UNKNOWN, "Cacheability was not determined");
     private TaskExecutionOutcome outcome;
+    private volatile Thread actionsThreadWithoutProjectLock;
 
     public boolean getDidWork() {
         return didWork;
@@ -93,6 +94,17 @@ public class TaskStateInternal implements TaskState {
         this.executing = executing;
     }
 
+    /**
+     * Records whether the actions of this task are running on the current thread without the lock of the project.
+     */
+    public void setRunningActionsWithoutProjectLock(boolean runningActionsWithoutProjectLock) {
+        this.actionsThreadWithoutProjectLock = runningActionsWithoutProjectLock ? Thread.currentThread() : null;
+    }
+
+    public boolean isRunningActionsWithoutProjectLock() {
+        return actionsThreadWithoutProjectLock == Thread.currentThread();
+    }
+
     public void setTaskOutputCaching(TaskOutputCachingState taskOutputCaching) {
         this.taskOutputCaching = taskOutputCaching;
     }
@@ -51,6 +51,7 @@ import org.gradle.internal.operations.BuildOperationDescriptor;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.BuildOperationRef;
 import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.resources.ProjectLeaseRegistry;
 import org.gradle.internal.work.AsyncWorkTracker;
 
 import java.io.File;
@@ -71,19 +72,22 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
     private final AsyncWorkTracker asyncWorkTracker;
     private final TaskActionListener actionListener;
     private final WorkExecutor<UpToDateResult> workExecutor;
+    private final ProjectLeaseRegistry projectLeaseRegistry;
 
     public ExecuteActionsTaskExecuter(
         boolean buildCacheEnabled,
         BuildOperationExecutor buildOperationExecutor,
         AsyncWorkTracker asyncWorkTracker,
         TaskActionListener actionListener,
-        WorkExecutor<UpToDateResult> workExecutor
+        WorkExecutor<UpToDateResult> workExecutor,
+        ProjectLeaseRegistry projectLeaseRegistry
     ) {
         this.buildCacheEnabled = buildCacheEnabled;
         this.buildOperationExecutor = buildOperationExecutor;
         this.asyncWorkTracker = asyncWorkTracker;
         this.actionListener = actionListener;
         this.workExecutor = workExecutor;
+        this.projectLeaseRegistry = projectLeaseRegistry;
     }
 
     @Override
@@ -142,7 +146,11 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
             try {
                 LOGGER.debug("Executing actions for {}.", task);
                 actionListener.beforeActions(task);
-                executeActions(task, context);
+                if (task.getRunsActionsWithoutProjectLock()) {
+                    executeActionsWithoutProjectLock(task, context);
+                } else {
+                    executeActions(task, context);
+                }
                 return task.getState().getDidWork();
             } finally {
                 task.getState().setExecuting(false);
@@ -250,6 +258,24 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
         }
     }
 
+    /**
+     * Executes the actions of the task while the project lock is released, so that other tasks of the same project can run in the meantime.
+     * The project is locked again before the outputs of the task are snapshotted.
+     */
+    private void executeActionsWithoutProjectLock(final TaskInternal task, final TaskExecutionContext context) {
+        projectLeaseRegistry.withoutProjectLock(new Runnable() {
+            @Override
+            public void run() {
+                task.getState().setRunningActionsWithoutProjectLock(true);
+                try {
+                    executeActions(task, context);
+                } finally {
+                    task.getState().setRunningActionsWithoutProjectLock(false);
+                }
+            }
+        });
+    }
+
     private void executeActions(TaskInternal task, TaskExecutionContext context) {
         for (ContextAwareTaskAction action : new ArrayList<ContextAwareTaskAction>(task.getTaskActions())) {
             task.getState().setDidWork(true);
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.tasks.execution.statistics;
+
+import org.gradle.api.Task;
+import org.gradle.api.execution.TaskExecutionListener;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.api.internal.tasks.TaskStateInternal;
+import org.gradle.api.tasks.TaskState;
+import org.gradle.cache.PersistentCache;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.cache.PersistentIndexedCacheParameters;
+import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
+import org.gradle.execution.plan.LocalTaskNode;
+import org.gradle.execution.plan.Node;
+import org.gradle.execution.plan.NodeDurationEstimator;
+import org.gradle.internal.time.Clock;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records how long tasks take to execute, and uses the durations recorded in previous builds to estimate the durations of the nodes of the execution plan.
+ *
+ * <p>Only executions which do work and do not fail are recorded. Each recorded duration is averaged with the previous estimate,
+ * so that a single unusually fast or slow execution has less effect.</p>
+ */
+public class TaskExecutionDurationHistory implements TaskExecutionListener, NodeDurationEstimator, Closeable {
+    public static final String CRITICAL_PATH_SCHEDULING_PROPERTY = "org.gradle.internal.critical-path-scheduling";
+
+    private final PersistentCache cacheAccess;
+    private final PersistentIndexedCache<String, Long> durations;
+    private final Clock clock;
+    private final ConcurrentMap<Task, Long> startTimes = new ConcurrentHashMap<Task, Long>();
+
+    public TaskExecutionDurationHistory(PersistentCache cacheAccess, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, Clock clock) {
+        this.cacheAccess = cacheAccess;
+        this.durations = cacheAccess.createCache(PersistentIndexedCacheParameters.of("taskDurations", String.class, Long.class)
+            .withCacheDecorator(inMemoryCacheDecoratorFactory.decorator(20000, true)));
+        this.clock = clock;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(CRITICAL_PATH_SCHEDULING_PROPERTY);
+    }
+
+    @Override
+    public long estimateDuration(Node node) {
+        if (!(node instanceof LocalTaskNode)) {
+            return 0;
+        }
+        Long duration = durations.get(keyFor(((LocalTaskNode) node).getTask()));
+        return duration == null ? 0 : duration;
+    }
+
+    @Override
+    public void beforeExecute(Task task) {
+        startTimes.put(task, clock.getCurrentTime());
+    }
+
+    @Override
+    public void afterExecute(Task task, TaskState state) {
+        Long startTime = startTimes.remove(task);
+        if (startTime == null || state.getFailure() != null || ((TaskStateInternal) state).getOutcome() != TaskExecutionOutcome.EXECUTED) {
+            return;
+        }
+        long duration = clock.getCurrentTime() - startTime;
+        String key = keyFor(task);
+        Long previousDuration = durations.get(key);
+        durations.put(key, previousDuration == null ? duration : (previousDuration + duration) / 2);
+    }
+
+    @Override
+    public void close() {
+        cacheAccess.close();
+    }
+
+    private static String keyFor(Task task) {
+        return ((TaskInternal) task).getIdentityPath().getPath();
+    }
+}
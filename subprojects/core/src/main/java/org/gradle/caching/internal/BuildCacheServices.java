@@ -21,7 +21,9 @@ import org.gradle.caching.configuration.internal.BuildCacheServiceRegistration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration;
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
+import org.gradle.caching.internal.packaging.impl.TarDeduplicatingEntryFormat;
 import org.gradle.caching.local.DirectoryBuildCache;
+import org.gradle.caching.local.internal.DeduplicatingEntryFormat;
 import org.gradle.caching.local.internal.DirectoryBuildCacheFileStoreFactory;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.internal.reflect.Instantiator;
@@ -67,6 +69,10 @@ public final class BuildCacheServices extends AbstractPluginServiceRegistry {
                 };
             }
 
+            DeduplicatingEntryFormat createDeduplicatingEntryFormat() {
+                return new TarDeduplicatingEntryFormat();
+            }
+
             BuildCacheServiceRegistration createDirectoryBuildCacheServiceRegistration() {
                 return new DefaultBuildCacheServiceRegistration(DirectoryBuildCache.class, DirectoryBuildCacheServiceFactory.class);
             }
@@ -30,10 +30,12 @@ import org.gradle.caching.internal.controller.BuildCacheControllerFactory.Remote
 import org.gradle.caching.internal.controller.RootBuildCacheControllerRef;
 import org.gradle.caching.internal.origin.OriginMetadataFactory;
 import org.gradle.caching.internal.packaging.BuildCacheEntryPacker;
-import org.gradle.caching.internal.packaging.impl.GZipBuildCacheEntryPacker;
+import org.gradle.caching.internal.packaging.impl.BuildCacheEntryCodec;
+import org.gradle.caching.internal.packaging.impl.CompressingBuildCacheEntryPacker;
 import org.gradle.caching.internal.packaging.impl.TarBuildCacheEntryPacker;
 import org.gradle.initialization.buildsrc.BuildSourceBuilder;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
@@ -58,7 +60,7 @@ public class BuildCacheServices {
     private static final Path ROOT_BUILD_SRC_PATH = Path.path(":" + BuildSourceBuilder.BUILD_SRC);
 
     BuildCacheEntryPacker createResultPacker(FileSystem fileSystem, StreamHasher fileHasher, StringInterner stringInterner) {
-        return new GZipBuildCacheEntryPacker(new TarBuildCacheEntryPacker(fileSystem, fileHasher, stringInterner));
+        return new CompressingBuildCacheEntryPacker(new TarBuildCacheEntryPacker(fileSystem, fileHasher, stringInterner), BuildCacheEntryCodec.fromSystemProperties());
     }
 
     OriginMetadataFactory createOriginMetadataFactory(
@@ -86,10 +88,11 @@ public class BuildCacheServices {
         BuildOperationExecutor buildOperationExecutor,
         InstantiatorFactory instantiatorFactory,
         GradleInternal gradle,
-        RootBuildCacheControllerRef rootControllerRef
+        RootBuildCacheControllerRef rootControllerRef,
+        ExecutorFactory executorFactory
     ) {
         if (isRoot(gradle) || isRootBuildSrc(gradle) || isGradleBuildTaskRoot(rootControllerRef)) {
-            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle);
+            return doCreateBuildCacheController(serviceRegistry, buildCacheConfiguration, buildOperationExecutor, instantiatorFactory, gradle, executorFactory);
         } else {
             // must be an included build
             return rootControllerRef.getForNonRootBuild();
@@ -113,7 +116,7 @@ public class BuildCacheServices {
         return gradle.getParent() == null;
     }
 
-    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle) {
+    private BuildCacheController doCreateBuildCacheController(ServiceRegistry serviceRegistry, BuildCacheConfigurationInternal buildCacheConfiguration, BuildOperationExecutor buildOperationExecutor, InstantiatorFactory instantiatorFactory, GradleInternal gradle, ExecutorFactory executorFactory) {
         StartParameter startParameter = gradle.getStartParameter();
         Path buildIdentityPath = gradle.getIdentityPath();
         File gradleUserHomeDir = gradle.getGradleUserHomeDir();
@@ -131,7 +134,8 @@ public class BuildCacheServices {
             remoteAccessMode,
             logStackTraces,
             emitDebugLogging,
-            instantiatorFactory.inject(serviceRegistry)
+            instantiatorFactory.inject(serviceRegistry),
+            executorFactory
         );
     }
 
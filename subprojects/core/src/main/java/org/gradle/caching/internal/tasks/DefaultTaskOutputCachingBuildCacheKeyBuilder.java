@@ -22,6 +22,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import org.gradle.api.NonNullApi;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.hash.FileContentHashAlgorithm;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
@@ -44,7 +45,13 @@ public class DefaultTaskOutputCachingBuildCacheKeyBuilder implements TaskOutputC
     private final ImmutableSortedSet.Builder<String> outputPropertyNames = ImmutableSortedSet.naturalOrder();
 
     public DefaultTaskOutputCachingBuildCacheKeyBuilder(Path taskPath) {
+        this(taskPath, FileContentHashAlgorithm.MD5);
+    }
+
+    public DefaultTaskOutputCachingBuildCacheKeyBuilder(Path taskPath, FileContentHashAlgorithm fileContentHashAlgorithm) {
         this.taskPath = taskPath;
+        // The file fingerprints are based on content hashes, so keys created with different content hash algorithms must never match
+        fileContentHashAlgorithm.appendToCacheKey(hasher);
     }
 
     @Override
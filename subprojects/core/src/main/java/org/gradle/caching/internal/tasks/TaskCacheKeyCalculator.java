@@ -22,6 +22,7 @@ import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec;
 import org.gradle.api.internal.tasks.execution.TaskProperties;
 import org.gradle.internal.execution.history.BeforeExecutionState;
 import org.gradle.internal.fingerprint.CurrentFileCollectionFingerprint;
+import org.gradle.internal.hash.FileContentHashAlgorithm;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.Hasher;
 import org.gradle.internal.hash.Hashing;
@@ -33,13 +34,15 @@ import java.util.SortedMap;
 public class TaskCacheKeyCalculator {
 
     private final boolean buildCacheDebugLogging;
+    private final FileContentHashAlgorithm fileContentHashAlgorithm;
 
-    public TaskCacheKeyCalculator(boolean buildCacheDebugLogging) {
+    public TaskCacheKeyCalculator(boolean buildCacheDebugLogging, FileContentHashAlgorithm fileContentHashAlgorithm) {
         this.buildCacheDebugLogging = buildCacheDebugLogging;
+        this.fileContentHashAlgorithm = fileContentHashAlgorithm;
     }
 
     public TaskOutputCachingBuildCacheKey calculate(TaskInternal task, BeforeExecutionState execution, TaskProperties taskProperties) {
-        TaskOutputCachingBuildCacheKeyBuilder builder = new DefaultTaskOutputCachingBuildCacheKeyBuilder(task.getIdentityPath());
+        TaskOutputCachingBuildCacheKeyBuilder builder = new DefaultTaskOutputCachingBuildCacheKeyBuilder(task.getIdentityPath(), fileContentHashAlgorithm);
         if (buildCacheDebugLogging) {
             builder = new DebuggingTaskOutputCachingBuildCacheKeyBuilder(builder);
         }
@@ -68,6 +68,7 @@ import org.gradle.internal.fingerprint.impl.IgnoredPathFileCollectionFingerprint
 import org.gradle.internal.fingerprint.impl.NameOnlyFileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.impl.OutputFileCollectionFingerprinter;
 import org.gradle.internal.fingerprint.impl.RelativePathFileCollectionFingerprinter;
+import org.gradle.internal.hash.FileContentHashAlgorithm;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.reflect.Instantiator;
 import org.gradle.internal.scan.config.BuildScanPluginApplied;
@@ -77,6 +78,7 @@ import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.snapshot.FileSystemSnapshotter;
 import org.gradle.internal.snapshot.ValueSnapshotter;
 import org.gradle.internal.work.AsyncWorkTracker;
+import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.normalization.internal.InputNormalizationHandlerInternal;
 
 import java.util.List;
@@ -110,7 +112,8 @@ public class ProjectExecutionServices extends DefaultServiceRegistry {
                                     TaskExecutionGraphInternal taskExecutionGraph,
                                     BuildInvocationScopeId buildInvocationScopeId,
                                     TaskExecutionListener taskExecutionListener,
-                                    WorkExecutor<UpToDateResult> workExecutor
+                                    WorkExecutor<UpToDateResult> workExecutor,
+                                    WorkerLeaseService workerLeaseService
     ) {
 
         boolean buildCacheEnabled = buildCacheController.isEnabled();
@@ -121,7 +124,8 @@ public class ProjectExecutionServices extends DefaultServiceRegistry {
             buildOperationExecutor,
             asyncWorkTracker,
             actionListener,
-            workExecutor
+            workExecutor,
+            workerLeaseService
         );
         executer = new ResolveTaskOutputCachingStateExecuter(buildCacheEnabled, executer);
         if (buildCacheEnabled || scanPluginApplied) {
@@ -182,9 +186,10 @@ public class ProjectExecutionServices extends DefaultServiceRegistry {
         StartParameter startParameter,
         TaskHistoryRepository taskHistoryRepository,
         OutputFilesRepository taskOutputsRepository,
-        FileCollectionFingerprinterRegistry fingerprinterRegistry
+        FileCollectionFingerprinterRegistry fingerprinterRegistry,
+        FileContentHashAlgorithm fileContentHashAlgorithm
     ) {
-        TaskCacheKeyCalculator taskCacheKeyCalculator = new TaskCacheKeyCalculator(startParameter.isBuildCacheDebugLogging());
+        TaskCacheKeyCalculator taskCacheKeyCalculator = new TaskCacheKeyCalculator(startParameter.isBuildCacheDebugLogging(), fileContentHashAlgorithm);
 
         return new ShortCircuitTaskArtifactStateRepository(
             startParameter,
@@ -83,7 +83,8 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private final Set<Node> nodesInUnknownState = Sets.newLinkedHashSet();
     private final Set<TaskNode> entryTasks = new LinkedHashSet<TaskNode>();
     private final NodeMapping nodeMapping = new NodeMapping();
-    private final List<Node> executionQueue = Lists.newLinkedList();
+    private final Set<Node> executionQueue = Sets.newLinkedHashSet();
+    private final ReadyNodeQueue readyNodes;
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final FailureCollector failureCollector = new FailureCollector();
     private final TaskNodeFactory taskNodeFactory;
@@ -95,19 +96,24 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     private final Set<Node> runningNodes = Sets.newIdentityHashSet();
     private final Set<Node> filteredNodes = Sets.newIdentityHashSet();
     private final Map<Node, MutationInfo> mutations = Maps.newIdentityHashMap();
+    private final MutationPathTrie runningMutationPaths = new MutationPathTrie();
     private final Map<File, String> canonicalizedFileCache = Maps.newIdentityHashMap();
     private final Map<Pair<Node, Node>, Boolean> reachableCache = Maps.newHashMap();
-    private final Set<Node> dependenciesCompleteCache = Sets.newHashSet();
     private final WorkerLeaseService workerLeaseService;
     private final GradleInternal gradle;
 
     private boolean buildCancelled;
 
     public DefaultExecutionPlan(WorkerLeaseService workerLeaseService, GradleInternal gradle, TaskNodeFactory taskNodeFactory, TaskDependencyResolver dependencyResolver) {
+        this(workerLeaseService, gradle, taskNodeFactory, dependencyResolver, NodeDurationEstimator.NONE);
+    }
+
+    public DefaultExecutionPlan(WorkerLeaseService workerLeaseService, GradleInternal gradle, TaskNodeFactory taskNodeFactory, TaskDependencyResolver dependencyResolver, NodeDurationEstimator durationEstimator) {
         this.workerLeaseService = workerLeaseService;
         this.gradle = gradle;
         this.taskNodeFactory = taskNodeFactory;
         this.dependencyResolver = dependencyResolver;
+        this.readyNodes = new ReadyNodeQueue(durationEstimator);
     }
 
     @Override
@@ -330,6 +336,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         }
         executionQueue.clear();
         Iterables.addAll(executionQueue, nodeMapping);
+        readyNodes.reset(executionQueue);
     }
 
     @Override
@@ -505,13 +512,14 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         entryTasks.clear();
         nodeMapping.clear();
         executionQueue.clear();
+        readyNodes.clear();
         projectLocks.clear();
         failureCollector.clearFailures();
         mutations.clear();
         canonicalizedFileCache.clear();
         reachableCache.clear();
-        dependenciesCompleteCache.clear();
         runningNodes.clear();
+        runningMutationPaths.clear();
     }
 
     @Override
@@ -545,39 +553,55 @@ public class DefaultExecutionPlan implements ExecutionPlan {
             return null;
         }
 
-        Iterator<Node> iterator = executionQueue.iterator();
-        while (iterator.hasNext()) {
-            Node node = iterator.next();
-            if (node.isReady() && allDependenciesComplete(node)) {
-                MutationInfo mutations = getResolvedMutationInfo(node);
+        // Only the nodes whose dependencies are all complete are candidates. Remember the projects which are locked by other workers, so that
+        // the remaining nodes of those projects are skipped without checking them again
+        Set<ResourceLock> unavailableProjectLocks = null;
+        for (Node node : readyNodes) {
+            ResourceLock projectLock = getProjectLockFor(node);
+            if (projectLock != null && unavailableProjectLocks != null && unavailableProjectLocks.contains(projectLock)) {
+                continue;
+            }
+            MutationInfo mutations = getResolvedMutationInfo(node);
 
-                // TODO: convert output file checks to a resource lock
-                if (!tryLockProjectFor(node)
-                    || !workerLease.tryLock()
-                    || !canRunWithCurrentlyExecutedNodes(node, mutations)) {
-                    resourceLockState.releaseLocks();
-                    continue;
+            if (projectLock != null && !projectLock.tryLock()) {
+                if (unavailableProjectLocks == null) {
+                    unavailableProjectLocks = Sets.newHashSet();
                 }
+                unavailableProjectLocks.add(projectLock);
+                resourceLockState.releaseLocks();
+                continue;
+            }
 
-                if (node.allDependenciesSuccessful()) {
-                    recordNodeStarted(node);
-                    node.startExecution();
-                } else {
-                    node.skipExecution();
-                }
-                iterator.remove();
+            // TODO: convert output file checks to a resource lock
+            if (!workerLease.tryLock()
+                || !canRunWithCurrentlyExecutedNodes(node, mutations)) {
+                resourceLockState.releaseLocks();
+                continue;
+            }
 
-                return node;
+            if (node.allDependenciesSuccessful()) {
+                recordNodeStarted(node);
+                node.startExecution();
+            } else {
+                node.skipExecution();
+            }
+            executionQueue.remove(node);
+            readyNodes.remove(node);
+            if (node.isComplete()) {
+                readyNodes.nodeCompleted(node);
             }
+
+            return node;
         }
         return null;
     }
 
-    private boolean tryLockProjectFor(Node node) {
+    @Nullable
+    private ResourceLock getProjectLockFor(Node node) {
         if (node instanceof LocalTaskNode) {
-            return getProjectLock((LocalTaskNode) node).tryLock();
+            return getProjectLock((LocalTaskNode) node);
         } else {
-            return true;
+            return null;
         }
     }
 
@@ -629,19 +653,6 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         }
     }
 
-    private boolean allDependenciesComplete(Node node) {
-        if (dependenciesCompleteCache.contains(node)) {
-            return true;
-        }
-
-        boolean dependenciesComplete = node.allDependenciesComplete();
-        if (dependenciesComplete) {
-            dependenciesCompleteCache.add(node);
-        }
-
-        return dependenciesComplete;
-    }
-
     private boolean allProjectsLocked() {
         for (ResourceLock lock : projectLocks.values()) {
             if (!lock.isLocked()) {
@@ -690,16 +701,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
     }
 
     private boolean hasNodeWithOverlappingMutations(Set<String> candidateMutationPaths) {
-        if (!candidateMutationPaths.isEmpty()) {
-            for (Node runningNode : runningNodes) {
-                MutationInfo runningMutations = mutations.get(runningNode);
-                Iterable<String> runningMutationPaths = Iterables.concat(runningMutations.outputPaths, runningMutations.destroyablePaths);
-                if (hasOverlap(candidateMutationPaths, runningMutationPaths)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return !candidateMutationPaths.isEmpty() && runningMutationPaths.hasOverlap(candidateMutationPaths);
     }
 
     private boolean doesDestroyNotYetConsumedOutputOfAnotherNode(Node destroyer, Set<String> destroyablePaths) {
@@ -814,11 +816,19 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
     private void recordNodeStarted(Node node) {
         runningNodes.add(node);
+        MutationInfo mutations = this.mutations.get(node);
+        for (String path : Iterables.concat(mutations.outputPaths, mutations.destroyablePaths)) {
+            runningMutationPaths.add(path);
+        }
     }
 
     private void recordNodeCompleted(Node node) {
-        runningNodes.remove(node);
         MutationInfo mutations = this.mutations.get(node);
+        if (runningNodes.remove(node)) {
+            for (String path : Iterables.concat(mutations.outputPaths, mutations.destroyablePaths)) {
+                runningMutationPaths.remove(path);
+            }
+        }
         for (Node producer : mutations.producingNodes) {
             MutationInfo producerMutations = this.mutations.get(producer);
             if (producerMutations.consumingNodes.remove(node) && canRemoveMutation(producerMutations)) {
@@ -846,13 +856,14 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
                 node.finishExecution();
                 recordNodeCompleted(node);
+                readyNodes.nodeCompleted(node);
             }
         } finally {
             unlockProjectFor(node);
         }
     }
 
-    private static void enforceFinalizers(Node node) {
+    private void enforceFinalizers(Node node) {
         if (!(node instanceof TaskNode)) {
             return;
         }
@@ -863,7 +874,7 @@ public class DefaultExecutionPlan implements ExecutionPlan {
         }
     }
 
-    private static void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
+    private void enforceWithDependencies(Node nodeInfo, Set<Node> enforcedNodes) {
         Deque<Node> candidateNodes = new ArrayDeque<Node>();
         candidateNodes.add(nodeInfo);
 
@@ -874,7 +885,10 @@ public class DefaultExecutionPlan implements ExecutionPlan {
 
                 candidateNodes.addAll(node.getDependencySuccessors());
 
-                if (node.isMustNotRun() || node.isRequired()) {
+                if (node.isMustNotRun()) {
+                    node.enforceRun();
+                    readyNodes.nodeEnforced(node);
+                } else if (node.isRequired()) {
                     node.enforceRun();
                 }
             }
@@ -924,12 +938,14 @@ public class DefaultExecutionPlan implements ExecutionPlan {
             // Allow currently executing and enforced tasks to complete, but skip everything else.
             if (node.isRequired()) {
                 node.skipExecution();
+                readyNodes.nodeCompleted(node);
                 aborted = true;
             }
 
             // If abortAll is set, also stop enforced tasks.
             if (abortAll && node.isReady()) {
                 node.abortExecution();
+                readyNodes.nodeCompleted(node);
                 aborted = true;
             }
         }
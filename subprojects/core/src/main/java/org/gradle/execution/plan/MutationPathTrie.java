@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan;
+
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.Map;
+
+/**
+ * The canonical paths mutated by the running nodes, indexed by their segments, so that checking whether a path overlaps with any of them only depends on the depth of the path.
+ *
+ * <p>Two paths overlap when they are the same, or when one of them is an ancestor of the other. A path can be added several times, and is kept until it has been removed as often.</p>
+ */
+class MutationPathTrie {
+    private final Entry root = new Entry(null, "");
+
+    public void add(String path) {
+        Entry entry = root;
+        entry.pathsInSubtree++;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf(File.separatorChar, start);
+            String segment = end < 0 ? path.substring(start) : path.substring(start, end);
+            Entry child = entry.children.get(segment);
+            if (child == null) {
+                child = new Entry(entry, segment);
+                entry.children.put(segment, child);
+            }
+            entry = child;
+            entry.pathsInSubtree++;
+            if (end < 0) {
+                break;
+            }
+            start = end + 1;
+        }
+        entry.paths++;
+    }
+
+    public void remove(String path) {
+        Entry entry = find(path);
+        if (entry == null || entry.paths == 0) {
+            return;
+        }
+        entry.paths--;
+        while (entry != null) {
+            entry.pathsInSubtree--;
+            if (entry.pathsInSubtree == 0 && entry.parent != null) {
+                entry.parent.children.remove(entry.segment);
+            }
+            entry = entry.parent;
+        }
+    }
+
+    /**
+     * Returns whether any of the given paths overlaps with a path of this trie.
+     */
+    public boolean hasOverlap(Iterable<String> paths) {
+        if (isEmpty()) {
+            return false;
+        }
+        for (String path : paths) {
+            if (hasOverlap(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasOverlap(String path) {
+        Entry entry = root;
+        int start = 0;
+        while (true) {
+            int end = path.indexOf(File.separatorChar, start);
+            entry = entry.children.get(end < 0 ? path.substring(start) : path.substring(start, end));
+            if (entry == null) {
+                return false;
+            }
+            if (end < 0) {
+                // The path itself or one of its descendants
+                return entry.pathsInSubtree > 0;
+            }
+            if (entry.paths > 0) {
+                // An ancestor of the path
+                return true;
+            }
+            start = end + 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return root.pathsInSubtree == 0;
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.pathsInSubtree = 0;
+    }
+
+    @Nullable
+    private Entry find(String path) {
+        Entry entry = root;
+        int start = 0;
+        while (entry != null) {
+            int end = path.indexOf(File.separatorChar, start);
+            entry = entry.children.get(end < 0 ? path.substring(start) : path.substring(start, end));
+            if (end < 0) {
+                return entry;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static class Entry {
+        @Nullable
+        final Entry parent;
+        final String segment;
+        final Map<String, Entry> children = Maps.newHashMap();
+        // The number of times this exact path has been added
+        int paths;
+        // The number of paths in the subtree rooted at this entry, including this entry
+        int pathsInSubtree;
+
+        Entry(@Nullable Entry parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+/**
+ * Estimates how long the nodes of an execution plan take to execute, so that the nodes on the critical path of the plan can be started first.
+ */
+public interface NodeDurationEstimator {
+    /**
+     * Does not estimate any durations, so that the nodes are started in plan order.
+     */
+    NodeDurationEstimator NONE = new NodeDurationEstimator() {
+        @Override
+        public long estimateDuration(Node node) {
+            return 0;
+        }
+    };
+
+    /**
+     * Returns the estimated duration of the given node in milliseconds, or 0 when there is no estimate.
+     */
+    long estimateDuration(Node node);
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.plan;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * The nodes of an execution plan which can be selected for execution, i.e. nodes which are ready to run and whose successors are all complete.
+ *
+ * <p>Each node keeps a count of its incomplete successors, and is only added to the queue when the last of its successors completes. This way selecting the next node
+ * does not need to check the dependencies of all the nodes in the plan which cannot run yet.</p>
+ *
+ * <p>The ready nodes are ordered by the estimated duration of the longest path from the node to the end of the plan, so that the nodes on the critical path
+ * are started first, and then in plan order. Without estimates, the nodes are in plan order.</p>
+ *
+ * <p>The plan has to report each change of the completeness of a node to the queue. The queue is not thread-safe.</p>
+ */
+class ReadyNodeQueue implements Iterable<Node> {
+    private static final Comparator<NodeState> CRITICAL_PATH_ORDER = new Comparator<NodeState>() {
+        @Override
+        public int compare(NodeState o1, NodeState o2) {
+            if (o1.criticalPath != o2.criticalPath) {
+                return o1.criticalPath > o2.criticalPath ? -1 : 1;
+            }
+            return o1.position - o2.position;
+        }
+    };
+    private static final Function<NodeState, Node> TO_NODE = new Function<NodeState, Node>() {
+        @Override
+        public Node apply(NodeState state) {
+            return state.node;
+        }
+    };
+
+    private final NodeDurationEstimator durationEstimator;
+    private final Map<Node, NodeState> states = Maps.newIdentityHashMap();
+    private final NavigableSet<NodeState> readyNodes = new TreeSet<NodeState>(CRITICAL_PATH_ORDER);
+
+    ReadyNodeQueue(NodeDurationEstimator durationEstimator) {
+        this.durationEstimator = durationEstimator;
+    }
+
+    /**
+     * Starts tracking the given nodes, in plan order.
+     */
+    public void reset(Iterable<? extends Node> plan) {
+        clear();
+        List<NodeState> planStates = Lists.newArrayList();
+        for (Node node : plan) {
+            NodeState state = new NodeState(node, planStates.size());
+            states.put(node, state);
+            planStates.add(state);
+        }
+        for (NodeState state : planStates) {
+            for (Node successor : state.node.getAllSuccessors()) {
+                // Every occurrence of a successor is counted, so that the counts are decremented consistently
+                getOrCreateState(successor).dependents.add(state);
+                if (!successor.isComplete()) {
+                    state.incompleteSuccessors++;
+                }
+            }
+        }
+        // The dependents of a node come after it in the plan
+        for (int i = planStates.size() - 1; i >= 0; i--) {
+            NodeState state = planStates.get(i);
+            long longestDependentPath = 0;
+            for (NodeState dependent : state.dependents) {
+                longestDependentPath = Math.max(longestDependentPath, dependent.criticalPath);
+            }
+            state.criticalPath = durationEstimator.estimateDuration(state.node) + longestDependentPath;
+        }
+        for (NodeState state : planStates) {
+            maybeReady(state);
+        }
+    }
+
+    /**
+     * Returns the ready nodes, in the order in which they should be started.
+     */
+    @Override
+    public Iterator<Node> iterator() {
+        return Iterators.transform(readyNodes.iterator(), TO_NODE);
+    }
+
+    /**
+     * Removes a node which has been selected for execution, and which is not a candidate for selection any more.
+     */
+    public void remove(Node node) {
+        NodeState state = states.get(node);
+        if (state != null) {
+            state.selected = true;
+            readyNodes.remove(state);
+        }
+    }
+
+    /**
+     * Records that the given node has completed, which may make its dependents ready.
+     */
+    public void nodeCompleted(Node node) {
+        NodeState state = states.get(node);
+        if (state == null) {
+            return;
+        }
+        readyNodes.remove(state);
+        for (NodeState dependent : state.dependents) {
+            if (--dependent.incompleteSuccessors == 0) {
+                maybeReady(dependent);
+            }
+        }
+    }
+
+    /**
+     * Records that the given node, which was complete without running, has to run after all.
+     */
+    public void nodeEnforced(Node node) {
+        NodeState state = states.get(node);
+        if (state == null) {
+            return;
+        }
+        for (NodeState dependent : state.dependents) {
+            if (dependent.incompleteSuccessors++ == 0) {
+                readyNodes.remove(dependent);
+            }
+        }
+        maybeReady(state);
+    }
+
+    public void clear() {
+        states.clear();
+        readyNodes.clear();
+    }
+
+    private void maybeReady(NodeState state) {
+        if (state.position >= 0 && !state.selected && state.incompleteSuccessors == 0 && state.node.isReady()) {
+            readyNodes.add(state);
+        }
+    }
+
+    private NodeState getOrCreateState(Node node) {
+        NodeState state = states.get(node);
+        if (state == null) {
+            // A successor which is not part of the plan is never selected itself
+            state = new NodeState(node, -1);
+            states.put(node, state);
+        }
+        return state;
+    }
+
+    private static class NodeState {
+        private final Node node;
+        private final int position;
+        private final List<NodeState> dependents = Lists.newArrayList();
+        private int incompleteSuccessors;
+        private long criticalPath;
+        private boolean selected;
+
+        private NodeState(Node node, int position) {
+            this.node = node;
+            this.position = position;
+        }
+    }
+}
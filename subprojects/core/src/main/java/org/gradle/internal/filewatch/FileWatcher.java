@@ -39,4 +39,12 @@ public interface FileWatcher extends Stoppable {
     boolean isRunning();
 
     void watch(FileSystemSubset fileSystemSubset) throws IOException;
+
+    /**
+     * Delivers the events which have been received for the watched locations but not delivered yet, on the calling thread.
+     * Returns once the events which are being delivered on another thread have been delivered as well.
+     * <p>
+     * Changes are only included once the operating system has reported them to the watcher.
+     */
+    void flush();
 }
@@ -33,10 +33,13 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class WatchServiceFileWatcherBacking {
 
@@ -46,6 +49,8 @@ public class WatchServiceFileWatcherBacking {
     private final AtomicBoolean running = new AtomicBoolean();
     private final AtomicBoolean stopped = new AtomicBoolean();
     private final AtomicReference<SoftReference<Thread>> pollerThreadReference = new AtomicReference<SoftReference<Thread>>();
+    // Held while the events taken from a watch key are delivered, so that a flush can wait for the events the poller thread has taken
+    private final Lock deliveryLock = new ReentrantLock();
 
     private final Action<? super Throwable> onError;
     private final WatchServiceRegistrar watchServiceRegistrar;
@@ -63,6 +68,11 @@ public class WatchServiceFileWatcherBacking {
             WatchServiceFileWatcherBacking.this.watchServiceRegistrar.watch(fileSystemSubset);
         }
 
+        @Override
+        public void flush() {
+            WatchServiceFileWatcherBacking.this.flush();
+        }
+
         @Override
         public void stop() {
             WatchServiceFileWatcherBacking.this.stop();
@@ -127,9 +137,14 @@ public class WatchServiceFileWatcherBacking {
     private void pumpEvents() throws InterruptedException {
         while (isRunning()) {
             try {
-                List<FileWatcherEvent> events = poller.takeEvents();
-                if (events != null) {
-                    deliverEvents(events);
+                WatchKey watchKey = poller.takeWatchKey();
+                if (watchKey != null) {
+                    deliveryLock.lock();
+                    try {
+                        deliverEvents(poller.handleWatchKey(watchKey));
+                    } finally {
+                        deliveryLock.unlock();
+                    }
                 }
             } catch (ClosedWatchServiceException e) {
                 LOGGER.debug("Received ClosedWatchServiceException, stopping");
@@ -138,6 +153,19 @@ public class WatchServiceFileWatcherBacking {
         }
     }
 
+    private void flush() {
+        if (!running.get()) {
+            return;
+        }
+        // Waits for the poller thread to deliver the events it has taken, and then takes the pending events from every watched directory
+        deliveryLock.lock();
+        try {
+            deliverEvents(poller.pollPendingEvents(watchServiceRegistrar.getWatchKeys()));
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
     private void deliverEvents(List<FileWatcherEvent> events) {
         for (FileWatcherEvent event : events) {
             if (!isRunning()) {
@@ -29,6 +29,7 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -42,17 +43,38 @@ class WatchServicePoller {
     }
 
     @Nullable
-    public List<FileWatcherEvent> takeEvents() throws InterruptedException {
-        WatchKey watchKey = watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
-        if (watchKey != null) {
-            return handleWatchKey(watchKey);
-        }
-        return null;
+    public WatchKey takeWatchKey() throws InterruptedException {
+        return watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
     }
 
-    private List<FileWatcherEvent> handleWatchKey(WatchKey watchKey) {
+    public List<FileWatcherEvent> handleWatchKey(WatchKey watchKey) {
         final Path watchedPath = (Path) watchKey.watchable();
-        Transformer<FileWatcherEvent, WatchEvent<?>> watchEventTransformer = new Transformer<FileWatcherEvent, WatchEvent<?>>() {
+        List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
+        boolean valid = watchKey.reset();
+        if (watchEvents.isEmpty()) {
+            // The events of a valid key may already have been taken by pollPendingEvents()
+            return valid ? Collections.<FileWatcherEvent>emptyList() : Collections.singletonList(FileWatcherEvent.delete(watchedPath.toFile()));
+        } else {
+            return CollectionUtils.collect(watchEvents, watchEventTransformer(watchedPath));
+        }
+    }
+
+    /**
+     * Takes the events which are pending for the given keys, without waiting for the keys to be signalled.
+     */
+    public List<FileWatcherEvent> pollPendingEvents(Iterable<WatchKey> watchKeys) {
+        List<FileWatcherEvent> events = new ArrayList<FileWatcherEvent>();
+        for (WatchKey watchKey : watchKeys) {
+            List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
+            if (!watchEvents.isEmpty()) {
+                CollectionUtils.collect(watchEvents, events, watchEventTransformer((Path) watchKey.watchable()));
+            }
+        }
+        return events;
+    }
+
+    private Transformer<FileWatcherEvent, WatchEvent<?>> watchEventTransformer(final Path watchedPath) {
+        return new Transformer<FileWatcherEvent, WatchEvent<?>>() {
             @Override
             public FileWatcherEvent transform(WatchEvent<?> event) {
                 WatchEvent.Kind kind = event.kind();
@@ -64,14 +86,6 @@ class WatchServicePoller {
                 return toEvent(kind, file);
             }
         };
-
-        List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
-        watchKey.reset();
-        if (watchEvents.isEmpty()) {
-            return Collections.singletonList(FileWatcherEvent.delete(watchedPath.toFile()));
-        } else {
-            return CollectionUtils.collect(watchEvents, watchEventTransformer);
-        }
     }
 
     private FileWatcherEvent toEvent(WatchEvent.Kind kind, File file) {
@@ -40,6 +40,7 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -125,6 +126,15 @@ class WatchServiceRegistrar implements FileWatcherListener {
         }
     }
 
+    List<WatchKey> getWatchKeys() {
+        lock.lock();
+        try {
+            return new ArrayList<WatchKey>(watchKeys.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private Iterable<File> getCurrentWatchPoints() {
         List<File> currentWatchPoints = new LinkedList<File>();
         for (Map.Entry<Path, WatchKey> entry : watchKeys.entrySet()) {
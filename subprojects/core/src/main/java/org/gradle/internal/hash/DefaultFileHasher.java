@@ -19,21 +19,57 @@ import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.internal.IoActions;
 import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.os.OperatingSystem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 
 public class DefaultFileHasher implements FileHasher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileHasher.class);
+
+    /**
+     * The minimum size in bytes of the files to hash by mapping them into memory. Files are always hashed by reading them when not set.
+     */
+    public static final String MAPPED_HASHING_THRESHOLD_PROPERTY = "org.gradle.internal.hash.mapped-hashing-threshold";
+
     private final StreamHasher streamHasher;
+    private final long mappedHashingThreshold;
 
     public DefaultFileHasher(StreamHasher streamHasher) {
+        this(streamHasher, mappedHashingThresholdFromSystemProperties());
+    }
+
+    /**
+     * @param mappedHashingThreshold the minimum size of the files to hash by mapping them into memory, or a negative value to never map files.
+     */
+    public DefaultFileHasher(StreamHasher streamHasher, long mappedHashingThreshold) {
         this.streamHasher = streamHasher;
+        this.mappedHashingThreshold = mappedHashingThreshold;
+    }
+
+    private static long mappedHashingThresholdFromSystemProperties() {
+        // Mapped files stay locked until the mapping is garbage collected on Windows, which would prevent tasks from deleting or replacing them
+        if (OperatingSystem.current().isWindows()) {
+            return -1;
+        }
+        return Long.getLong(MAPPED_HASHING_THRESHOLD_PROPERTY, -1);
     }
 
     @Override
     public HashCode hash(File file) {
+        if (mappedHashingThreshold >= 0 && file.length() >= mappedHashingThreshold) {
+            return hashMapped(file);
+        }
+        return hashStream(file);
+    }
+
+    private HashCode hashStream(File file) {
         try {
             InputStream inputStream = new FileInputStream(file);
             try {
@@ -42,13 +78,36 @@ public class DefaultFileHasher implements FileHasher {
                 IoActions.closeQuietly(inputStream);
             }
         } catch (FileNotFoundException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s' as it does not exist.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
         }
     }
 
+    private HashCode hashMapped(File file) {
+        RandomAccessFile randomAccessFile;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s' as it does not exist.", file), e);
+        }
+        try {
+            return streamHasher.hashMapped(randomAccessFile.getChannel());
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Failed to create hash for file '%s'.", file), e);
+        } catch (InternalError e) {
+            // Accessing a mapped region fails with a SIGBUS, reported as an InternalError, when the file is truncated while it is being hashed
+            LOGGER.debug("Could not hash file '{}' by mapping it into memory, reading it instead.", file, e);
+        } finally {
+            IoActions.closeQuietly(randomAccessFile);
+        }
+        return hashStream(file);
+    }
+
     @Override
     public HashCode hash(File file, FileMetadataSnapshot fileDetails) {
-        return hash(file);
+        if (mappedHashingThreshold >= 0 && fileDetails.getLength() >= mappedHashingThreshold) {
+            return hashMapped(file);
+        }
+        return hashStream(file);
     }
 
     @Override
@@ -21,20 +21,32 @@ import org.gradle.internal.io.NullOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 
 public class DefaultStreamHasher implements StreamHasher {
     private static final HashCode SIGNATURE = Hashing.signature(DefaultStreamHasher.class);
+    private static final long MAX_MAPPED_REGION_SIZE = 256 * 1024 * 1024;
 
     private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private final HashFunction hashFunction;
+
+    public DefaultStreamHasher() {
+        this(Hashing.defaultFunction());
+    }
+
+    public DefaultStreamHasher(HashFunction hashFunction) {
+        this.hashFunction = hashFunction;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream, NullOutputStream.INSTANCE);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException("Failed to create hash for file content.", e);
         }
     }
 
@@ -43,10 +55,26 @@ public class DefaultStreamHasher implements StreamHasher {
         return doHash(inputStream, outputStream);
     }
 
+    @Override
+    public HashCode hashMapped(FileChannel channel) throws IOException {
+        PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
+        hasher.putHash(SIGNATURE);
+        long size = channel.size();
+        long position = 0;
+        // Map the file in regions, so that large files do not take up too much address space at once
+        while (position < size) {
+            long regionSize = Math.min(MAX_MAPPED_REGION_SIZE, size - position);
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+            hasher.putBytes(region);
+            position += regionSize;
+        }
+        return hasher.hash();
+    }
+
     private HashCode doHash(InputStream inputStream, OutputStream outputStream) throws IOException {
         byte[] buffer = takeBuffer();
         try {
-            PrimitiveHasher hasher = Hashing.newPrimitiveHasher();
+            PrimitiveHasher hasher = hashFunction.newPrimitiveHasher();
             hasher.putHash(SIGNATURE);
             while (true) {
                 int nread = inputStream.read(buffer);
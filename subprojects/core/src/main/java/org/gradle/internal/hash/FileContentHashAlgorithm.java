@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash;
+
+/**
+ * The hash function used to hash the content of files for fingerprints and for the file hash caches.
+ *
+ * File content hashes contribute to build cache keys, which are shared with other machines via remote build caches.
+ * The algorithm is part of the cache key, so builds using different algorithms never use each other's build cache entries.
+ */
+public enum FileContentHashAlgorithm {
+    MD5("md5", Hashing.md5()),
+    /**
+     * A faster, non-cryptographic hash function. It does not protect against deliberately constructed collisions,
+     * so it should only be used when the inputs of the build are not crafted by an untrusted party.
+     */
+    MURMUR3("murmur3", Hashing.murmur3());
+
+    public static final String ALGORITHM_PROPERTY = "org.gradle.internal.hash.file-content-algorithm";
+
+    private final String id;
+    private final HashFunction hashFunction;
+
+    FileContentHashAlgorithm(String id, HashFunction hashFunction) {
+        this.id = id;
+        this.hashFunction = hashFunction;
+    }
+
+    public static FileContentHashAlgorithm fromSystemProperties() {
+        String value = System.getProperty(ALGORITHM_PROPERTY);
+        if (value == null) {
+            return MD5;
+        }
+        for (FileContentHashAlgorithm algorithm : values()) {
+            if (algorithm.id.equalsIgnoreCase(value.trim())) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported file content hash algorithm '%s' specified by system property '%s'.", value, ALGORITHM_PROPERTY));
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Adds this algorithm to the hash of a build cache key. The keys based on MD5 stay the same as before the algorithm could be selected.
+     */
+    public void appendToCacheKey(Hasher hasher) {
+        if (this != MD5) {
+            hasher.putString(id);
+        }
+    }
+
+    /**
+     * Returns the name to use for a persistent cache of hashes created with this algorithm, so that hashes created by different algorithms are never mixed.
+     */
+    public String getCacheName(String baseName) {
+        return this == MD5 ? baseName : baseName + "-" + id;
+    }
+}
@@ -17,6 +17,7 @@ package org.gradle.internal.service.scopes;
 
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.state.DefaultExecutionHistoryCacheAccess;
+import org.gradle.api.internal.tasks.execution.statistics.TaskExecutionDurationHistory;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
@@ -26,12 +27,14 @@ import org.gradle.cache.internal.InMemoryCacheDecoratorFactory;
 import org.gradle.caching.internal.command.BuildCacheCommandFactory;
 import org.gradle.caching.internal.controller.BuildCacheController;
 import org.gradle.execution.plan.DefaultPlanExecutor;
+import org.gradle.execution.plan.NodeDurationEstimator;
 import org.gradle.execution.plan.PlanExecutor;
 import org.gradle.initialization.BuildCancellationToken;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.concurrent.ParallelismConfigurationManager;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
+import org.gradle.internal.execution.OutputChangeRecorder;
 import org.gradle.internal.execution.Result;
 import org.gradle.internal.execution.WorkExecutor;
 import org.gradle.internal.execution.history.ExecutionHistoryCacheAccess;
@@ -57,6 +60,7 @@ import org.gradle.internal.execution.impl.steps.UpToDateResult;
 import org.gradle.internal.execution.timeout.TimeoutHandler;
 import org.gradle.internal.resources.ResourceLockCoordinationService;
 import org.gradle.internal.scopeids.id.BuildInvocationScopeId;
+import org.gradle.internal.time.Clock;
 import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.util.GradleVersion;
 
@@ -84,6 +88,20 @@ public class ExecutionServices {
         return new DefaultOutputFilesRepository(cacheAccess, inMemoryCacheDecoratorFactory);
     }
 
+    NodeDurationEstimator createNodeDurationEstimator(CacheRepository cacheRepository, Gradle gradle, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, ListenerManager listenerManager, Clock clock) {
+        if (!TaskExecutionDurationHistory.isEnabled()) {
+            return NodeDurationEstimator.NONE;
+        }
+        PersistentCache cacheAccess = cacheRepository
+            .cache(gradle, "taskDurations")
+            .withDisplayName("task duration history")
+            .withLockOptions(mode(FileLockManager.LockMode.None)) // Lock on demand
+            .open();
+        TaskExecutionDurationHistory durationHistory = new TaskExecutionDurationHistory(cacheAccess, inMemoryCacheDecoratorFactory, clock);
+        listenerManager.addListener(durationHistory);
+        return durationHistory;
+    }
+
     PlanExecutor createPlanExecutor(
         ParallelismConfigurationManager parallelismConfigurationManager,
         ExecutorFactory executorFactory,
@@ -115,6 +133,7 @@ public class ExecutionServices {
         BuildInvocationScopeId buildInvocationScopeId,
         BuildCancellationToken cancellationToken,
         OutputChangeListener outputChangeListener,
+        OutputChangeRecorder outputChangeRecorder,
         OutputFilesRepository outputFilesRepository,
         TimeoutHandler timeoutHandler
     ) {
@@ -128,7 +147,7 @@ public class ExecutionServices {
                                     new CatchExceptionStep<Context>(
                                         new TimeoutStep<Context>(timeoutHandler,
                                             new CancelExecutionStep<Context>(cancellationToken,
-                                                new ExecuteStep(outputChangeListener)
+                                                new ExecuteStep(outputChangeListener, outputChangeRecorder)
                                             )
                                         )
                                     )
@@ -83,6 +83,7 @@ import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.filewatch.DefaultFileWatcherFactory;
 import org.gradle.internal.filewatch.FileWatcherFactory;
 import org.gradle.internal.hash.DefaultStreamHasher;
+import org.gradle.internal.hash.FileContentHashAlgorithm;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.installation.CurrentGradleInstallation;
 import org.gradle.internal.installation.GradleRuntimeShadedJarDetector;
@@ -106,6 +107,8 @@ import org.gradle.internal.service.CachingServiceLocator;
 import org.gradle.internal.service.DefaultServiceLocator;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
+import org.gradle.internal.snapshot.impl.DirectoryWalkerPool;
+import org.gradle.internal.snapshot.impl.FileHashingExecutor;
 import org.gradle.internal.time.Clock;
 import org.gradle.internal.time.Time;
 import org.gradle.model.internal.inspect.MethodModelRuleExtractor;
@@ -292,6 +295,14 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
         return new DefaultImportsReader();
     }
 
+    FileHashingExecutor createFileHashingExecutor(ExecutorFactory executorFactory) {
+        return new FileHashingExecutor(executorFactory);
+    }
+
+    DirectoryWalkerPool createDirectoryWalkerPool() {
+        return new DirectoryWalkerPool();
+    }
+
     FileWatcherFactory createFileWatcherFactory(ExecutorFactory executorFactory, FileSystem fileSystem) {
         return new DefaultFileWatcherFactory(executorFactory, fileSystem);
     }
@@ -369,8 +380,12 @@ public class GlobalScopeServices extends BasicGlobalScopeServices {
         return new DefaultTaskClassInfoStore(cacheFactory);
     }
 
-    StreamHasher createStreamHasher() {
-        return new DefaultStreamHasher();
+    FileContentHashAlgorithm createFileContentHashAlgorithm() {
+        return FileContentHashAlgorithm.fromSystemProperties();
+    }
+
+    StreamHasher createStreamHasher(FileContentHashAlgorithm fileContentHashAlgorithm) {
+        return new DefaultStreamHasher(fileContentHashAlgorithm.getHashFunction());
     }
 
     Clock createClock() {
@@ -23,12 +23,14 @@ import org.gradle.api.internal.DefaultClassPathRegistry;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.internal.changedetection.state.CachingFileHasher;
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache;
+import org.gradle.api.internal.changedetection.state.CrossBuildResourceHashCache;
 import org.gradle.api.internal.changedetection.state.DefaultFileAccessTimeJournal;
 import org.gradle.api.internal.changedetection.state.DefaultResourceSnapshotterCacheService;
 import org.gradle.api.internal.changedetection.state.DefaultWellKnownFileLocations;
 import org.gradle.api.internal.changedetection.state.GlobalScopeFileTimeStampInspector;
 import org.gradle.api.internal.changedetection.state.ResourceFilter;
 import org.gradle.api.internal.changedetection.state.ResourceSnapshotterCacheService;
+import org.gradle.api.internal.changedetection.state.WatchingFileSystemMirrorRetention;
 import org.gradle.api.internal.classpath.ModuleRegistry;
 import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.initialization.loadercache.ClassLoaderCache;
@@ -36,8 +38,6 @@ import org.gradle.api.internal.initialization.loadercache.DefaultClassLoaderCach
 import org.gradle.api.internal.initialization.loadercache.DefaultClasspathHasher;
 import org.gradle.api.internal.model.NamedObjectInstantiator;
 import org.gradle.cache.CacheRepository;
-import org.gradle.cache.PersistentIndexedCache;
-import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.CacheRepositoryServices;
 import org.gradle.cache.internal.CacheScopeMapping;
 import org.gradle.cache.internal.CrossBuildInMemoryCacheFactory;
@@ -65,6 +65,7 @@ import org.gradle.internal.classpath.DefaultCachedClasspathTransformer;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.execution.OutputChangeListener;
+import org.gradle.internal.execution.OutputChangeRecorder;
 import org.gradle.internal.execution.Result;
 import org.gradle.internal.execution.WorkExecutor;
 import org.gradle.internal.execution.history.OutputFilesRepository;
@@ -83,11 +84,12 @@ import org.gradle.internal.execution.impl.steps.UpToDateResult;
 import org.gradle.internal.execution.timeout.TimeoutHandler;
 import org.gradle.internal.execution.timeout.impl.DefaultTimeoutHandler;
 import org.gradle.internal.file.JarCache;
+import org.gradle.internal.filewatch.FileWatcherFactory;
 import org.gradle.internal.fingerprint.classpath.ClasspathFingerprinter;
 import org.gradle.internal.fingerprint.classpath.impl.DefaultClasspathFingerprinter;
 import org.gradle.internal.hash.DefaultFileHasher;
+import org.gradle.internal.hash.FileContentHashAlgorithm;
 import org.gradle.internal.hash.FileHasher;
-import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.hash.StreamHasher;
 import org.gradle.internal.id.LongIdGenerator;
 import org.gradle.internal.id.UniqueId;
@@ -97,7 +99,6 @@ import org.gradle.internal.logging.events.OutputEventListener;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.remote.MessagingServer;
 import org.gradle.internal.resource.local.FileAccessTimeJournal;
-import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
 import org.gradle.internal.snapshot.FileSystemMirror;
@@ -106,7 +107,10 @@ import org.gradle.internal.snapshot.FileSystemSnapshotter;
 import org.gradle.internal.snapshot.ValueSnapshotter;
 import org.gradle.internal.snapshot.WellKnownFileLocations;
 import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror;
+import org.gradle.internal.snapshot.impl.DirectorySnapshotEncoding;
 import org.gradle.internal.snapshot.impl.DefaultFileSystemSnapshotter;
+import org.gradle.internal.snapshot.impl.DirectoryWalkerPool;
+import org.gradle.internal.snapshot.impl.FileHashingExecutor;
 import org.gradle.internal.snapshot.impl.DefaultValueSnapshotter;
 import org.gradle.process.internal.JavaExecHandleFactory;
 import org.gradle.process.internal.health.memory.MemoryManager;
@@ -151,8 +155,8 @@ public class GradleUserHomeScopeServices {
         return timeStampInspector;
     }
 
-    FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher) {
-        CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
+    FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector, StreamHasher streamHasher, FileContentHashAlgorithm fileContentHashAlgorithm) {
+        CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(streamHasher), fileStore, stringInterner, fileTimeStampInspector, fileContentHashAlgorithm.getCacheName("fileHashes"), fileSystem);
         fileTimeStampInspector.attach(fileHasher);
         return fileHasher;
     }
@@ -177,8 +181,10 @@ public class GradleUserHomeScopeServices {
         return new DefaultWellKnownFileLocations(fileStores);
     }
 
-    FileSystemMirror createFileSystemMirror(ListenerManager listenerManager, WellKnownFileLocations wellKnownFileLocations) {
-        final DefaultFileSystemMirror fileSystemMirror = new DefaultFileSystemMirror(wellKnownFileLocations);
+    FileSystemMirror createFileSystemMirror(ListenerManager listenerManager, WellKnownFileLocations wellKnownFileLocations, FileWatcherFactory fileWatcherFactory) {
+        final DefaultFileSystemMirror fileSystemMirror = new DefaultFileSystemMirror(wellKnownFileLocations, DirectorySnapshotEncoding.fromSystemProperties());
+        final WatchingFileSystemMirrorRetention retention = new WatchingFileSystemMirrorRetention(fileSystemMirror, fileWatcherFactory);
+        fileSystemMirror.setRetainedLocationListener(retention);
         listenerManager.addListener(new OutputChangeListener() {
             @Override
             public void beforeOutputChange() {
@@ -193,26 +199,27 @@ public class GradleUserHomeScopeServices {
         listenerManager.addListener(new RootBuildLifecycleListener() {
             @Override
             public void afterStart() {
+                retention.beforeBuildStarted();
             }
 
             @Override
             public void beforeComplete() {
-                fileSystemMirror.beforeBuildFinished();
+                retention.beforeBuildFinished();
             }
         });
         return fileSystemMirror;
     }
 
-    FileSystemSnapshotter createFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, FileSystemMirror fileSystemMirror) {
-        return new DefaultFileSystemSnapshotter(hasher, stringInterner, fileSystem, fileSystemMirror, DirectoryScanner.getDefaultExcludes());
+    FileSystemSnapshotter createFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, FileSystemMirror fileSystemMirror, FileHashingExecutor fileHashingExecutor, DirectoryWalkerPool directoryWalkerPool) {
+        return new DefaultFileSystemSnapshotter(hasher, stringInterner, fileSystem, fileSystemMirror, fileHashingExecutor.getExecutor(), directoryWalkerPool.getPool(), DirectoryScanner.getDefaultExcludes());
     }
 
-    ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildFileHashCache store) {
-        PersistentIndexedCache<HashCode, HashCode> resourceHashesCache = store.createCache(
-            PersistentIndexedCacheParameters.of("resourceHashesCache", HashCode.class, new HashCodeSerializer()),
-            400000,
-            true);
-        return new DefaultResourceSnapshotterCacheService(resourceHashesCache);
+    CrossBuildResourceHashCache createCrossBuildResourceHashCache(CacheRepository cacheRepository) {
+        return new CrossBuildResourceHashCache(cacheRepository);
+    }
+
+    ResourceSnapshotterCacheService createResourceSnapshotterCacheService(CrossBuildResourceHashCache store) {
+        return new DefaultResourceSnapshotterCacheService(store.getResourceHashes());
     }
 
     ClasspathFingerprinter createClasspathFingerprinter(ResourceSnapshotterCacheService resourceSnapshotterCacheService, FileSystemSnapshotter fileSystemSnapshotter, StringInterner stringInterner) {
@@ -312,7 +319,7 @@ public class GradleUserHomeScopeServices {
                             new CreateOutputsStep<Context, Result>(
                                 new CatchExceptionStep<Context>(
                                     new TimeoutStep<Context>(timeoutHandler,
-                                        new ExecuteStep(outputChangeListener)
+                                        new ExecuteStep(outputChangeListener, OutputChangeRecorder.NO_OP)
                                     )
                                 )
                             )
@@ -68,4 +68,45 @@ class AbstractTaskSpec extends AbstractProjectBuilderSpec {
         then:
         task.hasCustomActions
     }
+
+    def "fails when the project is accessed from actions which run without the project lock"() {
+        given:
+        def task = createTask("task")
+        task.runsActionsWithoutProjectLock = true
+        task.state.runningActionsWithoutProjectLock = true
+
+        when:
+        task.project
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "Cannot call Task.getProject() from the actions of task ':task', as the actions of this task run without the project lock."
+
+        when:
+        task.ant
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        task.outputs.files.files
+
+        then:
+        noExceptionThrown()
+    }
+
+    def "can access the project from other threads while actions run without the project lock"() {
+        given:
+        def task = createTask("task")
+        task.state.runningActionsWithoutProjectLock = true
+        def accessedProject = null
+
+        when:
+        def thread = new Thread({ accessedProject = task.project })
+        thread.start()
+        thread.join()
+
+        then:
+        accessedProject == project
+    }
 }
@@ -52,6 +52,7 @@ import org.gradle.internal.fingerprint.FileCollectionFingerprinter
 import org.gradle.internal.fingerprint.impl.AbsolutePathFileCollectionFingerprinter
 import org.gradle.internal.fingerprint.impl.DefaultFileCollectionFingerprinterRegistry
 import org.gradle.internal.fingerprint.impl.OutputFileCollectionFingerprinter
+import org.gradle.internal.hash.FileContentHashAlgorithm
 import org.gradle.internal.hash.HashCode
 import org.gradle.internal.hash.TestFileHasher
 import org.gradle.internal.id.UniqueId
@@ -98,7 +99,7 @@ class DefaultTaskArtifactStateRepositoryTest extends AbstractProjectBuilderSpec
     OutputFilesRepository taskOutputFilesRepository = Stub(OutputFilesRepository)
     final originMetadata = new OriginMetadata(buildScopeId.id, 1)
     def taskExecutionContext = Mock(TaskExecutionContext)
-    def taskCacheKeyCalculator = new TaskCacheKeyCalculator(false)
+    def taskCacheKeyCalculator = new TaskCacheKeyCalculator(false, FileContentHashAlgorithm.MD5)
 
     def setup() {
         gradle = project.getGradle()
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.Action
+import org.gradle.internal.filewatch.FileWatcher
+import org.gradle.internal.filewatch.FileWatcherEvent
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.filewatch.FileWatcherListener
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot
+import org.gradle.internal.snapshot.WellKnownFileLocations
+import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.Requires
+import org.gradle.util.SetSystemProperties
+import org.gradle.util.TestPrecondition
+import org.junit.Rule
+import spock.lang.Specification
+
+@Requires(TestPrecondition.NOT_MAC_OS_X)
+class WatchingFileSystemMirrorRetentionTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    @Rule
+    SetSystemProperties systemProperties = new SetSystemProperties()
+
+    def fileWatcher = Mock(FileWatcher)
+    def fileWatcherFactory = Mock(FileWatcherFactory)
+    def mirror = new DefaultFileSystemMirror(Stub(WellKnownFileLocations))
+    def retention = new WatchingFileSystemMirrorRetention(mirror, fileWatcherFactory)
+
+    def dir = tmpDir.createDir("dir")
+    def file = dir.file("a")
+    def fileSnapshot = Stub(FileSystemLocationSnapshot) {
+        getAbsolutePath() >> file.path
+    }
+    def otherFile = dir.file("b")
+    def otherSnapshot = Stub(FileSystemLocationSnapshot) {
+        getAbsolutePath() >> otherFile.path
+    }
+
+    FileWatcherListener listener
+    Action<? super Throwable> onError
+
+    def setup() {
+        mirror.setRetainedLocationListener(retention)
+    }
+
+    def "discards all state at the end of the build when retention is disabled"() {
+        given:
+        mirror.putSnapshot(fileSnapshot)
+
+        when:
+        retention.beforeBuildFinished()
+
+        then:
+        0 * fileWatcherFactory._
+        mirror.getSnapshot(file.path) == null
+    }
+
+    def "watches location when its state is added"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+
+        when:
+        mirror.putSnapshot(fileSnapshot)
+
+        then:
+        1 * fileWatcherFactory.watch(_, _) >> fileWatcher
+        1 * fileWatcher.watch({ it.contains(dir) })
+
+        when:
+        mirror.putSnapshot(otherSnapshot)
+
+        then:
+        0 * fileWatcherFactory._
+        0 * fileWatcher.watch(_)
+    }
+
+    def "discards state added before its location was watched"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcherFactory.watch(_, _) >> fileWatcher
+        mirror.putSnapshot(fileSnapshot)
+
+        when:
+        retention.beforeBuildFinished()
+
+        then:
+        mirror.getSnapshot(file.path) == null
+    }
+
+    def "retains state until file system events invalidate it"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcher.isRunning() >> true
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.listener = listener
+            return fileWatcher
+        }
+        mirror.putSnapshot(fileSnapshot)
+        retention.beforeBuildFinished()
+        retention.beforeBuildStarted()
+        mirror.putSnapshot(fileSnapshot)
+        mirror.putSnapshot(otherSnapshot)
+
+        when:
+        retention.beforeBuildFinished()
+
+        then:
+        1 * fileWatcher.flush()
+        0 * fileWatcher.watch(_)
+        mirror.getSnapshot(file.path) == fileSnapshot
+        mirror.getSnapshot(otherFile.path) == otherSnapshot
+
+        when:
+        listener.onChange(fileWatcher, FileWatcherEvent.modify(file))
+        retention.beforeBuildStarted()
+
+        then:
+        1 * fileWatcher.flush()
+        mirror.getSnapshot(file.path) == null
+        mirror.getSnapshot(otherFile.path) == otherSnapshot
+    }
+
+    def "delivers pending events before retained state is used"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcher.isRunning() >> true
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.listener = listener
+            return fileWatcher
+        }
+        mirror.putSnapshot(fileSnapshot)
+        retention.beforeBuildFinished()
+        retention.beforeBuildStarted()
+        mirror.putSnapshot(fileSnapshot)
+        retention.beforeBuildFinished()
+
+        when:
+        retention.beforeBuildStarted()
+
+        then:
+        1 * fileWatcher.flush() >> { listener.onChange(fileWatcher, FileWatcherEvent.delete(file)) }
+        mirror.getSnapshot(file.path) == null
+    }
+
+    def "discards state for locations changed during the build"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcher.isRunning() >> true
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.listener = listener
+            return fileWatcher
+        }
+        mirror.putSnapshot(fileSnapshot)
+        retention.beforeBuildFinished()
+        retention.beforeBuildStarted()
+
+        when:
+        listener.onChange(fileWatcher, FileWatcherEvent.modify(file))
+        // State which was captured before the change was delivered
+        mirror.putSnapshot(fileSnapshot)
+        mirror.putSnapshot(otherSnapshot)
+        retention.beforeBuildFinished()
+
+        then:
+        mirror.getSnapshot(file.path) == null
+        mirror.getSnapshot(otherFile.path) == otherSnapshot
+    }
+
+    def "discards all state when events have been lost"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.listener = listener
+            return fileWatcher
+        }
+        mirror.putSnapshot(fileSnapshot)
+        mirror.putSnapshot(otherSnapshot)
+
+        when:
+        listener.onChange(fileWatcher, FileWatcherEvent.undefined())
+
+        then:
+        mirror.getSnapshot(file.path) == null
+        mirror.getSnapshot(otherFile.path) == null
+    }
+
+    def "discards all state when watcher fails"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+        _ * fileWatcherFactory.watch(_, _) >> { Action<? super Throwable> onError, FileWatcherListener listener ->
+            this.onError = onError
+            return fileWatcher
+        }
+        mirror.putSnapshot(fileSnapshot)
+
+        when:
+        onError.execute(new RuntimeException("broken"))
+
+        then:
+        mirror.getSnapshot(file.path) == null
+
+        when:
+        mirror.putSnapshot(fileSnapshot)
+        retention.beforeBuildFinished()
+
+        then:
+        1 * fileWatcher.stop()
+        mirror.getSnapshot(file.path) == null
+    }
+
+    def "discards all state when locations cannot be watched"() {
+        given:
+        System.setProperty(WatchingFileSystemMirrorRetention.RETENTION_PROPERTY, "true")
+
+        when:
+        mirror.putSnapshot(fileSnapshot)
+
+        then:
+        1 * fileWatcherFactory.watch(_, _) >> fileWatcher
+        1 * fileWatcher.watch(_) >> { throw new IOException("broken") }
+        mirror.getSnapshot(file.path) == null
+
+        when:
+        mirror.putSnapshot(otherSnapshot)
+        retention.beforeBuildFinished()
+
+        then:
+        0 * fileWatcher.watch(_)
+        1 * fileWatcher.stop()
+        mirror.getSnapshot(otherFile.path) == null
+    }
+}
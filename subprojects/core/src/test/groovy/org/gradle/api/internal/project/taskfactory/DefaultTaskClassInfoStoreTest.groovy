@@ -18,6 +18,7 @@ package org.gradle.api.internal.project.taskfactory
 
 import org.gradle.api.DefaultTask
 import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.RunsActionsWithoutProjectLock
 import org.gradle.cache.internal.TestCrossBuildInMemoryCacheFactory
 import spock.lang.Specification
 
@@ -39,6 +40,15 @@ class DefaultTaskClassInfoStoreTest extends Specification {
         !taskClassInfoStore.getTaskClassInfo(MyNonCacheableTask).cacheable
     }
 
+    @RunsActionsWithoutProjectLock
+    private static class MyLockFreeTask extends DefaultTask {}
+
+    def "tasks running actions without the project lock are detected"() {
+        expect:
+        taskClassInfoStore.getTaskClassInfo(MyLockFreeTask).runsActionsWithoutProjectLock
+        !taskClassInfoStore.getTaskClassInfo(DefaultTask).runsActionsWithoutProjectLock
+    }
+
 
     private static class NonAnnotatedTask extends DefaultTask {
         File inputFile
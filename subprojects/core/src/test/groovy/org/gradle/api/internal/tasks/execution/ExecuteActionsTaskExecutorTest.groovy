@@ -32,6 +32,7 @@ import org.gradle.initialization.DefaultBuildCancellationToken
 import org.gradle.internal.exceptions.DefaultMultiCauseException
 import org.gradle.internal.exceptions.MultiCauseException
 import org.gradle.internal.execution.OutputChangeListener
+import org.gradle.internal.execution.OutputChangeRecorder
 import org.gradle.internal.execution.impl.DefaultWorkExecutor
 import org.gradle.internal.execution.impl.steps.CancelExecutionStep
 import org.gradle.internal.execution.impl.steps.CatchExceptionStep
@@ -44,6 +45,7 @@ import org.gradle.internal.id.UniqueId
 import org.gradle.internal.operations.BuildOperationContext
 import org.gradle.internal.operations.BuildOperationExecutor
 import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.internal.resources.ProjectLeaseRegistry
 import org.gradle.internal.work.AsyncWorkTracker
 import org.gradle.logging.StandardOutputCapture
 import spock.lang.Specification
@@ -72,13 +74,14 @@ class ExecuteActionsTaskExecutorTest extends Specification {
                 buildId,
                 new CatchExceptionStep<Context>(
                     new CancelExecutionStep<Context>(cancellationToken,
-                        new ExecuteStep(outputChangeListener)
+                        new ExecuteStep(outputChangeListener, OutputChangeRecorder.NO_OP)
                     )
                 )
             )
         )
     )
-    def executer = new ExecuteActionsTaskExecuter(false, buildOperationExecutor, asyncWorkTracker, actionListener, workExecutor)
+    def projectLeaseRegistry = Mock(ProjectLeaseRegistry)
+    def executer = new ExecuteActionsTaskExecuter(false, buildOperationExecutor, asyncWorkTracker, actionListener, workExecutor, projectLeaseRegistry)
 
     def setup() {
         ProjectInternal project = Mock(ProjectInternal)
@@ -165,6 +168,41 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         state.actionable
     }
 
+    def executesActionsWithoutProjectLockWhenTaskRunsActionsWithoutProjectLock() {
+        given:
+        task.getTaskActions() >> [action1]
+        task.hasTaskActions() >> true
+        task.getRunsActionsWithoutProjectLock() >> true
+
+        when:
+        executer.execute(task, state, executionContext)
+
+        then:
+        1 * projectLeaseRegistry.withoutProjectLock(_ as Runnable) >> { args -> args[0].run() }
+        then:
+        1 * standardOutputCapture.start()
+        then:
+        1 * action1.contextualise(executionContext)
+        then:
+        1 * buildOperationExecutor.run(_ as RunnableBuildOperation) >> { args -> args[0].run(Stub(BuildOperationContext)) }
+        then:
+        1 * action1.execute(task) >> {
+            assert state.runningActionsWithoutProjectLock
+        }
+        then:
+        1 * action1.releaseContext()
+        then:
+        1 * asyncWorkTracker.waitForCompletion(_, true)
+        then:
+        1 * standardOutputCapture.stop()
+        then:
+        noMoreInteractions()
+
+        !state.runningActionsWithoutProjectLock
+        state.didWork
+        state.outcome == TaskExecutionOutcome.EXECUTED
+    }
+
     def executeDoesOperateOnNewActionListInstance() {
         given:
         interaction {
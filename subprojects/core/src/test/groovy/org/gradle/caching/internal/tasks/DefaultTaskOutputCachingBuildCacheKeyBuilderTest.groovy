@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks
+
+import org.gradle.internal.hash.FileContentHashAlgorithm
+import org.gradle.internal.hash.HashCode
+import org.gradle.util.Path
+import spock.lang.Specification
+
+class DefaultTaskOutputCachingBuildCacheKeyBuilderTest extends Specification {
+    def "keys differ for different file content hash algorithms"() {
+        expect:
+        key(FileContentHashAlgorithm.MD5) != key(FileContentHashAlgorithm.MURMUR3)
+        key(FileContentHashAlgorithm.MD5) == key(FileContentHashAlgorithm.MD5)
+    }
+
+    def "keys based on MD5 are the same as before the algorithm could be selected"() {
+        expect:
+        key(FileContentHashAlgorithm.MD5) == key(new DefaultTaskOutputCachingBuildCacheKeyBuilder(Path.path(":task")))
+    }
+
+    private static String key(FileContentHashAlgorithm algorithm) {
+        key(new DefaultTaskOutputCachingBuildCacheKeyBuilder(Path.path(":task"), algorithm))
+    }
+
+    private static String key(TaskOutputCachingBuildCacheKeyBuilder builder) {
+        builder.appendInputValuePropertyHash("input", HashCode.fromInt(1))
+        builder.build().hashCode
+    }
+}
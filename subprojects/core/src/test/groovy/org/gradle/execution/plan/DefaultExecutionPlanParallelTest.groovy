@@ -50,11 +50,12 @@ class DefaultExecutionPlanParallelTest extends AbstractProjectBuilderSpec {
 
     DefaultExecutionPlan executionPlan
     def lockSetup = new LockSetup()
+    def durationEstimator = Stub(NodeDurationEstimator)
 
     def setup() {
         def taskNodeFactory = new TaskNodeFactory(project.gradle, Stub(IncludedBuildTaskGraph))
         def dependencyResolver = new TaskDependencyResolver([new TaskNodeDependencyResolver(taskNodeFactory)])
-        executionPlan = new DefaultExecutionPlan(lockSetup.workerLeaseService, project.gradle, taskNodeFactory, dependencyResolver)
+        executionPlan = new DefaultExecutionPlan(lockSetup.workerLeaseService, project.gradle, taskNodeFactory, dependencyResolver, durationEstimator)
     }
 
     def "multiple tasks with async work from the same project can run in parallel"() {
@@ -210,6 +211,54 @@ class DefaultExecutionPlanParallelTest extends AbstractProjectBuilderSpec {
 
     }
 
+    def "task becomes available as soon as its dependencies complete, regardless of the order in which other tasks complete"() {
+        given:
+        Task a = project.task("a", type: Async)
+        Task b = project.task("b", type: Async)
+        Task c = project.task("c", type: Async).dependsOn(a)
+        Task d = project.task("d", type: Async).dependsOn(b)
+
+        when:
+        addToGraphAndPopulate(c, d)
+
+        def firstTaskNode = selectNextTaskNode()
+        def secondTaskNode = selectNextTaskNode()
+        then:
+        [firstTaskNode, secondTaskNode]*.task == [a, b]
+        selectNextTask() == null
+
+        when:
+        executionPlan.nodeComplete(secondTaskNode)
+        then:
+        selectNextTask() == d
+        selectNextTask() == null
+
+        when:
+        executionPlan.nodeComplete(firstTaskNode)
+        then:
+        selectNextTask() == c
+    }
+
+    def "starts the tasks on the longest path first when durations can be estimated"() {
+        given:
+        def durations = [a: 10, b: 100, c: 100, d: 10, e: 10]
+        durationEstimator.estimateDuration(_) >> { Node node -> durations[node.task.name] }
+        Task a = project.task("a", type: Async)
+        Task b = project.task("b", type: Async)
+        Task c = project.task("c", type: Async).dependsOn(b)
+        Task d = project.task("d", type: Async)
+        Task e = project.task("e", type: Async).dependsOn(d)
+
+        when:
+        addToGraphAndPopulate(a, c, e)
+
+        then:
+        selectNextTask() == b
+        selectNextTask() == d
+        selectNextTask() == a
+        selectNextTask() == null
+    }
+
     def "two tasks that have the same file in outputs are not executed in parallel"() {
         def sharedFile = file("output")
 
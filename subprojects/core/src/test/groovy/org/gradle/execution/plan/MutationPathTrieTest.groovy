@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.execution.plan
+
+import spock.lang.Specification
+
+class MutationPathTrieTest extends Specification {
+    def trie = new MutationPathTrie()
+
+    def "detects overlap of #candidate with #paths"() {
+        given:
+        paths.each { trie.add(path(it)) }
+
+        expect:
+        trie.hasOverlap([path(candidate)]) == overlaps
+
+        where:
+        paths                  | candidate   | overlaps
+        []                     | "/a"        | false
+        ["/a/b"]               | "/a/b"      | true
+        ["/a/b"]               | "/a"        | true
+        ["/a"]                 | "/a/b/c"    | true
+        ["/a/b"]               | "/a/bc"     | false
+        ["/a/bc"]              | "/a/b"      | false
+        ["/a/b", "/c"]         | "/a/c"      | false
+        ["/a/b", "/c/d"]       | "/c"        | true
+    }
+
+    def "keeps a path until it has been removed as often as it was added"() {
+        given:
+        trie.add(path("/a/b"))
+        trie.add(path("/a/b"))
+        trie.add(path("/a/c"))
+
+        when:
+        trie.remove(path("/a/b"))
+
+        then:
+        trie.hasOverlap([path("/a/b")])
+
+        when:
+        trie.remove(path("/a/b"))
+
+        then:
+        !trie.hasOverlap([path("/a/b")])
+        trie.hasOverlap([path("/a")])
+
+        when:
+        trie.remove(path("/a/c"))
+        trie.remove(path("/unknown"))
+
+        then:
+        trie.empty
+        !trie.hasOverlap([path("/a")])
+    }
+
+    private static String path(String path) {
+        return path.replace('/' as char, File.separatorChar)
+    }
+}
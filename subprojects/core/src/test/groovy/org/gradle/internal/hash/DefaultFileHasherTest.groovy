@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.hash
+
+import org.gradle.api.UncheckedIOException
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def streamHasher = new DefaultStreamHasher()
+
+    @Unroll
+    def "hashes #length bytes the same when mapping the file into memory"() {
+        def file = tmpDir.file("file")
+        def bytes = new byte[length]
+        new Random(length).nextBytes(bytes)
+        file.bytes = bytes
+
+        expect:
+        new DefaultFileHasher(streamHasher, 0).hash(file) == new DefaultFileHasher(streamHasher, -1).hash(file)
+        new DefaultFileHasher(streamHasher, 0).hash(file) == streamHasher.hash(new ByteArrayInputStream(bytes))
+
+        where:
+        length << [0, 1, 17, 8192, 100000]
+    }
+
+    def "only maps files larger than the threshold"() {
+        def streamHasher = Mock(StreamHasher)
+        def fileHasher = new DefaultFileHasher(streamHasher, 10)
+        def small = tmpDir.file("small") << "small"
+        def large = tmpDir.file("large") << "large enough"
+
+        when:
+        fileHasher.hash(small)
+
+        then:
+        1 * streamHasher.hash(_)
+        0 * streamHasher._
+
+        when:
+        fileHasher.hash(large)
+
+        then:
+        1 * streamHasher.hashMapped(_)
+        0 * streamHasher._
+    }
+
+    def "reads file when mapped file cannot be accessed"() {
+        def streamHasher = Mock(StreamHasher)
+        def fileHasher = new DefaultFileHasher(streamHasher, 0)
+        def file = tmpDir.file("file") << "content"
+        def hash = HashCode.fromInt(1)
+
+        when:
+        def result = fileHasher.hash(file)
+
+        then:
+        1 * streamHasher.hashMapped(_) >> { throw new InternalError("a fault occurred in a recent unsafe memory access operation") }
+        1 * streamHasher.hash(_) >> hash
+        0 * streamHasher._
+        result == hash
+    }
+
+    def "fails to hash missing file when mapping the file into memory"() {
+        def file = tmpDir.file("missing")
+
+        when:
+        new DefaultFileHasher(streamHasher, 0).hash(file)
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.message == "Failed to create hash for file '${file}' as it does not exist."
+    }
+}
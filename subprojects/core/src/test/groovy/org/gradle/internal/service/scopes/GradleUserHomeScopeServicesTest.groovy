@@ -20,6 +20,7 @@ import org.gradle.StartParameter
 import org.gradle.api.internal.ClassPathRegistry
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.changedetection.state.CrossBuildFileHashCache
+import org.gradle.api.internal.changedetection.state.CrossBuildResourceHashCache
 import org.gradle.api.internal.changedetection.state.GlobalScopeFileTimeStampInspector
 import org.gradle.api.internal.classpath.ModuleRegistry
 import org.gradle.api.internal.file.TemporaryFileProvider
@@ -41,6 +42,8 @@ import org.gradle.internal.classpath.CachedClasspathTransformer
 import org.gradle.internal.concurrent.ExecutorFactory
 import org.gradle.internal.concurrent.ParallelismConfigurationManager
 import org.gradle.internal.event.ListenerManager
+import org.gradle.internal.filewatch.FileWatcherFactory
+import org.gradle.internal.hash.FileContentHashAlgorithm
 import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.hash.StreamHasher
 import org.gradle.internal.jvm.inspection.JvmVersionDetector
@@ -56,6 +59,8 @@ import org.gradle.internal.service.ServiceRegistryBuilder
 import org.gradle.internal.snapshot.FileSystemMirror
 import org.gradle.internal.snapshot.FileSystemSnapshotter
 import org.gradle.internal.snapshot.ValueSnapshotter
+import org.gradle.internal.snapshot.impl.DirectoryWalkerPool
+import org.gradle.internal.snapshot.impl.FileHashingExecutor
 import org.gradle.internal.time.Clock
 import org.gradle.process.internal.JavaExecHandleFactory
 import org.gradle.process.internal.health.memory.MemoryManager
@@ -125,6 +130,10 @@ class GradleUserHomeScopeServicesTest extends WorkspaceTest {
         expectParentServiceLocated(ClassLoaderRegistry)
         expectParentServiceLocated(DirectoryFileTreeFactory)
         expectParentServiceLocated(StreamHasher)
+        expectParentServiceLocated(FileWatcherFactory)
+        expectParentServiceLocated(FileHashingExecutor)
+        expectParentServiceLocated(DirectoryWalkerPool)
+        _ * parent.get(FileContentHashAlgorithm) >> FileContentHashAlgorithm.MD5
 
         expect:
         findsAndCachesService(serviceType)
@@ -133,6 +142,7 @@ class GradleUserHomeScopeServicesTest extends WorkspaceTest {
         serviceType << [
             ListenerManager,
             CrossBuildFileHashCache,
+            CrossBuildResourceHashCache,
             GlobalScopeFileTimeStampInspector,
             FileHasher,
             CrossBuildInMemoryCachingScriptClassCache,
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution;
+
+/**
+ * Records the changes made to the outputs of a unit of work while it executes,
+ * so that the outputs can be snapshotted after the execution by updating their previous snapshots instead of walking them again.
+ */
+public interface OutputChangeRecorder {
+    OutputChangeRecorder NO_OP = work -> () -> {};
+
+    /**
+     * Starts recording the changes made to the outputs of the given unit of work.
+     */
+    Recording startRecording(UnitOfWork work);
+
+    interface Recording {
+        /**
+         * Stops recording. Snapshots of the outputs are updated with the recorded changes before this method returns.
+         */
+        void stop();
+    }
+}
@@ -27,10 +27,19 @@ import org.gradle.internal.serialize.Decoder;
 import org.gradle.internal.serialize.Encoder;
 import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Serializes the fingerprints of a file collection property.
+ *
+ * The root hashes and the combined hash are written first, followed by the fingerprints of the files as a single length-prefixed block.
+ * When reading, the block is kept in its encoded form by {@link LazyFileCollectionFingerprint} and only decoded once the fingerprints are needed.
+ * Properties whose root hashes or combined hash did not change are never decoded.
+ */
 public class FileCollectionFingerprintSerializer implements Serializer<FileCollectionFingerprint> {
 
     private final FingerprintMapSerializer fingerprintMapSerializer;
@@ -45,12 +54,14 @@ public class FileCollectionFingerprintSerializer implements Serializer<FileColle
 
     @Override
     public FileCollectionFingerprint read(Decoder decoder) throws IOException {
-        Map<String, FileSystemLocationFingerprint> fingerprints = fingerprintMapSerializer.read(decoder);
-        if (fingerprints.isEmpty()) {
+        boolean empty = decoder.readBoolean();
+        if (empty) {
             return FileCollectionFingerprint.EMPTY;
         }
         ImmutableMultimap<String, HashCode> rootHashes = readRootHashes(decoder);
-        return new SerializableFileCollectionFingerprint(fingerprints, rootHashes);
+        HashCode hash = decoder.readBoolean() ? hashCodeSerializer.read(decoder) : null;
+        byte[] encodedFingerprints = decoder.readBinary();
+        return new LazyFileCollectionFingerprint(fingerprintMapSerializer, encodedFingerprints, rootHashes, hash);
     }
 
     private ImmutableMultimap<String, HashCode> readRootHashes(Decoder decoder) throws IOException {
@@ -69,10 +80,33 @@ public class FileCollectionFingerprintSerializer implements Serializer<FileColle
 
     @Override
     public void write(Encoder encoder, FileCollectionFingerprint value) throws Exception {
-        fingerprintMapSerializer.write(encoder, value.getFingerprints());
-        if (!value.getFingerprints().isEmpty()) {
-            writeRootHashes(encoder, value.getRootHashes());
+        byte[] encodedFingerprints = value instanceof LazyFileCollectionFingerprint
+            ? ((LazyFileCollectionFingerprint) value).getEncodedFingerprints()
+            : null;
+        if (encodedFingerprints == null) {
+            Map<String, FileSystemLocationFingerprint> fingerprints = value.getFingerprints();
+            if (fingerprints.isEmpty()) {
+                encoder.writeBoolean(true);
+                return;
+            }
+            encodedFingerprints = encodeFingerprints(fingerprints);
+        }
+        encoder.writeBoolean(false);
+        writeRootHashes(encoder, value.getRootHashes());
+        HashCode hash = value.getHash();
+        encoder.writeBoolean(hash != null);
+        if (hash != null) {
+            hashCodeSerializer.write(encoder, hash);
         }
+        encoder.writeBinary(encodedFingerprints);
+    }
+
+    private byte[] encodeFingerprints(Map<String, FileSystemLocationFingerprint> fingerprints) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        KryoBackedEncoder fingerprintsEncoder = new KryoBackedEncoder(outputStream);
+        fingerprintMapSerializer.write(fingerprintsEncoder, fingerprints);
+        fingerprintsEncoder.flush();
+        return outputStream.toByteArray();
     }
 
     private void writeRootHashes(Encoder encoder, ImmutableMultimap<String, HashCode> rootHashes) throws IOException {
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.execution.history.impl;
+
+import com.google.common.collect.ImmutableMultimap;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.fingerprint.FileCollectionFingerprint;
+import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
+import org.gradle.internal.fingerprint.impl.FingerprintMapSerializer;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+
+/**
+ * A fingerprint read from the execution history which keeps the fingerprints of the files in their encoded form until they are first requested.
+ *
+ * The root hashes and the combined hash are available without decoding, so comparing against a current fingerprint with the same root hashes or the same combined hash never decodes the fingerprints.
+ */
+public class LazyFileCollectionFingerprint implements FileCollectionFingerprint {
+
+    private final FingerprintMapSerializer fingerprintMapSerializer;
+    private final ImmutableMultimap<String, HashCode> rootHashes;
+    private final HashCode hash;
+    private volatile byte[] encodedFingerprints;
+    private volatile Map<String, FileSystemLocationFingerprint> fingerprints;
+
+    public LazyFileCollectionFingerprint(FingerprintMapSerializer fingerprintMapSerializer, byte[] encodedFingerprints, ImmutableMultimap<String, HashCode> rootHashes, @Nullable HashCode hash) {
+        this.fingerprintMapSerializer = fingerprintMapSerializer;
+        this.encodedFingerprints = encodedFingerprints;
+        this.rootHashes = rootHashes;
+        this.hash = hash;
+    }
+
+    @Override
+    public Map<String, FileSystemLocationFingerprint> getFingerprints() {
+        Map<String, FileSystemLocationFingerprint> result = fingerprints;
+        if (result == null) {
+            synchronized (this) {
+                result = fingerprints;
+                if (result == null) {
+                    result = decode(encodedFingerprints);
+                    fingerprints = result;
+                    encodedFingerprints = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the encoded fingerprints, or {@code null} when they have already been decoded.
+     */
+    @Nullable
+    byte[] getEncodedFingerprints() {
+        return encodedFingerprints;
+    }
+
+    boolean isDecoded() {
+        return fingerprints != null;
+    }
+
+    @Override
+    public ImmutableMultimap<String, HashCode> getRootHashes() {
+        return rootHashes;
+    }
+
+    @Nullable
+    @Override
+    public HashCode getHash() {
+        return hash;
+    }
+
+    private Map<String, FileSystemLocationFingerprint> decode(byte[] encoded) {
+        try {
+            return fingerprintMapSerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(encoded), encoded.length));
+        } catch (Exception e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+}
@@ -21,16 +21,23 @@ import org.gradle.internal.fingerprint.FileCollectionFingerprint;
 import org.gradle.internal.fingerprint.FileSystemLocationFingerprint;
 import org.gradle.internal.hash.HashCode;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 public class SerializableFileCollectionFingerprint implements FileCollectionFingerprint {
 
     private final Map<String, FileSystemLocationFingerprint> fingerprints;
     private final ImmutableMultimap<String, HashCode> rootHashes;
+    private final HashCode hash;
 
     public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes) {
+        this(fingerprints, rootHashes, null);
+    }
+
+    public SerializableFileCollectionFingerprint(Map<String, FileSystemLocationFingerprint> fingerprints, ImmutableMultimap<String, HashCode> rootHashes, @Nullable HashCode hash) {
         this.fingerprints = fingerprints;
         this.rootHashes = rootHashes;
+        this.hash = hash;
     }
 
     @Override
@@ -43,4 +50,10 @@ public class SerializableFileCollectionFingerprint implements FileCollectionFing
         return rootHashes;
     }
 
+    @Nullable
+    @Override
+    public HashCode getHash() {
+        return hash;
+    }
+
 }
@@ -18,6 +18,7 @@ package org.gradle.internal.execution.impl.steps;
 
 import org.gradle.internal.execution.ExecutionOutcome;
 import org.gradle.internal.execution.OutputChangeListener;
+import org.gradle.internal.execution.OutputChangeRecorder;
 import org.gradle.internal.execution.Result;
 import org.gradle.internal.execution.UnitOfWork;
 
@@ -30,11 +31,14 @@ import static org.gradle.internal.execution.ExecutionOutcome.UP_TO_DATE;
 public class ExecuteStep implements Step<Context, Result> {
 
     private final OutputChangeListener outputChangeListener;
+    private final OutputChangeRecorder outputChangeRecorder;
 
     public ExecuteStep(
-        OutputChangeListener outputChangeListener
+        OutputChangeListener outputChangeListener,
+        OutputChangeRecorder outputChangeRecorder
     ) {
         this.outputChangeListener = outputChangeListener;
+        this.outputChangeRecorder = outputChangeRecorder;
     }
 
     @Override
@@ -42,11 +46,20 @@ public class ExecuteStep implements Step<Context, Result> {
         UnitOfWork work = context.getWork();
 
         Optional<? extends Iterable<String>> changingOutputs = work.getChangingOutputs();
+        // When the changing outputs are known, only the snapshots below them are discarded, so there is little to gain from recording the changes
+        OutputChangeRecorder.Recording recording = changingOutputs.isPresent()
+            ? OutputChangeRecorder.NO_OP.startRecording(work)
+            : outputChangeRecorder.startRecording(work);
         changingOutputs.ifPresent(outputs -> outputChangeListener.beforeOutputChange(outputs));
         if (!changingOutputs.isPresent()) {
             outputChangeListener.beforeOutputChange();
         }
-        boolean didWork = work.execute();
+        boolean didWork;
+        try {
+            didWork = work.execute();
+        } finally {
+            recording.stop();
+        }
         ExecutionOutcome outcome = didWork
             ? EXECUTED
             : UP_TO_DATE;
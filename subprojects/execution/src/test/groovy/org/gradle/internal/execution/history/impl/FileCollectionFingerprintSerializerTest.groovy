@@ -90,4 +90,35 @@ class FileCollectionFingerprintSerializerTest extends SerializerSpec {
         out.fingerprints.keySet() as List == ["/3", "/2", "/1"]
         out.rootHashes.keySet() as List == ["/3", "/2", "/1"]
     }
+
+    def "decodes fingerprints only when they are requested"() {
+        def rootHashes = ImmutableMultimap.of("/1", HashCode.fromInt(1234))
+        def fingerprints = ['/1': new DefaultFileSystemLocationFingerprint("1", FileType.RegularFile, HashCode.fromInt(1234))]
+
+        when:
+        def out = serialize(new SerializableFileCollectionFingerprint(fingerprints, rootHashes, HashCode.fromInt(5678)), serializer)
+
+        then:
+        out instanceof LazyFileCollectionFingerprint
+        out.rootHashes == rootHashes
+        out.hash == HashCode.fromInt(5678)
+        !out.decoded
+
+        when:
+        def reserialized = serialize(out, serializer)
+
+        then:
+        !out.decoded
+        reserialized.fingerprints.keySet() == fingerprints.keySet()
+        reserialized.hash == HashCode.fromInt(5678)
+
+        when:
+        def decoded = out.fingerprints
+
+        then:
+        out.decoded
+        out.encodedFingerprints == null
+        decoded['/1'].normalizedPath == "1"
+        serialize(out, serializer).fingerprints.keySet() == fingerprints.keySet()
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares the throughput of the storage implementations of persistent indexed caches, using keys and values of about the size of the entries in the file hash cache.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class IndexedCacheStoreBenchmark {
+    private static final int ENTRY_COUNT = 20000;
+
+    @Param({"btree", "log-structured"})
+    String storage;
+
+    ExecutorService compactionExecutor;
+    File cacheDir;
+    IndexedCacheStore<String, String> cache;
+    String[] keys;
+    Random random;
+
+    @Setup
+    public void setup() throws IOException {
+        compactionExecutor = Executors.newSingleThreadExecutor();
+        cacheDir = File.createTempFile("jmh", "cache");
+        cacheDir.delete();
+        cacheDir.mkdirs();
+        keys = new String[ENTRY_COUNT];
+        random = new Random(1234);
+        cache = createCache();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            keys[i] = "/home/user/projects/some-project/src/main/java/org/example/package" + (i % 100) + "/SomeSourceFile" + i + ".java";
+            cache.put(keys[i], newValue());
+        }
+        cache.close();
+        cache = createCache();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        cache.close();
+        compactionExecutor.shutdown();
+        FileUtils.forceDelete(cacheDir);
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(keys[random.nextInt(ENTRY_COUNT)]);
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(keys[random.nextInt(ENTRY_COUNT)], newValue());
+    }
+
+    @Benchmark
+    public String mixed() {
+        String key = keys[random.nextInt(ENTRY_COUNT)];
+        if (random.nextInt(4) == 0) {
+            cache.put(key, newValue());
+            return null;
+        }
+        return cache.get(key);
+    }
+
+    private String newValue() {
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + ":" + random.nextInt();
+    }
+
+    private IndexedCacheStore<String, String> createCache() {
+        if (storage.equals("btree")) {
+            return new BTreePersistentIndexedCache<String, String>(new File(cacheDir, "cache.bin"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER);
+        }
+        return new LogStructuredPersistentIndexedCache<String, String>(new File(cacheDir, "cache.segments"), BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, compactionExecutor);
+    }
+}
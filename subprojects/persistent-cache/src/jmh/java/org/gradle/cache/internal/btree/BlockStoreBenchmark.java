@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the block stores backing the B-tree cache. Keys look like the absolute paths in the file hash cache, and are accessed with a Zipf distribution,
+ * so that a few keys are very hot while most keys are accessed rarely, as for the files of a build.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class BlockStoreBenchmark {
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    @Param({"file", "mapped"})
+    String store;
+
+    @Param({"100000"})
+    int entryCount;
+
+    File cacheDir;
+    BTreePersistentIndexedCache<String, String> cache;
+    String[] keys;
+    double[] cumulativeProbabilities;
+    Random random;
+
+    @Setup
+    public void setup() throws IOException {
+        cacheDir = File.createTempFile("jmh", "cache");
+        cacheDir.delete();
+        cacheDir.mkdirs();
+        random = new Random(1234);
+        keys = new String[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            keys[i] = "/home/user/projects/some-project/subproject" + (i % 50) + "/src/main/java/org/example/package" + (i % 400) + "/SomeSourceFile" + i + ".java";
+        }
+        cumulativeProbabilities = zipfDistribution(entryCount);
+        cache = createCache();
+        for (String key : keys) {
+            cache.put(key, newValue());
+        }
+        cache.close();
+        cache = createCache();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        cache.close();
+        FileUtils.forceDelete(cacheDir);
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(nextKey());
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(nextKey(), newValue());
+    }
+
+    private String nextKey() {
+        int index = Arrays.binarySearch(cumulativeProbabilities, random.nextDouble());
+        return keys[Math.min(index < 0 ? -index - 1 : index, entryCount - 1)];
+    }
+
+    private String newValue() {
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + ":" + random.nextInt();
+    }
+
+    private static double[] zipfDistribution(int count) {
+        double[] cumulative = new double[count];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < count; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private BTreePersistentIndexedCache<String, String> createCache() {
+        File cacheFile = new File(cacheDir, "cache.bin");
+        BlockStore blockStore = store.equals("mapped") ? new MappedBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile);
+        return new BTreePersistentIndexedCache<String, String>(cacheFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, (short) 512, 512, blockStore);
+    }
+}
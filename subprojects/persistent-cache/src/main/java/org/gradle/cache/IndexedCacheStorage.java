@@ -0,0 +1,63 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache;
+
+/**
+ * How the entries of a {@link PersistentIndexedCache} are stored on disk.
+ */
+public enum IndexedCacheStorage {
+    /**
+     * A B-tree in a single file, which updates entries in place.
+     */
+    BTREE("btree", false),
+    /**
+     * Append-only segment files with an in-memory index, which are compacted in the background.
+     */
+    LOG_STRUCTURED("log-structured", false),
+    /**
+     * Append-only segment files which are each written by a single process, so that the cache can be read and written by several processes which only hold a shared lock.
+     * Can only be used for caches whose entries are content-addressed, as entries are never overwritten or removed.
+     */
+    SHARED_SEGMENTS("shared-segments", true);
+
+    public static final String STORAGE_PROPERTY = "org.gradle.cache.internal.indexed-cache-storage";
+
+    private final String id;
+    private final boolean contentAddressedOnly;
+
+    IndexedCacheStorage(String id, boolean contentAddressedOnly) {
+        this.id = id;
+        this.contentAddressedOnly = contentAddressedOnly;
+    }
+
+    /**
+     * Returns the storage selected by the {@value #STORAGE_PROPERTY} system property, or {@link #BTREE} when the property is not set.
+     * Storages which can only be used for content-addressed entries cannot be selected.
+     */
+    public static IndexedCacheStorage fromSystemProperties() {
+        String value = System.getProperty(STORAGE_PROPERTY);
+        if (value == null) {
+            return BTREE;
+        }
+        for (IndexedCacheStorage storage : values()) {
+            if (!storage.contentAddressedOnly && storage.id.equalsIgnoreCase(value.trim())) {
+                return storage;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported indexed cache storage '%s' specified by system property '%s'.", value, STORAGE_PROPERTY));
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache;
+
+/**
+ * An {@link IndexedCacheStore} which keeps its in-memory state while the file lock is not held, instead of being closed and opened again.
+ */
+public interface SuspendableIndexedCacheStore<K, V> extends IndexedCacheStore<K, V> {
+    /**
+     * Called before the file lock is released. Releases the files of the store, but keeps its in-memory state.
+     */
+    void suspend();
+
+    /**
+     * Called after the file lock has been acquired again, before the store is used. Discards the in-memory state when the store has been modified by another process meanwhile.
+     */
+    void resume();
+}
@@ -49,6 +49,12 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
         });
     }
 
+    @Nullable
+    @Override
+    public V getIfCurrent(K key) {
+        return null;
+    }
+
     @Override
     public V get(K key, Transformer<? extends V, ? super K> producer, Runnable completion) {
         throw new UnsupportedOperationException();
@@ -57,14 +63,10 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(new Runnable() {
+            asyncCacheAccess.enqueue(new CacheEntryUpdate(persistentCache, key, completion) {
                 @Override
-                public void run() {
-                    try {
-                        persistentCache.put(key, value);
-                    } finally {
-                        completion.run();
-                    }
+                protected void apply() {
+                    persistentCache.put(key, value);
                 }
             });
         } catch (RuntimeException e) {
@@ -76,14 +78,10 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
     @Override
     public void removeLater(final K key, final Runnable completion) {
         try {
-            asyncCacheAccess.enqueue(new Runnable() {
+            asyncCacheAccess.enqueue(new CacheEntryUpdate(persistentCache, key, completion) {
                 @Override
-                public void run() {
-                    try {
-                        persistentCache.remove(key);
-                    } finally {
-                        completion.run();
-                    }
+                protected void apply() {
+                    persistentCache.remove(key);
                 }
             });
         } catch (RuntimeException e) {
@@ -24,9 +24,14 @@ import org.gradle.internal.concurrent.ExecutorPolicy;
 import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.time.CountdownTimer;
 import org.gradle.internal.time.Time;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -36,11 +41,23 @@ import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
+    /**
+     * When set to {@code true}, queued updates of cache entries are collected and applied in batches, where an update is skipped when a later update of the same entry is queued.
+     */
+    static final String BATCH_WRITES_PROPERTY = "org.gradle.cache.internal.batch-writes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheAccessWorker.class);
+
     private final BlockingQueue<Runnable> workQueue;
     private final String displayName;
     private final CacheAccess cacheAccess;
     private final long batchWindowMillis;
     private final long maximumLockingTimeMillis;
+    private final boolean batchWrites;
+    private final long writeBatchIntervalMillis;
+    private final Map<Object, CacheEntryUpdate> pendingUpdates = new LinkedHashMap<Object, CacheEntryUpdate>();
+    private final WriteBatchStatistics writeBatchStatistics = new WriteBatchStatistics();
+    private CountdownTimer writeBatchTimer;
     private boolean closed;
     private boolean workerCompleted;
     private boolean stopSeen;
@@ -48,10 +65,16 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
 
     CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
+        this(displayName, cacheAccess, false);
+    }
+
+    CacheAccessWorker(String displayName, CacheAccess cacheAccess, boolean batchWrites) {
         this.displayName = displayName;
         this.cacheAccess = cacheAccess;
         this.batchWindowMillis = 200;
         this.maximumLockingTimeMillis = 5000;
+        this.batchWrites = batchWrites;
+        this.writeBatchIntervalMillis = 100;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
         int queueCapacity = Math.min(4000, heapProportionalCacheSizer.scaleCacheSize(40000));
         workQueue = new ArrayBlockingQueue<Runnable>(queueCapacity, true);
@@ -159,6 +182,9 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
                     flushOperationsCommand.completed();
                 }
             }
+            if (batchWrites) {
+                writeBatchStatistics.log(displayName);
+            }
             workerCompleted = true;
             doneSignal.countDown();
         }
@@ -176,12 +202,12 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
                 public void run() {
                     CountdownTimer timer = Time.startCountdownTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
                     if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
+                        execute(updateOperation);
                     }
                     Runnable otherOperation;
                     try {
                         while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
+                            execute(otherOperation);
                             final Class<? extends Runnable> runnableClass = otherOperation.getClass();
                             if (runnableClass == FlushOperationsCommand.class) {
                                 flushOperations.add((FlushOperationsCommand) otherOperation);
@@ -194,9 +220,15 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
                                     || timer.hasExpired()) {
                                 break;
                             }
+                            if (writeBatchTimer != null && writeBatchTimer.hasExpired()) {
+                                applyPendingUpdates();
+                            }
                         }
                     } catch (InterruptedException e) {
                         throw UncheckedException.throwAsUncheckedException(e);
+                    } finally {
+                        // Apply the pending updates before releasing the cache lock
+                        applyPendingUpdates();
                     }
                 }
             });
@@ -207,6 +239,50 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         }
     }
 
+    private void execute(Runnable operation) {
+        if (batchWrites && operation instanceof CacheEntryUpdate) {
+            addPendingUpdate((CacheEntryUpdate) operation);
+        } else {
+            // Any other operation may read the entries, so apply the pending updates first
+            applyPendingUpdates();
+            failureHandler.onExecute(operation);
+        }
+    }
+
+    private void addPendingUpdate(CacheEntryUpdate update) {
+        if (pendingUpdates.isEmpty()) {
+            writeBatchTimer = Time.startCountdownTimer(writeBatchIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        final CacheEntryUpdate superseded = pendingUpdates.remove(update.getEntryId());
+        if (superseded != null) {
+            writeBatchStatistics.discardedUpdates++;
+            failureHandler.onExecute(new Runnable() {
+                @Override
+                public void run() {
+                    superseded.discard();
+                }
+            });
+        }
+        pendingUpdates.put(update.getEntryId(), update);
+    }
+
+    private void applyPendingUpdates() {
+        if (pendingUpdates.isEmpty()) {
+            return;
+        }
+        writeBatchStatistics.queueDepth(workQueue.size() + pendingUpdates.size());
+        long start = System.nanoTime();
+        Iterator<CacheEntryUpdate> iterator = pendingUpdates.values().iterator();
+        while (iterator.hasNext()) {
+            CacheEntryUpdate update = iterator.next();
+            iterator.remove();
+            failureHandler.onExecute(update);
+            writeBatchStatistics.appliedUpdates++;
+        }
+        writeBatchTimer = null;
+        writeBatchStatistics.flushed(System.nanoTime() - start);
+    }
+
     public synchronized void stop() {
         if (!closed && !workerCompleted) {
             closed = true;
@@ -224,6 +300,37 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
         rethrowFailure();
     }
 
+    /**
+     * Statistics of the batched writes, which are only accessed by the worker thread.
+     */
+    private static class WriteBatchStatistics {
+        private long appliedUpdates;
+        private long discardedUpdates;
+        private long batches;
+        private int maxQueueDepth;
+        private long totalFlushNanos;
+        private long maxFlushNanos;
+
+        void queueDepth(int depth) {
+            maxQueueDepth = Math.max(maxQueueDepth, depth);
+        }
+
+        void flushed(long flushNanos) {
+            batches++;
+            totalFlushNanos += flushNanos;
+            maxFlushNanos = Math.max(maxFlushNanos, flushNanos);
+        }
+
+        void log(String displayName) {
+            if (batches == 0) {
+                return;
+            }
+            LOGGER.debug("Applied {} updates to {} in {} batches, skipped {} superseded updates. Maximum queue depth: {}, average flush time: {}ms, maximum flush time: {}ms.",
+                appliedUpdates, displayName, batches, discardedUpdates, maxQueueDepth,
+                TimeUnit.NANOSECONDS.toMillis(totalFlushNanos / batches), TimeUnit.NANOSECONDS.toMillis(maxFlushNanos));
+        }
+    }
+
     private static class ShutdownOperationsCommand implements Runnable {
         @Override
         public void run() {
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.cache.internal;
+
+/**
+ * A queued update of a single entry of a cache. The completion runs once the update has been applied, or once it has been discarded because a later update of the same entry supersedes it.
+ */
+abstract class CacheEntryUpdate implements Runnable {
+    private final EntryId entryId;
+    private final Runnable completion;
+
+    CacheEntryUpdate(Object cache, Object key, Runnable completion) {
+        this.entryId = new EntryId(cache, key);
+        this.completion = completion;
+    }
+
+    /**
+     * Identifies the entry that is updated.
+     */
+    Object getEntryId() {
+        return entryId;
+    }
+
+    @Override
+    public void run() {
+        try {
+            apply();
+        } finally {
+            completion.run();
+        }
+    }
+
+    /**
+     * Skips this update, because a later update of the same entry supersedes it.
+     */
+    void discard() {
+        completion.run();
+    }
+
+    protected abstract void apply();
+
+    private static class EntryId {
+        private final Object cache;
+        private final Object key;
+
+        EntryId(Object cache, Object key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            EntryId other = (EntryId) o;
+            return cache == other.cache && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(cache) + key.hashCode();
+        }
+    }
+}
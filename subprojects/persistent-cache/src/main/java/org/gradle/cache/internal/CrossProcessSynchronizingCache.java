@@ -26,6 +26,8 @@ import javax.annotation.Nullable;
 
 /**
  * Applies cross-process file locking to a backing cache, to ensure that any in-memory and on file state is kept in sync while this process is read from or writing to the cache.
+ *
+ * Entries which the backing cache can serve while it is known to be up-to-date are returned without acquiring the lock.
  */
 public class CrossProcessSynchronizingCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V> {
     private final CrossProcessCacheAccess cacheAccess;
@@ -44,6 +46,10 @@ public class CrossProcessSynchronizingCache<K, V> implements MultiProcessSafePer
     @Nullable
     @Override
     public V get(final K key) {
+        V value = target.getIfCurrent(key);
+        if (value != null) {
+            return value;
+        }
         return cacheAccess.withFileLock(new Factory<V>() {
             @Override
             public V create() {
@@ -54,6 +60,10 @@ public class CrossProcessSynchronizingCache<K, V> implements MultiProcessSafePer
 
     @Override
     public V get(final K key, final Transformer<? extends V, ? super K> producer) {
+        V value = target.getIfCurrent(key);
+        if (value != null) {
+            return value;
+        }
         Runnable runnable = cacheAccess.acquireFileLock();
         return target.get(key, producer, runnable);
     }
@@ -18,6 +18,7 @@ package org.gradle.cache.internal;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import net.jcip.annotations.ThreadSafe;
+import org.apache.commons.io.FileUtils;
 import org.gradle.api.Action;
 import org.gradle.api.GradleException;
 import org.gradle.cache.AsyncCacheAccess;
@@ -25,12 +26,16 @@ import org.gradle.cache.CacheDecorator;
 import org.gradle.cache.FileAccess;
 import org.gradle.cache.FileLock;
 import org.gradle.cache.FileLockManager;
+import org.gradle.cache.IndexedCacheStorage;
+import org.gradle.cache.IndexedCacheStore;
 import org.gradle.cache.LockOptions;
 import org.gradle.cache.LockTimeoutException;
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
+import org.gradle.cache.internal.logstructured.SharedSegmentsPersistentIndexedCache;
 import org.gradle.internal.Cast;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
@@ -49,11 +54,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.gradle.cache.FileLockManager.LockMode.Exclusive;
+import static org.gradle.cache.FileLockManager.LockMode.Shared;
 
 @ThreadSafe
 public class DefaultCacheAccess implements CacheCoordinator {
@@ -72,10 +79,12 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final FileAccess fileAccess = new UnitOfWorkFileAccess();
     private final Map<String, IndexedCacheEntry<?, ?>> caches = new HashMap<String, IndexedCacheEntry<?, ?>>();
     private final AbstractCrossProcessCacheAccess crossProcessCacheAccess;
+    private final FileLockManager.LockMode lockMode;
     private final CacheAccessOperationsStack operations;
 
     private ManagedExecutor cacheUpdateExecutor;
     private CacheAccessWorker cacheAccessWorker;
+    private ManagedExecutor compactionExecutor;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
 
@@ -92,6 +101,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
         this.cleanupAction = cleanupAction;
         this.executorFactory = executorFactory;
         this.operations = new CacheAccessOperationsStack();
+        this.lockMode = lockOptions.getMode();
 
         Action<FileLock> onFileLockAcquireAction = new Action<FileLock>() {
             @Override
@@ -123,13 +133,20 @@ public class DefaultCacheAccess implements CacheCoordinator {
 
     private synchronized AsyncCacheAccess getCacheAccessWorker() {
         if (cacheAccessWorker == null) {
-            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this);
+            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this, Boolean.getBoolean(CacheAccessWorker.BATCH_WRITES_PROPERTY));
             cacheUpdateExecutor = executorFactory.create("Cache worker for " + cacheDisplayName);
             cacheUpdateExecutor.execute(cacheAccessWorker);
         }
         return cacheAccessWorker;
     }
 
+    private synchronized Executor getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = executorFactory.create("Cache compaction for " + cacheDisplayName);
+        }
+        return compactionExecutor;
+    }
+
     @Override
     public void open() {
         stateLock.lock();
@@ -187,6 +204,10 @@ public class DefaultCacheAccess implements CacheCoordinator {
             fileLockHeldByOwner = null;
             stateLock.unlock();
         }
+        if (compactionExecutor != null) {
+            compactionExecutor.stop();
+            compactionExecutor = null;
+        }
     }
 
     @Override
@@ -283,20 +304,61 @@ public class DefaultCacheAccess implements CacheCoordinator {
         IndexedCacheEntry<K, V> entry = Cast.uncheckedCast(caches.get(parameters.getCacheName()));
         try {
             if (entry == null) {
-                final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                final File cacheFile;
+                Factory<IndexedCacheStore<K, V>> indexedCacheFactory;
+                if (parameters.getStorage() == IndexedCacheStorage.SHARED_SEGMENTS) {
+                    cacheFile = new File(baseDir, parameters.getCacheName() + ".shared");
+                    indexedCacheFactory = new Factory<IndexedCacheStore<K, V>>() {
+                        public IndexedCacheStore<K, V> create() {
+                            return new SharedSegmentsPersistentIndexedCache<K, V>(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                        }
+                    };
+                } else if (parameters.getStorage() == IndexedCacheStorage.LOG_STRUCTURED) {
+                    cacheFile = new File(baseDir, parameters.getCacheName() + ".segments");
+                    final File otherStorageFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                    final Executor compactionExecutor = getCompactionExecutor();
+                    indexedCacheFactory = new Factory<IndexedCacheStore<K, V>>() {
+                        public IndexedCacheStore<K, V> create() {
+                            LogStructuredPersistentIndexedCache<K, V> store = new LogStructuredPersistentIndexedCache<K, V>(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer(), compactionExecutor);
+                            if (!otherStorageFile.exists()) {
+                                return store;
+                            }
+                            // The B-tree does not know its keys, so its entries are looked up on demand instead of being migrated
+                            return new ReadThroughIndexedCacheStore<K, V>(store, otherStorageFile, new Factory<IndexedCacheStore<K, V>>() {
+                                public IndexedCacheStore<K, V> create() {
+                                    return doCreateCache(otherStorageFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                                }
+                            });
+                        }
+                    };
+                } else {
+                    cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                    final File otherStorageFile = new File(baseDir, parameters.getCacheName() + ".segments");
+                    indexedCacheFactory = new Factory<IndexedCacheStore<K, V>>() {
+                        public IndexedCacheStore<K, V> create() {
+                            BTreePersistentIndexedCache<K, V> store = doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                            if (otherStorageFile.isDirectory()) {
+                                migrate(otherStorageFile, store, parameters);
+                            }
+                            return store;
+                        }
+                    };
+                }
                 LOG.debug("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = new Factory<BTreePersistentIndexedCache<K, V>>() {
-                    public BTreePersistentIndexedCache<K, V> create() {
-                        return doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
-                    }
-                };
-
-                MultiProcessSafePersistentIndexedCache<K, V> indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
-                CacheDecorator decorator = parameters.getCacheDecorator();
-                if (decorator != null) {
-                    indexedCache = decorator.decorate(cacheFile.getAbsolutePath(), parameters.getCacheName(), indexedCache, crossProcessCacheAccess, getCacheAccessWorker());
-                    if (fileLock == null) {
-                        useCache(NO_OP);
+
+                MultiProcessSafePersistentIndexedCache<K, V> indexedCache;
+                if (parameters.getStorage() == IndexedCacheStorage.SHARED_SEGMENTS && lockMode == Shared) {
+                    // Each process only writes to the segments it has claimed, so the shared lock held while the cache is open is sufficient.
+                    // The decorators need to escalate to an exclusive lock, so are not used.
+                    indexedCache = new SharedLockPersistentIndexedCache<K, V>(cacheDisplayName, indexedCacheFactory);
+                } else {
+                    indexedCache = new DefaultMultiProcessSafePersistentIndexedCache<K, V>(indexedCacheFactory, fileAccess);
+                    CacheDecorator decorator = parameters.getCacheDecorator();
+                    if (decorator != null) {
+                        indexedCache = decorator.decorate(cacheFile.getAbsolutePath(), parameters.getCacheName(), indexedCache, crossProcessCacheAccess, getCacheAccessWorker());
+                        if (fileLock == null) {
+                            useCache(NO_OP);
+                        }
                     }
                 }
                 entry = new IndexedCacheEntry<K, V>(parameters, indexedCache);
@@ -313,6 +375,27 @@ public class DefaultCacheAccess implements CacheCoordinator {
         }
     }
 
+    /**
+     * Moves the entries of the log-structured storage into the B-tree when switching back to it. The entries which have not been updated since switching to the log-structured
+     * storage are still in the B-tree, and removals have been applied to both.
+     */
+    private <K, V> void migrate(File segmentsDir, BTreePersistentIndexedCache<K, V> store, PersistentIndexedCacheParameters<K, V> parameters) {
+        LOG.debug("Moving the entries of {} into {}", segmentsDir, store);
+        try {
+            LogStructuredPersistentIndexedCache<K, V> previousStore = new LogStructuredPersistentIndexedCache<K, V>(segmentsDir, parameters.getKeySerializer(), parameters.getValueSerializer(), getCompactionExecutor());
+            try {
+                previousStore.copyEntriesTo(store);
+            } finally {
+                previousStore.close();
+            }
+        } catch (RuntimeException e) {
+            // Some entries of the B-tree may be stale
+            LOG.warn(String.format("Could not move the entries of %s into %s, discarding both.", segmentsDir, store), e);
+            store.clear();
+        }
+        FileUtils.deleteQuietly(segmentsDir);
+    }
+
     <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
     }
@@ -445,6 +528,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
             checkCompatibleKeySerializer(faultMessages, parameters.getKeySerializer());
             checkCompatibleValueSerializer(faultMessages, parameters.getValueSerializer());
             checkCompatibleCacheDecorator(faultMessages, parameters.getCacheDecorator());
+            checkCompatibleStorage(faultMessages, parameters.getStorage());
 
             if (!faultMessages.isEmpty()) {
                 String lineSeparator = SystemProperties.getInstance().getLineSeparator();
@@ -487,6 +571,14 @@ public class DefaultCacheAccess implements CacheCoordinator {
                         cacheDecorator, parameters.getCacheDecorator()));
             }
         }
+
+        private void checkCompatibleStorage(Collection<String> faultMessages, IndexedCacheStorage storage) {
+            if (storage != parameters.getStorage()) {
+                faultMessages.add(
+                    String.format(" * Requested cache storage (%s) doesn't match current cache storage (%s)",
+                        storage, parameters.getStorage()));
+            }
+        }
     }
 
     @VisibleForTesting
@@ -19,16 +19,18 @@ import org.gradle.api.Transformer;
 import org.gradle.cache.FileAccess;
 import org.gradle.cache.FileIntegrityViolationException;
 import org.gradle.cache.FileLock;
+import org.gradle.cache.IndexedCacheStore;
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
-import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
+import org.gradle.cache.SuspendableIndexedCacheStore;
 import org.gradle.internal.Factory;
 
 public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V> {
     private final FileAccess fileAccess;
-    private final Factory<BTreePersistentIndexedCache<K, V>> factory;
-    private BTreePersistentIndexedCache<K, V> cache;
+    private final Factory<? extends IndexedCacheStore<K, V>> factory;
+    private IndexedCacheStore<K, V> cache;
+    private boolean suspended;
 
-    public DefaultMultiProcessSafePersistentIndexedCache(Factory<BTreePersistentIndexedCache<K, V>> factory, FileAccess fileAccess) {
+    public DefaultMultiProcessSafePersistentIndexedCache(Factory<? extends IndexedCacheStore<K, V>> factory, FileAccess fileAccess) {
         this.factory = factory;
         this.fileAccess = fileAccess;
     }
@@ -40,7 +42,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
 
     @Override
     public V get(final K key) {
-        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        final IndexedCacheStore<K, V> cache = getCache();
         try {
             return fileAccess.readFile(new Factory<V>() {
                 public V create() {
@@ -64,7 +66,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
 
     @Override
     public void put(final K key, final V value) {
-        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        final IndexedCacheStore<K, V> cache = getCache();
         // Use writeFile because the cache can internally recover from datafile
         // corruption, so we don't care at this level if it's corrupt
         fileAccess.writeFile(new Runnable() {
@@ -76,7 +78,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
 
     @Override
     public void remove(final K key) {
-        final BTreePersistentIndexedCache<K, V> cache = getCache();
+        final IndexedCacheStore<K, V> cache = getCache();
         // Use writeFile because the cache can internally recover from datafile
         // corruption, so we don't care at this level if it's corrupt
         fileAccess.writeFile(new Runnable() {
@@ -92,7 +94,23 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
 
     @Override
     public void finishWork() {
-        if (cache != null) {
+        if (cache instanceof SuspendableIndexedCacheStore) {
+            if (!suspended) {
+                final SuspendableIndexedCacheStore<K, V> suspendableCache = (SuspendableIndexedCacheStore<K, V>) cache;
+                try {
+                    fileAccess.writeFile(new Runnable() {
+                        public void run() {
+                            suspendableCache.suspend();
+                        }
+                    });
+                    suspended = true;
+                } catch (RuntimeException e) {
+                    cache = null;
+                    suspendableCache.close();
+                    throw e;
+                }
+            }
+        } else if (cache != null) {
             try {
                 fileAccess.writeFile(new Runnable() {
                     public void run() {
@@ -109,7 +127,7 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
     public void beforeLockRelease(FileLock.State currentCacheState) {
     }
 
-    private BTreePersistentIndexedCache<K, V> getCache() {
+    private IndexedCacheStore<K, V> getCache() {
         if (cache == null) {
             // Use writeFile because the cache can internally recover from datafile
             // corruption, so we don't care at this level if it's corrupt
@@ -118,6 +136,20 @@ public class DefaultMultiProcessSafePersistentIndexedCache<K, V> implements Mult
                     cache = factory.create();
                 }
             });
+        } else if (suspended) {
+            final SuspendableIndexedCacheStore<K, V> suspendableCache = (SuspendableIndexedCacheStore<K, V>) cache;
+            suspended = false;
+            try {
+                fileAccess.writeFile(new Runnable() {
+                    public void run() {
+                        suspendableCache.resume();
+                    }
+                });
+            } catch (RuntimeException e) {
+                cache = null;
+                suspendableCache.close();
+                throw e;
+            }
         }
         return cache;
     }
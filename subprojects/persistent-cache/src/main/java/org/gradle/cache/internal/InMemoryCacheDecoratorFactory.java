@@ -27,6 +27,7 @@ import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -58,7 +59,7 @@ public class InMemoryCacheDecoratorFactory {
         }
         int targetSize = cacheSizer.scaleCacheSize(maxEntriesToKeepInMemory);
         CacheDetails cacheDetails = getCache(cacheId, targetSize);
-        return new InMemoryDecoratedCache<K, V>(backingCache, cacheDetails.entries, cacheId, cacheDetails.lockState);
+        return new InMemoryDecoratedCache<K, V>(backingCache, cacheDetails.entries, cacheId, cacheDetails.lockState, cacheDetails.lockVersion);
     }
 
     private CacheDetails getCache(final String cacheId, final int maxSize) {
@@ -66,7 +67,7 @@ public class InMemoryCacheDecoratorFactory {
             @Override
             public CacheDetails transform(String cacheId) {
                 Cache<Object, Object> entries = createInMemoryCache(cacheId, maxSize);
-                CacheDetails cacheDetails = new CacheDetails(cacheId, maxSize, entries, new AtomicReference<FileLock.State>(null));
+                CacheDetails cacheDetails = new CacheDetails(cacheId, maxSize, entries, new AtomicReference<FileLock.State>(null), new AtomicLong());
                 LOG.debug("Creating in-memory store for cache {} (max size: {})", cacheId, maxSize);
                 return cacheDetails;
             }
@@ -124,12 +125,14 @@ public class InMemoryCacheDecoratorFactory {
         private final int maxEntries;
         private final Cache<Object, Object> entries;
         private final AtomicReference<FileLock.State> lockState;
+        private final AtomicLong lockVersion;
 
-        CacheDetails(String cacheId, int maxEntries, Cache<Object, Object> entries, AtomicReference<FileLock.State> lockState) {
+        CacheDetails(String cacheId, int maxEntries, Cache<Object, Object> entries, AtomicReference<FileLock.State> lockState, AtomicLong lockVersion) {
             this.cacheId = cacheId;
             this.maxEntries = maxEntries;
             this.entries = entries;
             this.lockState = lockState;
+            this.lockVersion = lockVersion;
         }
     }
 }
@@ -26,8 +26,11 @@ import org.gradle.internal.UncheckedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 class InMemoryDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentIndexedCache<K, V> {
@@ -37,12 +40,17 @@ class InMemoryDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentInd
     private final Cache<Object, Object> inMemoryCache;
     private final String cacheId;
     private final AtomicReference<FileLock.State> fileLockStateReference;
+    private final AtomicLong lockVersion;
 
-    public InMemoryDecoratedCache(MultiProcessSafeAsyncPersistentIndexedCache<K, V> delegate, Cache<Object, Object> inMemoryCache, String cacheId, AtomicReference<FileLock.State> fileLockStateReference) {
+    /**
+     * @param lockVersion Incremented when the lock is acquired and when it is released, so that it is odd while the in-memory entries are known to be up-to-date.
+     */
+    public InMemoryDecoratedCache(MultiProcessSafeAsyncPersistentIndexedCache<K, V> delegate, Cache<Object, Object> inMemoryCache, String cacheId, AtomicReference<FileLock.State> fileLockStateReference, AtomicLong lockVersion) {
         this.delegate = delegate;
         this.inMemoryCache = inMemoryCache;
         this.cacheId = cacheId;
         this.fileLockStateReference = fileLockStateReference;
+        this.lockVersion = lockVersion;
     }
 
     @Override
@@ -73,6 +81,21 @@ class InMemoryDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentInd
         }
     }
 
+    @Nullable
+    @Override
+    public V getIfCurrent(K key) {
+        long version = lockVersion.get();
+        if (!isHeld(version)) {
+            // Another process may have changed the backing cache
+            return null;
+        }
+        Object value = inMemoryCache.getIfPresent(key);
+        if (value == null || value == NULL || lockVersion.get() != version) {
+            return null;
+        }
+        return Cast.uncheckedCast(value);
+    }
+
     @Override
     public V get(final K key, final Transformer<? extends V, ? super K> producer, final Runnable completion) {
         final AtomicReference<Runnable> completionRef = new AtomicReference<Runnable>(completion);
@@ -139,6 +162,7 @@ class InMemoryDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentInd
         if (outOfDate) {
             inMemoryCache.invalidateAll();
         }
+        advanceLockVersion(true);
         delegate.afterLockAcquire(currentCacheState);
     }
 
@@ -149,7 +173,24 @@ class InMemoryDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentInd
 
     @Override
     public void beforeLockRelease(FileLock.State currentCacheState) {
+        advanceLockVersion(false);
         fileLockStateReference.set(currentCacheState);
         delegate.beforeLockRelease(currentCacheState);
     }
+
+    private void advanceLockVersion(boolean held) {
+        long current;
+        long next;
+        do {
+            current = lockVersion.get();
+            next = current + 1;
+            if (isHeld(next) != held) {
+                next++;
+            }
+        } while (!lockVersion.compareAndSet(current, next));
+    }
+
+    private static boolean isHeld(long version) {
+        return (version & 1) == 1;
+    }
 }
@@ -30,6 +30,14 @@ public interface MultiProcessSafeAsyncPersistentIndexedCache<K, V> extends UnitO
     @Nullable
     V get(K key);
 
+    /**
+     * Fetches the given entry when it can be served without holding the cross-process lock, for example from an in-memory copy which is known to be up-to-date with the backing cache.
+     *
+     * @return The value or {@code null} when the value needs to be fetched using {@link #get(Object)} while holding the lock.
+     */
+    @Nullable
+    V getIfCurrent(K key);
+
     /**
      * Fetches the given entry, producing if necessary, blocking until the result is available. This method may or may not block until any updates have completed and will invoke the given completion action when the operation is complete.
      */
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.cache.SuspendableIndexedCacheStore;
+import org.gradle.internal.Factory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * A store which falls back to the store of the previously used storage for the entries it does not contain, so that switching the storage of a cache does not discard its entries.
+ *
+ * <p>The previous store can only be looked up by key, so its entries are not copied over. Updates only go to the new store, which then shadows the previous value. Removals go to both
+ * stores, so that a removed entry does not reappear from the previous store. The previous store is opened on demand and closed when the lock is released, as another process may
+ * still use it.</p>
+ */
+class ReadThroughIndexedCacheStore<K, V> implements SuspendableIndexedCacheStore<K, V> {
+    private final SuspendableIndexedCacheStore<K, V> store;
+    private final File previousStoreFile;
+    private final Factory<? extends IndexedCacheStore<K, V>> previousStoreFactory;
+    private IndexedCacheStore<K, V> previousStore;
+
+    ReadThroughIndexedCacheStore(SuspendableIndexedCacheStore<K, V> store, File previousStoreFile, Factory<? extends IndexedCacheStore<K, V>> previousStoreFactory) {
+        this.store = store;
+        this.previousStoreFile = previousStoreFile;
+        this.previousStoreFactory = previousStoreFactory;
+    }
+
+    @Nullable
+    @Override
+    public V get(K key) {
+        V value = store.get(key);
+        if (value != null) {
+            return value;
+        }
+        IndexedCacheStore<K, V> previousStore = getPreviousStore();
+        return previousStore == null ? null : previousStore.get(key);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        store.put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        store.remove(key);
+        IndexedCacheStore<K, V> previousStore = getPreviousStore();
+        if (previousStore != null) {
+            previousStore.remove(key);
+        }
+    }
+
+    @Override
+    public void suspend() {
+        closePreviousStore();
+        store.suspend();
+    }
+
+    @Override
+    public void resume() {
+        store.resume();
+    }
+
+    @Override
+    public void close() {
+        try {
+            closePreviousStore();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Nullable
+    private IndexedCacheStore<K, V> getPreviousStore() {
+        if (previousStore == null && previousStoreFile.exists()) {
+            previousStore = previousStoreFactory.create();
+        }
+        return previousStore;
+    }
+
+    private void closePreviousStore() {
+        if (previousStore != null) {
+            try {
+                previousStore.close();
+            } finally {
+                previousStore = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.api.Transformer;
+import org.gradle.cache.FileLock;
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.cache.MultiProcessSafePersistentIndexedCache;
+import org.gradle.internal.Factory;
+
+/**
+ * An indexed cache of a cache which is opened with a shared lock that is held until the cache is closed, and whose store can be read and written by several processes
+ * while they hold that lock. Each access goes straight to the store, which must be thread-safe. The store is created on first use and closed before the lock is released.
+ */
+class SharedLockPersistentIndexedCache<K, V> implements MultiProcessSafePersistentIndexedCache<K, V> {
+    private final String cacheDisplayName;
+    private final Factory<? extends IndexedCacheStore<K, V>> factory;
+    private IndexedCacheStore<K, V> store;
+    private boolean closed;
+
+    SharedLockPersistentIndexedCache(String cacheDisplayName, Factory<? extends IndexedCacheStore<K, V>> factory) {
+        this.cacheDisplayName = cacheDisplayName;
+        this.factory = factory;
+    }
+
+    @Override
+    public String toString() {
+        return cacheDisplayName;
+    }
+
+    @Override
+    public V get(K key) {
+        return getStore().get(key);
+    }
+
+    @Override
+    public V get(K key, Transformer<? extends V, ? super K> producer) {
+        V value = get(key);
+        if (value == null) {
+            value = producer.transform(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        getStore().put(key, value);
+    }
+
+    @Override
+    public void remove(K key) {
+        getStore().remove(key);
+    }
+
+    @Override
+    public void afterLockAcquire(FileLock.State currentCacheState) {
+    }
+
+    @Override
+    public synchronized void finishWork() {
+        closed = true;
+        if (store != null) {
+            try {
+                store.close();
+            } finally {
+                store = null;
+            }
+        }
+    }
+
+    @Override
+    public void beforeLockRelease(FileLock.State currentCacheState) {
+    }
+
+    private synchronized IndexedCacheStore<K, V> getStore() {
+        if (closed) {
+            throw new IllegalStateException(String.format("The %s has been closed.", cacheDisplayName));
+        }
+        if (store == null) {
+            store = factory.create();
+        }
+        return store;
+    }
+}
@@ -17,6 +17,7 @@ package org.gradle.cache.internal.btree;
 
 import com.google.common.collect.ImmutableSet;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.IndexedCacheStore;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.io.StreamByteBuffer;
 import org.gradle.internal.serialize.Serializer;
@@ -47,8 +48,12 @@ import java.util.List;
 // todo - merge adjacent free blocks
 // todo - use more efficient lookup for free block with nearest size
 @SuppressWarnings("unchecked")
-public class BTreePersistentIndexedCache<K, V> {
+public class BTreePersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    /**
+     * When set to true, the cache files are accessed through memory mapped regions, see {@link MappedBlockStore}.
+     */
+    public static final String MAPPED_BLOCK_STORE_PROPERTY = "org.gradle.cache.internal.btree.mapped-block-store";
     private final File cacheFile;
     private final KeyHasher<K> keyHasher;
     private final Serializer<V> serializer;
@@ -63,12 +68,18 @@ public class BTreePersistentIndexedCache<K, V> {
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
                                        short maxChildIndexEntries, int maxFreeListEntries) {
+        this(cacheFile, keySerializer, valueSerializer, maxChildIndexEntries, maxFreeListEntries,
+            Boolean.getBoolean(MAPPED_BLOCK_STORE_PROPERTY) ? new MappedBlockStore(cacheFile) : new FileBackedBlockStore(cacheFile));
+    }
+
+    BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                                short maxChildIndexEntries, int maxFreeListEntries, BlockStore fileStore) {
         this.cacheFile = cacheFile;
         this.keyHasher = new KeyHasher<K>(keySerializer);
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
+        BlockStore cachingStore = new CachingBlockStore(fileStore, ImmutableSet.of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
         this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
             open();
@@ -119,6 +130,7 @@ public class BTreePersistentIndexedCache<K, V> {
         header = store.readFirst(HeaderBlock.class);
     }
 
+    @Override
     public V get(K key) {
         try {
             try {
@@ -136,6 +148,7 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void put(K key, V value) {
         try {
             long hashCode = keyHasher.getHashCode(key);
@@ -161,6 +174,7 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void remove(K key) {
         try {
             Lookup lookup = header.getRoot().find(key);
@@ -193,6 +207,7 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    @Override
     public void close() {
         LOGGER.debug("Closing {}", this);
         try {
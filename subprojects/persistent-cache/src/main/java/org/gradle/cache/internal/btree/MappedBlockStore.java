@@ -0,0 +1,410 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A block store which reads and updates blocks through memory mapped regions of the cache file, so that reading a block does not need a system call once its region is mapped.
+ *
+ * <p>Blocks have the same layout as in {@link FileBackedBlockStore}, so both stores can be used with the same file. The file is mapped in regions of a fixed size, each of which is mapped
+ * once when first accessed. While the store is open, the file is grown a whole region at a time, so that a region never needs to be remapped, and the end of the blocks is tracked
+ * separately from the length of the file. Blocks which span two regions are copied.</p>
+ *
+ * <p>The regions are unmapped and the file is truncated to the end of the blocks when the store is closed, so that other processes see the same file as with {@link FileBackedBlockStore}.
+ * When the process stops before the store is closed, the unused end of the file is treated as allocated when the file is next opened.</p>
+ */
+public class MappedBlockStore implements BlockStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedBlockStore.class);
+    private static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+
+    private final File cacheFile;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private final BlockOutputStream blockOutput = new BlockOutputStream();
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long nextBlock;
+    private Factory factory;
+    // The end of the blocks written so far, and the length of the file, which is a multiple of the region size
+    private long blocksEnd;
+    private long allocatedFileSize;
+
+    public MappedBlockStore(File cacheFile) {
+        this(cacheFile, DEFAULT_REGION_SIZE);
+    }
+
+    MappedBlockStore(File cacheFile, int regionSize) {
+        this.cacheFile = cacheFile;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = new RandomAccessFile(cacheFile, "rw");
+            channel = file.getChannel();
+            blocksEnd = file.length();
+            nextBlock = blocksEnd;
+            allocatedFileSize = blocksEnd;
+            allocate(blocksEnd);
+            if (blocksEnd == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        unmapRegions();
+        try {
+            if (allocatedFileSize > blocksEnd) {
+                file.setLength(blocksEnd);
+            }
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void clear() {
+        unmapRegions();
+        try {
+            file.setLength(0);
+            blocksEnd = 0;
+            allocatedFileSize = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextBlock = 0;
+    }
+
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    public void flush() {
+    }
+
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        nextBlock += length;
+        return pos;
+    }
+
+    /**
+     * Grows the file to the end of the region containing the given position.
+     */
+    private void allocate(long end) throws IOException {
+        long newSize = (Math.max(end, allocatedFileSize) + regionSize - 1) / regionSize * regionSize;
+        if (newSize != allocatedFileSize) {
+            file.setLength(newSize);
+            allocatedFileSize = newSize;
+        }
+    }
+
+    /**
+     * Returns a buffer positioned at the given range of the file, which is a view of a mapped region when the range is contained in a single region.
+     */
+    private ByteBuffer buffer(long pos, int length) throws IOException {
+        int regionIndex = (int) (pos / regionSize);
+        long regionStart = (long) regionIndex * regionSize;
+        if (pos + length > regionStart + regionSize) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, pos + buffer.position()) < 0) {
+                    throw new EOFException();
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+        MappedByteBuffer region = regionIndex < regions.size() ? regions.get(regionIndex) : null;
+        if (region == null) {
+            region = map(regionIndex, regionStart);
+        }
+        ByteBuffer buffer = region.duplicate();
+        buffer.position((int) (pos - regionStart));
+        buffer.limit((int) (pos - regionStart) + length);
+        return buffer;
+    }
+
+    private MappedByteBuffer map(int regionIndex, long regionStart) throws IOException {
+        while (regions.size() <= regionIndex) {
+            regions.add(null);
+        }
+        MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        regions.set(regionIndex, region);
+        return region;
+    }
+
+    private void unmapRegions() {
+        for (MappedByteBuffer region : regions) {
+            if (region != null) {
+                unmap(region);
+            }
+        }
+        regions.clear();
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            blockOutput.reset();
+            DataOutputStream outputStream = new DataOutputStream(blockOutput);
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            int bytesWritten = blockOutput.size();
+            outputStream.writeInt(bytesWritten);
+            outputStream.flush();
+
+            // The padding of a new block is already zero, as the file has been grown beyond it
+            allocate(finalSize);
+            ByteBuffer block = blockOutput.toByteBuffer();
+            if ((pos % regionSize) + block.remaining() <= regionSize) {
+                buffer(pos, block.remaining()).put(block);
+            } else {
+                while (block.hasRemaining()) {
+                    channel.write(block, pos + block.position());
+                }
+            }
+            if (blocksEnd < finalSize) {
+                blocksEnd = finalSize;
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= blocksEnd) {
+                throw blockCorruptedException();
+            }
+
+            ByteBuffer header = buffer(pos, HEADER_SIZE);
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = header.get();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = header.getInt();
+            if (payloadSize < 0 || pos + HEADER_SIZE + TAIL_SIZE + payloadSize > blocksEnd) {
+                throw blockCorruptedException();
+            }
+            ByteBuffer block = buffer(pos, HEADER_SIZE + payloadSize + TAIL_SIZE);
+            int start = block.position();
+            block.position(start + HEADER_SIZE);
+            payload.read(new DataInputStream(new ByteBufferInputStream(block)));
+
+            // Read and verify count
+            int actualCount = block.position() - start;
+            if (block.remaining() < INT_SIZE || block.getInt() != actualCount) {
+                throw blockCorruptedException();
+            }
+        }
+
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedBlockStore.this));
+        }
+    }
+
+    private static class BlockOutputStream extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+    }
+
+    /**
+     * Releases the mapping of the given buffer without waiting for it to be garbage collected. The buffer must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            try {
+                // Java 9 and later
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            // The buffer is unmapped when it is garbage collected
+            LOGGER.debug("Could not unmap buffer.", e);
+        }
+    }
+}
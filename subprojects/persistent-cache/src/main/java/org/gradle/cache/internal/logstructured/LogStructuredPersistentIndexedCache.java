@@ -0,0 +1,827 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.cache.SuspendableIndexedCacheStore;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent indexed cache which appends every update to a log of segment files, and keeps an in-memory index from the serialized keys to the location of their latest value.
+ *
+ * <p>Updates never modify existing data, so a put costs a single append regardless of the size of the cache. The index is rebuilt by scanning the segments when the cache is opened,
+ * and a torn record at the end of a segment is discarded. Once the active segment reaches its maximum size it is sealed and a new one is started.</p>
+ *
+ * <p>When at least half of the bytes in the sealed segments belong to overwritten or removed entries, the live entries of all sealed segments are copied into a single new segment on the
+ * given executor, while the cache continues to serve reads and writes. The compacted segment takes the place of the newest segment it replaces, so that the order of the segments still
+ * reflects the order of the updates, and it is only used after it has been completely written. Suspending the cache pauses a running compaction, which continues where it stopped when
+ * the cache is resumed, so that a compaction finishes even when the lock is released often. It is discarded instead when the segments have been modified by another process meanwhile,
+ * and its incomplete segment is then cleaned up by the next process which opens the cache. Closing the cache cancels a running compaction and waits for it to stop.</p>
+ *
+ * <p>The index is kept while the cache is suspended, so that it does not need to be rebuilt each time the file lock is acquired again. Before the first modification made while
+ * holding the lock, a new generation is written to a marker file in the segments directory. The index is only reused on resume when the generation is still the one it was built for
+ * and every segment still has the expected length, otherwise it is rebuilt from the segments.</p>
+ *
+ * <p>Records are laid out as the length of the key, the length of the value or -1 for a removed entry, the key, the value and a CRC32 of all the preceding bytes of the record.</p>
+ */
+public class LogStructuredPersistentIndexedCache<K, V> implements SuspendableIndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredPersistentIndexedCache.class);
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTED_SUFFIX = ".compacted";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final String GENERATION_FILE_NAME = "generation";
+    private static final int HEADER_SIZE = 8;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int REMOVED = -1;
+
+    private final File segmentsDir;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final Executor compactionExecutor;
+    private final long maxSegmentSize;
+    private final File generationFile;
+    private final Random random = new Random();
+    private final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+    private final KryoBackedEncoder keyEncoder = new KryoBackedEncoder(keyBytes);
+    private final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    private final KryoBackedEncoder valueEncoder = new KryoBackedEncoder(valueBytes);
+    private final CRC32 checksum = new CRC32();
+    private final Map<Key, Entry> index = new HashMap<Key, Entry>();
+    // The sealed segments, from oldest to newest
+    private final List<Segment> sealedSegments = new ArrayList<Segment>();
+    private Segment activeSegment;
+    private Compaction compaction;
+    private boolean open;
+    private boolean suspended;
+    // The generation of the segments the index was built from, and whether this cache has modified them since the lock was acquired
+    private long generation;
+    private boolean modified;
+
+    public LogStructuredPersistentIndexedCache(File segmentsDir, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor) {
+        this(segmentsDir, keySerializer, valueSerializer, compactionExecutor, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public LogStructuredPersistentIndexedCache(File segmentsDir, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor, long maxSegmentSize) {
+        this.segmentsDir = segmentsDir;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.compactionExecutor = compactionExecutor;
+        this.maxSegmentSize = maxSegmentSize;
+        this.generationFile = new File(segmentsDir, GENERATION_FILE_NAME);
+        try {
+            open();
+        } catch (Exception e) {
+            closeSegments();
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + segmentsDir.getName() + " (" + segmentsDir + ")";
+    }
+
+    private void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        if (!segmentsDir.isDirectory() && !segmentsDir.mkdirs()) {
+            throw new IOException(String.format("Could not create directory %s.", segmentsDir));
+        }
+        generation = readGeneration();
+        for (Segment segment : recoverSegments()) {
+            scan(segment);
+            sealedSegments.add(segment);
+        }
+        if (sealedSegments.isEmpty()) {
+            activeSegment = Segment.open(segmentsDir, 1, SEGMENT_SUFFIX);
+        } else {
+            activeSegment = sealedSegments.remove(sealedSegments.size() - 1);
+        }
+        open = true;
+        maybeStartCompaction();
+    }
+
+    /**
+     * Opens the segments which make up the cache, from oldest to newest. Leftovers of an interrupted compaction are cleaned up: a complete compacted segment replaces all segments
+     * up to and including its own id, and an incomplete one is discarded.
+     */
+    private List<Segment> recoverSegments() throws IOException {
+        SortedMap<Long, File> segmentFiles = new TreeMap<Long, File>();
+        long compactedId = 0;
+        File[] files = segmentsDir.listFiles();
+        if (files == null) {
+            throw new IOException(String.format("Could not list contents of %s.", segmentsDir));
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(COMPACTING_SUFFIX)) {
+                beforeModification();
+                delete(file);
+            } else if (name.endsWith(SEGMENT_SUFFIX) || name.endsWith(COMPACTED_SUFFIX)) {
+                long id = Segment.parseId(name);
+                if (id <= 0) {
+                    continue;
+                }
+                if (name.endsWith(COMPACTED_SUFFIX)) {
+                    compactedId = Math.max(compactedId, id);
+                }
+                File existing = segmentFiles.get(id);
+                // A compacted segment supersedes the segment with the same id
+                if (existing == null || name.endsWith(COMPACTED_SUFFIX)) {
+                    segmentFiles.put(id, file);
+                }
+                if (existing != null) {
+                    beforeModification();
+                    delete(name.endsWith(COMPACTED_SUFFIX) ? existing : file);
+                }
+            }
+        }
+        List<Segment> segments = new ArrayList<Segment>(segmentFiles.size());
+        for (Map.Entry<Long, File> entry : segmentFiles.entrySet()) {
+            long id = entry.getKey();
+            File file = entry.getValue();
+            if (id < compactedId) {
+                beforeModification();
+                delete(file);
+            } else {
+                segments.add(Segment.open(file, id));
+            }
+        }
+        return segments;
+    }
+
+    private void scan(Segment segment) throws IOException {
+        long length = segment.channel.size();
+        long offset = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.file)));
+        try {
+            byte[] buffer = new byte[1024];
+            while (offset + HEADER_SIZE + CHECKSUM_SIZE <= length) {
+                int keyLength = input.readInt();
+                int valueLength = input.readInt();
+                if (keyLength < 0 || valueLength < REMOVED || offset + HEADER_SIZE + CHECKSUM_SIZE + keyLength + Math.max(valueLength, 0) > length) {
+                    break;
+                }
+                int recordLength = recordLength(keyLength, valueLength);
+                if (buffer.length < recordLength) {
+                    buffer = new byte[recordLength];
+                }
+                ByteBuffer.wrap(buffer).putInt(keyLength).putInt(valueLength);
+                input.readFully(buffer, HEADER_SIZE, recordLength - HEADER_SIZE);
+                if (!hasValidChecksum(buffer, recordLength)) {
+                    break;
+                }
+                Key key = new Key(Arrays.copyOfRange(buffer, HEADER_SIZE, HEADER_SIZE + keyLength));
+                if (valueLength == REMOVED) {
+                    discard(index.remove(key));
+                } else {
+                    Entry entry = new Entry(segment, offset, keyLength, valueLength);
+                    discard(index.put(key, entry));
+                    segment.liveBytes += recordLength;
+                }
+                offset += recordLength;
+            }
+        } catch (EOFException e) {
+            // Handled below
+        } finally {
+            input.close();
+        }
+        if (offset < length) {
+            LOGGER.warn("Segment {} of {} is corrupt. Discarding {} bytes at its end.", segment.file.getName(), this, length - offset);
+            beforeModification();
+            segment.channel.truncate(offset);
+        }
+        segment.size = offset;
+    }
+
+    @Nullable
+    @Override
+    public synchronized V get(K key) {
+        try {
+            Entry entry = index.get(new Key(serializeKey(key)));
+            if (entry == null) {
+                return null;
+            }
+            byte[] value = new byte[entry.valueLength];
+            readFully(entry.segment.channel, ByteBuffer.wrap(value), entry.getValueOffset());
+            return valueSerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(value), value.length));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        try {
+            Key serializedKey = new Key(serializeKey(key));
+            byte[] record = createRecord(serializedKey.bytes, serializeValue(value));
+            Entry entry = append(record, serializedKey.bytes.length);
+            discard(index.put(serializedKey, entry));
+            entry.segment.liveBytes += record.length;
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+        try {
+            Key serializedKey = new Key(serializeKey(key));
+            if (!index.containsKey(serializedKey)) {
+                return;
+            }
+            append(createRecord(serializedKey.bytes, null), serializedKey.bytes.length);
+            discard(index.remove(serializedKey));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    /**
+     * Puts all entries of this cache into the given store.
+     */
+    public synchronized void copyEntriesTo(IndexedCacheStore<K, V> store) {
+        for (Map.Entry<Key, Entry> indexEntry : index.entrySet()) {
+            byte[] serializedKey = indexEntry.getKey().bytes;
+            Entry entry = indexEntry.getValue();
+            K key;
+            V value;
+            try {
+                key = keySerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(serializedKey), serializedKey.length));
+                byte[] serializedValue = new byte[entry.valueLength];
+                readFully(entry.segment.channel, ByteBuffer.wrap(serializedValue), entry.getValueOffset());
+                value = valueSerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(serializedValue), serializedValue.length));
+            } catch (Exception e) {
+                throw new UncheckedIOException(String.format("Could not read entries from %s.", this), e);
+            }
+            store.put(key, value);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        LOGGER.debug("Closing {}", this);
+        open = false;
+        awaitCompactionCancelled();
+        index.clear();
+        closeSegments();
+    }
+
+    @Override
+    public synchronized void suspend() {
+        if (!open || suspended) {
+            return;
+        }
+        LOGGER.debug("Suspending {}", this);
+        awaitCompactionPaused();
+        for (Segment segment : sealedSegments) {
+            segment.close();
+        }
+        activeSegment.close();
+        suspended = true;
+        modified = false;
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (!suspended) {
+            return;
+        }
+        suspended = false;
+        try {
+            if (isUnchangedSinceSuspended()) {
+                LOGGER.debug("Resuming {}", this);
+                for (Segment segment : sealedSegments) {
+                    segment.reopen();
+                }
+                activeSegment.reopen();
+                resumeCompaction();
+                maybeStartCompaction();
+                return;
+            }
+        } catch (Exception e) {
+            LOGGER.debug(String.format("Could not resume %s, rebuilding its index.", this), e);
+        }
+        // The segments have been modified, so a paused compaction may have been cleaned up or may no longer contain the live entries
+        compaction = null;
+        open = false;
+        index.clear();
+        closeSegments();
+        try {
+            open();
+        } catch (Exception e) {
+            closeSegments();
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    private boolean isUnchangedSinceSuspended() throws IOException {
+        if (readGeneration() != generation) {
+            return false;
+        }
+        for (Segment segment : sealedSegments) {
+            if (!segment.hasSize()) {
+                return false;
+            }
+        }
+        return activeSegment.hasSize();
+    }
+
+    private void awaitCompactionCancelled() {
+        if (compaction == null) {
+            return;
+        }
+        compaction.cancelled = true;
+        if (!compaction.running) {
+            // A paused compaction has already closed its segment, which is cleaned up when the cache is opened again
+            compaction = null;
+            return;
+        }
+        awaitCompactionStopped();
+    }
+
+    private void awaitCompactionPaused() {
+        if (compaction == null) {
+            return;
+        }
+        compaction.paused = true;
+        awaitCompactionStopped();
+    }
+
+    private void awaitCompactionStopped() {
+        boolean interrupted = false;
+        while (compaction != null && compaction.running) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a new generation to the marker file before the first modification of the segments while holding the lock, so that other processes rebuild their index when they resume.
+     */
+    private void beforeModification() throws IOException {
+        if (modified) {
+            return;
+        }
+        long newGeneration = random.nextLong();
+        RandomAccessFile file = new RandomAccessFile(generationFile, "rw");
+        try {
+            file.setLength(0);
+            file.writeLong(newGeneration);
+        } finally {
+            file.close();
+        }
+        generation = newGeneration;
+        modified = true;
+    }
+
+    private long readGeneration() throws IOException {
+        if (generationFile.length() < 8) {
+            return 0;
+        }
+        DataInputStream input = new DataInputStream(new FileInputStream(generationFile));
+        try {
+            return input.readLong();
+        } finally {
+            input.close();
+        }
+    }
+
+    @VisibleForTesting
+    synchronized int getSegmentCount() {
+        return sealedSegments.size() + 1;
+    }
+
+    private void closeSegments() {
+        for (Segment segment : sealedSegments) {
+            segment.close();
+        }
+        sealedSegments.clear();
+        if (activeSegment != null) {
+            activeSegment.close();
+            activeSegment = null;
+        }
+    }
+
+    private Entry append(byte[] record, int keyLength) throws IOException {
+        beforeModification();
+        if (activeSegment.size > 0 && activeSegment.size + record.length > maxSegmentSize) {
+            sealedSegments.add(activeSegment);
+            activeSegment = Segment.open(segmentsDir, activeSegment.id + 1, SEGMENT_SUFFIX);
+            maybeStartCompaction();
+        }
+        Segment segment = activeSegment;
+        long offset = segment.size;
+        writeFully(segment.channel, ByteBuffer.wrap(record), offset);
+        segment.size += record.length;
+        return new Entry(segment, offset, keyLength, record.length - HEADER_SIZE - CHECKSUM_SIZE - keyLength);
+    }
+
+    private void discard(@Nullable Entry entry) {
+        if (entry != null) {
+            entry.segment.liveBytes -= entry.getRecordLength();
+        }
+    }
+
+    private void maybeStartCompaction() {
+        // A compacted segment takes the id of the newest segment it replaces, so at least one segment needs to have been sealed since the last compaction
+        if (compaction != null || !open || sealedSegments.isEmpty() || sealedSegments.get(sealedSegments.size() - 1).isCompacted()) {
+            return;
+        }
+        long sealedBytes = 0;
+        long liveBytes = 0;
+        for (Segment segment : sealedSegments) {
+            sealedBytes += segment.size;
+            liveBytes += segment.liveBytes;
+        }
+        if (liveBytes * 2 > sealedBytes) {
+            return;
+        }
+        try {
+            beforeModification();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<Segment, Boolean> inputs = new IdentityHashMap<Segment, Boolean>();
+        for (Segment segment : sealedSegments) {
+            inputs.put(segment, Boolean.TRUE);
+        }
+        Map<Key, Entry> liveEntries = new HashMap<Key, Entry>();
+        for (Map.Entry<Key, Entry> entry : index.entrySet()) {
+            if (inputs.containsKey(entry.getValue().segment)) {
+                liveEntries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        compaction = new Compaction(new ArrayList<Segment>(sealedSegments), liveEntries);
+        try {
+            compactionExecutor.execute(compaction);
+        } catch (RuntimeException e) {
+            compaction = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Continues a compaction which was paused when the cache was suspended, provided its segment has not been touched meanwhile.
+     */
+    private void resumeCompaction() throws IOException {
+        if (compaction == null) {
+            return;
+        }
+        if (!compaction.output.hasSize()) {
+            compaction = null;
+            return;
+        }
+        compaction.output.reopen();
+        compaction.paused = false;
+        compaction.running = true;
+        try {
+            compactionExecutor.execute(compaction);
+        } catch (RuntimeException e) {
+            compaction.output.close();
+            compaction = null;
+            throw e;
+        }
+    }
+
+    /**
+     * Called by a compaction which stopped because the cache is being suspended.
+     */
+    private synchronized void pauseCompaction(Compaction compaction) {
+        compaction.running = false;
+        notifyAll();
+    }
+
+    private synchronized void finishCompaction(Compaction compaction, @Nullable Segment output, Map<Key, Long> relocatedOffsets) {
+        try {
+            if (output == null) {
+                return;
+            }
+            for (Map.Entry<Key, Long> relocatedOffset : relocatedOffsets.entrySet()) {
+                Key key = relocatedOffset.getKey();
+                Entry entry = compaction.liveEntries.get(key);
+                // Entries which have been updated or removed while compacting are already dead in the compacted segment
+                if (index.get(key) == entry) {
+                    index.put(key, new Entry(output, relocatedOffset.getValue(), entry.keyLength, entry.valueLength));
+                } else {
+                    output.liveBytes -= entry.getRecordLength();
+                }
+            }
+            sealedSegments.removeAll(compaction.inputs);
+            sealedSegments.add(0, output);
+            for (Segment input : compaction.inputs) {
+                input.close();
+                delete(input.file);
+            }
+            LOGGER.debug("Compacted {} segments of {}.", compaction.inputs.size(), this);
+        } finally {
+            compaction.running = false;
+            this.compaction = null;
+            notifyAll();
+        }
+    }
+
+    private byte[] serializeKey(K key) throws Exception {
+        keyBytes.reset();
+        keySerializer.write(keyEncoder, key);
+        keyEncoder.flush();
+        return keyBytes.toByteArray();
+    }
+
+    private byte[] serializeValue(V value) throws Exception {
+        valueBytes.reset();
+        valueSerializer.write(valueEncoder, value);
+        valueEncoder.flush();
+        return valueBytes.toByteArray();
+    }
+
+    private byte[] createRecord(byte[] key, @Nullable byte[] value) {
+        int valueLength = value == null ? REMOVED : value.length;
+        int recordLength = recordLength(key.length, valueLength);
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(key.length).putInt(valueLength).put(key);
+        if (value != null) {
+            record.put(value);
+        }
+        checksum.reset();
+        checksum.update(record.array(), 0, record.position());
+        record.putInt((int) checksum.getValue());
+        return record.array();
+    }
+
+    private static int recordLength(int keyLength, int valueLength) {
+        return HEADER_SIZE + keyLength + Math.max(valueLength, 0) + CHECKSUM_SIZE;
+    }
+
+    private static boolean hasValidChecksum(byte[] record, int recordLength) {
+        CRC32 checksum = new CRC32();
+        checksum.update(record, 0, recordLength - CHECKSUM_SIZE);
+        return (int) checksum.getValue() == ByteBuffer.wrap(record, recordLength - CHECKSUM_SIZE, CHECKSUM_SIZE).getInt();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Could not delete {}.", file);
+        }
+    }
+
+    /**
+     * Copies the live entries of the sealed segments into a new segment. Sealed segments are never modified, so they can be read without holding the lock of the cache.
+     * The copied entries and the partially written segment are kept when the compaction is paused, so that it can continue from there.
+     */
+    private class Compaction implements Runnable {
+        private final List<Segment> inputs;
+        private final Map<Key, Entry> liveEntries;
+        private final List<Key> keys;
+        private final long id;
+        private final Map<Key, Long> relocatedOffsets;
+        private Segment output;
+        private int copied;
+        // Guarded by the lock of the cache
+        private boolean running = true;
+        private volatile boolean paused;
+        private volatile boolean cancelled;
+
+        Compaction(List<Segment> inputs, Map<Key, Entry> liveEntries) {
+            this.inputs = inputs;
+            this.liveEntries = liveEntries;
+            this.keys = new ArrayList<Key>(liveEntries.keySet());
+            this.id = inputs.get(inputs.size() - 1).id;
+            this.relocatedOffsets = new HashMap<Key, Long>(liveEntries.size());
+        }
+
+        @Override
+        public void run() {
+            File compactingFile = Segment.file(segmentsDir, id, COMPACTING_SUFFIX);
+            Segment compacted = null;
+            boolean pausing = false;
+            try {
+                if (output == null) {
+                    output = Segment.open(compactingFile, id);
+                    // The file may have been left behind by a paused compaction of another process
+                    output.channel.truncate(0);
+                }
+                while (copied < keys.size() && !cancelled) {
+                    if (paused) {
+                        LOGGER.debug("Paused compaction of {}.", LogStructuredPersistentIndexedCache.this);
+                        output.close();
+                        pausing = true;
+                        return;
+                    }
+                    Key key = keys.get(copied);
+                    Entry entry = liveEntries.get(key);
+                    ByteBuffer record = ByteBuffer.allocate(entry.getRecordLength());
+                    readFully(entry.segment.channel, record, entry.offset);
+                    record.flip();
+                    writeFully(output.channel, record, output.size);
+                    relocatedOffsets.put(key, output.size);
+                    output.size += entry.getRecordLength();
+                    copied++;
+                }
+                if (cancelled) {
+                    LOGGER.debug("Cancelled compaction of {}.", LogStructuredPersistentIndexedCache.this);
+                    output.close();
+                    delete(compactingFile);
+                    return;
+                }
+                output.channel.force(true);
+                output.close();
+                // From here on, the compacted segment replaces the segments it was created from when the cache is opened
+                File compactedFile = Segment.file(segmentsDir, id, COMPACTED_SUFFIX);
+                if (!compactingFile.renameTo(compactedFile)) {
+                    throw new IOException(String.format("Could not rename %s to %s.", compactingFile, compactedFile));
+                }
+                compacted = Segment.open(compactedFile, id);
+                compacted.size = compacted.channel.size();
+                compacted.liveBytes = compacted.size;
+            } catch (Exception e) {
+                LOGGER.warn(String.format("Could not compact %s.", LogStructuredPersistentIndexedCache.this), e);
+                if (output != null) {
+                    output.close();
+                }
+                if (compacted != null) {
+                    compacted.close();
+                    compacted = null;
+                }
+                delete(compactingFile);
+            } finally {
+                if (pausing) {
+                    pauseCompaction(this);
+                } else {
+                    finishCompaction(this, compacted, relocatedOffsets);
+                }
+            }
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        RandomAccessFile randomAccessFile;
+        FileChannel channel;
+        long size;
+        long liveBytes;
+
+        private Segment(long id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+            this.channel = randomAccessFile.getChannel();
+        }
+
+        static Segment open(File dir, long id, String suffix) throws IOException {
+            return open(file(dir, id, suffix), id);
+        }
+
+        static Segment open(File file, long id) throws IOException {
+            return new Segment(id, file);
+        }
+
+        static File file(File dir, long id, String suffix) {
+            return new File(dir, String.format("%016d", id) + suffix);
+        }
+
+        void reopen() throws IOException {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+        }
+
+        boolean hasSize() {
+            return file.isFile() && file.length() == size;
+        }
+
+        boolean isCompacted() {
+            return file.getName().endsWith(COMPACTED_SUFFIX);
+        }
+
+        static long parseId(String fileName) {
+            int end = fileName.indexOf('.');
+            try {
+                return Long.parseLong(fileName.substring(0, end < 0 ? fileName.length() : end));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close " + file, e);
+            }
+        }
+    }
+
+    /**
+     * The location of the latest value of a key.
+     */
+    private static class Entry {
+        final Segment segment;
+        final long offset;
+        final int keyLength;
+        final int valueLength;
+
+        Entry(Segment segment, long offset, int keyLength, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        long getValueOffset() {
+            return offset + HEADER_SIZE + keyLength;
+        }
+
+        int getRecordLength() {
+            return recordLength(keyLength, valueLength);
+        }
+    }
+
+    private static class Key {
+        final byte[] bytes;
+        final int hashCode;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.IndexedCacheStore;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent indexed cache for content-addressed entries, which can be read and written by several processes at the same time while they only hold a shared lock on the cache.
+ *
+ * <p>An instance appends its entries to a segment which it has claimed with an exclusive lock on a region of the segment file past its content, so no other instance modifies it.
+ * The other segments are only read. When a key cannot be found, the segments are scanned again for entries added by other instances, at most once per refresh interval.
+ * A record which another instance is still writing fails the length or checksum verification and is picked up by a later scan.</p>
+ *
+ * <p>When an instance starts writing, it claims the segments which are not full and which no other instance has claimed, such as those of processes which have finished.
+ * It continues the largest of them, and moves the entries of the others into it and deletes them, as long as they fit. So the number of segments is bounded by the size of the
+ * cache and the number of instances writing to it at the same time, instead of growing with each instance which has ever written to it.
+ * A segment which another process still reads from cannot be deleted on some platforms, in which case it is left in place, and its entries are moved again later.</p>
+ *
+ * <p>As the entries are content-addressed, a key is always associated with the same value, so an entry which is already known is not written again, and entries written by different
+ * instances for the same key are interchangeable. Entries cannot be removed. The whole cache can be deleted by a cleanup which holds an exclusive lock.</p>
+ *
+ * <p>Records are laid out as the length of the key, the length of the value, the key, the value and a CRC32 of all the preceding bytes of the record.</p>
+ */
+public class SharedSegmentsPersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedSegmentsPersistentIndexedCache.class);
+    private static final long DEFAULT_MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int CHECKSUM_SIZE = 4;
+    // The region which is locked to claim a segment, which is never read or written
+    private static final long CLAIM_POSITION = Long.MAX_VALUE - 1;
+    private static final FileFilter SEGMENT_FILTER = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.getName().endsWith(SEGMENT_SUFFIX);
+        }
+    };
+
+    private final File segmentsDir;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final long maxSegmentSize;
+    private final long refreshIntervalNanos;
+    private final String writerId = UUID.randomUUID().toString();
+    private final ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+    private final KryoBackedEncoder keyEncoder = new KryoBackedEncoder(keyBytes);
+    private final ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+    private final KryoBackedEncoder valueEncoder = new KryoBackedEncoder(valueBytes);
+    private final CRC32 checksum = new CRC32();
+    private final Map<Key, Entry> index = new HashMap<Key, Entry>();
+    private final Map<String, Segment> segments = new HashMap<String, Segment>();
+    private Segment activeSegment;
+    private int nextSegmentNumber;
+    private long lastRefresh;
+    private boolean open;
+
+    public SharedSegmentsPersistentIndexedCache(File segmentsDir, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(segmentsDir, keySerializer, valueSerializer, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    @VisibleForTesting
+    SharedSegmentsPersistentIndexedCache(File segmentsDir, Serializer<K> keySerializer, Serializer<V> valueSerializer, long maxSegmentSize, long refreshIntervalMillis) {
+        this.segmentsDir = segmentsDir;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.maxSegmentSize = maxSegmentSize;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+        try {
+            LOGGER.debug("Opening {}", this);
+            if (!segmentsDir.isDirectory() && !segmentsDir.mkdirs() && !segmentsDir.isDirectory()) {
+                throw new IOException(String.format("Could not create directory %s.", segmentsDir));
+            }
+            open = true;
+            refresh();
+        } catch (Exception e) {
+            closeSegments();
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + segmentsDir.getName() + " (" + segmentsDir + ")";
+    }
+
+    @Nullable
+    @Override
+    public synchronized V get(K key) {
+        try {
+            Key serializedKey = new Key(serializeKey(key));
+            Entry entry = index.get(serializedKey);
+            if (entry == null && System.nanoTime() - lastRefresh >= refreshIntervalNanos) {
+                // Another process may have added the entry since the last scan
+                refresh();
+                entry = index.get(serializedKey);
+            }
+            if (entry == null) {
+                return null;
+            }
+            byte[] value = new byte[entry.valueLength];
+            readFully(entry.segment.channel, ByteBuffer.wrap(value), entry.getValueOffset());
+            return valueSerializer.read(new KryoBackedDecoder(new ByteArrayInputStream(value), value.length));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        try {
+            Key serializedKey = new Key(serializeKey(key));
+            if (index.containsKey(serializedKey)) {
+                // Content-addressed, so the stored value is the same
+                return;
+            }
+            byte[] record = createRecord(serializedKey.bytes, serializeValue(value));
+            index.put(serializedKey, append(record, serializedKey.bytes.length));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        throw new UnsupportedOperationException(String.format("Cannot remove entry '%s' from %s, as its entries are content-addressed.", key, this));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        LOGGER.debug("Closing {}", this);
+        open = false;
+        index.clear();
+        closeSegments();
+    }
+
+    @VisibleForTesting
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Indexes the records which have been added to the segments of other instances since the last scan.
+     */
+    private void refresh() throws IOException {
+        lastRefresh = System.nanoTime();
+        File[] files = segmentsDir.listFiles(SEGMENT_FILTER);
+        if (files == null) {
+            throw new IOException(String.format("Could not list the segments of %s.", this));
+        }
+        for (File file : files) {
+            Segment segment = segments.get(file.getName());
+            if (segment == null) {
+                try {
+                    segment = new Segment(file);
+                } catch (FileNotFoundException e) {
+                    // Moved into the segment of another instance in the meantime
+                    continue;
+                }
+                segments.put(file.getName(), segment);
+            } else if (segment == activeSegment) {
+                continue;
+            }
+            long length = segment.channel.size();
+            if (length != segment.observedLength) {
+                segment.observedLength = length;
+                scan(segment, length);
+            }
+        }
+    }
+
+    private void scan(Segment segment, long length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long offset = segment.size;
+        while (offset + HEADER_SIZE + CHECKSUM_SIZE <= length) {
+            header.clear();
+            readFully(segment.channel, header, offset);
+            int keyLength = header.getInt(0);
+            int valueLength = header.getInt(4);
+            if (keyLength < 0 || valueLength < 0 || offset + HEADER_SIZE + CHECKSUM_SIZE + keyLength + valueLength > length) {
+                // Incomplete record, which may still be being written
+                break;
+            }
+            int recordLength = recordLength(keyLength, valueLength);
+            byte[] record = new byte[recordLength];
+            readFully(segment.channel, ByteBuffer.wrap(record), offset);
+            if (!hasValidChecksum(record, recordLength)) {
+                break;
+            }
+            Key key = new Key(Arrays.copyOfRange(record, HEADER_SIZE, HEADER_SIZE + keyLength));
+            if (!index.containsKey(key)) {
+                index.put(key, new Entry(segment, offset, keyLength, valueLength));
+            }
+            offset += recordLength;
+        }
+        segment.size = offset;
+    }
+
+    private void closeSegments() {
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        activeSegment = null;
+    }
+
+    private Entry append(byte[] record, int keyLength) throws IOException {
+        if (activeSegment == null) {
+            activeSegment = claimSegment();
+        } else if (activeSegment.size > 0 && activeSegment.size + record.length > maxSegmentSize) {
+            // Full segments are never written again, so other instances do not need to wait for this one to finish to claim them
+            activeSegment.release();
+            activeSegment = newSegment();
+        }
+        Segment segment = activeSegment;
+        long offset = segment.size;
+        writeFully(segment.channel, ByteBuffer.wrap(record), offset);
+        segment.size += record.length;
+        segment.observedLength = segment.size;
+        return new Entry(segment, offset, keyLength, record.length - HEADER_SIZE - CHECKSUM_SIZE - keyLength);
+    }
+
+    /**
+     * Claims a segment to write to. Continues the largest segment which is not full and not claimed by another instance, and moves the entries of the other such segments into it.
+     */
+    private Segment claimSegment() throws IOException {
+        refresh();
+        Segment claimed = null;
+        List<Segment> others = new ArrayList<Segment>();
+        for (Segment segment : segments.values()) {
+            if (segment.size >= maxSegmentSize || !segment.tryClaim()) {
+                continue;
+            }
+            // The previous writer may have added records since the last scan, which other instances may have indexed
+            segment.observedLength = segment.channel.size();
+            scan(segment, segment.observedLength);
+            if (claimed == null) {
+                claimed = segment;
+            } else if (segment.size > claimed.size) {
+                others.add(claimed);
+                claimed = segment;
+            } else {
+                others.add(segment);
+            }
+        }
+        if (claimed == null) {
+            return newSegment();
+        }
+        // Drop a record which the previous writer did not finish
+        claimed.channel.truncate(claimed.size);
+        claimed.observedLength = claimed.size;
+        for (Segment other : others) {
+            moveEntries(other, claimed);
+        }
+        return claimed;
+    }
+
+    /**
+     * Moves the entries of a claimed segment into the given segment and deletes it, if they fit. Releases the claim on the segment either way.
+     */
+    private void moveEntries(Segment source, Segment target) throws IOException {
+        List<Map.Entry<Key, Entry>> moved = new ArrayList<Map.Entry<Key, Entry>>();
+        long length = 0;
+        for (Map.Entry<Key, Entry> entry : index.entrySet()) {
+            if (entry.getValue().segment == source) {
+                moved.add(entry);
+                length += entry.getValue().getRecordLength();
+            }
+        }
+        if (target.size + length > maxSegmentSize) {
+            source.release();
+            return;
+        }
+        for (Map.Entry<Key, Entry> entry : moved) {
+            Entry sourceEntry = entry.getValue();
+            byte[] record = new byte[sourceEntry.getRecordLength()];
+            readFully(source.channel, ByteBuffer.wrap(record), sourceEntry.offset);
+            writeFully(target.channel, ByteBuffer.wrap(record), target.size);
+            entry.setValue(new Entry(target, target.size, sourceEntry.keyLength, sourceEntry.valueLength));
+            target.size += record.length;
+        }
+        target.observedLength = target.size;
+        source.release();
+        if (source.file.delete()) {
+            segments.remove(source.file.getName());
+            source.close();
+        } else {
+            LOGGER.debug("Could not delete {} after moving its entries, as it may still be read by another process.", source.file);
+        }
+    }
+
+    /**
+     * Creates and claims a new segment.
+     */
+    private Segment newSegment() throws IOException {
+        File file = new File(segmentsDir, String.format("%s-%06d", writerId, nextSegmentNumber++) + SEGMENT_SUFFIX);
+        if (!file.createNewFile()) {
+            throw new IOException(String.format("Segment %s already exists.", file));
+        }
+        Segment segment = new Segment(file);
+        segments.put(file.getName(), segment);
+        if (!segment.tryClaim()) {
+            throw new IOException(String.format("Could not claim segment %s.", file));
+        }
+        return segment;
+    }
+
+    private byte[] serializeKey(K key) throws Exception {
+        keyBytes.reset();
+        keySerializer.write(keyEncoder, key);
+        keyEncoder.flush();
+        return keyBytes.toByteArray();
+    }
+
+    private byte[] serializeValue(V value) throws Exception {
+        valueBytes.reset();
+        valueSerializer.write(valueEncoder, value);
+        valueEncoder.flush();
+        return valueBytes.toByteArray();
+    }
+
+    private byte[] createRecord(byte[] key, byte[] value) {
+        ByteBuffer record = ByteBuffer.allocate(recordLength(key.length, value.length));
+        record.putInt(key.length).putInt(value.length).put(key).put(value);
+        checksum.reset();
+        checksum.update(record.array(), 0, record.position());
+        record.putInt((int) checksum.getValue());
+        return record.array();
+    }
+
+    private static int recordLength(int keyLength, int valueLength) {
+        return HEADER_SIZE + keyLength + valueLength + CHECKSUM_SIZE;
+    }
+
+    private static boolean hasValidChecksum(byte[] record, int recordLength) {
+        CRC32 checksum = new CRC32();
+        checksum.update(record, 0, recordLength - CHECKSUM_SIZE);
+        return (int) checksum.getValue() == ByteBuffer.wrap(record, recordLength - CHECKSUM_SIZE, CHECKSUM_SIZE).getInt();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        RandomAccessFile randomAccessFile;
+        FileChannel channel;
+        FileLock claim;
+        // The length of the complete records
+        long size;
+        // The length of the file when it was last scanned
+        long observedLength;
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            this.randomAccessFile = new RandomAccessFile(file, "r");
+            this.channel = randomAccessFile.getChannel();
+        }
+
+        /**
+         * Reopens the segment for writing and claims it, unless another instance has claimed it.
+         */
+        boolean tryClaim() throws IOException {
+            if (!file.exists()) {
+                // Moved into the segment of another instance
+                return false;
+            }
+            RandomAccessFile writable = new RandomAccessFile(file, "rw");
+            try {
+                FileLock lock;
+                try {
+                    lock = writable.getChannel().tryLock(CLAIM_POSITION, 1, false);
+                } catch (OverlappingFileLockException e) {
+                    // Claimed by another instance in this process
+                    lock = null;
+                }
+                if (lock == null || writable.length() < size) {
+                    // A shorter file has been created in place of a segment which has been moved in the meantime
+                    writable.close();
+                    return false;
+                }
+                randomAccessFile.close();
+                randomAccessFile = writable;
+                channel = writable.getChannel();
+                claim = lock;
+                return true;
+            } catch (IOException e) {
+                writable.close();
+                throw e;
+            }
+        }
+
+        void release() {
+            if (claim == null) {
+                return;
+            }
+            try {
+                claim.release();
+            } catch (IOException e) {
+                LOGGER.debug("Could not release the claim on " + file, e);
+            }
+            claim = null;
+        }
+
+        void close() {
+            try {
+                // Also releases the claim
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close " + file, e);
+            }
+        }
+    }
+
+    /**
+     * The location of the record of a key.
+     */
+    private static class Entry {
+        final Segment segment;
+        final long offset;
+        final int keyLength;
+        final int valueLength;
+
+        Entry(Segment segment, long offset, int keyLength, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        long getValueOffset() {
+            return offset + HEADER_SIZE + keyLength;
+        }
+
+        int getRecordLength() {
+            return recordLength(keyLength, valueLength);
+        }
+    }
+
+    private static class Key {
+        final byte[] bytes;
+        final int hashCode;
+
+        Key(byte[] bytes) {
+            this.bytes = bytes;
+            this.hashCode = Arrays.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -198,4 +198,77 @@ class CacheAccessWorkerTest extends ConcurrentSpec {
         def e = thrown(RuntimeException)
         e == failure
     }
+
+    def "applies only the last of several batched updates of the same entry"() {
+        given:
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, true)
+        def cache = new Object()
+        def applied = []
+        def completed = []
+        start(worker)
+
+        when:
+        worker.enqueue(update(cache, "a", 1, applied, completed))
+        worker.enqueue(update(cache, "b", 2, applied, completed))
+        worker.enqueue(update(cache, "a", 3, applied, completed))
+        worker.enqueue(update(new Object(), "a", 4, applied, completed))
+        worker.flush()
+
+        then:
+        applied as Set == [2, 3, 4] as Set
+        completed as Set == [1, 2, 3, 4] as Set
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "read runs after batched updates are applied"() {
+        given:
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, true)
+        def cache = new Object()
+        def applied = []
+        start(worker)
+
+        when:
+        worker.enqueue(update(cache, "a", 1, applied, []))
+        worker.enqueue(update(cache, "a", 2, applied, []))
+        def result = worker.read { applied.clone() }
+
+        then:
+        result == [2]
+
+        cleanup:
+        worker?.stop()
+    }
+
+    def "stop rethrows failure of batched update"() {
+        given:
+        def worker = new CacheAccessWorker("<cache>", cacheAccess, true)
+        def failure = new RuntimeException()
+        def completed = []
+        worker.enqueue(new CacheEntryUpdate(new Object(), "a", { completed << "a" } as Runnable) {
+            @Override
+            protected void apply() {
+                throw failure
+            }
+        })
+
+        when:
+        start(worker)
+        worker.stop()
+
+        then:
+        def e = thrown(RuntimeException)
+        e == failure
+        completed == ["a"]
+    }
+
+    private static CacheEntryUpdate update(Object cache, String key, int value, List applied, List completed) {
+        return new CacheEntryUpdate(cache, key, { completed << value } as Runnable) {
+            @Override
+            protected void apply() {
+                applied << value
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ import org.gradle.cache.CrossProcessCacheAccess
 import org.gradle.cache.FileLock
 import org.gradle.cache.FileLockManager
 import org.gradle.cache.FileLockReleasedSignal
+import org.gradle.cache.IndexedCacheStorage
 import org.gradle.cache.LockOptions
 import org.gradle.cache.MultiProcessSafePersistentIndexedCache
 import org.gradle.cache.PersistentIndexedCacheParameters
@@ -448,6 +449,49 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
         thrown(UnsupportedOperationException)
     }
 
+    def "can read and write shared segments cache while holding shared lock"() {
+        def access = newAccess(Shared)
+
+        given:
+        1 * lockManager.lock(lockFile, mode(Shared), "<display-name>") >> lock
+        access.open()
+
+        when:
+        def cache = access.newCache(PersistentIndexedCacheParameters.of('cache', String.class, Integer.class).withStorage(IndexedCacheStorage.SHARED_SEGMENTS))
+        cache.put("key", 12)
+
+        then:
+        cache.get("key") == 12
+        new File(cacheDir, "cache.shared").directory
+        0 * lock.readFile(_)
+        0 * lock.writeFile(_)
+
+        cleanup:
+        access?.close()
+    }
+
+    def "closes shared segments cache before releasing shared lock"() {
+        def access = newAccess(Shared)
+
+        given:
+        1 * lockManager.lock(lockFile, mode(Shared), "<display-name>") >> lock
+        access.open()
+        def cache = access.newCache(PersistentIndexedCacheParameters.of('cache', String.class, Integer.class).withStorage(IndexedCacheStorage.SHARED_SEGMENTS))
+        cache.put("key", 12)
+
+        when:
+        access.close()
+
+        then:
+        1 * lock.close()
+
+        when:
+        cache.get("key")
+
+        then:
+        thrown(IllegalStateException)
+    }
+
     def "can create new cache"() {
         def access = newAccess(None)
 
@@ -21,11 +21,12 @@ import org.gradle.api.Transformer
 import org.gradle.cache.FileLock
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 
+import java.util.concurrent.atomic.AtomicLong
 import java.util.concurrent.atomic.AtomicReference
 
 class InMemoryDecoratedCacheTest extends ConcurrentSpec {
     def target = Mock(MultiProcessSafeAsyncPersistentIndexedCache)
-    def cache = new InMemoryDecoratedCache(target, CacheBuilder.newBuilder().build(), "id", new AtomicReference<FileLock.State>())
+    def cache = new InMemoryDecoratedCache(target, CacheBuilder.newBuilder().build(), "id", new AtomicReference<FileLock.State>(), new AtomicLong())
 
     def "does not produce value when present in memory and marks completed"() {
         def producer = Mock(Transformer)
@@ -16,6 +16,7 @@
 package org.gradle.cache.internal
 
 import org.gradle.cache.FileAccess
+import org.gradle.cache.SuspendableIndexedCacheStore
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache
 import org.gradle.internal.Factory
 import spock.lang.Specification
@@ -129,6 +130,36 @@ class MultiProcessSafePersistentIndexedCacheTest extends Specification {
         0 * _._
     }
 
+    def "suspends a suspendable cache when work is finished and resumes it on next access"() {
+        given:
+        def suspendableFactory = Mock(Factory)
+        def suspendableCache = Mock(SuspendableIndexedCacheStore)
+        def cache = new DefaultMultiProcessSafePersistentIndexedCache<String, String>(suspendableFactory, fileAccess)
+        1 * fileAccess.writeFile(!null) >> { Runnable action -> action.run() }
+        1 * suspendableFactory.create() >> suspendableCache
+        cache.get("something")
+
+        when:
+        cache.finishWork()
+        cache.finishWork()
+
+        then:
+        1 * fileAccess.writeFile(!null) >> { Runnable action -> action.run() }
+        1 * suspendableCache.suspend()
+        0 * _._
+
+        when:
+        def result = cache.get("value")
+
+        then:
+        result == "result"
+        1 * fileAccess.writeFile(!null) >> { Runnable action -> action.run() }
+        1 * suspendableCache.resume()
+        1 * fileAccess.readFile(!null) >> { Factory action -> action.create() }
+        1 * suspendableCache.get("value") >> "result"
+        0 * _._
+    }
+
     def cacheOpened() {
         1 * fileAccess.writeFile(!null) >> { Runnable action -> action.run() }
         1 * factory.create() >> backingCache
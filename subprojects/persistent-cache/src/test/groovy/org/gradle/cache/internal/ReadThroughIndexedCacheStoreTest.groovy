@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.cache.IndexedCacheStore
+import org.gradle.cache.SuspendableIndexedCacheStore
+import org.gradle.internal.Factory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class ReadThroughIndexedCacheStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def store = Mock(SuspendableIndexedCacheStore)
+    def previousStore = Mock(IndexedCacheStore)
+    def previousStoreFactory = Mock(Factory)
+    def previousStoreFile = tmpDir.createFile("cache.bin")
+    def readThroughStore = new ReadThroughIndexedCacheStore<String, Integer>(store, previousStoreFile, previousStoreFactory)
+
+    def "looks up entries which are missing from the store in the previous store"() {
+        when:
+        def value = readThroughStore.get("a")
+
+        then:
+        value == 12
+        1 * store.get("a") >> null
+        1 * previousStoreFactory.create() >> previousStore
+        1 * previousStore.get("a") >> 12
+        0 * _
+    }
+
+    def "does not look up entries which are in the store in the previous store"() {
+        when:
+        def value = readThroughStore.get("a")
+
+        then:
+        value == 12
+        1 * store.get("a") >> 12
+        0 * _
+    }
+
+    def "puts entries into the store only"() {
+        when:
+        readThroughStore.put("a", 12)
+
+        then:
+        1 * store.put("a", 12)
+        0 * _
+    }
+
+    def "removes entries from both stores"() {
+        when:
+        readThroughStore.remove("a")
+
+        then:
+        1 * store.remove("a")
+        1 * previousStoreFactory.create() >> previousStore
+        1 * previousStore.remove("a")
+        0 * _
+    }
+
+    def "closes the previous store when suspended and reopens it on demand"() {
+        given:
+        store.get(_) >> null
+        previousStore.get("a") >> 12
+
+        when:
+        readThroughStore.get("a")
+        readThroughStore.suspend()
+
+        then:
+        1 * previousStoreFactory.create() >> previousStore
+        1 * previousStore.close()
+        1 * store.suspend()
+
+        when:
+        readThroughStore.resume()
+        def value = readThroughStore.get("a")
+
+        then:
+        value == 12
+        1 * store.resume()
+        1 * previousStoreFactory.create() >> previousStore
+    }
+
+    def "does not open the previous store when its file has been deleted"() {
+        given:
+        previousStoreFile.delete()
+
+        when:
+        def value = readThroughStore.get("a")
+
+        then:
+        value == null
+        1 * store.get("a") >> null
+        0 * _
+    }
+}
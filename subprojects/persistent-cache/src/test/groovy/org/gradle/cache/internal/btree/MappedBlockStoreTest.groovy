@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.btree
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class MappedBlockStoreTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def cacheFile = tmpDir.file("cache.bin")
+
+    def "persists entries in blocks which span regions"() {
+        given:
+        def cache = createCache(new MappedBlockStore(cacheFile, 256))
+        (1..200).each { cache.put("key$it".toString(), "value$it" * it) }
+        cache.remove("key10")
+        cache.put("key20", "updated")
+
+        when:
+        cache.verify()
+        cache.close()
+        cache = createCache(new MappedBlockStore(cacheFile, 256))
+
+        then:
+        cache.get("key10") == null
+        cache.get("key20") == "updated"
+        (21..200).every { cache.get("key$it".toString()) == "value$it" * it }
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "uses the same file format as the file backed store"() {
+        given:
+        def cache = createCache(new MappedBlockStore(cacheFile, 1024))
+        (1..50).each { cache.put("key$it".toString(), "value$it".toString()) }
+        cache.close()
+
+        when:
+        cache = createCache(new FileBackedBlockStore(cacheFile))
+        (51..100).each { cache.put("key$it".toString(), "value$it".toString()) }
+        cache.close()
+        cache = createCache(new MappedBlockStore(cacheFile, 1024))
+
+        then:
+        (1..100).every { cache.get("key$it".toString()) == "value$it" }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "grows the file a region at a time and truncates it to the end of the blocks when closed"() {
+        given:
+        def otherFile = tmpDir.file("other.bin")
+        def cache = createCache(new MappedBlockStore(cacheFile, 256))
+        def other = new BTreePersistentIndexedCache<String, String>(otherFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, (short) 4, 100, new FileBackedBlockStore(otherFile))
+
+        when:
+        (1..100).each {
+            cache.put("key$it".toString(), "value$it" * it)
+            other.put("key$it".toString(), "value$it" * it)
+        }
+
+        then:
+        cacheFile.length() % 256 == 0
+        cacheFile.length() >= otherFile.length()
+
+        when:
+        cache.close()
+        other.close()
+
+        then:
+        cacheFile.length() == otherFile.length()
+    }
+
+    def "treats the unused end of a file which was not closed as allocated"() {
+        given:
+        def cache = createCache(new MappedBlockStore(cacheFile, 1024))
+        (1..50).each { cache.put("key$it".toString(), "value$it".toString()) }
+        cache.close()
+        def file = new RandomAccessFile(cacheFile, "rw")
+        file.setLength(file.length() + 3000)
+        file.close()
+
+        when:
+        cache = createCache(new MappedBlockStore(cacheFile, 1024))
+        (51..100).each { cache.put("key$it".toString(), "value$it".toString()) }
+        cache.close()
+        cache = createCache(new MappedBlockStore(cacheFile, 1024))
+
+        then:
+        (1..100).every { cache.get("key$it".toString()) == "value$it" }
+        cache.verify()
+
+        cleanup:
+        cache?.close()
+    }
+
+    def "releases the file when closed"() {
+        given:
+        def cache = createCache(new MappedBlockStore(cacheFile, 1024))
+        (1..50).each { cache.put("key$it".toString(), "value$it".toString()) }
+        cache.get("key1")
+
+        when:
+        cache.close()
+
+        then:
+        cacheFile.delete()
+    }
+
+    def "discards the content of a corrupt file"() {
+        given:
+        def garbage = new byte[4096]
+        Arrays.fill(garbage, (byte) 0x7f)
+        cacheFile.bytes = garbage
+
+        when:
+        def cache = createCache(new MappedBlockStore(cacheFile, 1024))
+        cache.put("key", "value")
+
+        then:
+        cache.get("key") == "value"
+
+        cleanup:
+        cache?.close()
+    }
+
+    private BTreePersistentIndexedCache<String, String> createCache(BlockStore store) {
+        return new BTreePersistentIndexedCache<String, String>(cacheFile, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.STRING_SERIALIZER, (short) 4, 100, store)
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.cache.IndexedCacheStore
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+
+class LogStructuredPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def segmentsDir = tmpDir.file("cache.segments")
+    def executor = { Runnable action -> action.run() } as Executor
+    LogStructuredPersistentIndexedCache<String, Integer> cache
+
+    def cleanup() {
+        cache?.close()
+    }
+
+    def "returns null for unknown entries"() {
+        given:
+        createCache()
+
+        expect:
+        cache.get("unknown") == null
+    }
+
+    def "persists added, updated and removed entries"() {
+        given:
+        createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.put("c", 3)
+        cache.put("b", 4)
+        cache.remove("c")
+        cache.remove("unknown")
+
+        when:
+        reopen()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == 4
+        cache.get("c") == null
+    }
+
+    def "rolls over to a new segment when the active segment is full"() {
+        given:
+        createCache(100)
+
+        when:
+        (1..20).each { cache.put("key$it".toString(), it) }
+
+        then:
+        cache.segmentCount > 1
+        (1..20).every { cache.get("key$it".toString()) == it }
+    }
+
+    def "compacts sealed segments with mostly overwritten entries"() {
+        given:
+        createCache(100)
+
+        when:
+        (1..50).each { round ->
+            (1..5).each { cache.put("key$it".toString(), round) }
+        }
+
+        then:
+        cache.segmentCount <= 4
+        (1..5).every { cache.get("key$it".toString()) == 50 }
+
+        when:
+        reopen(100)
+
+        then:
+        (1..5).every { cache.get("key$it".toString()) == 50 }
+        segmentFiles().size() == cache.segmentCount
+    }
+
+    def "does not resurrect removed entries when compacting"() {
+        given:
+        createCache(100)
+        (1..10).each { cache.put("key$it".toString(), it) }
+        (1..10).each { cache.remove("key$it".toString()) }
+
+        when:
+        (1..50).each { cache.put("other", it) }
+        reopen(100)
+
+        then:
+        (1..10).every { cache.get("key$it".toString()) == null }
+        cache.get("other") == 50
+    }
+
+    def "keeps serving entries while compacting in the background"() {
+        given:
+        def compactionExecutor = Executors.newSingleThreadExecutor()
+        executor = compactionExecutor
+        createCache(200)
+        def expected = [:]
+
+        when:
+        (1..2000).each {
+            def key = "key${it % 37}".toString()
+            cache.put(key, it)
+            expected[key] = it
+            assert cache.get(key) == it
+        }
+        reopen(200)
+
+        then:
+        expected.every { key, value -> cache.get(key) == value }
+
+        cleanup:
+        cache.close()
+        compactionExecutor.shutdown()
+    }
+
+    def "discards a torn record at the end of the log"() {
+        given:
+        createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+        def segment = segmentsDir.listFiles().first()
+        def raf = new RandomAccessFile(segment, "rw")
+        raf.setLength(raf.length() - 2)
+        raf.close()
+
+        when:
+        createCache()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == null
+
+        when:
+        cache.put("c", 3)
+        reopen()
+
+        then:
+        cache.get("a") == 1
+        cache.get("c") == 3
+    }
+
+    def "finishes an interrupted compaction when opened"() {
+        given:
+        createCache()
+        cache.put("a", 1)
+        cache.close()
+        // A completely written compacted segment replaces all segments up to its id
+        segmentsDir.file("0000000000000001.log").renameTo(segmentsDir.file("0000000000000002.compacted"))
+        segmentsDir.file("0000000000000003.compacting") << "incomplete"
+        segmentsDir.file("0000000000000001.log") << "superseded"
+        segmentsDir.file("0000000000000002.log") << "superseded"
+
+        when:
+        createCache()
+
+        then:
+        cache.get("a") == 1
+        segmentFiles() == ["0000000000000002.compacted"]
+    }
+
+    def "keeps the entries while suspended"() {
+        given:
+        createCache(100)
+        (1..20).each { cache.put("key$it".toString(), it) }
+
+        when:
+        cache.suspend()
+        cache.resume()
+        cache.put("key1", 100)
+
+        then:
+        cache.get("key1") == 100
+        (2..20).every { cache.get("key$it".toString()) == it }
+
+        when:
+        reopen(100)
+
+        then:
+        cache.get("key1") == 100
+        (2..20).every { cache.get("key$it".toString()) == it }
+    }
+
+    def "rebuilds the index on resume when the segments have been modified by another instance"() {
+        given:
+        createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.suspend()
+        def other = new LogStructuredPersistentIndexedCache<String, Integer>(segmentsDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, executor)
+        other.put("a", 3)
+        other.remove("b")
+        other.put("c", 4)
+        other.close()
+
+        when:
+        cache.resume()
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == null
+        cache.get("c") == 4
+    }
+
+    def "pauses a running compaction when suspended and finishes it when resumed"() {
+        given:
+        Runnable compaction = null
+        executor = { Runnable action -> compaction = action } as Executor
+        createCache(100)
+        (1..50).each { round ->
+            (1..5).each { cache.put("key$it".toString(), round) }
+        }
+        def segments = segmentFiles()
+        def pausedCompaction = compaction
+
+        when:
+        def suspending = Thread.start { cache.suspend() }
+        new PollingConditions().eventually {
+            assert suspending.state == Thread.State.WAITING
+        }
+        pausedCompaction.run()
+        suspending.join()
+
+        then:
+        segmentFiles().findAll { !it.endsWith(".compacting") } == segments
+        segmentFiles().any { it.endsWith(".compacting") }
+
+        when:
+        cache.resume()
+
+        then:
+        compaction.is(pausedCompaction)
+
+        when:
+        compaction.run()
+
+        then:
+        segmentFiles().size() < segments.size()
+        !segmentFiles().any { it.endsWith(".compacting") }
+        (1..5).every { cache.get("key$it".toString()) == 50 }
+
+        when:
+        executor = { Runnable action -> action.run() } as Executor
+        reopen(100)
+
+        then:
+        (1..5).every { cache.get("key$it".toString()) == 50 }
+    }
+
+    def "discards a paused compaction when the segments have been modified by another instance"() {
+        given:
+        Runnable compaction = null
+        executor = { Runnable action -> compaction = action } as Executor
+        createCache(100)
+        (1..50).each { round ->
+            (1..5).each { cache.put("key$it".toString(), round) }
+        }
+        def suspending = Thread.start { cache.suspend() }
+        new PollingConditions().eventually {
+            assert suspending.state == Thread.State.WAITING
+        }
+        compaction.run()
+        suspending.join()
+
+        when:
+        def other = new LogStructuredPersistentIndexedCache<String, Integer>(segmentsDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, { Runnable action -> action.run() } as Executor, 100)
+        other.put("key1", 100)
+        other.close()
+        compaction = null
+        cache.resume()
+
+        then:
+        compaction == null
+        !segmentFiles().any { it.endsWith(".compacting") }
+        cache.get("key1") == 100
+        (2..5).every { cache.get("key$it".toString()) == 50 }
+    }
+
+    def "copies its entries to another store"() {
+        given:
+        createCache(100)
+        (1..20).each { cache.put("key$it".toString(), it) }
+        cache.put("key1", 100)
+        cache.remove("key2")
+        def copied = [:]
+        def target = Stub(IndexedCacheStore) {
+            put(_, _) >> { String key, Integer value -> copied[key] = value }
+        }
+
+        when:
+        cache.copyEntriesTo(target)
+
+        then:
+        copied == [key1: 100] + (3..20).collectEntries { ["key$it".toString(), it] }
+    }
+
+    private void createCache(long maxSegmentSize = 1024 * 1024) {
+        cache = new LogStructuredPersistentIndexedCache<String, Integer>(segmentsDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, executor, maxSegmentSize)
+    }
+
+    private List<String> segmentFiles() {
+        return segmentsDir.list().findAll { it != "generation" }.sort()
+    }
+
+    private void reopen(long maxSegmentSize = 1024 * 1024) {
+        cache.close()
+        createCache(maxSegmentSize)
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class SharedSegmentsPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def segmentsDir = tmpDir.file("cache.shared")
+    List<SharedSegmentsPersistentIndexedCache<String, Integer>> caches = []
+
+    def cleanup() {
+        caches*.close()
+    }
+
+    def "persists added entries"() {
+        given:
+        def cache = createCache()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+
+        when:
+        cache = createCache()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == 2
+        cache.get("unknown") == null
+    }
+
+    def "writes to separate segments and reads the entries of other writers"() {
+        given:
+        def first = createCache()
+        def second = createCache()
+
+        when:
+        first.put("a", 1)
+        second.put("b", 2)
+
+        then:
+        first.get("b") == 2
+        second.get("a") == 1
+        segmentsDir.list().length == 2
+
+        when:
+        first.put("c", 3)
+
+        then:
+        second.get("c") == 3
+    }
+
+    def "does not write entries which are already known"() {
+        given:
+        def first = createCache()
+        def second = createCache()
+        first.put("a", 1)
+        assert second.get("a") == 1
+
+        when:
+        second.put("a", 1)
+
+        then:
+        segmentsDir.list().length == 1
+    }
+
+    def "rolls over to a new segment when the segment is full"() {
+        given:
+        def cache = createCache(100)
+
+        when:
+        (1..20).each { cache.put("key$it".toString(), it) }
+
+        then:
+        cache.segmentCount > 1
+        (1..20).every { cache.get("key$it".toString()) == it }
+        (1..20).every { createCache().get("key$it".toString()) == it }
+    }
+
+    def "picks up a record of another writer once it is complete"() {
+        given:
+        def writer = createCache()
+        writer.put("a", 1)
+        writer.put("b", 2)
+        def segment = segmentsDir.listFiles().first()
+        def content = segment.bytes
+        writer.close()
+        segment.bytes = content[0..-3] as byte[]
+        def reader = createCache()
+
+        expect:
+        reader.get("a") == 1
+        reader.get("b") == null
+
+        when:
+        segment.bytes = content
+
+        then:
+        reader.get("b") == 2
+    }
+
+    def "does not scan the segments of other writers again before the refresh interval has passed"() {
+        given:
+        def reader = createCache(1024 * 1024, TimeUnit.HOURS.toMillis(1))
+        def writer = createCache()
+
+        when:
+        writer.put("a", 1)
+
+        then:
+        reader.get("a") == null
+        createCache().get("a") == 1
+    }
+
+    def "continues the segment of a closed writer"() {
+        given:
+        def first = createCache()
+        first.put("a", 1)
+        first.close()
+
+        when:
+        def second = createCache()
+        second.put("b", 2)
+
+        then:
+        segmentsDir.list().length == 1
+        createCache().get("a") == 1
+        createCache().get("b") == 2
+    }
+
+    def "drops an incomplete record when continuing the segment of a closed writer"() {
+        given:
+        def first = createCache()
+        first.put("a", 1)
+        first.put("b", 2)
+        first.close()
+        def segment = segmentsDir.listFiles().first()
+        segment.bytes = segment.bytes[0..-3] as byte[]
+
+        when:
+        def second = createCache()
+        second.put("c", 3)
+
+        then:
+        segmentsDir.list().length == 1
+        def reader = createCache()
+        reader.get("a") == 1
+        reader.get("b") == null
+        reader.get("c") == 3
+    }
+
+    def "moves the entries of the segments of closed writers into a single segment"() {
+        given:
+        def writers = (1..3).collect { createCache() }
+        writers.eachWithIndex { writer, i -> writer.put("key$i".toString(), i) }
+        writers*.close()
+        assert segmentsDir.list().length == 3
+
+        when:
+        def cache = createCache()
+        cache.put("other", 4)
+
+        then:
+        segmentsDir.list().length == 1
+        cache.segmentCount == 1
+        (0..2).every { cache.get("key$it".toString()) == it }
+        (0..2).every { createCache().get("key$it".toString()) == it }
+        createCache().get("other") == 4
+    }
+
+    def "does not continue the segment of another writer which is still open"() {
+        given:
+        def first = createCache()
+        first.put("a", 1)
+        def second = createCache()
+
+        when:
+        second.put("b", 2)
+        first.put("c", 3)
+
+        then:
+        segmentsDir.list().length == 2
+        createCache().get("a") == 1
+        createCache().get("b") == 2
+        createCache().get("c") == 3
+    }
+
+    def "does not continue a full segment"() {
+        given:
+        def first = createCache(100)
+        (1..20).each { first.put("key$it".toString(), it) }
+        first.close()
+        def segmentCount = segmentsDir.list().length
+
+        when:
+        def second = createCache(100)
+        second.put("other", 0)
+
+        then:
+        segmentsDir.list().length <= segmentCount + 1
+        (1..20).every { second.get("key$it".toString()) == it }
+        second.get("other") == 0
+    }
+
+    def "cannot remove entries"() {
+        given:
+        def cache = createCache()
+        cache.put("a", 1)
+
+        when:
+        cache.remove("a")
+
+        then:
+        thrown(UnsupportedOperationException)
+        cache.get("a") == 1
+    }
+
+    private SharedSegmentsPersistentIndexedCache<String, Integer> createCache(long maxSegmentSize = 1024 * 1024, long refreshInterval = 0) {
+        def cache = new SharedSegmentsPersistentIndexedCache<String, Integer>(segmentsDir, BaseSerializerFactory.STRING_SERIALIZER, BaseSerializerFactory.INTEGER_SERIALIZER, maxSegmentSize, refreshInterval)
+        caches << cache
+        return cache
+    }
+}
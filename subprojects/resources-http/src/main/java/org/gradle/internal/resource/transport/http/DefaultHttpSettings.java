@@ -33,10 +33,13 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 
 public class DefaultHttpSettings implements HttpSettings {
+    private static final int DEFAULT_MAX_CONNECTIONS = 20;
+
     private final Collection<Authentication> authenticationSettings;
     private final SslContextFactory sslContextFactory;
     private final HostnameVerifier hostnameVerifier;
     private final boolean followRedirects;
+    private final int maxConnections;
 
     private HttpProxySettings proxySettings;
     private HttpProxySettings secureProxySettings;
@@ -46,8 +49,9 @@ public class DefaultHttpSettings implements HttpSettings {
         return new Builder();
     }
 
-    private DefaultHttpSettings(Collection<Authentication> authenticationSettings, SslContextFactory sslContextFactory, HostnameVerifier hostnameVerifier, boolean followRedirects) {
+    private DefaultHttpSettings(Collection<Authentication> authenticationSettings, SslContextFactory sslContextFactory, HostnameVerifier hostnameVerifier, boolean followRedirects, int maxConnections) {
         this.followRedirects = followRedirects;
+        this.maxConnections = maxConnections;
         Preconditions.checkNotNull(authenticationSettings, "authenticationSettings");
         Preconditions.checkNotNull(sslContextFactory, "sslContextFactory");
         Preconditions.checkNotNull(hostnameVerifier, "hostnameVerifier");
@@ -101,11 +105,17 @@ public class DefaultHttpSettings implements HttpSettings {
         return hostnameVerifier;
     }
 
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
     public static class Builder {
         private Collection<Authentication> authenticationSettings;
         private SslContextFactory sslContextFactory;
         private HostnameVerifier hostnameVerifier;
         private boolean followRedirects = true;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
 
         public Builder withAuthenticationSettings(Collection<Authentication> authenticationSettings) {
             this.authenticationSettings = authenticationSettings;
@@ -129,8 +139,14 @@ public class DefaultHttpSettings implements HttpSettings {
             return this;
         }
 
+        public Builder maxConnections(int maxConnections) {
+            Preconditions.checkArgument(maxConnections > 0, "maxConnections must be positive");
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
         public HttpSettings build() {
-            return new DefaultHttpSettings(authenticationSettings, sslContextFactory, hostnameVerifier, followRedirects);
+            return new DefaultHttpSettings(authenticationSettings, sslContextFactory, hostnameVerifier, followRedirects, maxConnections);
         }
     }
 
@@ -80,7 +80,6 @@ import java.util.Collections;
 
 public class HttpClientConfigurer {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientConfigurer.class);
-    private static final int MAX_HTTP_CONNECTIONS = 20;
     private static final String[] SSL_PROTOCOLS;
 
     private static final String HTTPS_PROTOCOLS = "https.protocols";
@@ -114,8 +113,8 @@ public class HttpClientConfigurer {
         configureSocketConfig(builder);
         configureRedirectStrategy(builder);
         builder.setDefaultCredentialsProvider(credentialsProvider);
-        builder.setMaxConnTotal(MAX_HTTP_CONNECTIONS);
-        builder.setMaxConnPerRoute(MAX_HTTP_CONNECTIONS);
+        builder.setMaxConnTotal(httpSettings.getMaxConnections());
+        builder.setMaxConnPerRoute(httpSettings.getMaxConnections());
     }
 
     private void configureSslSocketConnectionFactory(HttpClientBuilder builder, SslContextFactory sslContextFactory, HostnameVerifier hostnameVerifier) {
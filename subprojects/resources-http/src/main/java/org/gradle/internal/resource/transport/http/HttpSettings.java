@@ -35,4 +35,9 @@ public interface HttpSettings {
     SslContextFactory getSslContextFactory();
 
     HostnameVerifier getHostnameVerifier();
+
+    /**
+     * The maximum number of connections to keep open, in total and per route.
+     */
+    int getMaxConnections();
 }
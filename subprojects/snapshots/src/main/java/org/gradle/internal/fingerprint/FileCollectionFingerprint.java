@@ -20,6 +20,7 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import org.gradle.internal.hash.HashCode;
 
+import javax.annotation.Nullable;
 import java.util.Map;
 
 /**
@@ -37,6 +38,12 @@ public interface FileCollectionFingerprint {
      */
     ImmutableMultimap<String, HashCode> getRootHashes();
 
+    /**
+     * The combined hash of the fingerprints as calculated by {@link CurrentFileCollectionFingerprint#getHash()}, or {@code null} when it is not known.
+     */
+    @Nullable
+    HashCode getHash();
+
     FileCollectionFingerprint EMPTY = new FileCollectionFingerprint() {
         @Override
         public Map<String, FileSystemLocationFingerprint> getFingerprints() {
@@ -47,5 +54,11 @@ public interface FileCollectionFingerprint {
         public ImmutableMultimap<String, HashCode> getRootHashes() {
             return ImmutableMultimap.of();
         }
+
+        @Nullable
+        @Override
+        public HashCode getHash() {
+            return null;
+        }
     };
 }
@@ -82,7 +82,7 @@ public class DefaultCurrentFileCollectionFingerprint implements CurrentFileColle
 
     @Override
     public boolean visitChangesSince(FileCollectionFingerprint oldFingerprint, String title, boolean includeAdded, ChangeVisitor visitor) {
-        if (hasSameRootHashes(oldFingerprint)) {
+        if (hasSameRootHashes(oldFingerprint) || hasSameHash(oldFingerprint)) {
             return true;
         }
         return compareStrategy.visitChangesSince(visitor, getFingerprints(), oldFingerprint.getFingerprints(), title, includeAdded);
@@ -92,6 +92,11 @@ public class DefaultCurrentFileCollectionFingerprint implements CurrentFileColle
         return Iterables.elementsEqual(rootHashes.entries(), oldFingerprint.getRootHashes().entries());
     }
 
+    private boolean hasSameHash(FileCollectionFingerprint oldFingerprint) {
+        HashCode oldHash = oldFingerprint.getHash();
+        return oldHash != null && oldHash.equals(getHash());
+    }
+
     @Override
     public HashCode getHash() {
         if (hash == null) {
@@ -19,6 +19,7 @@ package org.gradle.internal.snapshot;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.HashCode;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -34,6 +35,17 @@ public class DirectorySnapshot extends AbstractFileSystemLocationSnapshot implem
         this.contentHash = contentHash;
     }
 
+    /**
+     * Used by subclasses which store their children in a different form, and which therefore need to override {@link #getChildren()} and {@link #accept(FileSystemSnapshotVisitor)}.
+     */
+    protected DirectorySnapshot(String absolutePath, String name, HashCode contentHash) {
+        this(absolutePath, name, Collections.<FileSystemLocationSnapshot>emptyList(), contentHash);
+    }
+
+    public List<FileSystemLocationSnapshot> getChildren() {
+        return children;
+    }
+
     @Override
     public HashCode getHash() {
         return contentHash;
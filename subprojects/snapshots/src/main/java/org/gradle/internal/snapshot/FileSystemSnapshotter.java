@@ -22,6 +22,7 @@ import org.gradle.internal.hash.HashCode;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.File;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -48,6 +49,14 @@ public interface FileSystemSnapshotter {
      */
     FileSystemLocationSnapshot snapshot(File file);
 
+    /**
+     * Returns the current snapshot of a location, given a previous snapshot of it and the locations that have changed since the previous snapshot was taken.
+     * Unchanged parts of the previous snapshot are reused instead of being snapshotted again.
+     *
+     * @param changedPaths the absolute paths of all the locations that have been created, modified or removed since the previous snapshot was taken.
+     */
+    FileSystemLocationSnapshot snapshotChanges(FileSystemLocationSnapshot previous, Collection<String> changedPaths);
+
     /**
      * Returns snapshots of the roots of a file collection.
      */
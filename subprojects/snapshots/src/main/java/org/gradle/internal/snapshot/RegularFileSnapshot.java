@@ -32,6 +32,10 @@ public class RegularFileSnapshot extends AbstractFileSystemLocationSnapshot {
         this.lastModified = lastModified;
     }
 
+    public long getLastModified() {
+        return lastModified;
+    }
+
     @Override
     public FileType getType() {
         return FileType.RegularFile;
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import com.google.common.base.Charsets;
+import org.gradle.internal.hash.HashCode;
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+import org.gradle.internal.snapshot.FileSystemSnapshotVisitor;
+import org.gradle.internal.snapshot.MissingFileSnapshot;
+import org.gradle.internal.snapshot.RegularFileSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A snapshot of a directory tree which stores the whole tree in a single buffer instead of one object per file.
+ *
+ * Only the names of the children are stored, their absolute paths are derived from the absolute path of the directory.
+ * The snapshots of the children are decoded each time the tree is visited and are not retained, so that only the buffer stays in memory.
+ *
+ * Each entry in the buffer consists of:
+ * <ul>
+ *     <li>the type of the entry,</li>
+ *     <li>the length of the UTF-8 encoded name and the encoded name,</li>
+ *     <li>for regular files and directories, the length of the hash and the hash,</li>
+ *     <li>for regular files, the last modified time,</li>
+ *     <li>for directories, the number of children and the offset of the end of the entries of the children, which directly follow.</li>
+ * </ul>
+ */
+public class CompactDirectorySnapshot extends DirectorySnapshot {
+    private static final byte REGULAR_FILE = 0;
+    private static final byte MISSING_FILE = 1;
+    private static final byte DIRECTORY = 2;
+
+    private final ByteBuffer buffer;
+    private final int childrenOffset;
+    private final int childCount;
+
+    private CompactDirectorySnapshot(String absolutePath, String name, HashCode contentHash, ByteBuffer buffer, int childrenOffset, int childCount) {
+        super(absolutePath, name, contentHash);
+        this.buffer = buffer;
+        this.childrenOffset = childrenOffset;
+        this.childCount = childCount;
+    }
+
+    /**
+     * Encodes the given directory tree.
+     *
+     * @param offHeap whether to store the tree in a direct buffer outside of the Java heap.
+     * @return the encoded tree, or {@code null} when the tree cannot be encoded because the absolute paths of its locations are not derived from the names of the locations.
+     */
+    @Nullable
+    public static CompactDirectorySnapshot encode(DirectorySnapshot snapshot, boolean offHeap) {
+        Encoder encoder = new Encoder();
+        if (!encoder.putChildren(snapshot)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        if (offHeap) {
+            buffer = ByteBuffer.allocateDirect(encoder.size());
+            buffer.put(encoder.bytes, 0, encoder.size());
+        } else {
+            buffer = ByteBuffer.wrap(Arrays.copyOf(encoder.bytes, encoder.size()));
+        }
+        return new CompactDirectorySnapshot(snapshot.getAbsolutePath(), snapshot.getName(), snapshot.getHash(), buffer.asReadOnlyBuffer(), 0, snapshot.getChildren().size());
+    }
+
+    /**
+     * The number of bytes used to store the tree, including the parts of the tree which do not belong to this directory.
+     */
+    public int getEncodedSize() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public List<FileSystemLocationSnapshot> getChildren() {
+        final List<FileSystemLocationSnapshot> children = new ArrayList<FileSystemLocationSnapshot>(childCount);
+        decodeChildren(new ChildAction() {
+            @Override
+            public void execute(FileSystemLocationSnapshot child) {
+                children.add(child);
+            }
+        });
+        return Collections.unmodifiableList(children);
+    }
+
+    @Override
+    public void accept(final FileSystemSnapshotVisitor visitor) {
+        if (!visitor.preVisitDirectory(this)) {
+            return;
+        }
+        // Each child is visited as soon as it has been decoded, so the decoded snapshots can be collected right away
+        decodeChildren(new ChildAction() {
+            @Override
+            public void execute(FileSystemLocationSnapshot child) {
+                child.accept(visitor);
+            }
+        });
+        visitor.postVisitDirectory(this);
+    }
+
+    private void decodeChildren(ChildAction action) {
+        String absolutePath = getAbsolutePath();
+        int offset = childrenOffset;
+        for (int i = 0; i < childCount; i++) {
+            byte type = buffer.get(offset);
+            int nameLength = buffer.getShort(offset + 1) & 0xffff;
+            String name = new String(getBytes(offset + 3, nameLength), Charsets.UTF_8);
+            String childPath = childPath(absolutePath, name);
+            offset += 3 + nameLength;
+            if (type == MISSING_FILE) {
+                action.execute(new MissingFileSnapshot(childPath, name));
+                continue;
+            }
+            int hashLength = buffer.get(offset) & 0xff;
+            HashCode hash = HashCode.fromBytes(getBytes(offset + 1, hashLength));
+            offset += 1 + hashLength;
+            if (type == REGULAR_FILE) {
+                action.execute(new RegularFileSnapshot(childPath, name, hash, buffer.getLong(offset)));
+                offset += 8;
+            } else {
+                int grandChildCount = buffer.getInt(offset);
+                int endOffset = buffer.getInt(offset + 4);
+                action.execute(new CompactDirectorySnapshot(childPath, name, hash, buffer, offset + 8, grandChildCount));
+                offset = endOffset;
+            }
+        }
+    }
+
+    private interface ChildAction {
+        void execute(FileSystemLocationSnapshot child);
+    }
+
+    private byte[] getBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    private static String childPath(String parentPath, String name) {
+        if (parentPath.endsWith(File.separator)) {
+            return parentPath + name;
+        }
+        return parentPath + File.separatorChar + name;
+    }
+
+    private static class Encoder {
+        private byte[] bytes = new byte[1024];
+        private int position;
+
+        int size() {
+            return position;
+        }
+
+        boolean putChildren(DirectorySnapshot directory) {
+            String absolutePath = directory.getAbsolutePath();
+            for (FileSystemLocationSnapshot child : directory.getChildren()) {
+                if (!child.getAbsolutePath().equals(childPath(absolutePath, child.getName()))) {
+                    return false;
+                }
+                if (!putChild(child)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean putChild(FileSystemLocationSnapshot child) {
+            byte[] name = child.getName().getBytes(Charsets.UTF_8);
+            if (name.length > 0xffff) {
+                return false;
+            }
+            switch (child.getType()) {
+                case Missing:
+                    putByte(MISSING_FILE);
+                    putName(name);
+                    return true;
+                case RegularFile:
+                    putByte(REGULAR_FILE);
+                    putName(name);
+                    putHash(child.getHash());
+                    putLong(((RegularFileSnapshot) child).getLastModified());
+                    return true;
+                case Directory:
+                    DirectorySnapshot directory = (DirectorySnapshot) child;
+                    putByte(DIRECTORY);
+                    putName(name);
+                    putHash(child.getHash());
+                    putInt(directory.getChildren().size());
+                    int endOffsetPosition = position;
+                    putInt(0);
+                    if (!putChildren(directory)) {
+                        return false;
+                    }
+                    putInt(endOffsetPosition, position);
+                    return true;
+                default:
+                    throw new IllegalArgumentException("Unrecognized file type: " + child.getType());
+            }
+        }
+
+        private void putName(byte[] name) {
+            ensureCapacity(2 + name.length);
+            bytes[position++] = (byte) (name.length >>> 8);
+            bytes[position++] = (byte) name.length;
+            System.arraycopy(name, 0, bytes, position, name.length);
+            position += name.length;
+        }
+
+        private void putHash(HashCode hash) {
+            byte[] hashBytes = hash.toByteArray();
+            putByte((byte) hashBytes.length);
+            ensureCapacity(hashBytes.length);
+            System.arraycopy(hashBytes, 0, bytes, position, hashBytes.length);
+            position += hashBytes.length;
+        }
+
+        private void putByte(byte value) {
+            ensureCapacity(1);
+            bytes[position++] = value;
+        }
+
+        private void putInt(int value) {
+            ensureCapacity(4);
+            putInt(position, value);
+            position += 4;
+        }
+
+        private void putInt(int offset, int value) {
+            for (int i = 0; i < 4; i++) {
+                bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+            }
+        }
+
+        private void putLong(long value) {
+            ensureCapacity(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[position++] = (byte) (value >>> (56 - 8 * i));
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + length));
+            }
+        }
+    }
+}
@@ -22,24 +22,26 @@ import org.gradle.internal.snapshot.FileSystemMirror;
 import org.gradle.internal.snapshot.WellKnownFileLocations;
 
 import javax.annotation.Nullable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * See {@link DefaultFileSystemSnapshotter} for some more details
  */
 public class DefaultFileSystemMirror implements FileSystemMirror {
-    // Maps from interned absolute path for a file to metadata for the file.
-    private final Map<String, FileMetadataSnapshot> metadata = new ConcurrentHashMap<String, FileMetadataSnapshot>();
-    private final Map<String, FileMetadataSnapshot> cacheMetadata = new ConcurrentHashMap<String, FileMetadataSnapshot>();
-    // Maps from interned absolute path for a file to snapshot for the file.
-    private final Map<String, FileSystemLocationSnapshot> files = new ConcurrentHashMap<String, FileSystemLocationSnapshot>();
-    private final Map<String, FileSystemLocationSnapshot> cacheFiles = new ConcurrentHashMap<String, FileSystemLocationSnapshot>();
+    // Snapshots and metadata for files, organized by the directory hierarchy of their absolute paths.
+    private final FileSystemMirrorTrie files = new FileSystemMirrorTrie();
+    private final FileSystemMirrorTrie cacheFiles = new FileSystemMirrorTrie();
 
     private final WellKnownFileLocations wellKnownFileLocations;
+    private final DirectorySnapshotEncoding directorySnapshotEncoding;
+    private volatile RetainedLocationListener retainedLocationListener;
 
     public DefaultFileSystemMirror(WellKnownFileLocations wellKnownFileLocations) {
+        this(wellKnownFileLocations, DirectorySnapshotEncoding.OBJECTS);
+    }
+
+    public DefaultFileSystemMirror(WellKnownFileLocations wellKnownFileLocations, DirectorySnapshotEncoding directorySnapshotEncoding) {
         this.wellKnownFileLocations = wellKnownFileLocations;
+        this.directorySnapshotEncoding = directorySnapshotEncoding;
     }
 
     @Nullable
@@ -47,60 +49,97 @@ public class DefaultFileSystemMirror implements FileSystemMirror {
     public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
         // Could potentially also look whether we have the details for an ancestor directory tree
         // Could possibly infer that the path refers to a directory, if we have details for a descendant path (and it's not a missing file)
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            return cacheFiles.get(absolutePath);
-        }
-        return files.get(absolutePath);
+        return trieFor(absolutePath).getSnapshot(absolutePath);
     }
 
     @Override
     public void putSnapshot(FileSystemLocationSnapshot snapshot) {
         String absolutePath = snapshot.getAbsolutePath();
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            cacheFiles.put(absolutePath, snapshot);
-        } else {
-            files.put(absolutePath, snapshot);
-        }
+        FileSystemMirrorTrie trie = trieFor(absolutePath);
+        trie.putSnapshot(absolutePath, directorySnapshotEncoding.encode(snapshot));
+        locationAdded(trie, absolutePath);
     }
 
+    @Nullable
     @Override
     public FileMetadataSnapshot getMetadata(String absolutePath) {
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            return cacheMetadata.get(absolutePath);
-        }
-        return metadata.get(absolutePath);
+        return trieFor(absolutePath).getMetadata(absolutePath);
     }
 
     @Override
     public void putMetadata(String absolutePath, FileMetadataSnapshot metadata) {
-        if (wellKnownFileLocations.isImmutable(absolutePath)) {
-            cacheMetadata.put(absolutePath, metadata);
-        } else {
-            this.metadata.put(absolutePath, metadata);
+        FileSystemMirrorTrie trie = trieFor(absolutePath);
+        trie.putMetadata(absolutePath, metadata);
+        locationAdded(trie, absolutePath);
+    }
+
+    private void locationAdded(FileSystemMirrorTrie trie, String absolutePath) {
+        RetainedLocationListener listener = retainedLocationListener;
+        if (listener != null && trie == files) {
+            listener.locationAdded(absolutePath);
         }
     }
 
+    /**
+     * Sets the listener to notify when state is added for a file that does not live in an append-only cache.
+     */
+    public void setRetainedLocationListener(@Nullable RetainedLocationListener retainedLocationListener) {
+        this.retainedLocationListener = retainedLocationListener;
+    }
+
+    private FileSystemMirrorTrie trieFor(String absolutePath) {
+        return wellKnownFileLocations.isImmutable(absolutePath) ? cacheFiles : files;
+    }
+
     public void beforeOutputChange() {
         // When the outputs are generated, throw away all state for files that do not live in an append-only cache.
         // This is intentionally very simple, to be improved later
-        metadata.clear();
         files.clear();
     }
 
     public void beforeBuildFinished() {
         // We throw away all state between builds
-        metadata.clear();
-        cacheMetadata.clear();
         files.clear();
         cacheFiles.clear();
     }
 
+    /**
+     * Discards the state for files that live in an append-only cache, and retains the state for all other files.
+     * The retained state must be invalidated via {@link #invalidate(Iterable)} when the files change, for example based on file system events.
+     */
+    public void beforeBuildFinishedRetainingFiles() {
+        cacheFiles.clear();
+    }
+
     public void beforeOutputChange(Iterable<String> affectedOutputPaths) {
-        for (String affectedOutputPath : affectedOutputPaths) {
-            metadata.remove(affectedOutputPath);
-            files.remove(affectedOutputPath);
-            cacheMetadata.remove(affectedOutputPath);
-            cacheFiles.remove(affectedOutputPath);
+        invalidate(affectedOutputPaths);
+    }
+
+    /**
+     * Discards the state for the given paths, their descendants and their ancestors.
+     */
+    public void invalidate(Iterable<String> changedPaths) {
+        for (String changedPath : changedPaths) {
+            files.invalidate(changedPath);
+            cacheFiles.invalidate(changedPath);
         }
     }
+
+    /**
+     * Discards all state, for example when it is unknown which files have changed.
+     */
+    public void invalidateAll() {
+        files.clear();
+        cacheFiles.clear();
+    }
+
+    /**
+     * Notified when state is added for a file which may be retained between builds.
+     */
+    public interface RetainedLocationListener {
+        /**
+         * Called after the state for the given location has been added, on the thread which added it.
+         */
+        void locationAdded(String absolutePath);
+    }
 }
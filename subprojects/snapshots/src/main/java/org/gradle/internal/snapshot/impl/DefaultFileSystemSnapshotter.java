@@ -36,6 +36,7 @@ import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.snapshot.DirectorySnapshot;
 import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.FileSystemMirror;
 import org.gradle.internal.snapshot.FileSystemSnapshot;
@@ -46,7 +47,10 @@ import org.gradle.internal.snapshot.RegularFileSnapshot;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Responsible for snapshotting various aspects of the file system.
@@ -71,11 +75,15 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private final DirectorySnapshotter directorySnapshotter;
 
     public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, FileSystemMirror fileSystemMirror, String... defaultExcludes) {
+        this(hasher, stringInterner, fileSystem, fileSystemMirror, null, null, defaultExcludes);
+    }
+
+    public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, FileSystemMirror fileSystemMirror, @Nullable Executor hashingExecutor, @Nullable ForkJoinPool walkingPool, String... defaultExcludes) {
         this.hasher = hasher;
         this.stringInterner = stringInterner;
         this.fileSystem = fileSystem;
         this.fileSystemMirror = fileSystemMirror;
-        this.directorySnapshotter = new DirectorySnapshotter(hasher, fileSystem, stringInterner, defaultExcludes);
+        this.directorySnapshotter = new DirectorySnapshotter(hasher, fileSystem, stringInterner, hashingExecutor, walkingPool, defaultExcludes);
     }
 
     @Override
@@ -121,6 +129,22 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         return result;
     }
 
+    @Override
+    public FileSystemLocationSnapshot snapshotChanges(final FileSystemLocationSnapshot previous, final Collection<String> changedPaths) {
+        final String absolutePath = previous.getAbsolutePath();
+        return producingSnapshots.guardByKey(absolutePath, new Factory<FileSystemLocationSnapshot>() {
+            @Override
+            public FileSystemLocationSnapshot create() {
+                FileSystemLocationSnapshot result = previous instanceof DirectorySnapshot ? directorySnapshotter.patch((DirectorySnapshot) previous, changedPaths) : null;
+                if (result == null) {
+                    return snapshotAndCache(new File(absolutePath), null);
+                }
+                fileSystemMirror.putSnapshot(result);
+                return result;
+            }
+        });
+    }
+
     @Override
     public List<FileSystemSnapshot> snapshot(FileCollectionInternal fileCollection) {
         FileCollectionLeafVisitorImpl visitor = new FileCollectionLeafVisitorImpl();
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import org.gradle.internal.snapshot.DirectorySnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+
+/**
+ * How the snapshots of directory trees retained by {@link DefaultFileSystemMirror} are stored.
+ */
+public enum DirectorySnapshotEncoding {
+    /**
+     * One object per location in the tree.
+     */
+    OBJECTS("objects"),
+    /**
+     * The whole tree in a buffer on the Java heap, see {@link CompactDirectorySnapshot}.
+     */
+    COMPACT("compact"),
+    /**
+     * The whole tree in a direct buffer outside of the Java heap, see {@link CompactDirectorySnapshot}.
+     */
+    COMPACT_OFF_HEAP("compact-off-heap");
+
+    public static final String ENCODING_PROPERTY = "org.gradle.internal.snapshot.directory-snapshot-encoding";
+
+    private final String id;
+
+    DirectorySnapshotEncoding(String id) {
+        this.id = id;
+    }
+
+    public static DirectorySnapshotEncoding fromSystemProperties() {
+        String value = System.getProperty(ENCODING_PROPERTY);
+        if (value == null) {
+            return OBJECTS;
+        }
+        for (DirectorySnapshotEncoding encoding : values()) {
+            if (encoding.id.equalsIgnoreCase(value.trim())) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported directory snapshot encoding '%s' specified by system property '%s'.", value, ENCODING_PROPERTY));
+    }
+
+    /**
+     * Returns the snapshot to retain for the given snapshot.
+     */
+    public FileSystemLocationSnapshot encode(FileSystemLocationSnapshot snapshot) {
+        if (this == OBJECTS || !(snapshot instanceof DirectorySnapshot) || snapshot instanceof CompactDirectorySnapshot) {
+            return snapshot;
+        }
+        CompactDirectorySnapshot encoded = CompactDirectorySnapshot.encode((DirectorySnapshot) snapshot, this == COMPACT_OFF_HEAP);
+        return encoded == null ? snapshot : encoded;
+    }
+}
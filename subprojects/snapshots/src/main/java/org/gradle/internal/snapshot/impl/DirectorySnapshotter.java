@@ -20,6 +20,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -29,50 +30,88 @@ import org.gradle.api.file.RelativePath;
 import org.gradle.api.internal.cache.StringInterner;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.tasks.util.PatternSet;
+import org.gradle.internal.IoActions;
 import org.gradle.internal.MutableBoolean;
 import org.gradle.internal.UncheckedException;
+import org.gradle.internal.file.FileMetadataSnapshot;
 import org.gradle.internal.file.FileType;
 import org.gradle.internal.hash.FileHasher;
 import org.gradle.internal.hash.HashCode;
 import org.gradle.internal.nativeintegration.filesystem.DefaultFileMetadata;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 import org.gradle.internal.nativeintegration.filesystem.Stat;
+import org.gradle.internal.snapshot.DirectorySnapshot;
 import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
 import org.gradle.internal.snapshot.MerkleDirectorySnapshotBuilder;
 import org.gradle.internal.snapshot.RegularFileSnapshot;
+import org.gradle.internal.snapshot.RelativePathSegmentsTracker;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DirectorySnapshotter {
     private final FileHasher hasher;
     private final FileSystem fileSystem;
     private final StringInterner stringInterner;
     private final DefaultExcludes defaultExcludes;
+    private final Executor hashingExecutor;
+    private final ForkJoinPool walkingPool;
 
     public DirectorySnapshotter(FileHasher hasher, FileSystem fileSystem, StringInterner stringInterner, String... defaultExcludes) {
+        this(hasher, fileSystem, stringInterner, null, null, defaultExcludes);
+    }
+
+    public DirectorySnapshotter(FileHasher hasher, FileSystem fileSystem, StringInterner stringInterner, @Nullable Executor hashingExecutor, String... defaultExcludes) {
+        this(hasher, fileSystem, stringInterner, hashingExecutor, null, defaultExcludes);
+    }
+
+    /**
+     * @param hashingExecutor the executor to hash the content of files with while the directory is being walked, or {@code null} to hash the files on the walking thread.
+     * @param walkingPool the pool to walk sibling directories concurrently with, or {@code null} to walk directories on a single thread. Files are hashed by the walking tasks when set.
+     */
+    public DirectorySnapshotter(FileHasher hasher, FileSystem fileSystem, StringInterner stringInterner, @Nullable Executor hashingExecutor, @Nullable ForkJoinPool walkingPool, String... defaultExcludes) {
         this.hasher = hasher;
         this.fileSystem = fileSystem;
         this.stringInterner = stringInterner;
+        this.hashingExecutor = hashingExecutor;
+        this.walkingPool = walkingPool;
         this.defaultExcludes = new DefaultExcludes(defaultExcludes);
     }
 
     public FileSystemLocationSnapshot snapshot(String absolutePath, @Nullable PatternSet patterns, final MutableBoolean hasBeenFiltered) {
         Path rootPath = Paths.get(absolutePath);
         final Spec<FileTreeElement> spec = (patterns == null || patterns.isEmpty()) ? null : patterns.getAsSpec();
-        final MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+        if (walkingPool != null && Files.isDirectory(rootPath)) {
+            return new ParallelWalk(spec, hasBeenFiltered).snapshot(rootPath);
+        }
+        final SnapshotBuilder builder = hashingExecutor == null ? new HashingSnapshotBuilder() : new ParallelHashingSnapshotBuilder(hashingExecutor);
 
         try {
             Files.walkFileTree(rootPath, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new java.nio.file.FileVisitor<Path>() {
@@ -133,9 +172,7 @@ public class DirectorySnapshotter {
                 private void addFileSnapshot(Path file, String name, BasicFileAttributes attrs) {
                     Preconditions.checkNotNull(attrs, "Unauthorized access to %", file);
                     DefaultFileMetadata metadata = new DefaultFileMetadata(FileType.RegularFile, attrs.lastModifiedTime().toMillis(), attrs.size());
-                    HashCode hash = hasher.hash(file.toFile(), metadata);
-                    RegularFileSnapshot fileSnapshot = new RegularFileSnapshot(internedAbsolutePath(file), name, hash, metadata.getLastModified());
-                    builder.visit(fileSnapshot);
+                    builder.visitFile(file.toFile(), internedAbsolutePath(file), name, metadata);
                 }
 
                 private String internedAbsolutePath(Path file) {
@@ -143,27 +180,492 @@ public class DirectorySnapshotter {
                 }
 
                 private boolean isAllowed(Path path, String name, boolean isDirectory, @Nullable BasicFileAttributes attrs, Iterable<String> relativePath) {
-                    if (isDirectory) {
-                        if (defaultExcludes.excludeDir(name)) {
-                            return false;
+                    return DirectorySnapshotter.this.isAllowed(path, name, isDirectory, attrs, relativePath, spec, hasBeenFiltered);
+                }
+            });
+        } catch (IOException e) {
+            builder.abort();
+            throw new GradleException(String.format("Could not list contents of directory '%s'.", rootPath), e);
+        } catch (RuntimeException e) {
+            builder.abort();
+            throw e;
+        }
+        return builder.getResult();
+    }
+
+    /**
+     * Creates the snapshot of a directory from a previous snapshot of it and the locations below it that have changed since, without walking the unchanged parts of the directory.
+     * Changed locations which are not below the directory are ignored.
+     *
+     * @return the updated snapshot, or {@code null} if the changes cannot be applied to the previous snapshot, for example because a changed location is a symbolic link.
+     */
+    @Nullable
+    public FileSystemLocationSnapshot patch(DirectorySnapshot previous, Collection<String> changedPaths) {
+        String rootPath = previous.getAbsolutePath();
+        List<String> changesBelowRoot = new ArrayList<String>();
+        for (String changedPath : changedPaths) {
+            if (changedPath.equals(rootPath)) {
+                // The directory itself may have been replaced, so we cannot use the previous snapshot at all
+                return null;
+            }
+            if (isBelow(changedPath, rootPath)) {
+                changesBelowRoot.add(changedPath);
+            }
+        }
+        try {
+            return patchDirectory(previous, changesBelowRoot);
+        } catch (PatchNotPossibleException e) {
+            return null;
+        }
+    }
+
+    private FileSystemLocationSnapshot patchDirectory(DirectorySnapshot previous, List<String> changedPaths) {
+        if (changedPaths.isEmpty()) {
+            return previous;
+        }
+        String prefix = previous.getAbsolutePath() + File.separatorChar;
+        Map<String, List<String>> changesByChildName = new HashMap<String, List<String>>();
+        for (String changedPath : changedPaths) {
+            int childNameEnd = changedPath.indexOf(File.separatorChar, prefix.length());
+            String childName = changedPath.substring(prefix.length(), childNameEnd < 0 ? changedPath.length() : childNameEnd);
+            List<String> changesForChild = changesByChildName.get(childName);
+            if (changesForChild == null) {
+                changesForChild = new ArrayList<String>();
+                changesByChildName.put(childName, changesForChild);
+            }
+            // Only keep changes below the child, a change to the child itself is represented by the child's key
+            if (childNameEnd >= 0) {
+                changesForChild.add(changedPath);
+            }
+        }
+
+        MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+        builder.preVisitDirectory(previous.getAbsolutePath(), previous.getName());
+        for (FileSystemLocationSnapshot child : previous.getChildren()) {
+            List<String> changesForChild = changesByChildName.remove(child.getName());
+            if (changesForChild == null) {
+                builder.visit(child);
+                continue;
+            }
+            FileSystemLocationSnapshot patchedChild = patchChild(child.getAbsolutePath(), child.getName(), child, changesForChild);
+            if (patchedChild != null) {
+                builder.visit(patchedChild);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : changesByChildName.entrySet()) {
+            String childName = stringInterner.intern(entry.getKey());
+            FileSystemLocationSnapshot newChild = patchChild(stringInterner.intern(prefix + childName), childName, null, entry.getValue());
+            if (newChild != null) {
+                builder.visit(newChild);
+            }
+        }
+        builder.postVisitDirectory();
+        return builder.getResult();
+    }
+
+    /**
+     * Returns the snapshot of a child location with changes, or {@code null} if the location is missing or excluded.
+     */
+    @Nullable
+    private FileSystemLocationSnapshot patchChild(String absolutePath, String name, @Nullable FileSystemLocationSnapshot previous, List<String> changesBelow) {
+        File file = new File(absolutePath);
+        if (Files.isSymbolicLink(file.toPath())) {
+            throw new PatchNotPossibleException();
+        }
+        FileMetadataSnapshot metadata = fileSystem.stat(file);
+        switch (metadata.getType()) {
+            case Missing:
+                return null;
+            case RegularFile:
+                if (defaultExcludes.excludeFile(name)) {
+                    return null;
+                }
+                return new RegularFileSnapshot(absolutePath, name, hasher.hash(file, metadata), metadata.getLastModified());
+            case Directory:
+                if (defaultExcludes.excludeDir(name)) {
+                    return null;
+                }
+                if (previous instanceof DirectorySnapshot) {
+                    return patchDirectory((DirectorySnapshot) previous, changesBelow);
+                }
+                // A new directory, or a directory that replaced a file
+                return snapshot(absolutePath, null, new MutableBoolean(false));
+            default:
+                throw new IllegalArgumentException("Unrecognized file type: " + metadata.getType());
+        }
+    }
+
+    private static boolean isBelow(String path, String directoryPath) {
+        return path.length() > directoryPath.length() + 1
+            && path.startsWith(directoryPath)
+            && path.charAt(directoryPath.length()) == File.separatorChar;
+    }
+
+    private static class PatchNotPossibleException extends RuntimeException {
+    }
+
+    private boolean isAllowed(Path path, String name, boolean isDirectory, @Nullable BasicFileAttributes attrs, Iterable<String> relativePath, @Nullable Spec<FileTreeElement> spec, MutableBoolean hasBeenFiltered) {
+        if (isDirectory) {
+            if (defaultExcludes.excludeDir(name)) {
+                return false;
+            }
+        } else if (defaultExcludes.excludeFile(name)) {
+            return false;
+        }
+        if (spec == null) {
+            return true;
+        }
+        boolean allowed = spec.isSatisfiedBy(new PathBackedFileTreeElement(path, name, isDirectory, attrs, relativePath, fileSystem));
+        if (!allowed) {
+            hasBeenFiltered.set(true);
+        }
+        return allowed;
+    }
+
+    /**
+     * Walks a directory tree with a task per directory, so that sibling directories are walked and their files hashed concurrently.
+     * Each task builds the snapshot of its directory from the snapshots of its children, which are sorted by name, so the result does not depend on the order in which the tasks finish.
+     *
+     * Follows symbolic links, skips file system loops and reports failures the same way as the walk done by {@link Files#walkFileTree(Path, java.util.Set, int, java.nio.file.FileVisitor)}.
+     */
+    private class ParallelWalk {
+        private final Spec<FileTreeElement> spec;
+        private final MutableBoolean hasBeenFiltered;
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+        ParallelWalk(@Nullable Spec<FileTreeElement> spec, MutableBoolean hasBeenFiltered) {
+            this.spec = spec;
+            this.hasBeenFiltered = hasBeenFiltered;
+        }
+
+        FileSystemLocationSnapshot snapshot(Path rootPath) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+            } catch (IOException e) {
+                throw new GradleException(String.format("Could not read path '%s'.", rootPath), e);
+            }
+            String name = stringInterner.intern(rootPath.getFileName().toString());
+            DirectoryTask rootTask = new DirectoryTask(rootPath, name, ImmutableList.<String>of(), true, ImmutableList.of(new VisitedDirectory(rootPath, attrs.fileKey())));
+            FileSystemLocationSnapshot result = walkingPool.invoke(rootTask);
+            RuntimeException walkFailure = failure.get();
+            if (walkFailure != null) {
+                throw walkFailure;
+            }
+            return result;
+        }
+
+        private class DirectoryTask extends RecursiveTask<FileSystemLocationSnapshot> {
+            private final Path dir;
+            private final String name;
+            // The relative path of the directory below the root directory, empty for the root directory
+            private final ImmutableList<String> relativePath;
+            private final boolean root;
+            private final ImmutableList<VisitedDirectory> ancestors;
+
+            DirectoryTask(Path dir, String name, ImmutableList<String> relativePath, boolean root, ImmutableList<VisitedDirectory> ancestors) {
+                this.dir = dir;
+                this.name = name;
+                this.relativePath = relativePath;
+                this.root = root;
+                this.ancestors = ancestors;
+            }
+
+            @Override
+            protected FileSystemLocationSnapshot compute() {
+                if (failure.get() != null) {
+                    return null;
+                }
+                try {
+                    return snapshotDirectory();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    return null;
+                }
+            }
+
+            /**
+             * Returns the snapshot of the directory, or {@code null} when the directory cannot be read and is not included.
+             */
+            @Nullable
+            private FileSystemLocationSnapshot snapshotDirectory() {
+                DirectoryStream<Path> entries;
+                try {
+                    entries = Files.newDirectoryStream(dir);
+                } catch (IOException e) {
+                    if (isAllowed(dir, name, false, null, parentRelativePath(), spec, hasBeenFiltered)) {
+                        throw new GradleException(String.format("Could not read path '%s'.", dir), e);
+                    }
+                    return null;
+                }
+                List<FileSystemLocationSnapshot> children = new ArrayList<FileSystemLocationSnapshot>();
+                List<DirectoryTask> subdirectoryTasks = new ArrayList<DirectoryTask>();
+                try {
+                    for (Path entry : entries) {
+                        visitEntry(entry, children, subdirectoryTasks);
+                    }
+                } catch (DirectoryIteratorException e) {
+                    throw new GradleException(String.format("Could not read directory path '%s'.", dir), e.getCause());
+                } finally {
+                    IoActions.closeQuietly(entries);
+                }
+
+                invokeAll(subdirectoryTasks);
+                if (failure.get() != null) {
+                    return null;
+                }
+                for (DirectoryTask subdirectoryTask : subdirectoryTasks) {
+                    FileSystemLocationSnapshot subdirectorySnapshot = subdirectoryTask.getRawResult();
+                    if (subdirectorySnapshot != null) {
+                        children.add(subdirectorySnapshot);
+                    }
+                }
+
+                MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+                builder.preVisitDirectory(stringInterner.intern(dir.toString()), name);
+                for (FileSystemLocationSnapshot child : children) {
+                    builder.visit(child);
+                }
+                builder.postVisitDirectory();
+                return builder.getResult();
+            }
+
+            private void visitEntry(Path entry, List<FileSystemLocationSnapshot> children, List<DirectoryTask> subdirectoryTasks) {
+                String entryName = stringInterner.intern(entry.getFileName().toString());
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    try {
+                        // The entry may be a symbolic link that cannot be followed
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException notReadable) {
+                        if (isAllowed(entry, entryName, false, null, relativePath, spec, hasBeenFiltered)) {
+                            throw new GradleException(String.format("Could not read path '%s'.", entry), e);
                         }
-                    } else if (defaultExcludes.excludeFile(name)) {
-                        return false;
+                        return;
                     }
-                    if (spec == null) {
-                        return true;
+                }
+
+                if (attrs.isDirectory()) {
+                    // When we encounter a loop (via symbolic links), we continue so we include all the other files apart from the loop.
+                    if (!isLoop(entry, attrs.fileKey()) && isAllowed(entry, entryName, true, attrs, relativePath, spec, hasBeenFiltered)) {
+                        ImmutableList<String> entryRelativePath = ImmutableList.<String>builder().addAll(relativePath).add(entryName).build();
+                        ImmutableList<VisitedDirectory> entryAncestors = ImmutableList.<VisitedDirectory>builder().addAll(ancestors).add(new VisitedDirectory(entry, attrs.fileKey())).build();
+                        subdirectoryTasks.add(new DirectoryTask(entry, entryName, entryRelativePath, false, entryAncestors));
                     }
-                    boolean allowed = spec.isSatisfiedBy(new PathBackedFileTreeElement(path, name, isDirectory, attrs, relativePath, fileSystem));
-                    if (!allowed) {
-                        hasBeenFiltered.set(true);
+                } else if (isAllowed(entry, entryName, false, attrs, relativePath, spec, hasBeenFiltered)) {
+                    if (attrs.isSymbolicLink()) {
+                        throw new GradleException(String.format("Could not list contents of '%s'. Couldn't follow symbolic link.", entry));
                     }
-                    return allowed;
+                    DefaultFileMetadata metadata = new DefaultFileMetadata(FileType.RegularFile, attrs.lastModifiedTime().toMillis(), attrs.size());
+                    HashCode hash = hasher.hash(entry.toFile(), metadata);
+                    children.add(new RegularFileSnapshot(stringInterner.intern(entry.toString()), entryName, hash, metadata.getLastModified()));
+                }
+            }
+
+            private Iterable<String> parentRelativePath() {
+                return root ? relativePath : relativePath.subList(0, relativePath.size() - 1);
+            }
+
+            private boolean isLoop(Path entry, @Nullable Object fileKey) {
+                for (VisitedDirectory ancestor : ancestors) {
+                    if (ancestor.isSameDirectory(entry, fileKey)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    private static class VisitedDirectory {
+        private final Path path;
+        private final Object fileKey;
+
+        VisitedDirectory(Path path, @Nullable Object fileKey) {
+            this.path = path;
+            this.fileKey = fileKey;
+        }
+
+        boolean isSameDirectory(Path other, @Nullable Object otherFileKey) {
+            if (fileKey != null && otherFileKey != null) {
+                return fileKey.equals(otherFileKey);
+            }
+            try {
+                return Files.isSameFile(path, other);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private interface SnapshotBuilder {
+        void preVisitDirectory(String absolutePath, String name);
+
+        void visitFile(File file, String absolutePath, String name, FileMetadataSnapshot metadata);
+
+        void postVisitDirectory();
+
+        boolean isRoot();
+
+        Iterable<String> getRelativePath();
+
+        FileSystemLocationSnapshot getResult();
+
+        /**
+         * Discards any work still in progress after the walk failed.
+         */
+        void abort();
+    }
+
+    /**
+     * Hashes files on the walking thread as they are visited.
+     */
+    private class HashingSnapshotBuilder implements SnapshotBuilder {
+        private final MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+
+        @Override
+        public void preVisitDirectory(String absolutePath, String name) {
+            builder.preVisitDirectory(absolutePath, name);
+        }
+
+        @Override
+        public void visitFile(File file, String absolutePath, String name, FileMetadataSnapshot metadata) {
+            HashCode hash = hasher.hash(file, metadata);
+            builder.visit(new RegularFileSnapshot(absolutePath, name, hash, metadata.getLastModified()));
+        }
+
+        @Override
+        public void postVisitDirectory() {
+            builder.postVisitDirectory();
+        }
+
+        @Override
+        public boolean isRoot() {
+            return builder.isRoot();
+        }
+
+        @Override
+        public Iterable<String> getRelativePath() {
+            return builder.getRelativePath();
+        }
+
+        @Override
+        public FileSystemLocationSnapshot getResult() {
+            return builder.getResult();
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+
+    /**
+     * Hashes files on the given executor while the walk continues, and assembles the snapshot once the walk has finished and all files have been hashed.
+     * The walk is recorded, so that the snapshot is built in the same order as with {@link HashingSnapshotBuilder}.
+     */
+    private class ParallelHashingSnapshotBuilder implements SnapshotBuilder {
+        private final Executor executor;
+        private final RelativePathSegmentsTracker relativePathSegmentsTracker = new RelativePathSegmentsTracker();
+        private final List<WalkStep> steps = new ArrayList<WalkStep>();
+
+        ParallelHashingSnapshotBuilder(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void preVisitDirectory(String absolutePath, String name) {
+            relativePathSegmentsTracker.enter(name);
+            steps.add(new WalkStep(absolutePath, name));
+        }
+
+        @Override
+        public void visitFile(final File file, String absolutePath, String name, final FileMetadataSnapshot metadata) {
+            FutureTask<HashCode> hash = new FutureTask<HashCode>(new Callable<HashCode>() {
+                @Override
+                public HashCode call() {
+                    return hasher.hash(file, metadata);
                 }
             });
-        } catch (IOException e) {
-            throw new GradleException(String.format("Could not list contents of directory '%s'.", rootPath), e);
+            steps.add(new WalkStep(absolutePath, name, metadata.getLastModified(), hash));
+            executor.execute(hash);
+        }
+
+        @Override
+        public void postVisitDirectory() {
+            relativePathSegmentsTracker.leave();
+            steps.add(WalkStep.POST_VISIT_DIRECTORY);
+        }
+
+        @Override
+        public boolean isRoot() {
+            return relativePathSegmentsTracker.isRoot();
+        }
+
+        @Override
+        public Iterable<String> getRelativePath() {
+            return relativePathSegmentsTracker.getRelativePath();
+        }
+
+        @Override
+        public FileSystemLocationSnapshot getResult() {
+            MerkleDirectorySnapshotBuilder builder = MerkleDirectorySnapshotBuilder.sortingRequired();
+            try {
+                for (WalkStep step : steps) {
+                    if (step == WalkStep.POST_VISIT_DIRECTORY) {
+                        builder.postVisitDirectory();
+                    } else if (step.hash == null) {
+                        builder.preVisitDirectory(step.absolutePath, step.name);
+                    } else {
+                        builder.visit(new RegularFileSnapshot(step.absolutePath, step.name, waitFor(step.hash), step.lastModified));
+                    }
+                }
+            } catch (RuntimeException e) {
+                abort();
+                throw e;
+            }
+            return builder.getResult();
+        }
+
+        private HashCode waitFor(Future<HashCode> hash) {
+            try {
+                return hash.get();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } catch (ExecutionException e) {
+                throw UncheckedException.throwAsUncheckedException(e.getCause());
+            }
+        }
+
+        @Override
+        public void abort() {
+            for (WalkStep step : steps) {
+                if (step.hash != null) {
+                    step.hash.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static class WalkStep {
+        static final WalkStep POST_VISIT_DIRECTORY = new WalkStep(null, null);
+
+        private final String absolutePath;
+        private final String name;
+        private final long lastModified;
+        private final FutureTask<HashCode> hash;
+
+        WalkStep(String absolutePath, String name) {
+            this(absolutePath, name, 0, null);
+        }
+
+        WalkStep(String absolutePath, String name, long lastModified, @Nullable FutureTask<HashCode> hash) {
+            this.absolutePath = absolutePath;
+            this.name = name;
+            this.lastModified = lastModified;
+            this.hash = hash;
         }
-        return builder.getResult();
     }
 
     @VisibleForTesting
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import org.gradle.internal.concurrent.Stoppable;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Provides the fork/join pool used by {@link DirectorySnapshotter} to walk sibling directories concurrently.
+ *
+ * Directories are walked on a single thread unless a number of walking threads greater than one is specified.
+ */
+public class DirectoryWalkerPool implements Stoppable {
+    public static final String THREADS_PROPERTY = "org.gradle.internal.snapshot.walking-threads";
+
+    private final ForkJoinPool pool;
+
+    public DirectoryWalkerPool() {
+        this(Integer.getInteger(THREADS_PROPERTY, 1));
+    }
+
+    public DirectoryWalkerPool(int threads) {
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @Nullable
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    @Override
+    public void stop() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
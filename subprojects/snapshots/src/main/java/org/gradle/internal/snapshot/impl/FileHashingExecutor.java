@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.ManagedExecutor;
+import org.gradle.internal.concurrent.Stoppable;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the threads used by {@link DirectorySnapshotter} to hash the content of files while walking a directory.
+ *
+ * Files are hashed on the walking thread unless a number of hashing threads greater than one is specified.
+ */
+public class FileHashingExecutor implements Stoppable {
+    public static final String THREADS_PROPERTY = "org.gradle.internal.snapshot.hashing-threads";
+
+    private final ManagedExecutor executor;
+
+    public FileHashingExecutor(ExecutorFactory executorFactory) {
+        this(executorFactory, Integer.getInteger(THREADS_PROPERTY, 1));
+    }
+
+    public FileHashingExecutor(ExecutorFactory executorFactory, int threads) {
+        this.executor = threads > 1 ? executorFactory.create("File hashing", threads) : null;
+    }
+
+    @Nullable
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void stop() {
+        if (executor != null) {
+            executor.stop();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl;
+
+import org.gradle.internal.file.FileMetadataSnapshot;
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores snapshots and metadata for absolute paths in a tree that mirrors the directory hierarchy.
+ *
+ * Keeping the hierarchy allows a change to some path to invalidate everything that was recorded for that path, its descendants and its ancestors,
+ * which is what is required to keep the state across builds and to invalidate it based on file system events.
+ */
+class FileSystemMirrorTrie {
+    private static final char SEPARATOR = File.separatorChar;
+
+    private final Node root = new Node();
+
+    @Nullable
+    public FileSystemLocationSnapshot getSnapshot(String absolutePath) {
+        Node node = find(absolutePath);
+        return node == null ? null : node.snapshot;
+    }
+
+    public void putSnapshot(String absolutePath, FileSystemLocationSnapshot snapshot) {
+        getOrCreate(absolutePath).snapshot = snapshot;
+    }
+
+    @Nullable
+    public FileMetadataSnapshot getMetadata(String absolutePath) {
+        Node node = find(absolutePath);
+        return node == null ? null : node.metadata;
+    }
+
+    public void putMetadata(String absolutePath, FileMetadataSnapshot metadata) {
+        getOrCreate(absolutePath).metadata = metadata;
+    }
+
+    /**
+     * Discards the state of the given path and of all of its descendants.
+     * The state of the ancestors is discarded as well, since a directory snapshot contains the state of its children.
+     */
+    public void invalidate(String absolutePath) {
+        Node parent = root;
+        int start = 0;
+        while (true) {
+            int end = segmentEnd(absolutePath, start);
+            String segment = absolutePath.substring(start, end);
+            if (end == absolutePath.length()) {
+                parent.children.remove(segment);
+                return;
+            }
+            Node child = parent.children.get(segment);
+            if (child == null) {
+                return;
+            }
+            child.snapshot = null;
+            child.metadata = null;
+            parent = child;
+            start = end + 1;
+        }
+    }
+
+    public void clear() {
+        root.children.clear();
+    }
+
+    @Nullable
+    private Node find(String absolutePath) {
+        Node current = root;
+        int start = 0;
+        while (current != null) {
+            int end = segmentEnd(absolutePath, start);
+            current = current.children.get(absolutePath.substring(start, end));
+            if (end == absolutePath.length()) {
+                return current;
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private Node getOrCreate(String absolutePath) {
+        Node current = root;
+        int start = 0;
+        while (true) {
+            int end = segmentEnd(absolutePath, start);
+            String segment = absolutePath.substring(start, end);
+            Node child = current.children.get(segment);
+            if (child == null) {
+                Node newChild = new Node();
+                child = current.children.putIfAbsent(segment, newChild);
+                if (child == null) {
+                    child = newChild;
+                }
+            }
+            if (end == absolutePath.length()) {
+                return child;
+            }
+            current = child;
+            start = end + 1;
+        }
+    }
+
+    private static int segmentEnd(String absolutePath, int start) {
+        int end = absolutePath.indexOf(SEPARATOR, start);
+        return end < 0 ? absolutePath.length() : end;
+    }
+
+    private static class Node {
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+        private volatile FileSystemLocationSnapshot snapshot;
+        private volatile FileMetadataSnapshot metadata;
+    }
+}
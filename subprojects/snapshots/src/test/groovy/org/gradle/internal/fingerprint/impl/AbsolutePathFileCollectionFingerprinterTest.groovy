@@ -15,6 +15,7 @@
  */
 package org.gradle.internal.fingerprint.impl
 
+import com.google.common.collect.ImmutableMultimap
 import org.gradle.api.file.FileCollection
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
@@ -23,6 +24,7 @@ import org.gradle.internal.change.ChangeType
 import org.gradle.internal.change.CollectingChangeVisitor
 import org.gradle.internal.change.FileChange
 import org.gradle.internal.fingerprint.FileCollectionFingerprint
+import org.gradle.internal.hash.HashCode
 import org.gradle.internal.hash.TestFileHasher
 import org.gradle.internal.snapshot.WellKnownFileLocations
 import org.gradle.internal.snapshot.impl.DefaultFileSystemMirror
@@ -99,6 +101,24 @@ class AbsolutePathFileCollectionFingerprinterTest extends Specification {
         0 * _
     }
 
+    def "does not compare the fingerprints of the files when the combined hash is unchanged"() {
+        given:
+        TestFile file1 = tmpDir.createFile('file1')
+        TestFile file2 = tmpDir.createFile('file2')
+        def fingerprint = fingerprinter.fingerprint(files(file1, file2))
+        def previous = Mock(FileCollectionFingerprint)
+
+        when:
+        def visitor = new CollectingChangeVisitor()
+        fingerprint.visitChangesSince(previous, "TYPE", true, visitor)
+
+        then:
+        visitor.changes.empty
+        _ * previous.rootHashes >> ImmutableMultimap.of(file1.absolutePath, HashCode.fromInt(1))
+        1 * previous.hash >> fingerprint.hash
+        0 * previous.fingerprints
+    }
+
     def doesNotGenerateEventWhenFileAddedAndAddEventsAreFiltered() {
         given:
         TestFile file1 = tmpDir.createFile('file1')
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.snapshot.impl
+
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.internal.MutableBoolean
+import org.gradle.internal.hash.HashCode
+import org.gradle.internal.hash.TestFileHasher
+import org.gradle.internal.snapshot.DirectorySnapshot
+import org.gradle.internal.snapshot.FileSystemLocationSnapshot
+import org.gradle.internal.snapshot.FileSystemSnapshotVisitor
+import org.gradle.internal.snapshot.MissingFileSnapshot
+import org.gradle.internal.snapshot.RegularFileSnapshot
+import org.gradle.internal.snapshot.WellKnownFileLocations
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.UsesNativeServices
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.lang.management.ManagementFactory
+
+@UsesNativeServices
+class CompactDirectorySnapshotTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    def directorySnapshotter = new DirectorySnapshotter(new TestFileHasher(), TestFiles.fileSystem(), new StringInterner())
+
+    def "visits the same locations as the encoded tree"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        rootDir.file("a/b/c.txt") << "c"
+        rootDir.file("a/b/d.txt") << "d"
+        rootDir.file("a/c/äöü.txt") << "umlauts"
+        rootDir.file("empty").createDir()
+        def snapshot = snapshot(rootDir)
+
+        when:
+        def compact = CompactDirectorySnapshot.encode(snapshot, offHeap)
+
+        then:
+        compact.absolutePath == snapshot.absolutePath
+        compact.name == snapshot.name
+        compact.hash == snapshot.hash
+        compact.children*.name == snapshot.children*.name
+        describe(compact) == describe(snapshot)
+        isContentAndMetadataUpToDate(compact, snapshot)
+
+        where:
+        offHeap << [false, true]
+    }
+
+    def "encodes missing files"() {
+        given:
+        def rootDir = tmpDir.file("root")
+        def missing = new MissingFileSnapshot(rootDir.file("missing").absolutePath, "missing")
+        def snapshot = new DirectorySnapshot(rootDir.absolutePath, "root", [missing], HashCode.fromInt(1))
+
+        when:
+        def compact = CompactDirectorySnapshot.encode(snapshot, false)
+
+        then:
+        compact.children.size() == 1
+        compact.children[0] instanceof MissingFileSnapshot
+        compact.children[0].absolutePath == missing.absolutePath
+    }
+
+    def "decodes the children on each visit"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        rootDir.file("b/c.txt") << "c"
+        def compact = CompactDirectorySnapshot.encode(snapshot(rootDir), false)
+
+        when:
+        def children = compact.children
+
+        then:
+        !compact.children.is(children)
+        compact.children*.absolutePath == children*.absolutePath
+        children.every { first -> !compact.children.any { it.is(first) } }
+    }
+
+    def "does not encode trees with paths which are not derived from the names"() {
+        given:
+        def rootDir = tmpDir.file("root")
+        def file = new RegularFileSnapshot(tmpDir.file("elsewhere/a.txt").absolutePath, "a.txt", HashCode.fromInt(1), 0)
+        def snapshot = new DirectorySnapshot(rootDir.absolutePath, "root", [file], HashCode.fromInt(2))
+
+        expect:
+        CompactDirectorySnapshot.encode(snapshot, false) == null
+        DirectorySnapshotEncoding.COMPACT.encode(snapshot).is(snapshot)
+    }
+
+    def "retains less heap after a visit than the encoded tree"() {
+        given:
+        def rootPath = tmpDir.file("root/with/a/reasonably/long/path").absolutePath
+        // Load the classes involved, so that they are not counted
+        describe(CompactDirectorySnapshot.encode(generatedTree(rootPath), false))
+
+        when:
+        def objectsHeap = retainedHeap { generatedTree(rootPath) }
+        def compactHeap = retainedHeap {
+            def compact = CompactDirectorySnapshot.encode(generatedTree(rootPath), false)
+            assert describe(compact).size() == 1 + 50 * 201
+            compact
+        }
+
+        then:
+        compactHeap < objectsHeap / 4
+    }
+
+    def "mirror retains compact snapshots of directories only when requested"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a/b.txt") << "b"
+        def snapshot = snapshot(rootDir)
+        def mirror = new DefaultFileSystemMirror(Stub(WellKnownFileLocations), encoding)
+
+        when:
+        mirror.putSnapshot(snapshot)
+        def retained = mirror.getSnapshot(rootDir.absolutePath)
+
+        then:
+        retained.getClass() == retainedType
+        retained.hash == snapshot.hash
+        describe(retained) == describe(snapshot)
+
+        where:
+        encoding                                    | retainedType
+        DirectorySnapshotEncoding.OBJECTS           | DirectorySnapshot
+        DirectorySnapshotEncoding.COMPACT           | CompactDirectorySnapshot
+        DirectorySnapshotEncoding.COMPACT_OFF_HEAP  | CompactDirectorySnapshot
+    }
+
+    private static DirectorySnapshot generatedTree(String rootPath) {
+        def directories = (1..50).collect { dir ->
+            def dirPath = "${rootPath}${File.separator}package${dir}"
+            def files = (1..200).collect { file ->
+                new RegularFileSnapshot("${dirPath}${File.separator}SomeSourceFile${file}.java", "SomeSourceFile${file}.java", HashCode.fromInt(dir * 1000 + file), file)
+            }
+            new DirectorySnapshot(dirPath, "package${dir}", files, HashCode.fromInt(dir))
+        }
+        return new DirectorySnapshot(rootPath, "path", directories, HashCode.fromInt(0))
+    }
+
+    /**
+     * Returns the heap still used by the object created by the given closure once it has been created and garbage has been collected.
+     */
+    private static long retainedHeap(Closure<?> create) {
+        def memory = ManagementFactory.memoryMXBean
+        collectGarbage()
+        long before = memory.heapMemoryUsage.used
+        def retained = create()
+        collectGarbage()
+        long after = memory.heapMemoryUsage.used
+        assert retained != null
+        return after - before
+    }
+
+    private static void collectGarbage() {
+        5.times {
+            System.gc()
+            Thread.sleep(20)
+        }
+    }
+
+    private DirectorySnapshot snapshot(File rootDir) {
+        return directorySnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false)) as DirectorySnapshot
+    }
+
+    private static boolean isContentAndMetadataUpToDate(FileSystemLocationSnapshot compact, FileSystemLocationSnapshot snapshot) {
+        def compactLocations = locations(compact)
+        def originalLocations = locations(snapshot)
+        return compactLocations.size() == originalLocations.size() && [compactLocations, originalLocations].transpose().every { a, b -> a.isContentAndMetadataUpToDate(b) }
+    }
+
+    private static List<Map<String, Object>> describe(FileSystemLocationSnapshot snapshot) {
+        return locations(snapshot).collect {
+            [absolutePath: it.absolutePath, name: it.name, type: it.type, hash: it.hash]
+        }
+    }
+
+    private static List<FileSystemLocationSnapshot> locations(FileSystemLocationSnapshot snapshot) {
+        def visited = []
+        snapshot.accept(new FileSystemSnapshotVisitor() {
+            @Override
+            boolean preVisitDirectory(DirectorySnapshot directorySnapshot) {
+                visited << directorySnapshot
+                return true
+            }
+
+            @Override
+            void visit(FileSystemLocationSnapshot fileSnapshot) {
+                visited << fileSnapshot
+            }
+
+            @Override
+            void postVisitDirectory(DirectorySnapshot directorySnapshot) {
+            }
+        })
+        return visited
+    }
+}
@@ -132,4 +132,77 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getMetadata(file.path) == null
         mirror.getSnapshot(file.path) == null
     }
+
+    def "discards state about a changed file, its descendants and its ancestors"() {
+        def dir = tmpDir.file("dir")
+        def file = dir.file("sub/a")
+        def child = file.file("child")
+        def sibling = dir.file("sub/b")
+        def dirSnapshot = snapshot(dir)
+        def fileSnapshot = snapshot(file)
+        def childSnapshot = snapshot(child)
+        def siblingSnapshot = snapshot(sibling)
+        def metadata = Stub(FileMetadataSnapshot)
+
+        given:
+        mirror.putSnapshot(dirSnapshot)
+        mirror.putMetadata(dir.path, metadata)
+        mirror.putSnapshot(fileSnapshot)
+        mirror.putSnapshot(childSnapshot)
+        mirror.putSnapshot(siblingSnapshot)
+
+        when:
+        mirror.invalidate([file.path])
+
+        then:
+        mirror.getSnapshot(dir.path) == null
+        mirror.getMetadata(dir.path) == null
+        mirror.getSnapshot(file.path) == null
+        mirror.getSnapshot(child.path) == null
+        mirror.getSnapshot(sibling.path) == siblingSnapshot
+    }
+
+    def "reports top-most retained locations"() {
+        def dir = tmpDir.file("dir")
+        def other = tmpDir.file("other/a")
+        def metadata = Stub(FileMetadataSnapshot)
+
+        given:
+        mirror.putSnapshot(snapshot(dir))
+        mirror.putSnapshot(snapshot(dir.file("a")))
+        mirror.putMetadata(other.path, metadata)
+        mirror.putSnapshot(snapshot(cacheDir.file("some/dir/a")))
+
+        expect:
+        mirror.retainedRoots as Set == [dir.path, other.path] as Set
+    }
+
+    def "retains state about files outside the caches when retaining files at the end of build"() {
+        def file = tmpDir.file("a")
+        def cachedFile = cacheDir.file("some/dir/a")
+        def fileSnapshot = snapshot(file)
+
+        given:
+        mirror.putSnapshot(fileSnapshot)
+        mirror.putSnapshot(snapshot(cachedFile))
+
+        when:
+        mirror.beforeBuildFinishedRetainingFiles()
+
+        then:
+        mirror.getSnapshot(file.path) == fileSnapshot
+        mirror.getSnapshot(cachedFile.path) == null
+
+        when:
+        mirror.invalidateAll()
+
+        then:
+        mirror.getSnapshot(file.path) == null
+    }
+
+    private FileSystemLocationSnapshot snapshot(File file) {
+        def snapshot = Stub(FileSystemLocationSnapshot)
+        _ * snapshot.absolutePath >> file.path
+        return snapshot
+    }
 }
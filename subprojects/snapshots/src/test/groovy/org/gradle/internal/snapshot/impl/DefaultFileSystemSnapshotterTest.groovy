@@ -105,6 +105,31 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         snapshot2.is(snapshot)
     }
 
+    def "applies changes to a previous snapshot of a directory hierarchy and caches the result"() {
+        def d = tmpDir.createDir("d")
+        def f1 = d.createFile("f1")
+        d.createFile("d1/f2")
+        def previous = snapshotter.snapshot(d)
+        fileSystemMirror.beforeOutputChange()
+
+        when:
+        f1.text = "changed"
+        def f3 = d.createFile("d2/f3")
+        def snapshot = snapshotter.snapshotChanges(previous, [f1.path, f3.parentFile.path, f3.path])
+
+        then:
+        getSnapshotInfo(snapshot) == [d.path, 6]
+        snapshot.hash != previous.hash
+        snapshotter.snapshot(d).is(snapshot)
+
+        when:
+        fileSystemMirror.beforeOutputChange()
+        def fullSnapshot = snapshotter.snapshot(d)
+
+        then:
+        fullSnapshot.hash == snapshot.hash
+    }
+
     def "fetches details of an empty directory and caches the result"() {
         def d = tmpDir.createDir("d")
 
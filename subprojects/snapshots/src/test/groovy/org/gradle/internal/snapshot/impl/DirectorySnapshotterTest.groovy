@@ -17,10 +17,12 @@
 package org.gradle.internal.snapshot.impl
 
 import org.apache.tools.ant.DirectoryScanner
+import org.gradle.api.UncheckedIOException
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.tasks.util.PatternSet
 import org.gradle.internal.MutableBoolean
+import org.gradle.internal.hash.FileHasher
 import org.gradle.internal.hash.TestFileHasher
 import org.gradle.internal.snapshot.DirectorySnapshot
 import org.gradle.internal.snapshot.FileSystemLocationSnapshot
@@ -30,6 +32,9 @@ import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Specification
 
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
+
 @UsesNativeServices
 class DirectorySnapshotterTest extends Specification {
     @Rule
@@ -132,6 +137,157 @@ class DirectorySnapshotterTest extends Specification {
         ] as Set
     }
 
+    def "produces the same snapshot when hashing files in parallel"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        rootDir.file("a/b/c.txt") << "c"
+        rootDir.file("a/c/c.txt") << "other c"
+        rootDir.file("a/b/c.html") << "html"
+        rootDir.file("empty").createDir()
+        def executor = Executors.newFixedThreadPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, TestFiles.fileSystem(), new StringInterner(), executor)
+
+        when:
+        def snapshot = directorySnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false))
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false))
+
+        then:
+        parallelSnapshot.hash == snapshot.hash
+        visitedPaths(parallelSnapshot) == visitedPaths(snapshot)
+
+        cleanup:
+        executor?.shutdownNow()
+    }
+
+    def "propagates failure to hash a file in parallel"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        def failure = new UncheckedIOException("broken")
+        def failingHasher = Stub(FileHasher) {
+            hash(_, _) >> { throw failure }
+        }
+        def executor = Executors.newFixedThreadPool(2)
+        def parallelSnapshotter = new DirectorySnapshotter(failingHasher, TestFiles.fileSystem(), new StringInterner(), executor)
+
+        when:
+        parallelSnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false))
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.is(failure)
+
+        cleanup:
+        executor?.shutdownNow()
+    }
+
+    def "produces the same snapshot when walking directories in parallel"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        rootDir.file("a/b/c.txt") << "c"
+        rootDir.file("a/c/c.txt") << "other c"
+        rootDir.file("a/b/c.html") << "html"
+        rootDir.file("subdir1/a/b/c.html") << "excluded"
+        rootDir.file("empty").createDir()
+        def patterns = new PatternSet()
+        patterns.include("**/*.txt")
+        patterns.exclude("subdir1/**")
+        def pool = new ForkJoinPool(4)
+        def parallelSnapshotter = new DirectorySnapshotter(fileHasher, TestFiles.fileSystem(), new StringInterner(), null, pool)
+
+        when:
+        def filtered = new MutableBoolean(false)
+        def snapshot = directorySnapshotter.snapshot(rootDir.absolutePath, filters ? patterns : null, filtered)
+        def parallelFiltered = new MutableBoolean(false)
+        def parallelSnapshot = parallelSnapshotter.snapshot(rootDir.absolutePath, filters ? patterns : null, parallelFiltered)
+
+        then:
+        parallelSnapshot.hash == snapshot.hash
+        visitedPaths(parallelSnapshot) == visitedPaths(snapshot)
+        parallelFiltered.get() == filtered.get()
+        filtered.get() == filters
+
+        cleanup:
+        pool?.shutdownNow()
+
+        where:
+        filters << [true, false]
+    }
+
+    def "propagates failure to hash a file when walking directories in parallel"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a/b/c.txt") << "c"
+        rootDir.file("d/e.txt") << "e"
+        def failure = new UncheckedIOException("broken")
+        def failingHasher = Stub(FileHasher) {
+            hash(_, _) >> { throw failure }
+        }
+        def pool = new ForkJoinPool(2)
+        def parallelSnapshotter = new DirectorySnapshotter(failingHasher, TestFiles.fileSystem(), new StringInterner(), null, pool)
+
+        when:
+        parallelSnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false))
+
+        then:
+        def e = thrown(UncheckedIOException)
+        e.is(failure)
+
+        cleanup:
+        pool?.shutdownNow()
+    }
+
+    def "patching a snapshot with the changed paths produces the same snapshot as walking the directory"() {
+        given:
+        def snapshotter = new DirectorySnapshotter(fileHasher, TestFiles.fileSystem(), new StringInterner(), DirectoryScanner.getDefaultExcludes())
+        def rootDir = tmpDir.createDir("root")
+        def changed = rootDir.file("a/b/changed.txt") << "before"
+        def deleted = rootDir.file("a/deleted.txt") << "deleted"
+        def deletedDir = rootDir.file("d")
+        deletedDir.file("e.txt") << "e"
+        rootDir.file("a/c/unchanged.txt") << "unchanged"
+        def previous = snapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false)) as DirectorySnapshot
+
+        when:
+        changed.text = "after"
+        deleted.delete()
+        deletedDir.deleteDir()
+        def added = rootDir.file("a/added.txt") << "added"
+        def addedDir = rootDir.file("f")
+        addedDir.file("g/h.txt") << "h"
+        def excluded = rootDir.file("a/.gitignore") << "excluded"
+        def patched = snapshotter.patch(previous, [changed, deleted, deletedDir, deletedDir.file("e.txt"), added, addedDir, excluded]*.absolutePath)
+        def walked = snapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false))
+
+        then:
+        patched.hash == walked.hash
+        visitedPaths(patched) == visitedPaths(walked)
+        !visitedPaths(patched).contains(excluded.absolutePath)
+    }
+
+    def "does not patch a snapshot when the root directory changed"() {
+        given:
+        def rootDir = tmpDir.createDir("root")
+        rootDir.file("a.txt") << "a"
+        def previous = directorySnapshotter.snapshot(rootDir.absolutePath, null, new MutableBoolean(false)) as DirectorySnapshot
+
+        expect:
+        directorySnapshotter.patch(previous, [rootDir.absolutePath]) == null
+    }
+
+    private static List<String> visitedPaths(FileSystemLocationSnapshot snapshot) {
+        def visited = []
+        snapshot.accept(new RelativePathTrackingVisitor() {
+            @Override
+            void visit(String absolutePath, Deque<String> relativePath) {
+                visited << absolutePath
+            }
+        })
+        return visited
+    }
+
     def "default excludes are correctly parsed"() {
         def defaultExcludes = new DirectorySnapshotter.DefaultExcludes(DirectoryScanner.getDefaultExcludes())
 
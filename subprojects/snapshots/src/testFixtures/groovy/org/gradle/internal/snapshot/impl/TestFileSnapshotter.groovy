@@ -43,6 +43,11 @@ class TestFileSnapshotter implements FileSystemSnapshotter {
         throw new UnsupportedOperationException()
     }
 
+    @Override
+    FileSystemLocationSnapshot snapshotChanges(FileSystemLocationSnapshot previous, Collection<String> changedPaths) {
+        return snapshot(new File(previous.absolutePath))
+    }
+
     @Override
     List<FileSystemSnapshot> snapshot(FileCollectionInternal fileCollection) {
         throw new UnsupportedOperationException()